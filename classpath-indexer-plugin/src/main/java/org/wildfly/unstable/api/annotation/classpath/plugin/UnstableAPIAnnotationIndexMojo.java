@@ -20,7 +20,10 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -35,6 +38,33 @@ public class UnstableAPIAnnotationIndexMojo
     @Parameter(property = "outputFile", required = true)
     private File outputFile;
 
+    /**
+     * The Java version to index multi-release jars for. If not set, the version of the JVM running the build is used.
+     */
+    @Parameter(property = "targetJavaVersion")
+    private Integer targetJavaVersion;
+
+    /**
+     * Whether to use Jandex to find the annotations. If {@code false}, a lighter reader of the bytecode is used
+     * instead, which gives the same index.
+     */
+    @Parameter(property = "useJandex", defaultValue = "true")
+    private boolean useJandex = true;
+
+    /**
+     * Whether to use the Jandex index at {@code META-INF/jandex.idx} of jars shipping one, rather than indexing their
+     * classes. The index is only used if it is up to date with the classes in the jar.
+     */
+    @Parameter(property = "usePrebuiltIndex", defaultValue = "true")
+    private boolean usePrebuiltIndex = true;
+
+    /**
+     * The version of the format to save the index in. Version 2 writes the class names and descriptors of the annotated
+     * members once, in a table of strings, but can only be loaded by this version of the library onwards.
+     */
+    @Parameter(property = "formatVersion", defaultValue = "1")
+    private int formatVersion = 1;
+
     @Component
     private MavenProject mavenProject;
 
@@ -45,11 +75,18 @@ public class UnstableAPIAnnotationIndexMojo
             Log log = getLog();
             log.info("Running plugin");
             overallIndex = new OverallIndex();
+            if (targetJavaVersion != null) {
+                overallIndex.setTargetJavaVersion(targetJavaVersion);
+            }
+            overallIndex.setUseJandex(useJandex);
+            overallIndex.setUsePrebuiltIndex(usePrebuiltIndex);
 
             log.info(filters.toString());
 
             List<Dependency> dependencies = mavenProject.getDependencies();
 
+            List<Set<String>> filterGroupIds = new ArrayList<>();
+            List<Set<Pattern>> filterWildcardGroupIds = new ArrayList<>();
             for (Filter indexFilter : filters) {
                 Set<String> allGroupIds = new HashSet<>();
                 Set<Pattern> wildcardGroupIds = new HashSet<>();
@@ -60,31 +97,64 @@ public class UnstableAPIAnnotationIndexMojo
                         allGroupIds.add(id);
                     }
                 }
+                filterGroupIds.add(allGroupIds);
+                filterWildcardGroupIds.add(wildcardGroupIds);
+            }
 
-                for (Artifact artifact : mavenProject.getArtifacts()) {
-                    log.info(artifact.getGroupId() + ":" + artifact.getArtifactId());
-                    if (artifact.getType().equals("jar")) {
-                        if (allGroupIds.contains(artifact.getGroupId())) {
-                            overallIndex.scanJar(artifact.getFile(), indexFilter.getAnnotation(), indexFilter.getExcludedClasses());
-                        } else {
-                            for (Pattern pattern : wildcardGroupIds) {
-                                if (pattern.matcher(artifact.getGroupId()).matches()) {
-                                    overallIndex.scanJar(artifact.getFile(), indexFilter.getAnnotation(), indexFilter.getExcludedClasses());
-                                }
-                            }
-                        }
+            // The jars to index, grouped by the excluded classes and the annotations to index them for. Each group is
+            // indexed in parallel
+            Map<Set<String>, Map<Set<String>, List<File>>> jarGroups = new LinkedHashMap<>();
+            for (Artifact artifact : mavenProject.getArtifacts()) {
+                log.info(artifact.getGroupId() + ":" + artifact.getArtifactId());
+                if (!artifact.getType().equals("jar")) {
+                    continue;
+                }
+                // Collect the annotations of all the filters matching the jar, so that it is only indexed once.
+                // Filters with different excluded classes need indexing separately.
+                Map<Set<String>, Set<String>> annotationsByExcludedClasses = new LinkedHashMap<>();
+                for (int i = 0; i < filters.size(); i++) {
+                    Filter indexFilter = filters.get(i);
+                    if (matches(artifact, filterGroupIds.get(i), filterWildcardGroupIds.get(i))) {
+                        annotationsByExcludedClasses
+                                .computeIfAbsent(indexFilter.getExcludedClasses(), k -> new LinkedHashSet<>())
+                                .add(indexFilter.getAnnotation());
                     }
                 }
+                for (Map.Entry<Set<String>, Set<String>> entry : annotationsByExcludedClasses.entrySet()) {
+                    jarGroups.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>())
+                            .computeIfAbsent(entry.getValue(), k -> new ArrayList<>())
+                            .add(artifact.getFile());
+                }
+            }
+            for (Map.Entry<Set<String>, Map<Set<String>, List<File>>> excludedEntry : jarGroups.entrySet()) {
+                for (Map.Entry<Set<String>, List<File>> annotationsEntry : excludedEntry.getValue().entrySet()) {
+                    overallIndex.scanJars(annotationsEntry.getValue(), annotationsEntry.getKey(), excludedEntry.getKey());
+                }
             }
 
+            if (overallIndex.getSkippedEntryCount() > 0) {
+                log.info("Skipped " + overallIndex.getSkippedEntryCount() + " multi-release jar entries not effective for the target Java version");
+            }
 
             Path path = Paths.get(outputFile.toURI());
-            overallIndex.save(path);
+            overallIndex.save(path, formatVersion);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static boolean matches(Artifact artifact, Set<String> allGroupIds, Set<Pattern> wildcardGroupIds) {
+        if (allGroupIds.contains(artifact.getGroupId())) {
+            return true;
+        }
+        for (Pattern pattern : wildcardGroupIds) {
+            if (pattern.matcher(artifact.getGroupId()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static Pattern createPattern(String s) {
         StringBuilder builder = new StringBuilder();
         for (char c : s.toCharArray()) {
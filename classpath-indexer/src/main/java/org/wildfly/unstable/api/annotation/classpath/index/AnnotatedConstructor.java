@@ -16,7 +16,7 @@ import java.util.Objects;
  * the searched annotation <b>somewhere</b>.
  * </p>
  */
-class AnnotatedConstructor {
+class AnnotatedConstructor implements Comparable<AnnotatedConstructor> {
     private final String className;
 
     private final String descriptor;
@@ -28,27 +28,23 @@ class AnnotatedConstructor {
     }
 
     /**
-     * Called internally to save the annotated constructor to the index file
-     *
-     * @param writer the PrintWriter
-     * @param separator the separator between the serialized parts
+     * Orders the constructors by class name and descriptor, which is the order they are saved in
      */
-    void save(PrintWriter writer, String separator) {
-        writer.println(className + separator + descriptor);
+    @Override
+    public int compareTo(AnnotatedConstructor o) {
+        int result = className.compareTo(o.className);
+        return result != 0 ? result : descriptor.compareTo(o.descriptor);
     }
 
     /**
-     * Reads the annotated constructor from the current line of the index file
-     * @param s the line
+     * Called internally to save the annotated constructor to the index file
+     *
+     * @param writer the PrintWriter
      * @param separator the separator between the serialized parts
-     * @return the parsed annotated constructor
+     * @param strings the table to look up the ids of the class name and descriptor in
      */
-    static AnnotatedConstructor parseReadLine(String s, String separator) {
-        String[] arr = s.split(separator);
-        if (arr.length != 2) {
-            throw new IllegalArgumentException(s);
-        }
-        return new AnnotatedConstructor(arr[0], arr[1]);
+    void save(PrintWriter writer, String separator, StringTable strings) {
+        writer.println(strings.reference(className) + separator + strings.reference(descriptor));
     }
 
     /**
@@ -15,7 +15,7 @@ import java.util.Objects;
  * the searched annotation <b>somewhere</b>.
  * </p>
  */
-class AnnotatedField {
+class AnnotatedField implements Comparable<AnnotatedField> {
     private final String className;
 
     private final String fieldName;
@@ -25,20 +25,6 @@ class AnnotatedField {
         this.fieldName = fieldName;
     }
 
-    /**
-     * Reads the annotated field from the current line of the index file
-     * @param s the line
-     * @param separator the separator between the serialized parts
-     * @return the parsed annotated field
-     */
-    static AnnotatedField parseReadLine(String s, String separator) {
-        String[] arr = s.split(separator);
-        if (arr.length != 2) {
-            throw new IllegalArgumentException(s);
-        }
-        return new AnnotatedField(arr[0], arr[1]);
-    }
-
     /**
      * Gets the name of the class containing the field annotated with the searched annotation.
      * @return The name of the class
@@ -55,14 +41,24 @@ class AnnotatedField {
         return fieldName;
     }
 
+    /**
+     * Orders the fields by class name and field name, which is the order they are saved in
+     */
+    @Override
+    public int compareTo(AnnotatedField o) {
+        int result = className.compareTo(o.className);
+        return result != 0 ? result : fieldName.compareTo(o.fieldName);
+    }
+
     /**
      * Called internally to save the annotated field to the index file
      *
      * @param writer the PrintWriter
      * @param separator the separator between the serialized parts
+     * @param strings the table to look up the id of the class name in
      */
-    void save(PrintWriter writer, String separator) {
-        writer.println(className + separator + fieldName);
+    void save(PrintWriter writer, String separator, StringTable strings) {
+        writer.println(strings.reference(className) + separator + fieldName);
     }
     
     @Override
@@ -17,7 +17,7 @@ import java.util.Objects;
  * the searched annotation <b>somewhere</b>.
  * </p>
  */
-class AnnotatedMethod {
+class AnnotatedMethod implements Comparable<AnnotatedMethod> {
     private final String className;
     private final String methodName;
     private final String descriptor;
@@ -43,28 +43,26 @@ class AnnotatedMethod {
     }
 
     /**
-     * Called internally to save the annotated method to the index file
-     *
-     * @param writer the PrintWriter
-     * @param separator the separator between the serialized parts
+     * Orders the methods by class name, method name and descriptor, which is the order they are saved in
      */
-    void save(PrintWriter writer, String separator) {
-        writer.println(className + separator + methodName + separator + descriptor);
+    @Override
+    public int compareTo(AnnotatedMethod o) {
+        int result = className.compareTo(o.className);
+        if (result == 0) {
+            result = methodName.compareTo(o.methodName);
+        }
+        return result != 0 ? result : descriptor.compareTo(o.descriptor);
     }
 
     /**
-     * Reads the annotated method from the current line of the index file
-     * @param s the line
+     * Called internally to save the annotated method to the index file
+     *
+     * @param writer the PrintWriter
      * @param separator the separator between the serialized parts
-     * @return the parsed annotated method
+     * @param strings the table to look up the ids of the class name and descriptor in
      */
-    static AnnotatedMethod parseReadLine(String s, String separator) {
-        String[] arr = s.split(separator);
-        if (arr.length != 3) {
-            throw new IllegalArgumentException(s);
-        }
-
-        return new AnnotatedMethod(arr[0], arr[1], arr[2]);
+    void save(PrintWriter writer, String separator, StringTable strings) {
+        writer.println(strings.reference(className) + separator + methodName + separator + strings.reference(descriptor));
     }
 
     /**
@@ -1,31 +1,30 @@
 package org.wildfly.unstable.api.annotation.classpath.index;
 
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.function.Function;
 
 /**
  * Contains the index of locations where an annotation we are interested in has been found.
  */
 public class AnnotationIndex {
 
-    private static final String START_MARKER = "==";
-    private static final String END_MARKER = "=/";
-    private static final String INTERFACES = "=INTERFACES";
-    private static final String CLASSES = "=CLASSES";
-    private static final String ANNOTATIONS = "=ANNOTATIONS";
-    private static final String METHODS = "=METHODS";
-    private static final String CONSTRUCTORS = "=CONSTRUCTORS";
-    private static final String FIELDS = "=FIELDS";
+    static final String START_MARKER = "==";
+    static final String END_MARKER = "=/";
+    static final String INTERFACES = "=INTERFACES";
+    static final String CLASSES = "=CLASSES";
+    static final String ANNOTATIONS = "=ANNOTATIONS";
+    static final String METHODS = "=METHODS";
+    static final String CONSTRUCTORS = "=CONSTRUCTORS";
+    static final String FIELDS = "=FIELDS";
+    static final List<String> SECTION_MARKERS = List.of(INTERFACES, CLASSES, ANNOTATIONS, METHODS, CONSTRUCTORS, FIELDS);
 
-    private static final String MULTI_VALUE_FIELD_SEPARATOR = "±";
+    static final String MULTI_VALUE_FIELD_SEPARATOR = "±";
 
 
     private final String annotationName;
@@ -150,11 +149,14 @@ public class AnnotationIndex {
 
     /**
      * Called internally to save the locations where the annotation {@link #getAnnotationName()} was found.
-     * The results are serialized to the PrintWriter (typically to a file).
+     * The results are serialized to the PrintWriter (typically to a file). The entries of each section are written
+     * in sorted order, so the same locations always give the same output.
      *
      * @param writer the PrintWriter
+     * @param strings the table of the class names and descriptors of the entries, or {@link StringTable#NONE} to
+     *                write them in the entries
      */
-    void save(PrintWriter writer) {
+    void save(PrintWriter writer, StringTable strings) {
         if (!annotatedInterfaces.isEmpty()
                 || !annotatedClasses.isEmpty()
                 || !annotatedAnnotations.isEmpty()
@@ -173,107 +175,27 @@ public class AnnotationIndex {
                 writeSimpleStringEntries(writer, ANNOTATIONS, annotatedAnnotations);
             }
             if (!annotatedMethods.isEmpty()) {
-                writeObjectEntries(writer, METHODS, annotatedMethods, m -> m.save(writer, MULTI_VALUE_FIELD_SEPARATOR));
+                writeObjectEntries(writer, METHODS, annotatedMethods, m -> m.save(writer, MULTI_VALUE_FIELD_SEPARATOR, strings));
             }
             if (!annotatedConstructors.isEmpty()) {
-                writeObjectEntries(writer, CONSTRUCTORS, annotatedConstructors, c -> c.save(writer, MULTI_VALUE_FIELD_SEPARATOR));
+                writeObjectEntries(writer, CONSTRUCTORS, annotatedConstructors, c -> c.save(writer, MULTI_VALUE_FIELD_SEPARATOR, strings));
             }
             if (!annotatedFields.isEmpty()) {
-                writeObjectEntries(writer, FIELDS, annotatedFields, f -> f.save(writer, MULTI_VALUE_FIELD_SEPARATOR));
+                writeObjectEntries(writer, FIELDS, annotatedFields, f -> f.save(writer, MULTI_VALUE_FIELD_SEPARATOR, strings));
             }
             writer.println(END_MARKER);
         }
     }
 
-    /**
-     * Loads a serialized index from a reader
-     * @param reader the reader containing the serialized index
-     * @return a map of AnnotationIndex entries, grouped by the
-     * @throws IOException
-     */
-    static Map<String, AnnotationIndex> loadAll(BufferedReader reader) throws IOException {
-        Map<String, AnnotationIndex> map = new HashMap<>();
-        String line = reader.readLine();
-        while (line != null) {
-            if (line.equals(START_MARKER)) {
-                AnnotationIndex index = load(reader);
-                map.put(index.getAnnotationName(), index);
-            }
-            line = reader.readLine();
-        }
-        return map;
-    }
-
-    private static AnnotationIndex load(BufferedReader reader) throws IOException {
-        Set<String> interfaces = new HashSet<>();
-        Set<String> classes = new HashSet<>();
-        Set<String> annotations = new HashSet<>();
-        Set<AnnotatedMethod> methods = new HashSet<>();
-        Set<AnnotatedConstructor> constructors = new HashSet<>();
-        Set<AnnotatedField> fields = new HashSet<>();
-        try {
-            String annotation = reader.readLine();
-            String line = reader.readLine();
-            while (line != null) {
-                switch (line) {
-                    case INTERFACES:
-                        interfaces = readSimpleStringLines(reader);
-                        break;
-                    case CLASSES:
-                        classes = readSimpleStringLines(reader);
-                        break;
-                    case ANNOTATIONS:
-                        annotations = readSimpleStringLines(reader);
-                        break;
-                    case METHODS:
-                        methods = readLines(reader, s -> AnnotatedMethod.parseReadLine(s, MULTI_VALUE_FIELD_SEPARATOR));
-                        break;
-                    case CONSTRUCTORS:
-                        constructors = readLines(reader, s -> AnnotatedConstructor.parseReadLine(s, MULTI_VALUE_FIELD_SEPARATOR));
-                        break;
-                    case FIELDS:
-                        fields = readLines(reader, s -> AnnotatedField.parseReadLine(s, MULTI_VALUE_FIELD_SEPARATOR));
-                        break;
-                    case END_MARKER:
-                        return new AnnotationIndex(annotation,
-                                interfaces,
-                                classes,
-                                annotations,
-                                methods,
-                                constructors,
-                                fields);
-
-                }
-                line = reader.readLine();
-            }
-        } catch (NullPointerException e) {
-            throw new RuntimeException("Premature end of file");
-        }
-        throw new RuntimeException("Premature end of file");
-    }
-
-    private static Set<String> readSimpleStringLines(BufferedReader reader) throws IOException {
-        Set<String> results = readLines(reader, s -> s);
-        return results;
-    }
-
-    private static <R> Set<R> readLines(BufferedReader reader, Function<String, R> parser) throws IOException {
-        Set<R> results = new HashSet<>();
-        String line = reader.readLine();
-        while (!line.isEmpty()) {
-            results.add(parser.apply(line));
-            line = reader.readLine();
-        }
-        return results;
-    }
-
     private void writeSimpleStringEntries(PrintWriter writer, String marker, Set<String> set) {
         writeObjectEntries(writer, marker, set, s -> writer.println(s));
     }
 
-    private <T> void writeObjectEntries(PrintWriter writer, String marker, Set<T> set, Consumer<T> consumer) {
+    private <T extends Comparable<? super T>> void writeObjectEntries(PrintWriter writer, String marker, Set<T> set, Consumer<T> consumer) {
         writer.println(marker);
-        for (T value : set) {
+        List<T> sorted = new ArrayList<>(set);
+        Collections.sort(sorted);
+        for (T value : sorted) {
             consumer.accept(value);
         }
         writer.println();
@@ -0,0 +1,326 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * <p>An opened {@link ArchiveSource}. The entries are described by {@link ZipEntry} instances whatever the kind of
+ * archive, with the names they would have in a jar, e.g. {@code org/acme/MyClass.class}, so that the selection of
+ * the entries of multi-release jars, and the checks of the shipped Jandex index, work the same for all of them.</p>
+ *
+ * <p>Jars on the file system and directories allow the entries to be read in any order, and from several threads at
+ * once. Jars which are only available as a stream, i.e. nested jars and jars held in memory, are read from start to
+ * end once to list the entries, and once more to read the selected entries. Reading a single entry of those means
+ * reading the stream up to it, so {@link #getInputStream(ZipEntry)} should only be used for a few entries.</p>
+ */
+abstract class Archive implements Closeable {
+    /**
+     * Gets the file entries of the archive, in the order of the archive
+     * @return the entries
+     */
+    abstract List<ZipEntry> getEntries();
+
+    /**
+     * Gets an entry by name
+     * @param name the name of the entry, e.g. {@code META-INF/MANIFEST.MF}
+     * @return the entry, or {@code null} if there is none
+     */
+    abstract ZipEntry getEntry(String name);
+
+    /**
+     * Opens an entry
+     * @param entry the entry
+     * @return a stream to read the entry from, to be closed by the caller
+     * @throws IOException if there were problems reading the archive
+     */
+    abstract InputStream getInputStream(ZipEntry entry) throws IOException;
+
+    /**
+     * Checks whether entries can be read in any order and from several threads, so that the entries can be split
+     * between several tasks
+     * @return {@code true} if the entries can be read in any order
+     */
+    boolean isRandomAccess() {
+        return true;
+    }
+
+    /**
+     * Reads some of the entries
+     * @param entries the entries to read
+     * @param reader the reader to pass each of them to. The entries may be passed in another order than given.
+     * @throws IOException if there were problems reading the archive
+     */
+    void readEntries(List<ZipEntry> entries, EntryReader reader) throws IOException {
+        for (ZipEntry entry : entries) {
+            try (InputStream in = getInputStream(entry)) {
+                reader.read(entry, in);
+            }
+        }
+    }
+
+    interface EntryReader {
+        /**
+         * Called with an entry
+         * @param entry the entry
+         * @param in the stream to read the entry from, which should not be closed
+         * @throws IOException if there were problems reading the entry
+         */
+        void read(ZipEntry entry, InputStream in) throws IOException;
+    }
+
+    interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * A jar on the file system
+     */
+    static final class ZipFileArchive extends Archive {
+        private final ZipFile zipFile;
+        private final boolean owned;
+        private final List<ZipEntry> entries = new ArrayList<>();
+
+        /**
+         * Constructor
+         * @param zipFile the opened jar
+         * @param owned whether closing this archive closes the jar
+         */
+        ZipFileArchive(ZipFile zipFile, boolean owned) {
+            this.zipFile = zipFile;
+            this.owned = owned;
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (!entry.isDirectory()) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        @Override
+        List<ZipEntry> getEntries() {
+            return entries;
+        }
+
+        @Override
+        ZipEntry getEntry(String name) {
+            return zipFile.getEntry(name);
+        }
+
+        @Override
+        InputStream getInputStream(ZipEntry entry) throws IOException {
+            return zipFile.getInputStream(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owned) {
+                zipFile.close();
+            }
+        }
+    }
+
+    /**
+     * A directory laid out like a jar, e.g. an exploded module. The directory tree is walked in parallel, on the
+     * fork-join pool of the calling thread, or the common pool.
+     */
+    static final class DirectoryArchive extends Archive {
+        private final Path root;
+        private final List<ZipEntry> entries;
+        private final Map<String, ZipEntry> entriesByName = new HashMap<>();
+
+        DirectoryArchive(Path root) throws IOException {
+            if (!Files.isDirectory(root)) {
+                throw new IOException(root + " is not a directory");
+            }
+            this.root = root;
+            try {
+                this.entries = new ListDirectoryTask(root, "").invoke();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // Give the entries a stable order, whatever order the file system lists them in
+            entries.sort(Comparator.comparing(ZipEntry::getName));
+            for (ZipEntry entry : entries) {
+                entriesByName.put(entry.getName(), entry);
+            }
+        }
+
+        @Override
+        List<ZipEntry> getEntries() {
+            return entries;
+        }
+
+        @Override
+        ZipEntry getEntry(String name) {
+            return entriesByName.get(name);
+        }
+
+        @Override
+        InputStream getInputStream(ZipEntry entry) throws IOException {
+            return Files.newInputStream(root.resolve(entry.getName()));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class ListDirectoryTask extends RecursiveTask<List<ZipEntry>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        // The name of the directory within the archive, e.g. org/acme/
+        private final String prefix;
+
+        ListDirectoryTask(Path directory, String prefix) {
+            this.directory = directory;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<ZipEntry> compute() {
+            List<ZipEntry> entries = new ArrayList<>();
+            List<ListDirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    String name = prefix + path.getFileName().toString();
+                    if (attributes.isDirectory()) {
+                        ListDirectoryTask task = new ListDirectoryTask(path, name + "/");
+                        task.fork();
+                        subdirectories.add(task);
+                    } else {
+                        ZipEntry entry = new ZipEntry(name);
+                        entry.setTime(attributes.lastModifiedTime().toMillis());
+                        entry.setSize(attributes.size());
+                        entries.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (ListDirectoryTask task : subdirectories) {
+                entries.addAll(task.join());
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * A jar which can only be read as a stream, e.g. a jar nested in another jar, or held in memory. Opening it reads
+     * through the stream to list the entries, keeping the contents of the manifest and the shipped Jandex index,
+     * which are looked at before the classes are read.
+     */
+    static final class StreamedArchive extends Archive {
+        private final StreamOpener opener;
+        private final Closeable onClose;
+        private final List<ZipEntry> entries = new ArrayList<>();
+        private final Map<String, ZipEntry> entriesByName = new HashMap<>();
+        private final Map<String, byte[]> keptContents = new HashMap<>();
+
+        /**
+         * Constructor
+         * @param opener opens a new stream of the bytes of the jar each time it is called
+         * @param onClose called when closing the archive. May be {@code null}
+         * @throws IOException if there were problems reading the jar
+         */
+        StreamedArchive(StreamOpener opener, Closeable onClose) throws IOException {
+            this.opener = opener;
+            this.onClose = onClose;
+            try (ZipInputStream in = new ZipInputStream(opener.open())) {
+                for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                    if (entry.isDirectory() || entriesByName.containsKey(entry.getName())) {
+                        continue;
+                    }
+                    entries.add(entry);
+                    entriesByName.put(entry.getName(), entry);
+                    if (entry.getName().equals(MultiReleaseJarEntries.MANIFEST) || entry.getName().equals(JarAnnotationIndexer.PREBUILT_INDEX)) {
+                        keptContents.put(entry.getName(), in.readAllBytes());
+                    }
+                }
+            }
+        }
+
+        @Override
+        List<ZipEntry> getEntries() {
+            return entries;
+        }
+
+        @Override
+        ZipEntry getEntry(String name) {
+            return entriesByName.get(name);
+        }
+
+        @Override
+        boolean isRandomAccess() {
+            return false;
+        }
+
+        @Override
+        InputStream getInputStream(ZipEntry entry) throws IOException {
+            byte[] kept = keptContents.get(entry.getName());
+            if (kept != null) {
+                return new ByteArrayInputStream(kept);
+            }
+            ZipInputStream in = new ZipInputStream(opener.open());
+            try {
+                for (ZipEntry current = in.getNextEntry(); current != null; current = in.getNextEntry()) {
+                    if (current.getName().equals(entry.getName())) {
+                        return in;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+            in.close();
+            throw new IOException("No entry called " + entry.getName());
+        }
+
+        @Override
+        void readEntries(List<ZipEntry> entries, EntryReader reader) throws IOException {
+            Map<String, ZipEntry> wanted = new HashMap<>();
+            for (ZipEntry entry : entries) {
+                wanted.put(entry.getName(), entry);
+            }
+            try (ZipInputStream in = new ZipInputStream(opener.open())) {
+                InputStream entryStream = new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                        // The reader does not get to close the whole stream
+                    }
+                };
+                for (ZipEntry current = in.getNextEntry(); current != null && !wanted.isEmpty(); current = in.getNextEntry()) {
+                    ZipEntry entry = wanted.remove(current.getName());
+                    if (entry != null) {
+                        reader.read(entry, entryStream);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>Where the classes indexed by a {@link JarAnnotationIndexer} come from. Besides jars on the file system, the
+ * classes can be indexed from directories laid out like jars, e.g. exploded modules, from jars nested in other jars,
+ * e.g. the libraries in {@code BOOT-INF/lib/} of a Spring Boot jar or {@code WEB-INF/lib/} of a war, and from jars
+ * held in memory. Nested jars are streamed from the outer jar, so there is no need to extract them to temporary
+ * files.</p>
+ *
+ * <p>The same {@link JarAnnotationIndex} is created for a jar, whatever source it comes from. The sources can be
+ * passed to {@link OverallIndex#scanArchives(java.util.Collection, java.util.Set, java.util.Set)} to index several of
+ * them in parallel.</p>
+ */
+public abstract class ArchiveSource {
+    private static final String[] NESTED_JAR_DIRECTORIES = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+    private static final String JAR_SUFFIX = ".jar";
+
+    private final String name;
+
+    private ArchiveSource(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the source, e.g. the path of the jar
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Opens the source to read its entries
+     * @return the opened archive, to be closed by the caller
+     * @throws IOException if the source could not be opened
+     */
+    abstract Archive open() throws IOException;
+
+    /**
+     * Creates a source for a jar on the file system
+     * @param jar the jar
+     * @return the source
+     */
+    public static ArchiveSource of(File jar) {
+        if (jar == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return new ArchiveSource(jar.getPath()) {
+            @Override
+            Archive open() throws IOException {
+                return new Archive.ZipFileArchive(new ZipFile(jar), true);
+            }
+        };
+    }
+
+    /**
+     * Creates a source for a directory laid out like a jar, e.g. {@code target/classes} or an exploded module
+     * @param directory the directory
+     * @return the source
+     */
+    public static ArchiveSource ofDirectory(Path directory) {
+        if (directory == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return new ArchiveSource(directory.toString()) {
+            @Override
+            Archive open() throws IOException {
+                return new Archive.DirectoryArchive(directory);
+            }
+        };
+    }
+
+    /**
+     * Creates a source for a jar nested in another jar. The nested jar is streamed from the outer jar.
+     * @param outerJar the jar containing the nested jar
+     * @param entryName the name of the entry of the nested jar, e.g. {@code BOOT-INF/lib/acme.jar}
+     * @return the source
+     */
+    public static ArchiveSource ofNestedJar(File outerJar, String entryName) {
+        if (outerJar == null || entryName == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return new ArchiveSource(outerJar.getPath() + "!/" + entryName) {
+            @Override
+            Archive open() throws IOException {
+                ZipFile zipFile = new ZipFile(outerJar);
+                try {
+                    ZipEntry entry = zipFile.getEntry(entryName);
+                    if (entry == null) {
+                        throw new IOException("No entry called " + entryName + " in " + outerJar);
+                    }
+                    return new Archive.StreamedArchive(() -> zipFile.getInputStream(entry), zipFile);
+                } catch (IOException | RuntimeException e) {
+                    zipFile.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a source for a jar held in memory
+     * @param name the name to identify the jar by
+     * @param jarBytes the bytes of the jar. They are not copied, so must not be changed while the source is in use
+     * @return the source
+     */
+    public static ArchiveSource ofBytes(String name, byte[] jarBytes) {
+        if (name == null || jarBytes == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return new ArchiveSource(name) {
+            @Override
+            Archive open() throws IOException {
+                return new Archive.StreamedArchive(() -> new ByteArrayInputStream(jarBytes), null);
+            }
+        };
+    }
+
+    /**
+     * Creates sources for the jars nested in the library directories of a jar, i.e. {@code BOOT-INF/lib/} of a
+     * Spring Boot jar or {@code WEB-INF/lib/} of a war. The classes of the outer jar itself are not included, use
+     * {@link #of(File)} for those.
+     * @param outerJar the jar containing the nested jars
+     * @return the sources for the nested jars, in the order of the outer jar
+     * @throws IOException if the outer jar could not be read
+     */
+    public static List<ArchiveSource> nestedJarsOf(File outerJar) throws IOException {
+        if (outerJar == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        List<ArchiveSource> sources = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(outerJar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(JAR_SUFFIX) && isInNestedJarDirectory(entry.getName())) {
+                    sources.add(ofNestedJar(outerJar, entry.getName()));
+                }
+            }
+        }
+        return sources;
+    }
+
+    private static boolean isInNestedJarDirectory(String entryName) {
+        for (String directory : NESTED_JAR_DIRECTORIES) {
+            // Only the jars directly in the directory are on the class path
+            if (entryName.startsWith(directory) && entryName.indexOf('/', directory.length()) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,332 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Include and exclude rules for class names, given as globs, e.g. {@code org.acme.vendored.**}. A class name is
+ * accepted if it matches any of the include rules (or there are none), and none of the exclude rules.
+ *
+ * <p>In the globs, {@code **} matches any sequence of characters, {@code *} matches any sequence of characters
+ * within a package segment or the simple class name, and {@code ?} matches a single character other than a package
+ * separator. Both {@code .} and {@code /} are treated as the package separator, in the globs as well as in the
+ * class names matched, so the same rules work for class names in dot format, for the names in the bytecode and for
+ * jar entry names. So {@code org.acme.*} matches {@code org.acme.MyClass} and {@code org/acme/MyClass$Inner}, while
+ * {@code org.acme.**} also matches {@code org.acme.impl.MyClass}.</p>
+ *
+ * <p>All the rules are compiled into a single deterministic automaton working on the bytes of the name, so matching
+ * a name is one table lookup per byte no matter how many rules there are, and the names in the constant pool of a
+ * class or in a {@link RuntimeIndex} can be matched without creating strings.</p>
+ */
+public final class ClassNameFilter {
+    /**
+     * A filter which accepts all class names
+     */
+    public static final ClassNameFilter ALL = builder().build();
+
+    // Byte classes. Each byte used literally in the rules gets its own class after these
+    private static final int OTHER_BYTES = 0;
+    private static final int SEPARATOR_BYTES = 1;
+
+    // Elements of the compiled rules, other than literal bytes which are stored as their byte class
+    private static final int ANY_CHARACTER = -1;
+    private static final int STAR = -2;
+    private static final int DOUBLE_STAR = -3;
+    private static final int SEPARATOR = -4;
+
+    private final List<String> includes;
+    private final List<String> excludes;
+
+    // The byte class of each byte value
+    private final int[] byteClasses = new int[256];
+    // The next state for each state and byte class
+    private final int[][] transitions;
+    // Whether each state is reached by a name matching an include or exclude rule
+    private final boolean[] includeAccepting;
+    private final boolean[] excludeAccepting;
+    private final int deadState;
+    private final long fingerprint;
+
+    private ClassNameFilter(Builder builder) {
+        this.includes = new ArrayList<>(builder.includes);
+        this.excludes = new ArrayList<>(builder.excludes);
+
+        // Assign the byte classes, and compile the rules into sequences of elements
+        int classCount = 2;
+        byteClasses['.'] = SEPARATOR_BYTES;
+        byteClasses['/'] = SEPARATOR_BYTES;
+        List<int[]> rules = new ArrayList<>();
+        for (String glob : includes) {
+            rules.add(compile(glob));
+        }
+        for (String glob : excludes) {
+            rules.add(compile(glob));
+        }
+        for (int[] rule : rules) {
+            for (int i = 0; i < rule.length; i++) {
+                if (rule[i] >= 0 && byteClasses[rule[i]] == OTHER_BYTES) {
+                    byteClasses[rule[i]] = classCount++;
+                }
+            }
+        }
+        for (int[] rule : rules) {
+            for (int i = 0; i < rule.length; i++) {
+                if (rule[i] >= 0) {
+                    rule[i] = byteClasses[rule[i]];
+                }
+            }
+        }
+
+        // Number the positions in the rules. The position after the last element of a rule is its accepting position
+        int[] ruleStarts = new int[rules.size() + 1];
+        for (int i = 0; i < rules.size(); i++) {
+            ruleStarts[i + 1] = ruleStarts[i] + rules.get(i).length + 1;
+        }
+
+        // Subset construction of the deterministic automaton from the positions in the rules
+        Map<BitSet, Integer> states = new HashMap<>();
+        List<BitSet> pending = new ArrayList<>();
+        List<int[]> transitions = new ArrayList<>();
+        BitSet start = new BitSet();
+        for (int i = 0; i < rules.size(); i++) {
+            addPosition(start, rules, ruleStarts, i, 0);
+        }
+        states.put(start, 0);
+        pending.add(start);
+        for (int state = 0; state < pending.size(); state++) {
+            BitSet positions = pending.get(state);
+            int[] next = new int[classCount];
+            for (int byteClass = 0; byteClass < classCount; byteClass++) {
+                BitSet target = new BitSet();
+                for (int rule = 0; rule < rules.size(); rule++) {
+                    int[] elements = rules.get(rule);
+                    for (int pos = 0; pos < elements.length; pos++) {
+                        if (positions.get(ruleStarts[rule] + pos)) {
+                            int element = elements[pos];
+                            if (element == DOUBLE_STAR || (element == STAR && byteClass != SEPARATOR_BYTES)) {
+                                addPosition(target, rules, ruleStarts, rule, pos);
+                            } else if (element == byteClass ||
+                                    (element == SEPARATOR && byteClass == SEPARATOR_BYTES) ||
+                                    (element == ANY_CHARACTER && byteClass != SEPARATOR_BYTES)) {
+                                addPosition(target, rules, ruleStarts, rule, pos + 1);
+                            }
+                        }
+                    }
+                }
+                Integer targetState = states.get(target);
+                if (targetState == null) {
+                    targetState = pending.size();
+                    states.put(target, targetState);
+                    pending.add(target);
+                }
+                next[byteClass] = targetState;
+            }
+            transitions.add(next);
+        }
+
+        this.transitions = transitions.toArray(new int[0][]);
+        this.includeAccepting = new boolean[pending.size()];
+        this.excludeAccepting = new boolean[pending.size()];
+        int deadState = -1;
+        for (int state = 0; state < pending.size(); state++) {
+            BitSet positions = pending.get(state);
+            for (int rule = 0; rule < rules.size(); rule++) {
+                if (positions.get(ruleStarts[rule + 1] - 1)) {
+                    if (rule < includes.size()) {
+                        includeAccepting[state] = true;
+                    } else {
+                        excludeAccepting[state] = true;
+                    }
+                }
+            }
+            if (positions.isEmpty()) {
+                deadState = state;
+            }
+        }
+        this.deadState = deadState;
+
+        Fingerprint fingerprint = new Fingerprint();
+        for (String glob : includes) {
+            fingerprint.update((byte) '+').update(glob).update((byte) 0);
+        }
+        for (String glob : excludes) {
+            fingerprint.update((byte) '-').update(glob).update((byte) 0);
+        }
+        this.fingerprint = fingerprint.getValue();
+    }
+
+    private static int[] compile(String glob) {
+        byte[] bytes = glob.getBytes(StandardCharsets.UTF_8);
+        int[] elements = new int[bytes.length];
+        int length = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            if (b == '*') {
+                if (i + 1 < bytes.length && bytes[i + 1] == '*') {
+                    elements[length++] = DOUBLE_STAR;
+                    // Treat any further stars as part of the same wildcard
+                    while (i + 1 < bytes.length && bytes[i + 1] == '*') {
+                        i++;
+                    }
+                } else {
+                    elements[length++] = STAR;
+                }
+            } else if (b == '?') {
+                elements[length++] = ANY_CHARACTER;
+            } else if (b == '.' || b == '/') {
+                elements[length++] = SEPARATOR;
+            } else {
+                elements[length++] = b;
+            }
+        }
+        int[] rule = new int[length];
+        System.arraycopy(elements, 0, rule, 0, length);
+        return rule;
+    }
+
+    private static void addPosition(BitSet positions, List<int[]> rules, int[] ruleStarts, int rule, int pos) {
+        int[] elements = rules.get(rule);
+        positions.set(ruleStarts[rule] + pos);
+        // The wildcards may match nothing, so the position after them is reached too
+        while (pos < elements.length && (elements[pos] == STAR || elements[pos] == DOUBLE_STAR)) {
+            pos++;
+            positions.set(ruleStarts[rule] + pos);
+        }
+    }
+
+    /**
+     * Creates a builder for a class name filter
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Whether this filter accepts all class names, in which case there is no need to use it
+     * @return {@code true} if there are no rules
+     */
+    public boolean isAcceptingAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    /**
+     * Gets a fingerprint of the rules
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Checks a class name
+     * @param className the class name, e.g. {@code org.acme.MyClass} or {@code org/acme/MyClass}
+     * @return {@code true} if the class name is accepted
+     */
+    public boolean accepts(CharSequence className) {
+        int state = 0;
+        for (int i = 0; i < className.length() && state != deadState; i++) {
+            char c = className.charAt(i);
+            if (c < 0x80) {
+                state = transitions[state][byteClasses[c]];
+            } else {
+                byte[] bytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                for (byte b : bytes) {
+                    state = transitions[state][byteClasses[b & 0xff]];
+                }
+            }
+        }
+        return isAccepting(state);
+    }
+
+    /**
+     * Checks the class name in a key from the constant pool of a class or from a {@link RuntimeIndex}
+     * @param key the key, containing the length prefix and the class name in JVM format, e.g. {@code org/acme/MyClass}
+     * @return {@code true} if the class name is accepted
+     */
+    public boolean accepts(ByteArrayKey key) {
+        return key.isAcceptedBy(this);
+    }
+
+    /**
+     * Checks a jar entry name
+     * @param entryName the jar entry name, e.g. {@code org/acme/MyClass.class}
+     * @return {@code true} if the name of the class is accepted
+     */
+    public boolean acceptsEntryName(String entryName) {
+        int end = entryName.endsWith(".class") ? entryName.length() - 6 : entryName.length();
+        return accepts(entryName.subSequence(0, end));
+    }
+
+    boolean accepts(byte[] bytes, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end && state != deadState; i++) {
+            state = transitions[state][byteClasses[bytes[i] & 0xff]];
+        }
+        return isAccepting(state);
+    }
+
+    private boolean isAccepting(int state) {
+        return (includes.isEmpty() || includeAccepting[state]) && !excludeAccepting[state];
+    }
+
+    @Override
+    public String toString() {
+        return "ClassNameFilter{includes=" + includes + ", excludes=" + excludes + '}';
+    }
+
+    /**
+     * Builder for {@link ClassNameFilter}
+     */
+    public static class Builder {
+        private final List<String> includes = new ArrayList<>();
+        private final List<String> excludes = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds an include rule. If there are any include rules, only the class names matching one of them are accepted
+         * @param glob the glob, e.g. {@code org.acme.**}
+         * @return this builder
+         */
+        public Builder include(String glob) {
+            includes.add(checkGlob(glob));
+            return this;
+        }
+
+        /**
+         * Adds an exclude rule. Class names matching one of these are not accepted, even if they match an include rule
+         * @param glob the glob, e.g. {@code org.acme.vendored.**}
+         * @return this builder
+         */
+        public Builder exclude(String glob) {
+            excludes.add(checkGlob(glob));
+            return this;
+        }
+
+        private static String checkGlob(String glob) {
+            if (glob == null) {
+                throw new NullPointerException("Null parameter");
+            }
+            if (glob.isEmpty()) {
+                throw new IllegalArgumentException("Empty glob");
+            }
+            return glob;
+        }
+
+        /**
+         * Compiles the rules into a class name filter
+         * @return the class name filter
+         */
+        public ClassNameFilter build() {
+            return new ClassNameFilter(this);
+        }
+    }
+}
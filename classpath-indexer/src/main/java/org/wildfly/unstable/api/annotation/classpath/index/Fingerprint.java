@@ -0,0 +1,77 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.util.Locale;
+
+/**
+ * A fast, non-cryptographic 64-bit hash (FNV-1a) used to fingerprint index contents and scanned archives.
+ * It is only meant to detect changes, not to protect against deliberate collisions.
+ */
+public final class Fingerprint {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+
+    /**
+     * Adds a byte to the fingerprint
+     * @param b the byte
+     * @return this fingerprint
+     */
+    public Fingerprint update(byte b) {
+        hash ^= (b & 0xff);
+        hash *= PRIME;
+        return this;
+    }
+
+    /**
+     * Adds a long to the fingerprint
+     * @param l the value
+     * @return this fingerprint
+     */
+    public Fingerprint update(long l) {
+        for (int i = 0; i < 8; i++) {
+            update((byte) (l >>> (i * 8)));
+        }
+        return this;
+    }
+
+    /**
+     * Adds the characters of a string to the fingerprint
+     * @param s the string
+     * @return this fingerprint
+     */
+    public Fingerprint update(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            update((byte) c);
+            update((byte) (c >>> 8));
+        }
+        return this;
+    }
+
+    /**
+     * Gets the current value of the fingerprint
+     * @return the value
+     */
+    public long getValue() {
+        return hash;
+    }
+
+    /**
+     * Calculates the fingerprint of a string in one go
+     * @param s the string
+     * @return the fingerprint value
+     */
+    public static long of(CharSequence s) {
+        return new Fingerprint().update(s).getValue();
+    }
+
+    /**
+     * Formats a fingerprint value as a fixed-width (16 character) hex string
+     * @param value the fingerprint value
+     * @return the hex string
+     */
+    public static String toHexString(long value) {
+        return String.format(Locale.ROOT, "%016x", value);
+    }
+}
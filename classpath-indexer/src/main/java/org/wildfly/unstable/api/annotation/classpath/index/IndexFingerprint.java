@@ -0,0 +1,38 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.OutputStream;
+
+/**
+ * Computes the fingerprint of a saved index from the bytes written to it, using the 64-bit FNV-1a hash. The bytes
+ * are hashed as they are written and then discarded, so the fingerprint of an index can be worked out before the
+ * index is written to its file, without holding the serialized index in memory.
+ */
+final class IndexFingerprint extends OutputStream {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+
+    @Override
+    public void write(int b) {
+        hash = (hash ^ (b & 0xff)) * PRIME;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        long h = hash;
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (b[i] & 0xff)) * PRIME;
+        }
+        hash = h;
+    }
+
+    /**
+     * Gets the fingerprint of the bytes written so far
+     * @return the fingerprint as 16 lower case hexadecimal digits
+     */
+    String getFingerprint() {
+        String hex = Long.toHexString(hash);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+}
@@ -0,0 +1,475 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.END_MARKER;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.FIELDS;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.METHODS;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.MULTI_VALUE_FIELD_SEPARATOR;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.SECTION_MARKERS;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.START_MARKER;
+import static org.wildfly.unstable.api.annotation.classpath.index.OverallIndex.FINGERPRINT;
+import static org.wildfly.unstable.api.annotation.classpath.index.OverallIndex.HIERARCHY;
+import static org.wildfly.unstable.api.annotation.classpath.index.OverallIndex.OVERRIDES;
+
+/**
+ * <p>Merges several saved indexes into one, e.g. the indexes of the feature packs making up a server, so that only
+ * the merged index needs loading at runtime. The result is the same as loading all the indexes with
+ * {@link OverallIndex#load(List)} and saving that, but the indexes are not loaded.</p>
+ *
+ * <p>Since saved indexes are sorted, they are merged a line at a time, like the merge step of a merge sort. Each index
+ * is streamed section by section in step with the others, and duplicate entries are dropped as they are written, so
+ * only the current line of each index is held in memory, however large the indexes are. The inputs are read twice,
+ * first to work out the fingerprint of the merged index, then to write it.</p>
+ *
+ * <p>Indexes saved by older versions, which have no fingerprint, were not necessarily sorted. If any of the indexes
+ * is one of those, they are all loaded and merged in memory instead.</p>
+ *
+ * <p>Indexes in either version of the format can be merged, and the merged index can be saved in either of them. The
+ * entries of version 2 indexes are translated as they are read, so the string tables of the inputs are held in memory.
+ * To save the merged index in version 2, the inputs are read once more first, to collect the strings of its
+ * table.</p>
+ */
+public final class IndexMerger {
+    private static final char SEPARATOR = MULTI_VALUE_FIELD_SEPARATOR.charAt(0);
+
+    /**
+     * Orders the lines of a section the way they are sorted when saved. The fields of the entries are compared in
+     * turn, which is the same as comparing the lines with the separator sorting before any other character.
+     */
+    static final Comparator<String> LINE_ORDER = (a, b) -> {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                if (ca == SEPARATOR) {
+                    return -1;
+                } else if (cb == SEPARATOR) {
+                    return 1;
+                }
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    };
+
+    private final List<URL> indexes;
+    private StringTable strings = StringTable.NONE;
+
+    private IndexMerger(List<URL> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Merges saved indexes into one and saves it in the version 1 format
+     * @param indexes the locations of the saved indexes
+     * @param target location of the file to save the merged index to. The suffix determines the
+     *               {@link OverallIndex.Format}, and it must not be one of the indexes being merged
+     * @throws IOException if there were problems reading the indexes or writing the merged index
+     * @throws IllegalArgumentException if there are no indexes, or an index is not sorted although it has a fingerprint
+     */
+    public static void merge(List<URL> indexes, Path target) throws IOException {
+        merge(indexes, target, 1);
+    }
+
+    /**
+     * Merges saved indexes into one and saves it
+     * @param indexes the locations of the saved indexes
+     * @param target location of the file to save the merged index to. The suffix determines the
+     *               {@link OverallIndex.Format}, and it must not be one of the indexes being merged
+     * @param formatVersion the version of the format to save the merged index in, see
+     *                      {@link OverallIndex#save(Path, int)}
+     * @throws IOException if there were problems reading the indexes or writing the merged index
+     * @throws IllegalArgumentException if there are no indexes, the format version is unknown, or an index is not
+     *                                  sorted although it has a fingerprint
+     */
+    public static void merge(List<URL> indexes, Path target, int formatVersion) throws IOException {
+        if (indexes == null || target == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (indexes.isEmpty()) {
+            throw new IllegalArgumentException("No indexes to merge");
+        }
+        if (formatVersion != 1 && formatVersion != 2) {
+            throw new IllegalArgumentException("Unknown format version " + formatVersion);
+        }
+        String targetUrl = target.toAbsolutePath().normalize().toUri().toURL().toExternalForm();
+        for (URL url : indexes) {
+            if (url == null) {
+                throw new NullPointerException("Null parameter");
+            }
+            if (url.toExternalForm().equals(targetUrl)) {
+                throw new IllegalArgumentException(target + " is one of the indexes being merged");
+            }
+        }
+        IndexMerger merger = new IndexMerger(indexes);
+        if (merger.allSorted()) {
+            if (formatVersion == 2) {
+                merger.strings = merger.collectStrings();
+            }
+            OverallIndex.save(target, merger::writeMerged);
+        } else {
+            OverallIndex.load(indexes).save(target, formatVersion);
+        }
+    }
+
+    private boolean allSorted() throws IOException {
+        for (URL url : indexes) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(OverallIndex.openIndex(url), OverallIndex.CHARSET))) {
+                String line = reader.readLine();
+                if (line == null || !line.startsWith(FINGERPRINT)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the class names and descriptors of the entries of all the indexes, for the string table of the merged
+     * index
+     */
+    private StringTable collectStrings() throws IOException {
+        TreeSet<String> strings = new TreeSet<>();
+        for (URL url : indexes) {
+            try (SortedIndexReader reader = new SortedIndexReader(url)) {
+                if (reader.strings != null) {
+                    strings.addAll(reader.strings.values());
+                    continue;
+                }
+                while (reader.annotation != null) {
+                    while (reader.section != null) {
+                        if (SECTION_MARKERS.indexOf(reader.section) >= SECTION_MARKERS.indexOf(METHODS)) {
+                            String[] fields = reader.line.split(MULTI_VALUE_FIELD_SEPARATOR);
+                            strings.add(fields[0]);
+                            if (!reader.section.equals(FIELDS)) {
+                                strings.add(fields[fields.length - 1]);
+                            }
+                        }
+                        if (!reader.nextLine()) {
+                            reader.nextSection();
+                        }
+                    }
+                    reader.nextAnnotation();
+                }
+            }
+        }
+        return new StringTable(strings);
+    }
+
+    private void writeMerged(PrintWriter writer) throws IOException {
+        List<SortedIndexReader> readers = new ArrayList<>(indexes.size());
+        try {
+            for (URL url : indexes) {
+                readers.add(new SortedIndexReader(url));
+            }
+            if (strings != StringTable.NONE) {
+                writer.println(OverallIndex.VERSION + 2);
+                strings.save(writer);
+            }
+            writeAnnotations(writer, readers);
+            writeClassLists(writer, HIERARCHY, readers);
+            writeClassLists(writer, OVERRIDES, readers);
+        } finally {
+            for (SortedIndexReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private void writeAnnotations(PrintWriter writer, List<SortedIndexReader> readers) throws IOException {
+        List<SortedIndexReader> current = new ArrayList<>(readers.size());
+        while (true) {
+            String annotation = null;
+            for (SortedIndexReader reader : readers) {
+                if (reader.annotation != null && (annotation == null || reader.annotation.compareTo(annotation) < 0)) {
+                    annotation = reader.annotation;
+                }
+            }
+            if (annotation == null) {
+                return;
+            }
+            current.clear();
+            for (SortedIndexReader reader : readers) {
+                if (annotation.equals(reader.annotation)) {
+                    current.add(reader);
+                }
+            }
+
+            writer.println(START_MARKER);
+            writer.println(annotation);
+            for (String marker : SECTION_MARKERS) {
+                writeSection(writer, marker, current);
+            }
+            writer.println(END_MARKER);
+
+            for (SortedIndexReader reader : current) {
+                reader.nextAnnotation();
+            }
+        }
+    }
+
+    private void writeSection(PrintWriter writer, String marker, List<SortedIndexReader> readers) throws IOException {
+        PriorityQueue<SortedIndexReader> queue = new PriorityQueue<>(readers.size(), (a, b) -> LINE_ORDER.compare(a.line, b.line));
+        for (SortedIndexReader reader : readers) {
+            if (marker.equals(reader.section)) {
+                queue.add(reader);
+            }
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        writer.println(marker);
+        String last = null;
+        while (!queue.isEmpty()) {
+            SortedIndexReader reader = queue.poll();
+            if (!reader.line.equals(last)) {
+                writer.println(strings.encode(marker, reader.line));
+                last = reader.line;
+            }
+            if (reader.nextLine()) {
+                queue.add(reader);
+            } else {
+                reader.nextSection();
+            }
+        }
+        writer.println();
+    }
+
+    /**
+     * Writes the hierarchy, or the members overriding annotated ones, merging the lists of each class
+     */
+    private void writeClassLists(PrintWriter writer, String marker, List<SortedIndexReader> readers) throws IOException {
+        PriorityQueue<SortedIndexReader> queue = new PriorityQueue<>(readers.size(), (a, b) -> a.className.compareTo(b.className));
+        for (SortedIndexReader reader : readers) {
+            if (reader.startClassSection(marker)) {
+                queue.add(reader);
+            }
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        writer.println(marker);
+        while (!queue.isEmpty()) {
+            SortedIndexReader reader = queue.poll();
+            String className = reader.className;
+            TreeSet<String> names = new TreeSet<>();
+            while (true) {
+                reader.addNames(names);
+                if (reader.nextLine()) {
+                    queue.add(reader);
+                }
+                if (queue.isEmpty() || !queue.peek().className.equals(className)) {
+                    break;
+                }
+                reader = queue.poll();
+            }
+            writer.print(className);
+            for (String name : names) {
+                writer.print(MULTI_VALUE_FIELD_SEPARATOR);
+                writer.print(name);
+            }
+            writer.println();
+        }
+        writer.println();
+    }
+
+    /**
+     * Reads a sorted saved index a line at a time, keeping track of the annotation and section the current line is in
+     */
+    private static class SortedIndexReader implements Closeable {
+        private final URL url;
+        private final BufferedReader reader;
+        /**
+         * The strings of the string table of a version 2 index by their ids, or {@code null} for version 1
+         */
+        private Map<String, String> strings;
+        /**
+         * The current annotation, or {@code null} once all the annotations have been read
+         */
+        private String annotation;
+        /**
+         * The marker of the current section of the current annotation, or {@code null} once its end marker is read
+         */
+        private String section;
+        /**
+         * The current line of the current section, as saved in a version 1 index
+         */
+        private String line;
+        /**
+         * The marker of the current section following the annotations, {@link OverallIndex#HIERARCHY} or
+         * {@link OverallIndex#OVERRIDES}, or {@code null} if the annotations are still being read or there are no more
+         * sections
+         */
+        private String classSection;
+        /**
+         * The class name of the current line of the section following the annotations
+         */
+        private String className;
+
+        SortedIndexReader(URL url) throws IOException {
+            this.url = url;
+            this.reader = new BufferedReader(new InputStreamReader(OverallIndex.openIndex(url), OverallIndex.CHARSET));
+            // Skip the fingerprint
+            reader.readLine();
+            String line = reader.readLine();
+            if (line != null && line.startsWith(OverallIndex.VERSION)) {
+                if (!line.equals(OverallIndex.VERSION + 2) || !StringTable.STRINGS.equals(readLine())) {
+                    throw new IllegalArgumentException("Unexpected line in " + url + ": " + line);
+                }
+                strings = new HashMap<>();
+                for (String s = readLine(); !s.isEmpty(); s = readLine()) {
+                    int index = s.indexOf(SEPARATOR);
+                    if (index < 1 || strings.put(s.substring(0, index), s.substring(index + 1)) != null) {
+                        throw new IllegalArgumentException("Unexpected line in " + url + ": " + s);
+                    }
+                }
+                line = reader.readLine();
+            }
+            readAnnotation(null, line);
+        }
+
+        void nextAnnotation() throws IOException {
+            if (section != null) {
+                // The sections were not in the order they are merged in
+                throw notSorted();
+            }
+            readAnnotation(annotation, reader.readLine());
+        }
+
+        private void readAnnotation(String previous, String line) throws IOException {
+            if (line == null || line.equals(HIERARCHY) || line.equals(OVERRIDES)) {
+                readClassSection(line);
+                annotation = null;
+                return;
+            }
+            if (!line.equals(START_MARKER)) {
+                throw new IllegalArgumentException("Unexpected line in " + url + ": " + line);
+            }
+            annotation = readLine();
+            if (previous != null && previous.compareTo(annotation) >= 0) {
+                throw notSorted();
+            }
+            readSection(null);
+        }
+
+        void nextSection() throws IOException {
+            readSection(section);
+        }
+
+        private void readSection(String previous) throws IOException {
+            String line = readLine();
+            if (line.equals(END_MARKER)) {
+                section = null;
+                return;
+            }
+            if (!SECTION_MARKERS.contains(line)) {
+                throw new IllegalArgumentException("Unexpected line in " + url + ": " + line);
+            }
+            if (previous != null && SECTION_MARKERS.indexOf(previous) >= SECTION_MARKERS.indexOf(line)) {
+                throw notSorted();
+            }
+            section = line;
+            this.line = null;
+            if (!nextLine()) {
+                throw new IllegalArgumentException("Empty section " + line + " in " + url);
+            }
+        }
+
+        private void readClassSection(String line) {
+            if (line != null && !line.equals(HIERARCHY) && !line.equals(OVERRIDES)) {
+                throw new IllegalArgumentException("Unexpected line in " + url + ": " + line);
+            }
+            if (OVERRIDES.equals(classSection) && HIERARCHY.equals(line)) {
+                throw notSorted();
+            }
+            classSection = line;
+            className = null;
+        }
+
+        /**
+         * Moves to the next line of the current section
+         * @return {@code false} if there are no more lines
+         */
+        boolean nextLine() throws IOException {
+            String next = classSection != null ? reader.readLine() : readLine();
+            if (next == null || next.isEmpty()) {
+                if (classSection != null) {
+                    readClassSection(next == null ? null : reader.readLine());
+                }
+                return false;
+            }
+            if (classSection != null) {
+                int index = next.indexOf(SEPARATOR);
+                String nextClassName = index < 0 ? next : next.substring(0, index);
+                if (className != null && className.compareTo(nextClassName) >= 0) {
+                    throw notSorted();
+                }
+                className = nextClassName;
+            } else {
+                if (strings != null) {
+                    next = StringTable.decode(strings, section, next);
+                }
+                if (line != null && LINE_ORDER.compare(line, next) >= 0) {
+                    throw notSorted();
+                }
+            }
+            line = next;
+            return true;
+        }
+
+        /**
+         * Moves to the first line of one of the sections following the annotations
+         * @return {@code false} if the index does not have the section
+         */
+        boolean startClassSection(String marker) throws IOException {
+            return marker.equals(classSection) && nextLine();
+        }
+
+        /**
+         * Adds the names following the class name of the current line
+         */
+        void addNames(TreeSet<String> names) {
+            int start = className.length();
+            while (start < line.length()) {
+                int end = line.indexOf(SEPARATOR, start + 1);
+                if (end < 0) {
+                    end = line.length();
+                }
+                names.add(line.substring(start + 1, end));
+                start = end;
+            }
+        }
+
+        private String readLine() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new RuntimeException("Premature end of file " + url);
+            }
+            return line;
+        }
+
+        private IllegalArgumentException notSorted() {
+            return new IllegalArgumentException(url + " is not sorted");
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>Parses the text of a saved {@link OverallIndex}. The whole text is decoded into one {@link CharBuffer}, and the
+ * lines are found by scanning for the line ends and the {@link AnnotationIndex#MULTI_VALUE_FIELD_SEPARATOR}, so the
+ * only strings created are the names kept in the index. The sets are presized from the number of lines of their
+ * section, and since the entries are saved sorted, the class name shared by consecutive entries is only created
+ * once.</p>
+ *
+ * <p>The structure of the text is worked out first, which only means looking at the first characters of each line.
+ * The sections of the annotations are then independent of each other, so for large indexes each of them is parsed by
+ * its own fork-join task, while the calling thread parses the supertypes and the members overriding annotated
+ * ones.</p>
+ *
+ * <p>Both versions of the format are parsed. In version 2 the class names and descriptors of the entries are ids in
+ * the {@link StringTable}, which is parsed before the sections, so all the entries share the strings of the table.
+ * The ids are hex numbers, so they are looked up without creating a string for them.</p>
+ */
+final class IndexTextParser {
+    /**
+     * The number of characters of text below which the sections are parsed by the calling thread
+     */
+    static final int PARALLEL_THRESHOLD = 64 * 1024;
+
+    private static final char SEPARATOR = AnnotationIndex.MULTI_VALUE_FIELD_SEPARATOR.charAt(0);
+
+    private final char[] text;
+    private final int start;
+    private final int end;
+
+    /**
+     * The values of the ids of the string table of a version 2 index which have {@link StringTable#ID_LENGTH} digits,
+     * in order, or {@code null} for version 1
+     */
+    private int[] ids;
+    /**
+     * The strings with the ids of {@link #ids}
+     */
+    private String[] strings;
+    /**
+     * The strings of the string table whose ids have all the digits of their fingerprint, by their ids
+     */
+    private Map<String, String> fullIdStrings;
+
+    IndexTextParser(CharBuffer chars) {
+        if (chars.hasArray()) {
+            this.text = chars.array();
+            this.start = chars.arrayOffset() + chars.position();
+            this.end = chars.arrayOffset() + chars.limit();
+        } else {
+            this.text = new char[chars.remaining()];
+            chars.duplicate().get(text);
+            this.start = 0;
+            this.end = text.length;
+        }
+    }
+
+    /**
+     * Reads and parses a saved index
+     * @param inputStream the stream of the text of the index, which is closed once read
+     * @return the index
+     * @throws IOException if there were problems reading the stream
+     */
+    static OverallIndex parse(InputStream inputStream) throws IOException {
+        byte[] bytes;
+        try (InputStream in = inputStream) {
+            bytes = in.readAllBytes();
+        }
+        return new IndexTextParser(OverallIndex.CHARSET.decode(ByteBuffer.wrap(bytes))).parse();
+    }
+
+    /**
+     * Parses the index
+     * @return the index
+     * @throws IllegalArgumentException if the index is in an unknown version of the format, or is malformed
+     */
+    OverallIndex parse() {
+        List<SectionTask> sections = new ArrayList<>();
+        List<Subsection> hierarchy = new ArrayList<>();
+        List<Subsection> overrides = new ArrayList<>();
+        boolean version2 = false;
+        int position = start;
+        while (position < end) {
+            int lineEnd = lineEnd(position);
+            if (lineStartsWith(position, lineEnd, OverallIndex.VERSION)) {
+                if (!lineEquals(position, lineEnd, OverallIndex.VERSION + 2)) {
+                    throw new IllegalArgumentException("Unknown index format version: "
+                            + new String(text, position, lineEnd - position));
+                }
+                version2 = true;
+                position = nextLine(lineEnd);
+            } else if (lineEquals(position, lineEnd, AnnotationIndex.START_MARKER)) {
+                SectionTask section = new SectionTask();
+                position = readSection(nextLine(lineEnd), section);
+                sections.add(section);
+            } else if (lineEquals(position, lineEnd, OverallIndex.HIERARCHY)) {
+                Subsection subsection = new Subsection(OverallIndex.HIERARCHY, nextLine(lineEnd));
+                position = readSubsection(subsection, false);
+                hierarchy.add(subsection);
+            } else if (lineEquals(position, lineEnd, OverallIndex.OVERRIDES)) {
+                Subsection subsection = new Subsection(OverallIndex.OVERRIDES, nextLine(lineEnd));
+                position = readSubsection(subsection, false);
+                overrides.add(subsection);
+            } else if (lineEquals(position, lineEnd, StringTable.STRINGS)) {
+                // Needed by the sections, so parsed before they are forked
+                Subsection subsection = new Subsection(StringTable.STRINGS, nextLine(lineEnd));
+                position = readSubsection(subsection, true);
+                parseStrings(subsection);
+            } else {
+                position = nextLine(lineEnd);
+            }
+        }
+
+        if (version2 != (ids != null)) {
+            throw new IllegalArgumentException(version2 ?
+                    "No string table in a version 2 index" : "String table in a version 1 index");
+        }
+
+        boolean parallel = sections.size() > 1 && end - start >= PARALLEL_THRESHOLD;
+        if (parallel) {
+            // Forked to the pool of the calling thread, or the common pool
+            for (SectionTask section : sections) {
+                section.fork();
+            }
+        }
+        Map<String, Set<String>> supertypes = new HashMap<>();
+        for (Subsection subsection : hierarchy) {
+            parseClassLists(subsection, supertypes);
+        }
+        Map<String, Set<String>> declaredMembers = new HashMap<>();
+        for (Subsection subsection : overrides) {
+            parseClassLists(subsection, declaredMembers);
+        }
+        Map<String, AnnotationIndex> indexes = new HashMap<>();
+        for (SectionTask section : sections) {
+            AnnotationIndex index = parallel ? section.join() : section.invoke();
+            // As when the sections are parsed in order, a later section for the same annotation replaces an earlier one
+            indexes.put(index.getAnnotationName(), index);
+        }
+        return new OverallIndex(indexes, supertypes, declaredMembers);
+    }
+
+    /**
+     * Works out the subsections of the section of an annotation
+     * @return the position after the end marker of the section
+     */
+    private int readSection(int position, SectionTask section) {
+        if (position >= end) {
+            throw prematureEnd();
+        }
+        int nameEnd = lineEnd(position);
+        section.annotation = new String(text, position, nameEnd - position);
+        position = nextLine(nameEnd);
+        while (position < end) {
+            int lineEnd = lineEnd(position);
+            String marker = getSubsectionMarker(position, lineEnd);
+            if (marker != null) {
+                Subsection subsection = new Subsection(marker, nextLine(lineEnd));
+                position = readSubsection(subsection, true);
+                section.subsections.add(subsection);
+            } else if (lineEquals(position, lineEnd, AnnotationIndex.END_MARKER)) {
+                return nextLine(lineEnd);
+            } else {
+                // Anything else in the section is ignored
+                position = nextLine(lineEnd);
+            }
+        }
+        throw prematureEnd();
+    }
+
+    /**
+     * Finds the lines of a subsection, which ends with an empty line
+     * @return the position after the empty line
+     */
+    private int readSubsection(Subsection subsection, boolean endRequired) {
+        int position = subsection.start;
+        while (position < end) {
+            int lineEnd = lineEnd(position);
+            if (lineEnd == position) {
+                subsection.end = position;
+                return nextLine(lineEnd);
+            }
+            subsection.lineCount++;
+            position = nextLine(lineEnd);
+        }
+        if (endRequired) {
+            throw prematureEnd();
+        }
+        subsection.end = end;
+        return end;
+    }
+
+    private String getSubsectionMarker(int position, int lineEnd) {
+        if (lineEnd - position < 2 || text[position] != '=') {
+            return null;
+        }
+        for (String marker : AnnotationIndex.SECTION_MARKERS) {
+            if (lineEquals(position, lineEnd, marker)) {
+                return marker;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationIndex parseSection(SectionTask section) {
+        Set<String> interfaces = new HashSet<>();
+        Set<String> classes = new HashSet<>();
+        Set<String> annotations = new HashSet<>();
+        Set<AnnotatedMethod> methods = new HashSet<>();
+        Set<AnnotatedConstructor> constructors = new HashSet<>();
+        Set<AnnotatedField> fields = new HashSet<>();
+        for (Subsection subsection : section.subsections) {
+            switch (subsection.marker) {
+                case AnnotationIndex.INTERFACES:
+                    interfaces = parseNames(subsection);
+                    break;
+                case AnnotationIndex.CLASSES:
+                    classes = parseNames(subsection);
+                    break;
+                case AnnotationIndex.ANNOTATIONS:
+                    annotations = parseNames(subsection);
+                    break;
+                case AnnotationIndex.METHODS:
+                    methods = parseMethods(subsection);
+                    break;
+                case AnnotationIndex.CONSTRUCTORS:
+                    constructors = parseConstructors(subsection);
+                    break;
+                case AnnotationIndex.FIELDS:
+                    fields = parseFields(subsection);
+                    break;
+            }
+        }
+        return new AnnotationIndex(section.annotation, interfaces, classes, annotations, methods, constructors, fields);
+    }
+
+    private Set<String> parseNames(Subsection subsection) {
+        Set<String> names = new HashSet<>(capacity(subsection.lineCount));
+        for (int position = subsection.start; position < subsection.end; ) {
+            int lineEnd = lineEnd(position);
+            names.add(new String(text, position, lineEnd - position));
+            position = nextLine(lineEnd);
+        }
+        return names;
+    }
+
+    private void parseStrings(Subsection subsection) {
+        // Each id is packed with the index of its string in the upper and lower halves of a long, so sorting them
+        // sorts the ids and keeps track of their strings
+        long[] packed = new long[subsection.lineCount];
+        String[] lineStrings = new String[subsection.lineCount];
+        int count = 0;
+        fullIdStrings = new HashMap<>();
+        for (int position = subsection.start; position < subsection.end; ) {
+            int lineEnd = lineEnd(position);
+            int separator = separator(position, position, lineEnd);
+            String s = new String(text, separator + 1, lineEnd - separator - 1);
+            long id = hex(position, separator, position, lineEnd);
+            if (separator - position == StringTable.ID_LENGTH) {
+                packed[count] = (long) (int) id << 32 | count;
+                lineStrings[count++] = s;
+            } else if (separator - position != StringTable.FULL_ID_LENGTH
+                    || fullIdStrings.put(new String(text, position, StringTable.FULL_ID_LENGTH), s) != null) {
+                throw new IllegalArgumentException(new String(text, position, lineEnd - position));
+            }
+            position = nextLine(lineEnd);
+        }
+        Arrays.sort(packed, 0, count);
+        ids = new int[count];
+        strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = (int) (packed[i] >> 32);
+            strings[i] = lineStrings[(int) packed[i]];
+            if (i > 0 && ids[i] == ids[i - 1]) {
+                throw new IllegalArgumentException("More than one string has the id " + Integer.toHexString(ids[i]));
+            }
+        }
+    }
+
+    private Set<AnnotatedMethod> parseMethods(Subsection subsection) {
+        Set<AnnotatedMethod> methods = new HashSet<>(capacity(subsection.lineCount));
+        String className = null;
+        for (int position = subsection.start; position < subsection.end; ) {
+            int lineEnd = lineEnd(position);
+            int first = separator(position, position, lineEnd);
+            int second = separator(first + 1, position, lineEnd);
+            checkNoSeparator(second + 1, position, lineEnd);
+            className = className(className, position, first, lineEnd);
+            methods.add(new AnnotatedMethod(className,
+                    new String(text, first + 1, second - first - 1),
+                    descriptor(second + 1, position, lineEnd)));
+            position = nextLine(lineEnd);
+        }
+        return methods;
+    }
+
+    private Set<AnnotatedConstructor> parseConstructors(Subsection subsection) {
+        Set<AnnotatedConstructor> constructors = new HashSet<>(capacity(subsection.lineCount));
+        String className = null;
+        for (int position = subsection.start; position < subsection.end; ) {
+            int lineEnd = lineEnd(position);
+            int separator = separator(position, position, lineEnd);
+            checkNoSeparator(separator + 1, position, lineEnd);
+            className = className(className, position, separator, lineEnd);
+            constructors.add(new AnnotatedConstructor(className, descriptor(separator + 1, position, lineEnd)));
+            position = nextLine(lineEnd);
+        }
+        return constructors;
+    }
+
+    private Set<AnnotatedField> parseFields(Subsection subsection) {
+        Set<AnnotatedField> fields = new HashSet<>(capacity(subsection.lineCount));
+        String className = null;
+        for (int position = subsection.start; position < subsection.end; ) {
+            int lineEnd = lineEnd(position);
+            int separator = separator(position, position, lineEnd);
+            checkNoSeparator(separator + 1, position, lineEnd);
+            className = className(className, position, separator, lineEnd);
+            fields.add(new AnnotatedField(className, new String(text, separator + 1, lineEnd - separator - 1)));
+            position = nextLine(lineEnd);
+        }
+        return fields;
+    }
+
+    /**
+     * Parses the lines of the hierarchy, or of the members overriding annotated ones, which are a class name followed
+     * by a list of names
+     */
+    private void parseClassLists(Subsection subsection, Map<String, Set<String>> lists) {
+        for (int position = subsection.start; position < subsection.end; ) {
+            int lineEnd = lineEnd(position);
+            int nameEnd = indexOfSeparator(position, lineEnd);
+            Set<String> list = lists.computeIfAbsent(new String(text, position, nameEnd - position), k -> new HashSet<>());
+            while (nameEnd < lineEnd) {
+                int nameStart = nameEnd + 1;
+                nameEnd = indexOfSeparator(nameStart, lineEnd);
+                if (nameEnd > nameStart) {
+                    list.add(new String(text, nameStart, nameEnd - nameStart));
+                }
+            }
+            position = nextLine(lineEnd);
+        }
+    }
+
+    /**
+     * Gets the class name of an entry, which is at the start of its line
+     */
+    private String className(String previous, int position, int nameEnd, int lineEnd) {
+        return ids != null ? lookup(position, nameEnd, position, lineEnd) : reuse(previous, position, nameEnd);
+    }
+
+    /**
+     * Gets the descriptor of an entry, which is at the end of its line
+     */
+    private String descriptor(int from, int lineStart, int lineEnd) {
+        return ids != null ? lookup(from, lineEnd, lineStart, lineEnd) : new String(text, from, lineEnd - from);
+    }
+
+    /**
+     * Gets the string of the string table with the id written between two positions
+     */
+    private String lookup(int from, int to, int lineStart, int lineEnd) {
+        String s = null;
+        if (to - from == StringTable.ID_LENGTH) {
+            int index = Arrays.binarySearch(ids, (int) hex(from, to, lineStart, lineEnd));
+            if (index >= 0) {
+                s = strings[index];
+            }
+        } else {
+            s = fullIdStrings.get(new String(text, from, to - from));
+        }
+        if (s == null) {
+            throw new IllegalArgumentException(new String(text, lineStart, lineEnd - lineStart));
+        }
+        return s;
+    }
+
+    /**
+     * Gets the value of the hex number written between two positions, which only fits in a long if it has at most
+     * {@link StringTable#FULL_ID_LENGTH} digits
+     */
+    private long hex(int from, int to, int lineStart, int lineEnd) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(text[i], 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException(new String(text, lineStart, lineEnd - lineStart));
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Gets the class name of an entry, reusing the one of the previous entry if it is the same
+     */
+    private String reuse(String previous, int position, int nameEnd) {
+        int length = nameEnd - position;
+        if (previous != null && previous.length() == length) {
+            int i = 0;
+            while (i < length && previous.charAt(i) == text[position + i]) {
+                i++;
+            }
+            if (i == length) {
+                return previous;
+            }
+        }
+        return new String(text, position, length);
+    }
+
+    private int indexOfSeparator(int from, int lineEnd) {
+        for (int i = from; i < lineEnd; i++) {
+            if (text[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return lineEnd;
+    }
+
+    /**
+     * Finds the next separator of an entry, which must be followed by a non-empty field
+     */
+    private int separator(int from, int lineStart, int lineEnd) {
+        int separator = indexOfSeparator(from, lineEnd);
+        if (separator >= lineEnd - 1) {
+            throw new IllegalArgumentException(new String(text, lineStart, lineEnd - lineStart));
+        }
+        return separator;
+    }
+
+    /**
+     * Checks that the last field of an entry is not followed by more fields
+     */
+    private void checkNoSeparator(int from, int lineStart, int lineEnd) {
+        if (indexOfSeparator(from, lineEnd) != lineEnd) {
+            throw new IllegalArgumentException(new String(text, lineStart, lineEnd - lineStart));
+        }
+    }
+
+    private boolean lineEquals(int position, int lineEnd, String s) {
+        return lineEnd - position == s.length() && lineStartsWith(position, lineEnd, s);
+    }
+
+    private boolean lineStartsWith(int position, int lineEnd, String s) {
+        if (lineEnd - position < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (text[position + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the end of the line starting at a position, i.e. the position of the line terminator or the end of the text
+     */
+    private int lineEnd(int position) {
+        while (position < end) {
+            char c = text[position];
+            if (c == '\n' || c == '\r') {
+                return position;
+            }
+            position++;
+        }
+        return end;
+    }
+
+    /**
+     * Gets the start of the next line, accepting the same line terminators as {@link java.io.BufferedReader}
+     */
+    private int nextLine(int lineEnd) {
+        if (lineEnd >= end) {
+            return end;
+        }
+        if (text[lineEnd] == '\r' && lineEnd + 1 < end && text[lineEnd + 1] == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    private static RuntimeException prematureEnd() {
+        return new RuntimeException("Premature end of file");
+    }
+
+    /**
+     * The lines of one of the sections listing the annotated classes and members of an annotation, or the supertypes
+     * or overriding members of classes
+     */
+    private static final class Subsection {
+        private final String marker;
+        private final int start;
+        private int end;
+        private int lineCount;
+
+        Subsection(String marker, int start) {
+            this.marker = marker;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Parses the section of an annotation
+     */
+    private final class SectionTask extends RecursiveTask<AnnotationIndex> {
+        private static final long serialVersionUID = 1L;
+
+        private String annotation;
+        private final List<Subsection> subsections = new ArrayList<>();
+
+        @Override
+        protected AnnotationIndex compute() {
+            return parseSection(this);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.wildfly.unstable.api.annotation.classpath.index;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -12,6 +15,9 @@ import java.util.Set;
 
 public class JarAnnotationIndex extends AnnotationIndex {
 
+    private final Map<String, Set<String>> supertypes;
+    private final Map<String, Set<String>> declaredMembers;
+
     /**
      * Constructor
      * @param builder the result builder
@@ -24,6 +30,27 @@ public class JarAnnotationIndex extends AnnotationIndex {
                 builder.annotatedMethods,
                 builder.annotatedConstructors,
                 builder.annotatedFields);
+        this.supertypes = Collections.unmodifiableMap(builder.supertypes);
+        this.declaredMembers = Collections.unmodifiableMap(builder.declaredMembers);
+    }
+
+    /**
+     * Gets the direct superclasses and superinterfaces of the classes in the jar. JDK supertypes are left out,
+     * and classes with no other supertypes are not included.
+     * @return the supertype names, indexed by the name of the class
+     */
+    Map<String, Set<String>> getSupertypes() {
+        return supertypes;
+    }
+
+    /**
+     * Gets the fields and methods declared by the classes in {@link #getSupertypes()}, to tell which annotated members
+     * of the supertypes they override or hide. A field is given by its name, and a method by its name followed by its
+     * descriptor, e.g. {@code test(Ljava/lang/String;)V}. Constructors and static initializers are left out.
+     * @return the members, indexed by the name of the class declaring them
+     */
+    Map<String, Set<String>> getDeclaredMembers() {
+        return declaredMembers;
     }
 
     /**
@@ -35,6 +62,18 @@ public class JarAnnotationIndex extends AnnotationIndex {
         return new ResultBuilder(annotationName);
     }
 
+    /**
+     * Creates a ResultBuilder sharing the supertypes and declared members with the builders for other annotations
+     * found in the same jar, so they only need to be recorded once
+     * @param annotationName the name of the annotation to search for
+     * @param supertypes the supertypes of the classes in the jar, indexed by the name of the class
+     * @param declaredMembers the members declared by the classes in the jar, indexed by the name of the class
+     * @return the result builder
+     */
+    static ResultBuilder builder(String annotationName, Map<String, Set<String>> supertypes, Map<String, Set<String>> declaredMembers) {
+        return new ResultBuilder(annotationName, supertypes, declaredMembers);
+    }
+
     /**
      * Used to add occurrances of an annotation found for a jar, and to construct
      * the JarAnnotationIndex
@@ -50,12 +89,21 @@ public class JarAnnotationIndex extends AnnotationIndex {
         private final Set<AnnotatedConstructor> annotatedConstructors = new HashSet<>();
         private final Set<AnnotatedField> annotatedFields = new HashSet<>();
 
+        private final Map<String, Set<String>> supertypes;
+        private final Map<String, Set<String>> declaredMembers;
+
         /**
          * Constructor
          * @param annotationName the annotation to search for
          */
         public ResultBuilder(String annotationName) {
+            this(annotationName, new HashMap<>(), new HashMap<>());
+        }
+
+        private ResultBuilder(String annotationName, Map<String, Set<String>> supertypes, Map<String, Set<String>> declaredMembers) {
             this.annotationName = annotationName;
+            this.supertypes = supertypes;
+            this.declaredMembers = declaredMembers;
         }
 
         /**
@@ -118,6 +166,21 @@ public class JarAnnotationIndex extends AnnotationIndex {
             return this;
         }
 
+        /**
+         * Add the direct superclass and superinterfaces of a class in the jar, and the members it declares
+         * @param name the name of the class
+         * @param supertypeNames the names of the supertypes
+         * @param members the members declared by the class, see {@link JarAnnotationIndex#getDeclaredMembers()}
+         * @return this builder
+         */
+        ResultBuilder addSupertypes(String name, Set<String> supertypeNames, Set<String> members) {
+            supertypes.computeIfAbsent(name, k -> new HashSet<>()).addAll(supertypeNames);
+            if (!members.isEmpty()) {
+                declaredMembers.computeIfAbsent(name, k -> new HashSet<>()).addAll(members);
+            }
+            return this;
+        }
+
         /**
          * Create the JarAnnotationIndex from this builder
          * @return the JarAnnotationIndex
@@ -3,61 +3,380 @@ package org.wildfly.unstable.api.annotation.classpath.index;
 import org.jboss.jandex.AnnotationInstance;
 import org.jboss.jandex.AnnotationTarget;
 import org.jboss.jandex.ClassInfo;
+import org.jboss.jandex.DotName;
 import org.jboss.jandex.FieldInfo;
 import org.jboss.jandex.Index;
+import org.jboss.jandex.IndexReader;
 import org.jboss.jandex.Indexer;
-import org.jboss.jandex.JarIndexer;
 import org.jboss.jandex.MethodInfo;
-import org.jboss.jandex.Result;
 import org.jboss.jandex.TypeTarget;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationTargetReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
 
 /**
- * <p>Reads a jar on the classpath and looks for all occurrences of an annotation.</p>
- * <p>The results are an instance of {@link JarAnnotationIndex}</p>.
+ * <p>Reads a jar on the classpath and looks for all occurrences of one or more annotations.</p>
+ * <p>The results are an instance of {@link JarAnnotationIndex} per annotation</p>.
+ *
+ * <p>By default, a Jandex index of the classes is created, and the annotations are looked up in it. Alternatively,
+ * {@link #setUseJandex(boolean) setUseJandex(false)} reads the annotations straight from the bytecode with an
+ * {@link AnnotationTargetReader}, which gives the same results. Only the constant pool of classes not using any of
+ * the annotations is read, and nothing is retained for them, so this uses much less CPU time and memory for
+ * large jars.</p>
+ *
+ * <p>Besides jars on the file system, the classes can be read from any {@link ArchiveSource}, e.g. a directory, a
+ * jar nested in another jar, or a jar held in memory, giving the same results.</p>
+ *
+ * <p>If the jar ships a Jandex index at {@value #PREBUILT_INDEX}, that index is used instead of indexing the classes,
+ * as long as it is up to date with the classes in the jar. Then only that one entry of the jar is read.</p>
  */
 public class JarAnnotationIndexer {
-    private final File file;
-    private final String unstableApiAnnotation;
+    /**
+     * Where jars ship a prebuilt Jandex index, e.g. one created by the Jandex Maven plugin
+     */
+    public static final String PREBUILT_INDEX = "META-INF/jandex.idx";
+
+    private static final String MODULE_INFO = "module-info.class";
+
+    private final ArchiveSource source;
+    private final Set<String> unstableApiAnnotations;
 
     private final Set<String> excludedClasses;
 
+    private final int targetJavaVersion;
+
+    private boolean useJandex = true;
+
+    private boolean usePrebuiltIndex = true;
+
+    private boolean prebuiltIndexUsed;
+
+    private int skippedEntryCount;
+
     /**
-     * Constructor
+     * Constructor. Multi-release jars are indexed for the Java version of the running JVM.
      * @param file the jar file to scan
      * @param annotation the fully qualified name of the annotation to search for, e.g. {@code org.acme.AnAnnotation}
      * @param excludedClasses a set of classes that should not be scanned when indexing the jar.
      */
     public JarAnnotationIndexer(File file, String annotation, Set<String> excludedClasses) {
-        if (file == null || annotation == null || excludedClasses == null) {
+        this(file, annotation, excludedClasses, MultiReleaseJarEntries.DEFAULT_TARGET_VERSION);
+    }
+
+    /**
+     * Constructor
+     * @param file the jar file to scan
+     * @param annotation the fully qualified name of the annotation to search for, e.g. {@code org.acme.AnAnnotation}
+     * @param excludedClasses a set of classes that should not be scanned when indexing the jar.
+     * @param targetJavaVersion the Java version to select the entries of multi-release jars for, e.g. {@code 17}
+     */
+    public JarAnnotationIndexer(File file, String annotation, Set<String> excludedClasses, int targetJavaVersion) {
+        this(file, Collections.singleton(checkNotNull(annotation)), excludedClasses, targetJavaVersion);
+    }
+
+    /**
+     * Constructor for looking for several annotations at once. The jar is only read and indexed once, no matter how
+     * many annotations there are.
+     * @param file the jar file to scan
+     * @param annotations the fully qualified names of the annotations to search for, e.g. {@code org.acme.AnAnnotation}
+     * @param excludedClasses a set of classes that should not be scanned when indexing the jar.
+     * @param targetJavaVersion the Java version to select the entries of multi-release jars for, e.g. {@code 17}
+     */
+    public JarAnnotationIndexer(File file, Set<String> annotations, Set<String> excludedClasses, int targetJavaVersion) {
+        this(ArchiveSource.of(file), annotations, excludedClasses, targetJavaVersion);
+    }
+
+    /**
+     * Constructor for indexing the classes from another source than a jar file, e.g. a directory or a nested jar
+     * @param source where to read the classes from
+     * @param annotations the fully qualified names of the annotations to search for, e.g. {@code org.acme.AnAnnotation}
+     * @param excludedClasses a set of classes that should not be scanned when indexing the jar.
+     * @param targetJavaVersion the Java version to select the entries of multi-release jars for, e.g. {@code 17}
+     */
+    public JarAnnotationIndexer(ArchiveSource source, Set<String> annotations, Set<String> excludedClasses, int targetJavaVersion) {
+        if (source == null || annotations == null || excludedClasses == null) {
             throw new NullPointerException("Null parameter");
         }
-        this.file = file;
-        this.unstableApiAnnotation = annotation;
+        if (annotations.isEmpty()) {
+            throw new IllegalArgumentException("No annotations to search for");
+        }
+        for (String annotation : annotations) {
+            checkNotNull(annotation);
+        }
+        this.source = source;
+        this.unstableApiAnnotations = new LinkedHashSet<>(annotations);
         this.excludedClasses = excludedClasses;
+        this.targetJavaVersion = targetJavaVersion;
+    }
+
+    private static String checkNotNull(String annotation) {
+        if (annotation == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return annotation;
     }
 
     /**
-     * Scans the jar and creates a JarAnnotationIndex
+     * Sets whether a Jandex index of the classes should be used to find the annotations. If {@code false}, the
+     * annotations are read from the bytecode by an {@link AnnotationTargetReader} instead. The default is {@code true}.
+     * @param useJandex whether to use Jandex
+     * @return this indexer
+     */
+    public JarAnnotationIndexer setUseJandex(boolean useJandex) {
+        this.useJandex = useJandex;
+        return this;
+    }
+
+    /**
+     * Sets whether to use the Jandex index at {@code META-INF/jandex.idx}, if the jar contains one, rather than
+     * indexing the classes. The index is only used if it matches the class entries of the jar, see
+     * {@link #isPrebuiltIndexUsed()}. The default is {@code true}.
+     * @param usePrebuiltIndex whether to use the index shipped in the jar
+     * @return this indexer
+     */
+    public JarAnnotationIndexer setUsePrebuiltIndex(boolean usePrebuiltIndex) {
+        this.usePrebuiltIndex = usePrebuiltIndex;
+        return this;
+    }
+
+    /**
+     * Scans the jar and creates a JarAnnotationIndex. If this indexer was created for several annotations, the
+     * index of the first one is returned.
      * @return the JarAnnotationIndex
      * @throws IOException if the jar file could not be read
      */
     public JarAnnotationIndex scanForAnnotation() throws IOException {
-        // Use jandex to find all places the annotation is used in the jar
+        return scanForAnnotations().get(unstableApiAnnotations.iterator().next());
+    }
+
+    /**
+     * Scans the jar and creates a JarAnnotationIndex for each of the annotations. The jar is indexed once, and the
+     * occurrences of each annotation are then looked up in the index. The supertypes of the classes in the jar are
+     * recorded once too, and shared by the returned indexes.
+     * @return the JarAnnotationIndex instances, keyed by the annotation names in the order they were given
+     * @throws IOException if the jar file could not be read
+     */
+    public Map<String, JarAnnotationIndex> scanForAnnotations() throws IOException {
+        // Use jandex to find all places the annotations are used in the jar. Only the class entries effective for the
+        // target Java version are indexed, so the classes of multi-release jars are not indexed more than once
+        try (Archive archive = open()) {
+            MultiReleaseJarEntries entries = MultiReleaseJarEntries.select(archive, targetJavaVersion);
+            skippedEntryCount = entries.getSkippedEntryCount();
+            Map<String, JarAnnotationIndex> result = scanPrebuiltIndex(archive, entries.getClassEntries());
+            prebuiltIndexUsed = result != null;
+            return prebuiltIndexUsed ? result : scanEntries(archive, entries.getClassEntries());
+        }
+    }
+
+    /**
+     * Opens the source of the classes
+     * @return the opened archive, to be closed by the caller
+     * @throws IOException if the source could not be opened
+     */
+    Archive open() throws IOException {
+        return source.open();
+    }
+
+    /**
+     * Gets the source of the classes
+     * @return the source
+     */
+    public ArchiveSource getSource() {
+        return source;
+    }
+
+    /**
+     * Indexes some of the class entries of the jar, and creates a JarAnnotationIndex for each of the annotations.
+     * The classes are looked at in isolation, so the results for several ranges of entries of a jar can be merged to
+     * get the results for the whole jar. The one exception is that type variables of enclosing classes and methods,
+     * used in the generic signatures of annotated methods, are only looked up in the classes of the same range.
+     * @param archive the opened jar
+     * @param classEntries the class entries to index
+     * @return the JarAnnotationIndex instances, keyed by the annotation names in the order they were given
+     * @throws IOException if the jar file could not be read
+     */
+    Map<String, JarAnnotationIndex> scanEntries(Archive archive, List<ZipEntry> classEntries) throws IOException {
+        if (!useJandex) {
+            return scanEntriesWithoutJandex(archive, classEntries);
+        }
         Indexer indexer = new Indexer();
-        Result result = JarIndexer.createJarIndex(file, indexer, false, true, false);
-        Index index = result.getIndex();
+        archive.readEntries(classEntries, (entry, in) -> indexer.index(in));
+        return createResults(indexer.complete());
+    }
 
-        Collection<AnnotationInstance> annotations = index.getAnnotations(unstableApiAnnotation);
-        JarAnnotationIndex.ResultBuilder resultBuilder = JarAnnotationIndex.builder(unstableApiAnnotation);
-        for (AnnotationInstance annotation : annotations) {
-            processAnnotationTarget(resultBuilder, annotation.target());
+    /**
+     * Uses the Jandex index shipped in the jar, if there is one matching the class entries, instead of indexing the
+     * classes. The index is not used if it might be stale: if it does not contain exactly the classes of the entries,
+     * if any of the class entries is newer than it, or if any of the entries is a versioned entry of a multi-release
+     * jar, since the shipped index is normally created from the base classes.
+     * @param archive the opened jar
+     * @param classEntries the class entries selected for the target Java version
+     * @return the JarAnnotationIndex instances, keyed by the annotation names in the order they were given, or
+     * {@code null} if there is no usable index in the jar
+     */
+    Map<String, JarAnnotationIndex> scanPrebuiltIndex(Archive archive, List<ZipEntry> classEntries) {
+        if (!usePrebuiltIndex) {
+            return null;
+        }
+        ZipEntry indexEntry = archive.getEntry(PREBUILT_INDEX);
+        if (indexEntry == null) {
+            return null;
+        }
+        List<String> classNames = new ArrayList<>(classEntries.size());
+        for (ZipEntry entry : classEntries) {
+            String name = entry.getName();
+            if (MultiReleaseJarEntries.getBaseName(name).equals(MODULE_INFO)) {
+                // Jandex does not index module descriptors as classes
+                continue;
+            }
+            if (!name.equals(MultiReleaseJarEntries.getBaseName(name))) {
+                return null;
+            }
+            if (indexEntry.getTime() != -1 && entry.getTime() > indexEntry.getTime()) {
+                return null;
+            }
+            classNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+        }
+
+        Index index;
+        try (InputStream in = archive.getInputStream(indexEntry)) {
+            index = new IndexReader(in).read();
+        } catch (IOException | RuntimeException e) {
+            // The index is corrupt, or was written by a Jandex version we cannot read, so index the classes instead
+            return null;
+        }
+        if (index.getKnownClasses().size() != classNames.size()) {
+            return null;
+        }
+        for (String className : classNames) {
+            if (index.getClassByName(DotName.createSimple(className)) == null) {
+                return null;
+            }
+        }
+        return createResults(index);
+    }
+
+    private Map<String, JarAnnotationIndex> createResults(Index index) {
+        Map<String, Set<String>> supertypes = new HashMap<>();
+        Map<String, Set<String>> declaredMembers = new HashMap<>();
+        Map<String, JarAnnotationIndex.ResultBuilder> resultBuilders = new LinkedHashMap<>();
+        for (String unstableApiAnnotation : unstableApiAnnotations) {
+            JarAnnotationIndex.ResultBuilder resultBuilder = JarAnnotationIndex.builder(unstableApiAnnotation, supertypes, declaredMembers);
+            Collection<AnnotationInstance> annotations = index.getAnnotations(unstableApiAnnotation);
+            for (AnnotationInstance annotation : annotations) {
+                processAnnotationTarget(resultBuilder, annotation.target());
+            }
+            resultBuilders.put(unstableApiAnnotation, resultBuilder);
+        }
+        // All the builders share the supertypes and declared members, so recording them with one of them is enough
+        JarAnnotationIndex.ResultBuilder first = resultBuilders.values().iterator().next();
+        for (ClassInfo classInfo : index.getKnownClasses()) {
+            processSupertypes(first, classInfo);
+        }
+
+        Map<String, JarAnnotationIndex> result = new LinkedHashMap<>();
+        for (Map.Entry<String, JarAnnotationIndex.ResultBuilder> entry : resultBuilders.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().build());
+        }
+        return result;
+    }
+
+    private Map<String, JarAnnotationIndex> scanEntriesWithoutJandex(Archive archive, List<ZipEntry> classEntries) throws IOException {
+        Map<String, Set<String>> supertypes = new HashMap<>();
+        Map<String, Set<String>> declaredMembers = new HashMap<>();
+        Map<String, JarAnnotationIndex.ResultBuilder> resultBuilders = new LinkedHashMap<>();
+        for (String unstableApiAnnotation : unstableApiAnnotations) {
+            resultBuilders.put(unstableApiAnnotation, JarAnnotationIndex.builder(unstableApiAnnotation, supertypes, declaredMembers));
+        }
+        // A new reader per call, since the parallel indexing scans several ranges of entries at once
+        AnnotationTargetReader reader = new AnnotationTargetReader(unstableApiAnnotations, excludedClasses);
+        ResultBuilderVisitor visitor = new ResultBuilderVisitor(resultBuilders);
+        archive.readEntries(classEntries, (entry, in) -> reader.readClass(in, visitor));
+        // Like Jandex, only look for the enclosing classes among the entries indexed together
+        reader.complete(new EntryClassSource(archive, classEntries), visitor);
+
+        Map<String, JarAnnotationIndex> result = new LinkedHashMap<>();
+        for (Map.Entry<String, JarAnnotationIndex.ResultBuilder> entry : resultBuilders.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().build());
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the last call to {@link #scanForAnnotation()} or {@link #scanForAnnotations()} used the Jandex
+     * index shipped in the jar. It is not used if it is missing, cannot be read, or might be stale: if it does not
+     * contain exactly the classes in the jar, or some of the classes are newer than it.
+     * @return {@code true} if the index shipped in the jar was used
+     */
+    public boolean isPrebuiltIndexUsed() {
+        return prebuiltIndexUsed;
+    }
+
+    /**
+     * Gets the number of versioned entries of a multi-release jar which were skipped by the last call to
+     * {@link #scanForAnnotation()} or {@link #scanForAnnotations()}, since they are shadowed or not for the target Java version
+     * @return the number of skipped entries
+     */
+    public int getSkippedEntryCount() {
+        return skippedEntryCount;
+    }
+
+    /**
+     * Records the supertypes of a class, so that members annotated in a supertype can be found when they are
+     * referenced via the subtype. The supertypes might be in another jar, so we record them for all classes
+     * which can be referenced from user code. The members declared by the class are recorded too, since an
+     * annotated member is not inherited if the class overrides or hides it.
+     */
+    private void processSupertypes(JarAnnotationIndex.ResultBuilder resultBuilder, ClassInfo classInfo) {
+        if (classInfo.nestingType() == ClassInfo.NestingType.ANONYMOUS
+                || classInfo.nestingType() == ClassInfo.NestingType.LOCAL) {
+            return;
+        }
+        String className = classInfo.name().toString();
+        if (excludedClasses.contains(className)) {
+            return;
+        }
+        Set<String> supertypes = new HashSet<>();
+        addSupertype(supertypes, classInfo.superName());
+        for (DotName interfaceName : classInfo.interfaceNames()) {
+            addSupertype(supertypes, interfaceName);
+        }
+        if (!supertypes.isEmpty()) {
+            Set<String> members = new HashSet<>();
+            for (MethodInfo methodInfo : classInfo.methods()) {
+                if (!methodInfo.isConstructor() && !methodInfo.isStaticInitializer()) {
+                    members.add(methodInfo.name() + methodInfo.descriptor());
+                }
+            }
+            for (FieldInfo fieldInfo : classInfo.fields()) {
+                members.add(fieldInfo.name());
+            }
+            resultBuilder.addSupertypes(className, supertypes, members);
+        }
+    }
+
+    private void addSupertype(Set<String> supertypes, DotName name) {
+        if (name == null) {
+            return;
+        }
+        String supertype = name.toString();
+        // JDK classes are not indexed, so there is no need to record them
+        if (!supertype.startsWith("java.")) {
+            supertypes.add(supertype);
         }
-        return resultBuilder.build();
     }
 
     private void processAnnotationTarget(JarAnnotationIndex.ResultBuilder resultBuilder, AnnotationTarget target) {
@@ -104,4 +423,80 @@ public class JarAnnotationIndexer {
             }
         }
     }
+
+    /**
+     * Opens the classes among the entries being indexed, keyed by the names the classes would have in the base of
+     * the jar. The entries are only looked up by name if there is a need to.
+     */
+    private static class EntryClassSource implements AnnotationTargetReader.ClassSource {
+        private final Archive archive;
+        private final List<ZipEntry> classEntries;
+        private Map<String, ZipEntry> entriesByClassName;
+
+        EntryClassSource(Archive archive, List<ZipEntry> classEntries) {
+            this.archive = archive;
+            this.classEntries = classEntries;
+        }
+
+        @Override
+        public InputStream open(String className) throws IOException {
+            if (entriesByClassName == null) {
+                entriesByClassName = new HashMap<>();
+                for (ZipEntry entry : classEntries) {
+                    entriesByClassName.put(MultiReleaseJarEntries.getBaseName(entry.getName()), entry);
+                }
+            }
+            ZipEntry entry = entriesByClassName.get(className.replace('.', '/') + ".class");
+            return entry == null ? null : archive.getInputStream(entry);
+        }
+    }
+
+    /**
+     * Adds what an {@link AnnotationTargetReader} finds to the result builder for each annotation
+     */
+    private static class ResultBuilderVisitor implements AnnotationTargetReader.Visitor {
+        private final Map<String, JarAnnotationIndex.ResultBuilder> resultBuilders;
+        // All the builders share the supertypes and declared members, so recording them with one of them is enough
+        private final JarAnnotationIndex.ResultBuilder first;
+
+        ResultBuilderVisitor(Map<String, JarAnnotationIndex.ResultBuilder> resultBuilders) {
+            this.resultBuilders = resultBuilders;
+            this.first = resultBuilders.values().iterator().next();
+        }
+
+        @Override
+        public void visitAnnotatedClass(String annotation, String className) {
+            resultBuilders.get(annotation).addAnnotatedClass(className);
+        }
+
+        @Override
+        public void visitAnnotatedInterface(String annotation, String interfaceName) {
+            resultBuilders.get(annotation).addAnnotatedInterface(interfaceName);
+        }
+
+        @Override
+        public void visitAnnotatedAnnotation(String annotation, String annotationName) {
+            resultBuilders.get(annotation).addAnnotatedAnnotation(annotationName);
+        }
+
+        @Override
+        public void visitAnnotatedMethod(String annotation, String className, String methodName, String descriptor) {
+            resultBuilders.get(annotation).addAnnotatedMethod(new AnnotatedMethod(className, methodName, descriptor));
+        }
+
+        @Override
+        public void visitAnnotatedConstructor(String annotation, String className, String descriptor) {
+            resultBuilders.get(annotation).addAnnotatedConstructor(new AnnotatedConstructor(className, descriptor));
+        }
+
+        @Override
+        public void visitAnnotatedField(String annotation, String className, String fieldName) {
+            resultBuilders.get(annotation).addAnnotatedField(new AnnotatedField(className, fieldName));
+        }
+
+        @Override
+        public void visitSupertypes(String className, Set<String> supertypes, Set<String> declaredMembers) {
+            first.addSupertypes(className, supertypes, declaredMembers);
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Selects the class entries of a jar which are effective for a target Java version. For a multi-release jar, a class
+ * under {@code META-INF/versions/N/} replaces the base class with the same name if {@code N} is not higher than the
+ * target version, and the highest such version wins. Versioned entries of jars which are not multi-release are never
+ * loaded, so they are skipped too. Only the central directory of the jar is used for the selection, along with the
+ * manifest if there are any versioned entries, so the shadowed entries are never read.
+ */
+public final class MultiReleaseJarEntries {
+    /**
+     * The Java version of the running JVM, which is used as the target version if none is given
+     */
+    public static final int DEFAULT_TARGET_VERSION = Runtime.version().feature();
+
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final int FIRST_VERSION = 9;
+
+    private final List<ZipEntry> classEntries;
+    private final int skippedEntryCount;
+
+    private MultiReleaseJarEntries(List<ZipEntry> classEntries, int skippedEntryCount) {
+        this.classEntries = classEntries;
+        this.skippedEntryCount = skippedEntryCount;
+    }
+
+    /**
+     * Selects the class entries of a jar
+     * @param zipFile the jar
+     * @param targetVersion the Java feature version to select the entries for, e.g. {@code 17}
+     * @return the selected entries
+     * @throws IOException if there were problems reading the manifest of the jar
+     */
+    public static MultiReleaseJarEntries select(ZipFile zipFile, int targetVersion) throws IOException {
+        if (zipFile == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return select(new Archive.ZipFileArchive(zipFile, false), targetVersion);
+    }
+
+    /**
+     * Selects the class entries of an archive
+     * @param archive the archive
+     * @param targetVersion the Java feature version to select the entries for, e.g. {@code 17}
+     * @return the selected entries
+     * @throws IOException if there were problems reading the manifest of the archive
+     */
+    static MultiReleaseJarEntries select(Archive archive, int targetVersion) throws IOException {
+        // The selected entries and their versions, keyed by the name the class would have in the base of the jar
+        Map<String, ZipEntry> selected = new LinkedHashMap<>();
+        Map<String, Integer> selectedVersions = new LinkedHashMap<>();
+        List<ZipEntry> versionedEntries = null;
+        for (ZipEntry entry : archive.getEntries()) {
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.endsWith(CLASS_FILE_SUFFIX)) {
+                continue;
+            }
+            if (name.startsWith(VERSIONS_PREFIX)) {
+                if (versionedEntries == null) {
+                    versionedEntries = new ArrayList<>();
+                }
+                versionedEntries.add(entry);
+            } else {
+                selected.put(name, entry);
+                selectedVersions.put(name, 0);
+            }
+        }
+        if (versionedEntries == null) {
+            return new MultiReleaseJarEntries(new ArrayList<>(selected.values()), 0);
+        }
+
+        int skipped = 0;
+        boolean multiRelease = isMultiRelease(archive);
+        for (ZipEntry entry : versionedEntries) {
+            int version = getVersion(entry.getName());
+            if (!multiRelease || version < FIRST_VERSION || version > targetVersion) {
+                skipped++;
+                continue;
+            }
+            String baseName = getBaseName(entry.getName());
+            Integer current = selectedVersions.get(baseName);
+            if (current == null || current < version) {
+                if (current != null) {
+                    // Shadowed by this entry
+                    skipped++;
+                }
+                selected.put(baseName, entry);
+                selectedVersions.put(baseName, version);
+            } else {
+                skipped++;
+            }
+        }
+        return new MultiReleaseJarEntries(new ArrayList<>(selected.values()), skipped);
+    }
+
+    /**
+     * Gets the name a class entry would have in the base of the jar, e.g. {@code org/acme/MyClass.class} for
+     * {@code META-INF/versions/11/org/acme/MyClass.class}
+     * @param entryName the name of the entry
+     * @return the name in the base of the jar. The same as the entry name for entries which are not versioned
+     */
+    public static String getBaseName(String entryName) {
+        if (!entryName.startsWith(VERSIONS_PREFIX)) {
+            return entryName;
+        }
+        int end = entryName.indexOf('/', VERSIONS_PREFIX.length());
+        return end < 0 ? entryName : entryName.substring(end + 1);
+    }
+
+    private static int getVersion(String entryName) {
+        int end = entryName.indexOf('/', VERSIONS_PREFIX.length());
+        if (end < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(entryName.substring(VERSIONS_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isMultiRelease(Archive archive) throws IOException {
+        ZipEntry manifestEntry = archive.getEntry(MANIFEST);
+        if (manifestEntry == null) {
+            return false;
+        }
+        try (InputStream in = archive.getInputStream(manifestEntry)) {
+            Manifest manifest = new Manifest(in);
+            return Boolean.parseBoolean(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+        }
+    }
+
+    /**
+     * Gets the selected class entries, in the order of the jar's central directory. For classes with versioned
+     * entries, the selected entry takes the place of the base entry.
+     * @return the selected entries
+     */
+    public List<ZipEntry> getClassEntries() {
+        return Collections.unmodifiableList(classEntries);
+    }
+
+    /**
+     * Gets the number of versioned class entries which were skipped, either because they are shadowed by an entry for
+     * a higher version, are for a version higher than the target version, or the jar is not multi-release
+     * @return the number of skipped entries
+     */
+    public int getSkippedEntryCount() {
+        return skippedEntryCount;
+    }
+}
@@ -6,47 +6,104 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.net.URI;
 import java.net.URL;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * <p>Takes JarAnnotationIndex entries, which are scans from individual classpath entries and
  * consolidates them to an overall index. Each annotation we have searched for has its own
  * index containing the locations where that annotation was found.</p>
  *
- * <p>This overall index can be serialized and deserialized.</p>
+ * <p>This overall index can be serialized and deserialized. The annotations, and the entries of each section, are
+ * saved in sorted order, so the same index always gives the same file. The first line of the file holds a
+ * fingerprint of the rest of it, see {@link #readFingerprint(Path)}. Version 2 of the format follows this with a
+ * {@code #version=2} line and a table of strings, see {@link #save(Path, int)}.</p>
  */
 public class OverallIndex {
+    static final String HIERARCHY = "=HIERARCHY";
+    static final String OVERRIDES = "=OVERRIDES";
+    static final String FINGERPRINT = "#fingerprint=";
+    static final String VERSION = "#version=";
+    /**
+     * The charset of saved indexes. It does not depend on the platform, so an index saved on one machine reads the
+     * same on another, and the fingerprint is the same.
+     */
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final String ZIP_ENTRY = "index.txt";
+
     private final Map<String, AnnotationIndex> indexes;
 
+    /**
+     * The direct supertypes of the classes in the scanned jars, indexed by class name
+     */
+    private final Map<String, Set<String>> supertypes;
+
+    /**
+     * The fields and methods declared by the classes in {@link #supertypes}, see
+     * {@link JarAnnotationIndex#getDeclaredMembers()}. An index which has been loaded only has the ones which
+     * override or hide annotated members of their supertypes.
+     */
+    private final Map<String, Set<String>> declaredMembers;
+
+    /**
+     * The Java version to select the entries of multi-release jars for
+     */
+    private int targetJavaVersion = MultiReleaseJarEntries.DEFAULT_TARGET_VERSION;
+
+    /**
+     * Whether to use Jandex to find the annotations in the scanned jars
+     */
+    private boolean useJandex = true;
+
+    /**
+     * Whether to use the Jandex indexes shipped in the scanned jars
+     */
+    private boolean usePrebuiltIndex = true;
+
+    /**
+     * The number of versioned entries of multi-release jars skipped by the scans
+     */
+    private int skippedEntryCount;
+
     /**
      * Creates a new overall index
      */
     public OverallIndex() {
-        this.indexes = new HashMap<>();
+        this(new HashMap<>(), new HashMap<>(), new HashMap<>());
     }
 
-    private OverallIndex(Map<String, AnnotationIndex> indexes) {
+    OverallIndex(Map<String, AnnotationIndex> indexes, Map<String, Set<String>> supertypes, Map<String, Set<String>> declaredMembers) {
         this.indexes = indexes;
+        this.supertypes = supertypes;
+        this.declaredMembers = declaredMembers;
     }
 
     /**
@@ -56,9 +113,7 @@ public class OverallIndex {
      * @throws IOException if there were problems reading the jar
      */
     public void scanJar(File jar, String annotation) throws IOException {
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, annotation, Collections.emptySet());
-        JarAnnotationIndex jarAnnotationIndex = indexer.scanForAnnotation();
-        mergeAnnotationIndex(jarAnnotationIndex);
+        scanJar(jar, annotation, Collections.emptySet());
     }
 
     /**
@@ -69,9 +124,174 @@ public class OverallIndex {
      * @throws IOException if there were problems reading the jar
      */
     public void scanJar(File jar, String annotation, Set<String> excludedClasses) throws IOException {
-        JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, annotation, excludedClasses);
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, annotation, excludedClasses, targetJavaVersion)
+                .setUseJandex(useJandex)
+                .setUsePrebuiltIndex(usePrebuiltIndex);
         JarAnnotationIndex jarAnnotationIndex = indexer.scanForAnnotation();
+        skippedEntryCount += indexer.getSkippedEntryCount();
         mergeAnnotationIndex(jarAnnotationIndex);
+        mergeSupertypes(jarAnnotationIndex.getSupertypes(), jarAnnotationIndex.getDeclaredMembers());
+    }
+
+    /**
+     * Scans a jar for several annotations and adds them to our overall index. The jar is only read and indexed
+     * once, rather than once per annotation as when calling {@link #scanJar(File, String, Set)} for each of them.
+     * @param jar the jar to scan
+     * @param annotations the annotations we are searching for
+     * @param excludedClasses names of classes that we should not scan
+     * @throws IOException if there were problems reading the jar
+     */
+    public void scanJar(File jar, Set<String> annotations, Set<String> excludedClasses) throws IOException {
+        scanArchive(ArchiveSource.of(jar), annotations, excludedClasses);
+    }
+
+    /**
+     * Scans the classes of an archive for several annotations and adds them to our overall index. The archive may be
+     * a directory, a jar nested in another jar or a jar held in memory, see {@link ArchiveSource}.
+     * @param source the archive to scan
+     * @param annotations the annotations we are searching for
+     * @param excludedClasses names of classes that we should not scan
+     * @throws IOException if there were problems reading the archive
+     */
+    public void scanArchive(ArchiveSource source, Set<String> annotations, Set<String> excludedClasses) throws IOException {
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(source, annotations, excludedClasses, targetJavaVersion)
+                .setUseJandex(useJandex)
+                .setUsePrebuiltIndex(usePrebuiltIndex);
+        addJarAnnotationIndexes(indexer.scanForAnnotations(), indexer.getSkippedEntryCount());
+    }
+
+    /**
+     * Scans several jars in parallel for several annotations, and adds them to our overall index. The jars are indexed
+     * on the common fork-join pool. See {@link #scanJars(Collection, Set, Set, ForkJoinPool)}.
+     * @param jars the jars to scan
+     * @param annotations the annotations we are searching for
+     * @param excludedClasses names of classes that we should not scan
+     * @throws IOException if there were problems reading any of the jars
+     */
+    public void scanJars(Collection<File> jars, Set<String> annotations, Set<String> excludedClasses) throws IOException {
+        scanJars(jars, annotations, excludedClasses, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Scans several jars in parallel for several annotations, and adds them to our overall index. Each jar is indexed
+     * by its own task, and the class entries of large jars are split between several tasks. The classes nested in a
+     * top level class are indexed by the same task as it, since their descriptors depend on it. The results of the
+     * tasks are merged as they are joined, and added to this index once all the jars have been indexed. The result is
+     * the same as calling {@link #scanJar(File, Set, Set)} for each jar.
+     * @param jars the jars to scan
+     * @param annotations the annotations we are searching for
+     * @param excludedClasses names of classes that we should not scan
+     * @param pool the fork-join pool to index the jars on
+     * @throws IOException if there were problems reading any of the jars
+     */
+    public void scanJars(Collection<File> jars, Set<String> annotations, Set<String> excludedClasses, ForkJoinPool pool) throws IOException {
+        scanJars(jars, annotations, excludedClasses, pool, ParallelJarIndexer.DEFAULT_ENTRIES_PER_TASK);
+    }
+
+    void scanJars(Collection<File> jars, Set<String> annotations, Set<String> excludedClasses, ForkJoinPool pool, int entriesPerTask) throws IOException {
+        if (jars == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        List<ArchiveSource> sources = new ArrayList<>(jars.size());
+        for (File jar : jars) {
+            sources.add(ArchiveSource.of(jar));
+        }
+        scanArchives(sources, annotations, excludedClasses, pool, entriesPerTask);
+    }
+
+    /**
+     * Scans several archives in parallel for several annotations, and adds them to our overall index. The archives are
+     * indexed on the common fork-join pool. See {@link #scanArchives(Collection, Set, Set, ForkJoinPool)}.
+     * @param sources the archives to scan
+     * @param annotations the annotations we are searching for
+     * @param excludedClasses names of classes that we should not scan
+     * @throws IOException if there were problems reading any of the archives
+     */
+    public void scanArchives(Collection<ArchiveSource> sources, Set<String> annotations, Set<String> excludedClasses) throws IOException {
+        scanArchives(sources, annotations, excludedClasses, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Scans several archives in parallel for several annotations, and adds them to our overall index, as
+     * {@link #scanJars(Collection, Set, Set, ForkJoinPool)} does for jar files. The class entries of nested jars and
+     * jars held in memory are not split between several tasks, since those can only be streamed, but several of them
+     * are indexed in parallel, e.g. the sources returned by {@link ArchiveSource#nestedJarsOf(File)}.
+     * @param sources the archives to scan
+     * @param annotations the annotations we are searching for
+     * @param excludedClasses names of classes that we should not scan
+     * @param pool the fork-join pool to index the archives on
+     * @throws IOException if there were problems reading any of the archives
+     */
+    public void scanArchives(Collection<ArchiveSource> sources, Set<String> annotations, Set<String> excludedClasses, ForkJoinPool pool) throws IOException {
+        scanArchives(sources, annotations, excludedClasses, pool, ParallelJarIndexer.DEFAULT_ENTRIES_PER_TASK);
+    }
+
+    void scanArchives(Collection<ArchiveSource> sources, Set<String> annotations, Set<String> excludedClasses, ForkJoinPool pool, int entriesPerTask) throws IOException {
+        if (sources == null || pool == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        ParallelJarIndexer indexer = new ParallelJarIndexer(annotations, excludedClasses, targetJavaVersion, useJandex,
+                usePrebuiltIndex, entriesPerTask);
+        mergeScanResults(indexer.scanJars(pool, sources));
+    }
+
+    void addJarAnnotationIndexes(Map<String, JarAnnotationIndex> jarAnnotationIndexes, int skippedEntryCount) {
+        this.skippedEntryCount += skippedEntryCount;
+        for (JarAnnotationIndex jarAnnotationIndex : jarAnnotationIndexes.values()) {
+            mergeAnnotationIndex(jarAnnotationIndex);
+        }
+        // The supertypes are shared by the indexes, so only need merging once
+        JarAnnotationIndex first = jarAnnotationIndexes.values().iterator().next();
+        mergeSupertypes(first.getSupertypes(), first.getDeclaredMembers());
+    }
+
+    void addSkippedEntryCount(int skippedEntryCount) {
+        this.skippedEntryCount += skippedEntryCount;
+    }
+
+    /**
+     * Merges the results of scans done by another instance into this one
+     */
+    void mergeScanResults(OverallIndex index) {
+        merge(index);
+        skippedEntryCount += index.skippedEntryCount;
+    }
+
+    /**
+     * Sets the Java version to select the entries of multi-release jars for in subsequent scans. By default, this is
+     * the version of the running JVM.
+     * @param targetJavaVersion the Java feature version, e.g. {@code 17}
+     */
+    public void setTargetJavaVersion(int targetJavaVersion) {
+        this.targetJavaVersion = targetJavaVersion;
+    }
+
+    /**
+     * Sets whether subsequent scans should use a Jandex index of each jar to find the annotations, or read them straight
+     * from the bytecode. See {@link JarAnnotationIndexer#setUseJandex(boolean)}. The default is {@code true}.
+     * @param useJandex whether to use Jandex
+     */
+    public void setUseJandex(boolean useJandex) {
+        this.useJandex = useJandex;
+    }
+
+    /**
+     * Sets whether subsequent scans should use the Jandex index at {@code META-INF/jandex.idx} of jars shipping one,
+     * rather than indexing their classes. See {@link JarAnnotationIndexer#setUsePrebuiltIndex(boolean)}. The default
+     * is {@code true}.
+     * @param usePrebuiltIndex whether to use the indexes shipped in the jars
+     */
+    public void setUsePrebuiltIndex(boolean usePrebuiltIndex) {
+        this.usePrebuiltIndex = usePrebuiltIndex;
+    }
+
+    /**
+     * Gets the number of versioned entries of multi-release jars which were skipped by the scans of this instance,
+     * since they are shadowed or not for the target Java version
+     * @return the number of skipped entries
+     */
+    public int getSkippedEntryCount() {
+        return skippedEntryCount;
     }
 
 
@@ -79,6 +299,16 @@ public class OverallIndex {
         for (AnnotationIndex ai : index.indexes.values()) {
             mergeAnnotationIndex(ai);
         }
+        mergeSupertypes(index.supertypes, index.declaredMembers);
+    }
+
+    private void mergeSupertypes(Map<String, Set<String>> supertypes, Map<String, Set<String>> declaredMembers) {
+        for (Map.Entry<String, Set<String>> entry : supertypes.entrySet()) {
+            this.supertypes.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(entry.getValue());
+        }
+        for (Map.Entry<String, Set<String>> entry : declaredMembers.entrySet()) {
+            this.declaredMembers.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(entry.getValue());
+        }
     }
 
     private void mergeAnnotationIndex(AnnotationIndex annotationIndex) {
@@ -92,47 +322,263 @@ public class OverallIndex {
     }
 
     /**
-     * Saves the overall index to a file
+     * Saves the overall index to a file, in the version 1 format
      *
      * @param path location of the file we will write to
      * @throws IOException if there was an error writing to the file
      */
     public void save(Path path) throws IOException {
+        save(path, 1);
+    }
+
+    /**
+     * Saves the overall index to a file. Both versions of the format can be loaded, but only by this version of the
+     * library onwards for version 2.
+     *
+     * @param path location of the file we will write to
+     * @param formatVersion {@code 1} to write the class names and descriptors of the annotated methods, constructors
+     *                      and fields in each of their entries, or {@code 2} to write them once in a table of strings
+     *                      which the entries refer to. Version 2 is smaller and quicker to load for indexes with
+     *                      many annotated members.
+     * @throws IOException if there was an error writing to the file
+     */
+    public void save(Path path, int formatVersion) throws IOException {
+        if (formatVersion == 1) {
+            save(path, writer -> saveContents(writer, StringTable.NONE));
+        } else if (formatVersion == 2) {
+            StringTable strings = StringTable.of(indexes.values());
+            save(path, writer -> saveContents(writer, strings));
+        } else {
+            throw new IllegalArgumentException("Unknown format version " + formatVersion);
+        }
+    }
+
+    /**
+     * Saves an index, with the fingerprint of its contents at the start
+     * @param path location of the file we will write to. The suffix determines the {@link Format}
+     * @param contents writes the contents of the index. It is called twice, first to work out the fingerprint, and
+     *                 must write the same both times
+     * @throws IOException if there was an error writing to the file
+     */
+    static void save(Path path, ContentWriter contents) throws IOException {
+        // Stream the contents through the hash first, so the fingerprint can go at the start of the file
+        IndexFingerprint fingerprint = new IndexFingerprint();
+        try (PrintWriter writer = createIndexWriter(fingerprint)) {
+            contents.write(writer);
+        }
+        try (OutputStream out = createIndexOutput(path)) {
+            PrintWriter writer = createIndexWriter(out);
+            writer.println(FINGERPRINT + fingerprint.getFingerprint());
+            contents.write(writer);
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Could not write the index to " + path);
+            }
+        }
+    }
+
+    /**
+     * Creates the writer of the text of an index. It ends the lines with {@code '\n'} rather than the line separator
+     * of the platform, so the same index gives the same file and fingerprint on every platform.
+     * @param out the stream to write to
+     * @return the writer
+     */
+    private static PrintWriter createIndexWriter(OutputStream out) {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, CHARSET))) {
+            @Override
+            public void println() {
+                // The println methods which take a value call this after printing it
+                write('\n');
+            }
+        };
+    }
 
+    /**
+     * Creates the file of an index, and wraps its stream in the format given by the suffix of the file name
+     * @param path location of the file
+     * @return the stream to write the plain text of the index to. Closing it finishes the file
+     * @throws IOException if there was an error creating the file
+     */
+    private static OutputStream createIndexOutput(Path path) throws IOException {
         Format format = determineFormat(path.getFileName().toString());
         if (format == null) {
-            throw new IllegalArgumentException("Suffix of file should be .txt or .zip");
+            throw new IllegalArgumentException("Suffix of file should be .txt, .txt.gz or .zip");
         }
         Files.createDirectories(path.getParent());
-        if (Files.exists(path)) {
-            Files.delete(path);
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path));
+        try {
+            if (format == Format.ZIP) {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                ZipEntry entry = new ZipEntry(ZIP_ENTRY);
+                // Do not let the time of saving change the zip, so the same index gives the same bytes
+                entry.setTime(0);
+                zip.putNextEntry(entry);
+                return zip;
+            } else if (format == Format.GZIP) {
+                // The gzip header has no timestamp, so this is reproducible too
+                return new GZIPOutputStream(out);
+            }
+            return out;
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
         }
-        if (format == Format.TEXT) {
-            Files.createFile(path);
-            saveIndex(path);
-        } else {
-            Path tempIndex = Files.createTempFile("working", ".txt");
-            try {
-                saveIndex(tempIndex);
-
-                URI jarUri = URI.create("jar:file:" + path.normalize().toAbsolutePath().toUri().getPath());
-                Map<String, String> env = Map.of("create", "true");
-                try (FileSystem jar = FileSystems.newFileSystem(jarUri, env)) {
-                    Path jarPath = jar.getPath("index.txt");
-                    Files.copy(tempIndex, jarPath);
+    }
+
+    private void saveContents(PrintWriter writer, StringTable strings) {
+        if (strings != StringTable.NONE) {
+            writer.println(VERSION + 2);
+            strings.save(writer);
+        }
+        for (String annotation : new TreeSet<>(indexes.keySet())) {
+            indexes.get(annotation).save(writer, strings);
+        }
+        Map<String, Set<String>> savedSupertypes = getPrunedSupertypes();
+        // These are outside the annotation indexes since they are shared by them all
+        saveClassLists(writer, HIERARCHY, savedSupertypes);
+        saveClassLists(writer, OVERRIDES, getOverridingMembers(savedSupertypes));
+    }
+
+    private static void saveClassLists(PrintWriter writer, String marker, Map<String, Set<String>> lists) {
+        if (lists.isEmpty()) {
+            return;
+        }
+        writer.println(marker);
+        for (Map.Entry<String, Set<String>> entry : lists.entrySet()) {
+            writer.print(entry.getKey());
+            for (String name : new TreeSet<>(entry.getValue())) {
+                writer.print(AnnotationIndex.MULTI_VALUE_FIELD_SEPARATOR);
+                writer.print(name);
+            }
+            writer.println();
+        }
+        writer.println();
+    }
+
+    /**
+     * Gets the part of the hierarchy which is saved. It is only used to find annotated methods and fields referenced
+     * via a subtype of the class declaring them, so only the classes with such a class among their ancestors are
+     * kept, which is a small part of the classes in the scanned jars. Since a class is kept or not depending on the
+     * annotated members of the whole index, a subtype is only linked to a class declaring annotated members if they
+     * were indexed together.
+     * @return the supertypes of the kept classes, sorted by class name
+     */
+    Map<String, Set<String>> getPrunedSupertypes() {
+        Set<String> declaringClasses = new HashSet<>();
+        for (AnnotationIndex index : indexes.values()) {
+            for (AnnotatedMethod method : index.getAnnotatedMethods()) {
+                declaringClasses.add(method.getClassName());
+            }
+            for (AnnotatedField field : index.getAnnotatedFields()) {
+                declaringClasses.add(field.getClassName());
+            }
+        }
+        Map<String, Set<String>> result = new TreeMap<>();
+        if (declaringClasses.isEmpty()) {
+            return result;
+        }
+        Map<String, Boolean> inheritsByClass = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : supertypes.entrySet()) {
+            if (inheritsAnnotatedMembers(entry.getKey(), declaringClasses, inheritsByClass)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the fields and methods declared by the classes of the saved hierarchy which override or hide an annotated
+     * field or method of one of their ancestors, in the format of {@link JarAnnotationIndex#getDeclaredMembers()}.
+     * The {@link RuntimeIndex} does not report those annotated members when they are referenced via the class.
+     * @param prunedSupertypes the saved hierarchy, see {@link #getPrunedSupertypes()}
+     * @return the members, indexed by the name of the class declaring them, sorted by class name
+     */
+    Map<String, Set<String>> getOverridingMembers(Map<String, Set<String>> prunedSupertypes) {
+        Map<String, Set<String>> result = new TreeMap<>();
+        if (declaredMembers.isEmpty()) {
+            return result;
+        }
+        Map<String, Set<String>> annotatedMembers = new HashMap<>();
+        for (AnnotationIndex index : indexes.values()) {
+            for (AnnotatedMethod method : index.getAnnotatedMethods()) {
+                annotatedMembers.computeIfAbsent(method.getClassName(), k -> new HashSet<>())
+                        .add(method.getMethodName() + method.getDescriptor());
+            }
+            for (AnnotatedField field : index.getAnnotatedFields()) {
+                annotatedMembers.computeIfAbsent(field.getClassName(), k -> new HashSet<>()).add(field.getFieldName());
+            }
+        }
+        for (String clazz : prunedSupertypes.keySet()) {
+            Set<String> declared = declaredMembers.get(clazz);
+            if (declared == null) {
+                continue;
+            }
+            Set<String> overriding = new TreeSet<>();
+            // The classes leading to the ones declaring annotated members are all in the saved hierarchy
+            Deque<String> pending = new ArrayDeque<>(prunedSupertypes.get(clazz));
+            Set<String> ancestors = new HashSet<>();
+            while (!pending.isEmpty()) {
+                String ancestor = pending.pop();
+                if (!ancestors.add(ancestor)) {
+                    continue;
                 }
-            } finally {
-                Files.delete(tempIndex);
+                Set<String> inherited = annotatedMembers.get(ancestor);
+                if (inherited != null) {
+                    for (String member : declared) {
+                        if (inherited.contains(member)) {
+                            overriding.add(member);
+                        }
+                    }
+                }
+                pending.addAll(prunedSupertypes.getOrDefault(ancestor, Collections.emptySet()));
+            }
+            if (!overriding.isEmpty()) {
+                result.put(clazz, overriding);
             }
         }
+        return result;
     }
 
-    private void saveIndex(Path path) throws IOException {
-        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(path.toFile())))) {
-            for (AnnotationIndex annotationIndex : indexes.values()) {
-                annotationIndex.save(writer);
+    private boolean inheritsAnnotatedMembers(String clazz, Set<String> declaringClasses, Map<String, Boolean> inheritsByClass) {
+        Boolean inherits = inheritsByClass.get(clazz);
+        if (inherits != null) {
+            return inherits;
+        }
+        // Guard against cycles, which can only happen with inconsistent jars on the classpath
+        inheritsByClass.put(clazz, Boolean.FALSE);
+        inherits = false;
+        for (String supertype : supertypes.getOrDefault(clazz, Collections.emptySet())) {
+            if (declaringClasses.contains(supertype) || inheritsAnnotatedMembers(supertype, declaringClasses, inheritsByClass)) {
+                inherits = true;
+                break;
             }
         }
+        inheritsByClass.put(clazz, inherits);
+        return inherits;
+    }
+
+    /**
+     * Reads the fingerprint of a saved index, without reading the rest of the index. The fingerprint is a 64-bit
+     * hash of the contents of the index, so indexes with the same contents have the same fingerprint, and it can be
+     * used as a cache key for the index.
+     * @param path the location of the saved index
+     * @return the fingerprint as 16 hexadecimal digits, or {@code null} if the index was saved without one by an
+     * older version
+     * @throws IOException if there were problems reading the file
+     */
+    public static String readFingerprint(Path path) throws IOException {
+        if (!Files.exists(path) || Files.isDirectory(path)) {
+            throw new FileNotFoundException(path.toString());
+        }
+        Format format = determineFormat(path.getFileName().toString());
+        return readFingerprint(openIndex(Files.newInputStream(path), format, path));
+    }
+
+    private static String readFingerprint(InputStream inputStream) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, CHARSET))) {
+            String line = reader.readLine();
+            return line != null && line.startsWith(FINGERPRINT) ? line.substring(FINGERPRINT.length()) : null;
+        }
     }
 
     /**
@@ -143,6 +589,16 @@ public class OverallIndex {
         return indexes.keySet();
     }
 
+    /**
+     * Gets the direct superclasses and superinterfaces of the classes in the scanned jars. This is used by the
+     * {@link RuntimeIndex} to find annotated members which are referenced via a subtype of the class declaring them.
+     * Only part of them is saved, see {@link #getPrunedSupertypes()}.
+     * @return the supertype names, indexed by the name of the class
+     */
+    Map<String, Set<String>> getSupertypes() {
+        return supertypes;
+    }
+
     /**
      * Gets the index of locations where we have searched for a particular annotation
      * @param annotation
@@ -200,56 +656,56 @@ public class OverallIndex {
     }
 
     private static OverallIndex loadIndex(URL url) throws IOException {
+        return readFromInputStream(openIndex(url));
+    }
+
+    /**
+     * Opens a saved index to read its plain text
+     * @param url the location of the index. The suffix determines the {@link Format}
+     * @return the stream to read the text of the index from
+     * @throws IOException if there were problems opening the index
+     */
+    static InputStream openIndex(URL url) throws IOException {
         Format format = determineFormat(url.getFile());
-        if (format == Format.ZIP) {
-            // Look for index.txt in the zip file. We need to copy it to a temp file first to read it
-            Path temp = Files.createTempFile("index", "zip");
-            try (InputStream in = new BufferedInputStream(url.openStream())) {
-                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp.toFile()))) {
-                    byte[] bytes = new byte[8192];
-
-                    int read = in.read(bytes);
-                    while (read != -1) {
-                        out.write(bytes, 0, read);
-                        read = in.read(bytes);
-                    }
-                }
+        // Streamed straight from the URL, so indexes in jars are read without copying them to the file system
+        return openIndex(url.openStream(), format, url);
+    }
 
-                try (ZipFile zipFile = new ZipFile(temp.toFile())) {
-                    ZipEntry indexEntry = zipFile.getEntry("index.txt");
-                    if (indexEntry == null) {
-                        throw new IllegalArgumentException(url + " does not appear to be a valid zipped index");
-                    }
-                    try (InputStream inputStream = zipFile.getInputStream(indexEntry)) {
-                        return readFromInputStream(inputStream);
+    /**
+     * Wraps the stream of a saved index so that the plain text of the index can be read from it. For a zip, the
+     * stream is positioned at the start of the index entry.
+     * @param in the stream of the saved index
+     * @param format the format of the saved index
+     * @param location where the index comes from, for the error message
+     * @return the stream to read the text of the index from. Closing it closes {@code in}
+     * @throws IOException if there were problems reading the stream
+     */
+    private static InputStream openIndex(InputStream in, Format format, Object location) throws IOException {
+        try {
+            if (format == Format.ZIP) {
+                ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in));
+                for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    if (entry.getName().equals(ZIP_ENTRY)) {
+                        return zip;
                     }
                 }
-
-            } finally {
-                Files.delete(temp);
+                throw new IllegalArgumentException(location + " does not appear to be a valid zipped index");
+            } else if (format == Format.GZIP) {
+                return new GZIPInputStream(in);
             }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
         }
-        return readFromInputStream(url.openStream());
     }
 
     private static OverallIndex readFromInputStream(InputStream inputStream) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-            Map<String, AnnotationIndex> indexes = AnnotationIndex.loadAll(reader);
-            return new OverallIndex(indexes);
-        }
+        return IndexTextParser.parse(inputStream);
     }
 
-
-    private static String determineSuffix(String fileName) {
-        int index = fileName.lastIndexOf(".");
-        if (index == -1) {
-            return null;
-        }
-        return fileName.substring(index);
-    }
     private static Format determineFormat(String fileName) {
-        String suffix = determineSuffix(fileName);
-        return Format.find(suffix);
+        return Format.find(fileName);
     }
 
     /**
@@ -262,11 +718,23 @@ public class OverallIndex {
         if (this == o) return true;
         if (!(o instanceof OverallIndex)) return false;
         OverallIndex that = (OverallIndex) o;
-        return Objects.equals(indexes, that.indexes);
+        // Only the saved part of the hierarchy is compared, so an index equals the one loaded from it
+        Map<String, Set<String>> prunedSupertypes = getPrunedSupertypes();
+        Map<String, Set<String>> thatPrunedSupertypes = that.getPrunedSupertypes();
+        return Objects.equals(indexes, that.indexes) && Objects.equals(prunedSupertypes, thatPrunedSupertypes)
+                && Objects.equals(getOverridingMembers(prunedSupertypes), that.getOverridingMembers(thatPrunedSupertypes));
+    }
+
+    /**
+     * Writes the contents of an index, for {@link #save(Path, ContentWriter)}
+     */
+    interface ContentWriter {
+        void write(PrintWriter writer) throws IOException;
     }
 
     public enum Format {
         TEXT(".txt"),
+        GZIP(".txt.gz"),
         ZIP(".zip");
 
         private final String suffix;
@@ -275,15 +743,14 @@ public class OverallIndex {
             this.suffix = suffix;
         }
 
-        static Format find(String suffix) {
-            if (suffix == null) {
+        static Format find(String fileName) {
+            if (fileName == null) {
                 return null;
             }
-            switch (suffix) {
-                case ".txt":
-                    return Format.TEXT;
-                case ".zip":
-                    return Format.ZIP;
+            for (Format format : values()) {
+                if (fileName.endsWith(format.suffix)) {
+                    return format;
+                }
             }
             return null;
         }
@@ -0,0 +1,211 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.ZipEntry;
+
+/**
+ * <p>Indexes several jars in parallel on a fork-join pool, for {@link OverallIndex#scanJars(Collection, Set, Set)}. The
+ * list of jars is split in halves until each task has a single jar, and the class entries of jars with more than
+ * {@link #DEFAULT_ENTRIES_PER_TASK} class entries are split in the same way, so one large jar does not hold up the
+ * whole scan. A top level class and the classes nested in it are always indexed by the same task, since the type
+ * variables of the enclosing classes are needed to work out the descriptors of the members of the nested classes. Jars
+ * shipping a Jandex index which can be used instead are not split, since only that index is read. Neither are nested
+ * jars and jars held in memory, which can only be read from start to end, so those are parallelized across the jars
+ * only.</p>
+ *
+ * <p>Each task indexes into its own {@link OverallIndex}, and when joining the tasks the result of one is merged into
+ * the other. So no state is shared between the tasks, and no locking is needed.</p>
+ */
+final class ParallelJarIndexer {
+    /**
+     * The number of class entries of a jar above which it is split into several tasks
+     */
+    static final int DEFAULT_ENTRIES_PER_TASK = 1024;
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private final Set<String> annotations;
+    private final Set<String> excludedClasses;
+    private final int targetJavaVersion;
+    private final boolean useJandex;
+    private final boolean usePrebuiltIndex;
+    private final int entriesPerTask;
+
+    ParallelJarIndexer(Set<String> annotations, Set<String> excludedClasses, int targetJavaVersion, boolean useJandex,
+                       boolean usePrebuiltIndex, int entriesPerTask) {
+        if (annotations == null || excludedClasses == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (entriesPerTask < 1) {
+            throw new IllegalArgumentException("The number of entries per task must be at least 1");
+        }
+        this.annotations = annotations;
+        this.excludedClasses = excludedClasses;
+        this.targetJavaVersion = targetJavaVersion;
+        this.useJandex = useJandex;
+        this.usePrebuiltIndex = usePrebuiltIndex;
+        this.entriesPerTask = entriesPerTask;
+    }
+
+    /**
+     * Indexes the jars
+     * @param pool the pool to run the tasks on
+     * @param jars the sources of the jars
+     * @return an index containing the results for all the jars
+     * @throws IOException if there were problems reading any of the jars
+     */
+    OverallIndex scanJars(ForkJoinPool pool, Collection<ArchiveSource> jars) throws IOException {
+        List<ArchiveSource> jarList = new ArrayList<>(jars);
+        if (jarList.isEmpty()) {
+            return new OverallIndex();
+        }
+        try {
+            return pool.invoke(new JarsTask(jarList));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private OverallIndex createResult(Map<String, JarAnnotationIndex> jarAnnotationIndexes, int skippedEntryCount) {
+        OverallIndex result = new OverallIndex();
+        result.addJarAnnotationIndexes(jarAnnotationIndexes, skippedEntryCount);
+        return result;
+    }
+
+    private class JarsTask extends RecursiveTask<OverallIndex> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ArchiveSource> jars;
+
+        JarsTask(List<ArchiveSource> jars) {
+            this.jars = jars;
+        }
+
+        @Override
+        protected OverallIndex compute() {
+            if (jars.size() == 1) {
+                try {
+                    return scanJar(jars.get(0));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int middle = jars.size() / 2;
+            JarsTask second = new JarsTask(jars.subList(middle, jars.size()));
+            second.fork();
+            OverallIndex result = new JarsTask(jars.subList(0, middle)).compute();
+            result.mergeScanResults(second.join());
+            return result;
+        }
+
+        private OverallIndex scanJar(ArchiveSource jar) throws IOException {
+            JarAnnotationIndexer indexer = new JarAnnotationIndexer(jar, annotations, excludedClasses, targetJavaVersion)
+                    .setUseJandex(useJandex)
+                    .setUsePrebuiltIndex(usePrebuiltIndex);
+            try (Archive archive = indexer.open()) {
+                MultiReleaseJarEntries entries = MultiReleaseJarEntries.select(archive, targetJavaVersion);
+                Map<String, JarAnnotationIndex> prebuilt = indexer.scanPrebuiltIndex(archive, entries.getClassEntries());
+                if (prebuilt != null) {
+                    // Nothing to split, since only the index entry is read
+                    return createResult(prebuilt, entries.getSkippedEntryCount());
+                }
+                OverallIndex result;
+                if (archive.isRandomAccess()) {
+                    // The archive can be read by several threads, and stays open until all the entry tasks are joined
+                    List<ZipEntry> classEntries = new ArrayList<>(entries.getClassEntries());
+                    // Stable, so the entries of each top level class stay in the order of the jar
+                    classEntries.sort(Comparator.comparing(e -> getTopLevelName(e.getName())));
+                    List<String> topLevelNames = new ArrayList<>(classEntries.size());
+                    for (ZipEntry entry : classEntries) {
+                        topLevelNames.add(getTopLevelName(entry.getName()));
+                    }
+                    result = new EntryRangeTask(indexer, archive, classEntries, topLevelNames).compute();
+                } else {
+                    // Splitting would mean streaming the whole jar once per task
+                    result = createResult(indexer.scanEntries(archive, entries.getClassEntries()), 0);
+                }
+                result.addSkippedEntryCount(entries.getSkippedEntryCount());
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the top level class of a class entry, i.e. of the class itself or of the class it is nested in
+     * @param entryName the name of the entry, which may be a versioned entry of a multi-release jar
+     * @return the name of the entry of the top level class, without the {@code .class} suffix
+     */
+    static String getTopLevelName(String entryName) {
+        String name = MultiReleaseJarEntries.getBaseName(entryName);
+        int end = name.indexOf('$', name.lastIndexOf('/') + 1);
+        if (end < 0) {
+            end = name.endsWith(CLASS_FILE_SUFFIX) ? name.length() - CLASS_FILE_SUFFIX.length() : name.length();
+        }
+        return name.substring(0, end);
+    }
+
+    private class EntryRangeTask extends RecursiveTask<OverallIndex> {
+        private static final long serialVersionUID = 1L;
+
+        private final JarAnnotationIndexer indexer;
+        private final Archive archive;
+        private final List<ZipEntry> entries;
+        /**
+         * The top level class names of the entries, which are sorted by them
+         */
+        private final List<String> topLevelNames;
+
+        EntryRangeTask(JarAnnotationIndexer indexer, Archive archive, List<ZipEntry> entries, List<String> topLevelNames) {
+            this.indexer = indexer;
+            this.archive = archive;
+            this.entries = entries;
+            this.topLevelNames = topLevelNames;
+        }
+
+        @Override
+        protected OverallIndex compute() {
+            int middle = entries.size() <= entriesPerTask ? -1 : findSplit();
+            if (middle < 0) {
+                try {
+                    return createResult(indexer.scanEntries(archive, entries), 0);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            EntryRangeTask second = new EntryRangeTask(indexer, archive, entries.subList(middle, entries.size()),
+                    topLevelNames.subList(middle, entries.size()));
+            second.fork();
+            OverallIndex result = new EntryRangeTask(indexer, archive, entries.subList(0, middle),
+                    topLevelNames.subList(0, middle)).compute();
+            result.mergeScanResults(second.join());
+            return result;
+        }
+
+        /**
+         * Finds where to split the entries nearest the middle, without splitting the entries of a top level class
+         * @return the index of the first entry of the second half, or {@code -1} if all the entries are for the same
+         * top level class
+         */
+        private int findSplit() {
+            int middle = entries.size() / 2;
+            for (int after = middle, before = middle; after < entries.size() || before > 0; after++, before--) {
+                if (after < entries.size() && !topLevelNames.get(after).equals(topLevelNames.get(after - 1))) {
+                    return after;
+                }
+                if (before > 0 && !topLevelNames.get(before).equals(topLevelNames.get(before - 1))) {
+                    return before;
+                }
+            }
+            return -1;
+        }
+    }
+}
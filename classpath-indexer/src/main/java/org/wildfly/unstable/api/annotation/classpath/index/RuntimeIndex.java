@@ -9,6 +9,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -16,6 +17,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Supplier;
 
 /**
@@ -67,12 +69,30 @@ public class RuntimeIndex {
 
     //
 
+    /**
+     * The keys of {@link #allClassesWithAnnotations} indexed by a key containing the class name bytes without the
+     * length prefix. This is used to look up class names embedded in descriptors.
+     */
+    private final Map<ByteArrayKey, ByteArrayKey> classKeysByUnprefixedName;
+
+    /**
+     * The keys of {@link #allClassesWithAnnotations} indexed by a key containing the class name in dot format,
+     * e.g. {@code org.acme.MyClass}, with the length prefix. This is used to look up class names in string constants.
+     */
+    private final Map<ByteArrayKey, ByteArrayKey> classKeysByDotName;
+
     /**
      * Annotations with annotations. Although these are also part of {@link #allClassesWithAnnotations}, this field
      * will be needed as input to the Jandex scanning for annotation usage
      */
     private final Map<String, Set<String>> annotationsWithAnnotations;
 
+    /**
+     * The names of the annotations in {@link #annotationsWithAnnotations} indexed by the ByteArrayKey of their type
+     * descriptor (e.g. {@code Lorg/acme/MyAnnotation;}), which is how annotations are referred to in the bytecode of
+     * the classes using them.
+     */
+    private final Map<ByteArrayKey, String> annotatedAnnotationsByDescriptor;
 
     /**
      * Keys in 'nested order' are class name, method name, descriptor. The set is the annotations for the method
@@ -111,9 +131,15 @@ public class RuntimeIndex {
      */
     private final Map<ByteArrayKey, String> methodDescriptorsByKey;
 
+    /**
+     * Fingerprint of the contents of the {@link OverallIndex} this runtime index was created from
+     */
+    private final long fingerprint;
+
 
     private RuntimeIndex(Map<ByteArrayKey, Set<String>> allClassesWithAnnotations,
                          Map<String, Set<String>> annotationsWithAnnotations,
+                         Map<ByteArrayKey, String> annotatedAnnotationsByDescriptor,
                          Map<ByteArrayKey, Map<ByteArrayKey,
                              Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations,
                          Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> fieldsWithAnnotations,
@@ -121,9 +147,27 @@ public class RuntimeIndex {
                          Map<String, ByteArrayKey> classKeysByName,
                          Map<ByteArrayKey, String> methodNamesByKey,
                          Map<ByteArrayKey, String> fieldNamesByKey,
-                         Map<ByteArrayKey, String> methodDescriptorsByKey) {
+                         Map<ByteArrayKey, String> methodDescriptorsByKey,
+                         long fingerprint) {
         this.allClassesWithAnnotations = Collections.unmodifiableMap(allClassesWithAnnotations);
+        Map<ByteArrayKey, ByteArrayKey> classKeysByUnprefixedName = new HashMap<>();
+        Map<ByteArrayKey, ByteArrayKey> classKeysByDotName = new HashMap<>();
+        for (ByteArrayKey key : allClassesWithAnnotations.keySet()) {
+            classKeysByUnprefixedName.put(new ByteArrayKey(key.arr, key.start + 2, key.length - 2), key);
+            // The multibyte sequences of the modified UTF-8 used in the keys never contain '/', so we can
+            // replace the bytes directly
+            byte[] dotName = Arrays.copyOfRange(key.arr, key.start, key.start + key.length);
+            for (int i = 2; i < dotName.length; i++) {
+                if (dotName[i] == '/') {
+                    dotName[i] = '.';
+                }
+            }
+            classKeysByDotName.put(new ByteArrayKey(dotName), key);
+        }
+        this.classKeysByUnprefixedName = Collections.unmodifiableMap(classKeysByUnprefixedName);
+        this.classKeysByDotName = Collections.unmodifiableMap(classKeysByDotName);
         this.annotationsWithAnnotations = Collections.unmodifiableMap(annotationsWithAnnotations);
+        this.annotatedAnnotationsByDescriptor = Collections.unmodifiableMap(annotatedAnnotationsByDescriptor);
         this.methodsWithAnnotations = Collections.unmodifiableMap(methodsWithAnnotations);
         this.fieldsWithAnnotations = Collections.unmodifiableMap(fieldsWithAnnotations);
         this.classNamesByKey = Collections.unmodifiableMap(classNamesByKey);
@@ -131,6 +175,7 @@ public class RuntimeIndex {
         this.methodNamesByKey = Collections.unmodifiableMap(methodNamesByKey);
         this.fieldNamesByKey = Collections.unmodifiableMap(fieldNamesByKey);
         this.methodDescriptorsByKey = Collections.unmodifiableMap(methodDescriptorsByKey);
+        this.fingerprint = fingerprint;
     }
 
     /**
@@ -177,8 +222,69 @@ public class RuntimeIndex {
             addConstructorsWithAnnotations(annotation, annotationIndex, methodsWithAnnotations, methodNamesByKey, methodDescriptorsByKey, classNamesByKey, classKeysByName);
             addFieldsWithAnnotations(annotation, annotationIndex, fieldsWithAnnotations, fieldNamesByKey, classNamesByKey, classKeysByName);
         }
+        Map<String, Set<String>> supertypes = overallIndex.getPrunedSupertypes();
+        Map<String, Set<String>> overridingMembers = overallIndex.getOverridingMembers(supertypes);
+        addInheritedMembers(supertypes, overridingMembers, methodsWithAnnotations, fieldsWithAnnotations, classNamesByKey, classKeysByName,
+                methodNamesByKey, methodDescriptorsByKey, fieldNamesByKey);
+
+        Map<ByteArrayKey, String> annotatedAnnotationsByDescriptor = new HashMap<>();
+        for (String annotation : annotationsWithAnnotations.keySet()) {
+            annotatedAnnotationsByDescriptor.put(
+                    convertStringToByteArrayKey("L" + convertClassNameToVmFormat(annotation) + ";"), annotation);
+        }
+
+        return new RuntimeIndex(allClassesWithAnnotations, annotationsWithAnnotations, annotatedAnnotationsByDescriptor, methodsWithAnnotations, fieldsWithAnnotations, classNamesByKey, classKeysByName, methodNamesByKey, fieldNamesByKey, methodDescriptorsByKey, calculateFingerprint(overallIndex, supertypes, overridingMembers));
+    }
+
+    /**
+     * Calculates a fingerprint of the contents of the overall index. The entries of each index are held in sets
+     * with no defined order, so the fingerprints of the individual entries are summed to make the result independent
+     * of the iteration order. Only the saved parts of the hierarchy and of the declared members are included, so an
+     * index gives the same fingerprint as the one loaded from it.
+     */
+    private static long calculateFingerprint(OverallIndex overallIndex, Map<String, Set<String>> supertypes,
+                                             Map<String, Set<String>> overridingMembers) {
+        long fingerprint = 0;
+        for (String annotation : overallIndex.getAnnotations()) {
+            AnnotationIndex annotationIndex = overallIndex.getAnnotationIndex(annotation);
+            for (String clazz : annotationIndex.getAnnotatedInterfaces()) {
+                fingerprint += entryFingerprint(annotation, 'I', clazz);
+            }
+            for (String clazz : annotationIndex.getAnnotatedClasses()) {
+                fingerprint += entryFingerprint(annotation, 'C', clazz);
+            }
+            for (String clazz : annotationIndex.getAnnotatedAnnotations()) {
+                fingerprint += entryFingerprint(annotation, 'A', clazz);
+            }
+            for (AnnotatedMethod method : annotationIndex.getAnnotatedMethods()) {
+                fingerprint += entryFingerprint(annotation, 'M', method.getClassName(), method.getMethodName(), method.getDescriptor());
+            }
+            for (AnnotatedConstructor constructor : annotationIndex.getAnnotatedConstructors()) {
+                fingerprint += entryFingerprint(annotation, 'K', constructor.getClassName(), constructor.getDescriptor());
+            }
+            for (AnnotatedField field : annotationIndex.getAnnotatedFields()) {
+                fingerprint += entryFingerprint(annotation, 'F', field.getClassName(), field.getFieldName());
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : supertypes.entrySet()) {
+            for (String supertype : entry.getValue()) {
+                fingerprint += entryFingerprint("", 'H', entry.getKey(), supertype);
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : overridingMembers.entrySet()) {
+            for (String member : entry.getValue()) {
+                fingerprint += entryFingerprint("", 'O', entry.getKey(), member);
+            }
+        }
+        return fingerprint;
+    }
 
-        return new RuntimeIndex(allClassesWithAnnotations, annotationsWithAnnotations, methodsWithAnnotations, fieldsWithAnnotations, classNamesByKey, classKeysByName, methodNamesByKey, fieldNamesByKey, methodDescriptorsByKey);
+    private static long entryFingerprint(String annotation, char kind, String... parts) {
+        Fingerprint fingerprint = new Fingerprint().update(annotation).update((byte) kind);
+        for (String part : parts) {
+            fingerprint.update((byte) 0).update(part);
+        }
+        return fingerprint.getValue();
     }
 
     private static void addClassesWithAnnotations(
@@ -266,6 +372,125 @@ public class RuntimeIndex {
         }
     }
 
+    /**
+     * Member references in the bytecode use the static type at the call site, which might be a subclass or
+     * subinterface of the class declaring the annotated member. So that a single lookup is enough when scanning,
+     * the annotated methods and fields of all supertypes are added to each subtype here. Constructors are not
+     * inherited so they are left out. An annotated member is not added if the subtype, or a class between it and
+     * the class declaring the member, overrides or hides it.
+     */
+    private static void addInheritedMembers(
+            Map<String, Set<String>> supertypes,
+            Map<String, Set<String>> overridingMembers,
+            Map<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> methodsWithAnnotations,
+            Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> fieldsWithAnnotations,
+            Map<ByteArrayKey, String> classNamesByKey,
+            Map<String, ByteArrayKey> classKeysByName,
+            Map<ByteArrayKey, String> methodNamesByKey,
+            Map<ByteArrayKey, String> methodDescriptorsByKey,
+            Map<ByteArrayKey, String> fieldNamesByKey) {
+
+        // The keys of the classes declaring annotated members, before any inherited ones are added
+        Set<ByteArrayKey> declaringClasses = new HashSet<>(methodsWithAnnotations.keySet());
+        declaringClasses.addAll(fieldsWithAnnotations.keySet());
+
+        Map<String, Set<String>> ancestorsByClass = new HashMap<>();
+        for (String clazz : supertypes.keySet()) {
+            ByteArrayKey vmClass = null;
+            Set<String> ancestors = getAncestors(clazz, supertypes, ancestorsByClass);
+            // The class and its ancestors which override or hide annotated members, usually none
+            List<String> overridingClasses = new ArrayList<>();
+            if (overridingMembers.containsKey(clazz)) {
+                overridingClasses.add(clazz);
+            }
+            for (String ancestor : ancestors) {
+                if (overridingMembers.containsKey(ancestor)) {
+                    overridingClasses.add(ancestor);
+                }
+            }
+            for (String ancestor : ancestors) {
+                ByteArrayKey ancestorKey = classKeysByName.get(ancestor);
+                if (ancestorKey == null || !declaringClasses.contains(ancestorKey)) {
+                    continue;
+                }
+                if (vmClass == null) {
+                    vmClass = convertStringToByteArrayKey(convertClassNameToVmFormat(clazz));
+                    classNamesByKey.put(vmClass, clazz);
+                    classKeysByName.put(clazz, vmClass);
+                }
+
+                Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> ancestorMethods = methodsWithAnnotations.get(ancestorKey);
+                if (ancestorMethods != null) {
+                    for (Map.Entry<ByteArrayKey, Map<ByteArrayKey, Set<String>>> methodEntry : ancestorMethods.entrySet()) {
+                        if (methodEntry.getKey().equals(BYTECODE_CONSTRUCTOR_KEY)) {
+                            continue;
+                        }
+                        Map<ByteArrayKey, Set<String>> descriptorsForMethod = null;
+                        for (Map.Entry<ByteArrayKey, Set<String>> descriptorEntry : methodEntry.getValue().entrySet()) {
+                            if (!overridingClasses.isEmpty() && isOverridden(clazz, ancestor, overridingClasses, overridingMembers, ancestorsByClass,
+                                    methodNamesByKey.get(methodEntry.getKey()) + methodDescriptorsByKey.get(descriptorEntry.getKey()))) {
+                                continue;
+                            }
+                            if (descriptorsForMethod == null) {
+                                descriptorsForMethod = methodsWithAnnotations
+                                        .computeIfAbsent(vmClass, k -> new HashMap<>())
+                                        .computeIfAbsent(methodEntry.getKey(), k -> new HashMap<>());
+                            }
+                            descriptorsForMethod.computeIfAbsent(descriptorEntry.getKey(), k -> new HashSet<>())
+                                    .addAll(descriptorEntry.getValue());
+                        }
+                    }
+                }
+
+                Map<ByteArrayKey, Set<String>> ancestorFields = fieldsWithAnnotations.get(ancestorKey);
+                if (ancestorFields != null) {
+                    for (Map.Entry<ByteArrayKey, Set<String>> fieldEntry : ancestorFields.entrySet()) {
+                        if (!overridingClasses.isEmpty() && isOverridden(clazz, ancestor, overridingClasses, overridingMembers, ancestorsByClass,
+                                fieldNamesByKey.get(fieldEntry.getKey()))) {
+                            continue;
+                        }
+                        fieldsWithAnnotations.computeIfAbsent(vmClass, k -> new HashMap<>())
+                                .computeIfAbsent(fieldEntry.getKey(), k -> new HashSet<>()).addAll(fieldEntry.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a member inherited from an ancestor is overridden or hidden by the class itself, or by one of
+     * its ancestors which is a subtype of that ancestor
+     * @param member the member, in the format of {@link OverallIndex#getOverridingMembers(Map)}
+     */
+    private static boolean isOverridden(String clazz, String ancestor, List<String> overridingClasses,
+                                        Map<String, Set<String>> overridingMembers, Map<String, Set<String>> ancestorsByClass,
+                                        String member) {
+        for (String overridingClass : overridingClasses) {
+            if (overridingMembers.get(overridingClass).contains(member)
+                    && (overridingClass.equals(clazz) || ancestorsByClass.getOrDefault(overridingClass, Collections.emptySet()).contains(ancestor))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> getAncestors(String clazz, Map<String, Set<String>> supertypes, Map<String, Set<String>> ancestorsByClass) {
+        Set<String> ancestors = ancestorsByClass.get(clazz);
+        if (ancestors != null) {
+            return ancestors;
+        }
+        ancestors = new HashSet<>();
+        // Guard against cycles, which can only happen with inconsistent jars on the classpath
+        ancestorsByClass.put(clazz, ancestors);
+        for (String supertype : supertypes.getOrDefault(clazz, Collections.emptySet())) {
+            if (ancestors.add(supertype)) {
+                ancestors.addAll(getAncestors(supertype, supertypes, ancestorsByClass));
+            }
+        }
+        ancestors.remove(clazz);
+        return ancestors;
+    }
+
     private static ByteArrayKey convertStringToByteArrayKey(String s) {
         BYTE_ARRAY_OUTPUT_STREAM.reset();
         try (DataOutputStream dout = new DataOutputStream(BYTE_ARRAY_OUTPUT_STREAM)) {
@@ -296,6 +521,134 @@ public class RuntimeIndex {
         return s.replaceAll("/", ".");
     }
 
+    /**
+     * Gets a fingerprint of the contents of this index. Two runtime indexes created from the same
+     * index entries have the same fingerprint, regardless of which files the entries were loaded from.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Creates a view of this index only containing the entries for some of the annotations. Lookups against the
+     * view will not find classes and members which have only been annotated with other annotations, and the
+     * annotations returned by the lookups will only include the selected ones.
+     *
+     * @param annotations the names of the annotations to keep
+     * @return the filtered index
+     */
+    public RuntimeIndex filter(Set<String> annotations) {
+        Map<ByteArrayKey, Set<String>> filteredClasses = filterAnnotationMap(allClassesWithAnnotations, annotations);
+        Map<String, Set<String>> filteredAnnotations = filterAnnotationMap(annotationsWithAnnotations, annotations);
+        Map<ByteArrayKey, String> filteredDescriptors = new HashMap<>();
+        for (Map.Entry<ByteArrayKey, String> entry : annotatedAnnotationsByDescriptor.entrySet()) {
+            if (filteredAnnotations.containsKey(entry.getValue())) {
+                filteredDescriptors.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Map<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> filteredMethods = new HashMap<>();
+        for (Map.Entry<ByteArrayKey, Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>>> classEntry : methodsWithAnnotations.entrySet()) {
+            Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> methods = new HashMap<>();
+            for (Map.Entry<ByteArrayKey, Map<ByteArrayKey, Set<String>>> methodEntry : classEntry.getValue().entrySet()) {
+                Map<ByteArrayKey, Set<String>> descriptors = filterAnnotationMap(methodEntry.getValue(), annotations);
+                if (!descriptors.isEmpty()) {
+                    methods.put(methodEntry.getKey(), descriptors);
+                }
+            }
+            if (!methods.isEmpty()) {
+                filteredMethods.put(classEntry.getKey(), methods);
+            }
+        }
+
+        Map<ByteArrayKey, Map<ByteArrayKey, Set<String>>> filteredFields = new HashMap<>();
+        for (Map.Entry<ByteArrayKey, Map<ByteArrayKey, Set<String>>> classEntry : fieldsWithAnnotations.entrySet()) {
+            Map<ByteArrayKey, Set<String>> fields = filterAnnotationMap(classEntry.getValue(), annotations);
+            if (!fields.isEmpty()) {
+                filteredFields.put(classEntry.getKey(), fields);
+            }
+        }
+
+        // Make the fingerprint depend on the selected annotations as well
+        Fingerprint filteredFingerprint = new Fingerprint().update(fingerprint);
+        for (String annotation : new TreeSet<>(annotations)) {
+            filteredFingerprint.update((byte) 0).update(annotation);
+        }
+
+        // The name lookups are shared, since entries which were filtered out will never be looked up
+        return new RuntimeIndex(filteredClasses, filteredAnnotations, filteredDescriptors, filteredMethods, filteredFields,
+                classNamesByKey, classKeysByName, methodNamesByKey, fieldNamesByKey, methodDescriptorsByKey,
+                filteredFingerprint.getValue());
+    }
+
+    /**
+     * Creates a view of this index only containing the entries for the classes accepted by a filter. Lookups against
+     * the view will not find classes, or members of classes, which were not accepted, so references to them are not
+     * reported as usages. For methods and fields inherited from a supertype, the class the reference is made
+     * against is checked, rather than the supertype declaring the member.
+     *
+     * @param filter the filter for the classes to keep
+     * @return the filtered index
+     */
+    public RuntimeIndex filter(ClassNameFilter filter) {
+        if (filter == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        Map<ByteArrayKey, Set<String>> filteredClasses = filterClassMap(allClassesWithAnnotations, filter);
+        Map<String, Set<String>> filteredAnnotations = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : annotationsWithAnnotations.entrySet()) {
+            ByteArrayKey key = classKeysByName.get(entry.getKey());
+            if (key == null ? filter.accepts(entry.getKey()) : filter.accepts(key)) {
+                filteredAnnotations.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Map<ByteArrayKey, String> filteredDescriptors = new HashMap<>();
+        for (Map.Entry<ByteArrayKey, String> entry : annotatedAnnotationsByDescriptor.entrySet()) {
+            if (filteredAnnotations.containsKey(entry.getValue())) {
+                filteredDescriptors.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // Make the fingerprint depend on the filter as well
+        long filteredFingerprint = new Fingerprint().update(fingerprint).update((byte) 1).update(filter.getFingerprint()).getValue();
+
+        // The name lookups are shared, since entries which were filtered out will never be looked up
+        return new RuntimeIndex(filteredClasses, filteredAnnotations, filteredDescriptors,
+                filterClassMap(methodsWithAnnotations, filter), filterClassMap(fieldsWithAnnotations, filter),
+                classNamesByKey, classKeysByName, methodNamesByKey, fieldNamesByKey, methodDescriptorsByKey,
+                filteredFingerprint);
+    }
+
+    private static <V> Map<ByteArrayKey, V> filterClassMap(Map<ByteArrayKey, V> map, ClassNameFilter filter) {
+        Map<ByteArrayKey, V> filtered = new HashMap<>();
+        for (Map.Entry<ByteArrayKey, V> entry : map.entrySet()) {
+            if (filter.accepts(entry.getKey())) {
+                filtered.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return filtered;
+    }
+
+    private static <K> Map<K, Set<String>> filterAnnotationMap(Map<K, Set<String>> map, Set<String> annotations) {
+        Map<K, Set<String>> filtered = new HashMap<>();
+        for (Map.Entry<K, Set<String>> entry : map.entrySet()) {
+            Set<String> entryAnnotations = entry.getValue();
+            if (annotations.containsAll(entryAnnotations)) {
+                // Share the set rather than copying it
+                filtered.put(entry.getKey(), entryAnnotations);
+            } else {
+                Set<String> kept = new HashSet<>(entryAnnotations);
+                kept.retainAll(annotations);
+                if (!kept.isEmpty()) {
+                    filtered.put(entry.getKey(), kept);
+                }
+            }
+        }
+        return filtered;
+    }
+
     /**
      * Gets the annotations for a class
      *
@@ -306,6 +659,30 @@ public class RuntimeIndex {
         return allClassesWithAnnotations.get(key);
     }
 
+    /**
+     * Gets the key of an annotated class, from a key which does not include the length prefix used by the keys
+     * in this index. This is used for class names embedded in other constant pool entries, such as descriptors,
+     * where there is no length prefix.
+     *
+     * @param name key for the class name bytes in JVM format, e.g. {@code org/acme/MyClass}, without the length prefix
+     * @return the key to use for the other lookups in this index. May be {@code null} if the class is not annotated
+     */
+    public ByteArrayKey getClassKeyFromUnprefixedName(ByteArrayKey name) {
+        return classKeysByUnprefixedName.get(name);
+    }
+
+    /**
+     * Gets the key of an annotated class, from a key containing the class name in dot format. This is used for
+     * string constants, which may contain class names which are loaded reflectively, e.g. via
+     * {@code Class.forName("org.acme.MyClass")}.
+     *
+     * @param name key for the class name bytes in dot format, e.g. {@code org.acme.MyClass}, with the length prefix
+     * @return the key to use for the other lookups in this index. May be {@code null} if the class is not annotated
+     */
+    public ByteArrayKey getClassKeyFromDotName(ByteArrayKey name) {
+        return classKeysByDotName.get(name);
+    }
+
     /**
      * Gets the annotations for an annotation
      * @param annotation the name of the annotation
@@ -324,6 +701,17 @@ public class RuntimeIndex {
         return annotationsWithAnnotations.keySet();
     }
 
+    /**
+     * Gets the name of an annotation which has been annotated with one of the annotations we searched for when
+     * creating the {@link OverallIndex}, from its type descriptor
+     *
+     * @param descriptor the type descriptor of the annotation, e.g. {@code Lorg/acme/MyAnnotation;}
+     * @return the annotation name. May be {@code null} if the descriptor is not that of an annotated annotation
+     */
+    public String getAnnotatedAnnotationForDescriptor(ByteArrayKey descriptor) {
+        return annotatedAnnotationsByDescriptor.get(descriptor);
+    }
+
     /**
      * Get the annotations for a method from the information in the {@link OverallIndex}
      *
@@ -472,6 +860,11 @@ public class RuntimeIndex {
             return Arrays.equals(arr, start, start + length, that.arr, that.start, that.start + that.length);
         }
 
+        boolean isAcceptedBy(ClassNameFilter filter) {
+            // Skip the length prefix
+            return filter.accepts(arr, start + 2, start + length);
+        }
+
         /**
          * Converts the relevant bytes from this key to their string representation
          * @param reusableStreams factory to obtain reusable streams
@@ -0,0 +1,186 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.CONSTRUCTORS;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.FIELDS;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.METHODS;
+import static org.wildfly.unstable.api.annotation.classpath.index.AnnotationIndex.MULTI_VALUE_FIELD_SEPARATOR;
+
+/**
+ * <p>The strings shared by the entries of a version 2 index. The class names and descriptors of the annotated methods,
+ * constructors and fields are listed once, in sorted order, in the {@code =STRINGS} section at the start of the index,
+ * each following its id, and the entries refer to them by their id. E.g. the method entry
+ * {@code org.acme.Foo±bar±(Ljava/lang/String;)V} becomes {@code 91ce13d4±bar±fbbaed0f}.</p>
+ *
+ * <p>The id of a string is the first {@value #ID_LENGTH} hex digits of its {@link Fingerprint}, or all of them if
+ * another string of the table starts with the same digits. Since the id only depends on the string, adding or removing
+ * entries does not change the ids of the other strings, so the diff between two versions of an index only shows the
+ * lines which changed, as it does for version 1.</p>
+ *
+ * <p>{@link #NONE} is used for version 1 indexes, where the strings are written in the entries themselves.</p>
+ */
+class StringTable {
+    static final String STRINGS = "=STRINGS";
+
+    /**
+     * The number of hex digits of the id of a string, unless the id needs all of them
+     */
+    static final int ID_LENGTH = 8;
+
+    /**
+     * The number of hex digits of a {@link Fingerprint}, which the id of a string has if another string of the table
+     * has the same first {@value #ID_LENGTH} digits
+     */
+    static final int FULL_ID_LENGTH = 16;
+
+    /**
+     * Writes the strings of the entries as they are, for version 1 indexes
+     */
+    static final StringTable NONE = new StringTable(new TreeSet<>()) {
+        @Override
+        String reference(String s) {
+            return s;
+        }
+    };
+
+    private final SortedSet<String> strings;
+    private final Map<String, String> references;
+
+    StringTable(SortedSet<String> strings) {
+        this.strings = strings;
+        this.references = new HashMap<>(strings.size() * 2);
+        Map<String, Integer> counts = new HashMap<>(strings.size() * 2);
+        for (String s : strings) {
+            counts.merge(fullId(s).substring(0, ID_LENGTH), 1, Integer::sum);
+        }
+        Set<String> fullIds = new HashSet<>();
+        for (String s : strings) {
+            String id = fullId(s);
+            if (counts.get(id.substring(0, ID_LENGTH)) == 1) {
+                id = id.substring(0, ID_LENGTH);
+            } else if (!fullIds.add(id)) {
+                throw new IllegalStateException("More than one string has the id " + id);
+            }
+            references.put(s, id);
+        }
+    }
+
+    private static String fullId(String s) {
+        return Fingerprint.toHexString(Fingerprint.of(s));
+    }
+
+    /**
+     * Creates the table of the strings used by the entries of some annotation indexes
+     * @param indexes the annotation indexes
+     * @return the table
+     */
+    static StringTable of(Collection<AnnotationIndex> indexes) {
+        SortedSet<String> strings = new TreeSet<>();
+        for (AnnotationIndex index : indexes) {
+            for (AnnotatedMethod method : index.getAnnotatedMethods()) {
+                strings.add(method.getClassName());
+                strings.add(method.getDescriptor());
+            }
+            for (AnnotatedConstructor constructor : index.getAnnotatedConstructors()) {
+                strings.add(constructor.getClassName());
+                strings.add(constructor.getDescriptor());
+            }
+            for (AnnotatedField field : index.getAnnotatedFields()) {
+                strings.add(field.getClassName());
+            }
+        }
+        return new StringTable(strings);
+    }
+
+    /**
+     * Gets what an entry should write for a string
+     * @param s the class name or descriptor
+     * @return the id of the string in the table
+     */
+    String reference(String s) {
+        String reference = references.get(s);
+        if (reference == null) {
+            throw new IllegalStateException(s + " is not in the string table");
+        }
+        return reference;
+    }
+
+    /**
+     * Writes the table
+     * @param writer the PrintWriter
+     */
+    void save(PrintWriter writer) {
+        writer.println(STRINGS);
+        for (String s : strings) {
+            writer.print(references.get(s));
+            writer.print(MULTI_VALUE_FIELD_SEPARATOR);
+            writer.println(s);
+        }
+        writer.println();
+    }
+
+    /**
+     * Replaces the class name and descriptor of the line of an entry by their ids, e.g. when merging indexes
+     * @param marker the marker of the section the line is in
+     * @param line the line as saved in a version 1 index
+     * @return the line as saved with this table
+     */
+    String encode(String marker, String line) {
+        if (this == NONE) {
+            return line;
+        }
+        String[] fields = line.split(MULTI_VALUE_FIELD_SEPARATOR, -1);
+        switch (marker) {
+            case METHODS:
+                return reference(fields[0]) + MULTI_VALUE_FIELD_SEPARATOR + fields[1] + MULTI_VALUE_FIELD_SEPARATOR + reference(fields[2]);
+            case CONSTRUCTORS:
+                return reference(fields[0]) + MULTI_VALUE_FIELD_SEPARATOR + reference(fields[1]);
+            case FIELDS:
+                return reference(fields[0]) + MULTI_VALUE_FIELD_SEPARATOR + fields[1];
+            default:
+                return line;
+        }
+    }
+
+    /**
+     * Replaces the ids in the line of an entry by the strings they refer to
+     * @param strings the strings of the table by their ids
+     * @param marker the marker of the section the line is in
+     * @param line the line as saved in a version 2 index
+     * @return the line as saved in a version 1 index
+     * @throws IllegalArgumentException if the line is malformed or refers to a string which is not in the table
+     */
+    static String decode(Map<String, String> strings, String marker, String line) {
+        String[] fields = line.split(MULTI_VALUE_FIELD_SEPARATOR, -1);
+        int expected = marker.equals(METHODS) ? 3 : marker.equals(CONSTRUCTORS) || marker.equals(FIELDS) ? 2 : 0;
+        if (expected == 0) {
+            return line;
+        }
+        if (fields.length != expected) {
+            throw new IllegalArgumentException(line);
+        }
+        fields[0] = lookup(strings, fields[0], line);
+        if (marker.equals(METHODS)) {
+            fields[2] = lookup(strings, fields[2], line);
+        } else if (marker.equals(CONSTRUCTORS)) {
+            fields[1] = lookup(strings, fields[1], line);
+        }
+        return String.join(MULTI_VALUE_FIELD_SEPARATOR, fields);
+    }
+
+    private static String lookup(Map<String, String> strings, String id, String line) {
+        String s = strings.get(id);
+        if (s == null) {
+            throw new IllegalArgumentException(line);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,631 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.MethodDescriptors.TypeScope;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Finds where a set of annotations is used in the bytecode of classes, without needing a Jandex index. It uses the
+ * same constant pool parsing as the {@link ClassInfoScanner}. If the constant pool of a class does not contain the
+ * type descriptor of any of the annotations, none of them can be used in the class, so the rest of the class is not
+ * read. Otherwise only the annotation attributes of the class and its fields and methods are parsed, and everything
+ * else is skipped.</p>
+ *
+ * <p>The results are the same as when looking up the annotations in a Jandex index of the classes: annotations on
+ * classes, fields, methods and method parameters are found, including type annotations on those. Annotations in
+ * method bodies, annotations nested in the values of other annotations, and annotations on record components
+ * are not. Classes with a version older than 45.3 are not read.</p>
+ *
+ * <p>The direct supertypes of the classes are reported too, leaving out JDK classes, along with the members the
+ * classes declare. Local and anonymous classes are left out, since they cannot be referenced from other classes. This
+ * is used by the {@code org.wildfly.unstable.api.annotation.classpath.index.JarAnnotationIndexer}.</p>
+ *
+ * <p>Once all the classes have been read, {@link #complete(ClassSource, Visitor)} needs calling to report the
+ * annotations on generic methods whose descriptors depend on the type parameters of enclosing classes or methods.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class AnnotationTargetReader {
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_ENUM = 0x4000;
+    private static final int ACC_MANDATED = 0x8000;
+    private static final String OUTER_INSTANCE_FIELD_PREFIX = "this$";
+    private static final int MAX_SCOPE_DEPTH = 64;
+
+    private static final ByteArrayKey INIT_KEY = ClassBodyReader.createKey("<init>");
+
+    // The annotation names, keyed by their type descriptors, e.g. Lorg/acme/Experimental;
+    private final Map<ByteArrayKey, String> annotationsByDescriptor = new HashMap<>();
+    private final Set<String> excludedClasses;
+    private final ReusableStreams reusableStreams = new ReusableStreams();
+    private final ClassFileParser parser = new ClassFileParser();
+    private final List<PendingMethod> pendingMethods = new ArrayList<>();
+
+    /**
+     * Constructor
+     * @param annotations the fully qualified names of the annotations to look for, e.g. {@code org.acme.AnAnnotation}
+     * @param excludedClasses the fully qualified names of the classes to ignore
+     */
+    public AnnotationTargetReader(Set<String> annotations, Set<String> excludedClasses) {
+        if (annotations == null || excludedClasses == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        for (String annotation : annotations) {
+            annotationsByDescriptor.put(ClassBodyReader.createKey("L" + annotation.replace('.', '/') + ";"), annotation);
+        }
+        this.excludedClasses = excludedClasses;
+    }
+
+    /**
+     * Reads a class, and reports the annotations found and its supertypes to a visitor. The annotations on methods
+     * whose descriptors depend on other classes are reported by {@link #complete(ClassSource, Visitor)}.
+     * @param input the bytecode of the class
+     * @param visitor the visitor
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public void readClass(InputStream input, Visitor visitor) throws IOException {
+        if (input == null || visitor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        parser.parse(input, (classInfo, in) -> {
+            readParsedClass(classInfo, in, visitor);
+            return null;
+        });
+    }
+
+    /**
+     * Reports the annotations on methods and constructors which could not be reported when reading their classes, since
+     * their generic signatures use type variables of an enclosing class or method. Jandex looks those up in the
+     * classes indexed together with the class, so the enclosing classes are read from the same source.
+     * @param source gives the bytecode of the other classes read by this reader
+     * @param visitor the visitor
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public void complete(ClassSource source, Visitor visitor) throws IOException {
+        if (source == null || visitor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (pendingMethods.isEmpty()) {
+            return;
+        }
+        Map<String, EnclosingScope> scopes = new HashMap<>();
+        for (PendingMethod method : pendingMethods) {
+            TypeScope scope = getClassScope(method.className, source, scopes, 0);
+            String descriptor = MethodDescriptors.eraseMethodSignature(method.signature, scope == null ? TypeScope.ERASED : scope);
+            reportMethod(visitor, method.annotation, method.className, method.methodName, descriptor);
+        }
+        pendingMethods.clear();
+    }
+
+    private void readParsedClass(ClassInformation classInfo, InputStream in, Visitor visitor) throws IOException {
+        String className = classInfo.getScannedClassName(reusableStreams);
+        if (excludedClasses.contains(className)) {
+            return;
+        }
+        Set<String> supertypes = new LinkedHashSet<>();
+        addSupertype(supertypes, classInfo.getSuperClass());
+        for (ByteArrayKey interfaceName : classInfo.getInterfaces()) {
+            addSupertype(supertypes, interfaceName);
+        }
+
+        String[] candidates = null;
+        int[] tags = classInfo.getTags();
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == BytecodeTags.CONSTANT_UTF8) {
+                ByteArrayKey key = classInfo.getKeyFromUtfInfo(i + 1);
+                String annotation = annotationsByDescriptor.get(key);
+                if (annotation != null) {
+                    if (candidates == null) {
+                        // Indexed by the one based constant pool position
+                        candidates = new String[tags.length + 1];
+                    }
+                    candidates[i + 1] = annotation;
+                }
+            }
+        }
+
+        // The rest of the class only needs reading if it might use the annotations, or if it has supertypes to
+        // report, along with the members it declares, unless it is a local or anonymous class
+        if (candidates == null && supertypes.isEmpty()) {
+            return;
+        }
+        TargetVisitor targetVisitor = new TargetVisitor(classInfo, className, visitor, !supertypes.isEmpty());
+        ClassBodyReader.readAnnotationTargets(in, classInfo, candidates, targetVisitor, targetVisitor);
+        reportMethods(targetVisitor, className, visitor);
+        if (!supertypes.isEmpty() && !targetVisitor.isLocalOrAnonymous()) {
+            visitor.visitSupertypes(className, supertypes, targetVisitor.declaredMembers);
+        }
+    }
+
+    private void addSupertype(Set<String> supertypes, ByteArrayKey key) throws IOException {
+        if (key == null) {
+            return;
+        }
+        String supertype = RuntimeIndex.convertClassNameToDotFormat(key.convertBytesToString(reusableStreams));
+        // JDK classes are not indexed, so there is no need to record them
+        if (!supertype.startsWith("java.")) {
+            supertypes.add(supertype);
+        }
+    }
+
+    /**
+     * Reports the annotations found to the visitor once the whole class has been read, for
+     * {@link #complete(ClassSource, Visitor)}
+     */
+    private void reportMethods(TargetVisitor targetVisitor, String className, Visitor visitor) throws IOException {
+        for (AnnotatedMethod method : targetVisitor.annotatedMethods) {
+            Member member = method.member;
+            ByteArrayKey nameKey = targetVisitor.classInfo.getKeyFromUtfInfo(member.nameIndex);
+            boolean constructor = nameKey.equals(INIT_KEY);
+            String methodName = constructor ? null : nameKey.convertBytesToString(reusableStreams);
+            String descriptor;
+            if (member.signatureIndex == 0) {
+                descriptor = targetVisitor.getDescriptor(member, constructor);
+            } else {
+                String signature = targetVisitor.getString(member.signatureIndex);
+                // Type variables declared by enclosing classes and methods can only be looked up once all the
+                // classes are known, so the lookup is deferred if that is where Jandex would look next
+                boolean lookInEnclosingScope = (member.accessFlags & ACC_STATIC) == 0 && targetVisitor.hasEnclosingScope();
+                TypeScope scope = new TypeScope(MethodDescriptors.getTypeParameters(targetVisitor.getClassSignature()),
+                        lookInEnclosingScope ? null : TypeScope.ERASED);
+                descriptor = MethodDescriptors.eraseMethodSignature(signature, scope);
+                if (descriptor == null) {
+                    pendingMethods.add(new PendingMethod(method.annotation, className, methodName, signature));
+                    continue;
+                }
+            }
+            reportMethod(visitor, method.annotation, className, methodName, descriptor);
+        }
+    }
+
+    private static void reportMethod(Visitor visitor, String annotation, String className, String methodName, String descriptor) {
+        if (methodName == null) {
+            visitor.visitAnnotatedConstructor(annotation, className, descriptor);
+        } else {
+            visitor.visitAnnotatedMethod(annotation, className, methodName, descriptor);
+        }
+    }
+
+    /**
+     * Gets the scope of the type parameters of a class, and of the classes and methods enclosing it, the way Jandex
+     * looks them up
+     * @return the scope, or {@code null} if the class is not known
+     */
+    private TypeScope getClassScope(String className, ClassSource source, Map<String, EnclosingScope> scopes, int depth) throws IOException {
+        EnclosingScope enclosingScope = getEnclosingScope(className, source, scopes, depth);
+        if (enclosingScope == null) {
+            return null;
+        }
+        TypeScope parent = null;
+        if (!enclosingScope.staticClass) {
+            if (enclosingScope.enclosingClass != null) {
+                parent = getClassScope(enclosingScope.enclosingClass, source, scopes, depth + 1);
+            } else if (enclosingScope.enclosingMethodClass != null) {
+                parent = getMethodScope(enclosingScope.enclosingMethodClass, enclosingScope.enclosingMethod, source, scopes, depth + 1);
+            }
+        }
+        return new TypeScope(enclosingScope.typeParameters, parent == null ? TypeScope.ERASED : parent);
+    }
+
+    private TypeScope getMethodScope(String className, String method, ClassSource source, Map<String, EnclosingScope> scopes, int depth) throws IOException {
+        EnclosingScope enclosingScope = getEnclosingScope(className, source, scopes, depth);
+        if (enclosingScope == null) {
+            return null;
+        }
+        MethodScope methodScope = enclosingScope.methods.get(method);
+        if (methodScope == null) {
+            return null;
+        }
+        TypeScope parent = methodScope.staticMethod ? null : getClassScope(className, source, scopes, depth + 1);
+        return new TypeScope(methodScope.typeParameters, parent == null ? TypeScope.ERASED : parent);
+    }
+
+    private EnclosingScope getEnclosingScope(String className, ClassSource source, Map<String, EnclosingScope> scopes, int depth) throws IOException {
+        // Guards against classes enclosing each other
+        if (depth > MAX_SCOPE_DEPTH) {
+            return null;
+        }
+        if (scopes.containsKey(className)) {
+            return scopes.get(className);
+        }
+        EnclosingScope enclosingScope = null;
+        InputStream input = source.open(className);
+        if (input != null) {
+            try (InputStream in = input) {
+                enclosingScope = parser.parse(in, (classInfo, body) -> {
+                    NestingVisitor nestingVisitor = new NestingVisitor(classInfo, true);
+                    ClassBodyReader.readAnnotationTargets(body, classInfo, null, nestingVisitor, nestingVisitor);
+                    return nestingVisitor.createEnclosingScope();
+                });
+            }
+        }
+        scopes.put(className, enclosingScope);
+        return enclosingScope;
+    }
+
+    /**
+     * Keeps track of the nesting of a class and the signatures of its members while its body is read, which is
+     * needed to work out the method descriptors as Jandex reports them
+     */
+    private class NestingVisitor implements ClassBodyReader.MemberVisitor, ClassBodyReader.AnnotationVisitor {
+        final ClassInformation classInfo;
+        private final List<Member> methods;
+        Member member;
+        boolean field;
+        // Set from the entry of the class itself in the InnerClasses attribute, if there is one
+        private boolean nested;
+        private int outerClassIndex;
+        private int innerAccessFlags;
+        private int enclosingClassIndex;
+        private int enclosingMethodIndex;
+        private int classSignatureIndex;
+        private boolean outerInstanceField;
+
+        NestingVisitor(ClassInformation classInfo, boolean recordMethods) {
+            this.classInfo = classInfo;
+            this.methods = recordMethods ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public boolean visitMember(boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException {
+            this.field = field;
+            this.member = new Member(accessFlags, nameIndex, descriptorIndex);
+            if (field) {
+                if ((accessFlags & ACC_SYNTHETIC) != 0 && getString(nameIndex).startsWith(OUTER_INSTANCE_FIELD_PREFIX)) {
+                    outerInstanceField = true;
+                }
+            } else if (methods != null) {
+                methods.add(member);
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visitSignature(boolean classSignature, int signatureIndex) {
+            if (classSignature) {
+                classSignatureIndex = signatureIndex;
+            } else {
+                member.signatureIndex = signatureIndex;
+            }
+            return false;
+        }
+
+        @Override
+        public void visitAnnotation(boolean classAnnotation, String annotation) throws IOException {
+        }
+
+        @Override
+        public void visitInnerClass(int outerClassIndex, int innerNameIndex, int innerAccessFlags) {
+            this.nested = true;
+            this.outerClassIndex = outerClassIndex;
+            this.innerAccessFlags = innerAccessFlags;
+        }
+
+        @Override
+        public void visitEnclosingMethod(int classIndex, int methodIndex) {
+            this.enclosingClassIndex = classIndex;
+            this.enclosingMethodIndex = methodIndex;
+        }
+
+        @Override
+        public void visitFirstParameter(int accessFlags) {
+            member.firstParameterAccessFlags = accessFlags;
+        }
+
+        boolean isLocalOrAnonymous() {
+            return nested ? outerClassIndex == 0 : enclosingClassIndex != 0;
+        }
+
+        /**
+         * Whether Jandex would look for type variables not declared by the class in the enclosing class or method
+         */
+        boolean hasEnclosingScope() {
+            return (getFlags() & ACC_STATIC) == 0 && (outerClassIndex != 0 || enclosingMethodIndex != 0);
+        }
+
+        String getClassSignature() throws IOException {
+            return classSignatureIndex == 0 ? null : getString(classSignatureIndex);
+        }
+
+        /**
+         * Gets the descriptor of a method without a generic signature as Jandex reports it. Jandex leaves out the
+         * parameters the compiler adds to the constructors of inner and enum classes, so the same is done here.
+         */
+        String getDescriptor(Member member, boolean constructor) throws IOException {
+            String descriptor = getString(member.descriptorIndex);
+            if (!constructor) {
+                return descriptor;
+            }
+            List<String> parameters = MethodDescriptors.getParameterTypes(descriptor);
+            int first = 0;
+            if (hasOuterInstanceParameter(member)) {
+                String enclosingClass = getEnclosingClass();
+                if (!parameters.isEmpty() && enclosingClass != null && parameters.get(0).equals("L" + enclosingClass + ";")) {
+                    first = 1;
+                }
+            } else if ((getFlags() & ACC_ENUM) != 0 && parameters.size() >= 2 &&
+                    parameters.get(0).equals("Ljava/lang/String;") && parameters.get(1).equals("I")) {
+                first = 2;
+            }
+            if (first == 0) {
+                return descriptor;
+            }
+            StringBuilder sb = new StringBuilder("(");
+            for (String parameter : parameters.subList(first, parameters.size())) {
+                sb.append(parameter);
+            }
+            return sb.append(descriptor.substring(descriptor.indexOf(')'))).toString();
+        }
+
+        private boolean hasOuterInstanceParameter(Member member) {
+            if (isLocalOrAnonymous()) {
+                return (member.firstParameterAccessFlags & ACC_MANDATED) != 0 || outerInstanceField;
+            }
+            return nested && (innerAccessFlags & ACC_STATIC) == 0;
+        }
+
+        private String getEnclosingClass() throws IOException {
+            int index = outerClassIndex != 0 ? outerClassIndex : enclosingClassIndex;
+            if (index == 0) {
+                return null;
+            }
+            return classInfo.getClassNameFromClassInfo(index).convertBytesToString(reusableStreams);
+        }
+
+        private int getFlags() {
+            return nested ? innerAccessFlags : classInfo.getAccessFlags();
+        }
+
+        String getString(int utfInfoIndex) throws IOException {
+            return classInfo.getKeyFromUtfInfo(utfInfoIndex).convertBytesToString(reusableStreams);
+        }
+
+        EnclosingScope createEnclosingScope() throws IOException {
+            String enclosingClass = null;
+            String enclosingMethodClass = null;
+            String enclosingMethod = null;
+            if (outerClassIndex != 0) {
+                enclosingClass = getClassName(outerClassIndex);
+            } else if (enclosingMethodIndex != 0) {
+                enclosingMethodClass = getClassName(enclosingClassIndex);
+                enclosingMethod = classInfo.getNameFromNameAndTypeInfo(enclosingMethodIndex).convertBytesToString(reusableStreams) +
+                        classInfo.getDescriptorFromNameAndTypeInfo(enclosingMethodIndex).convertBytesToString(reusableStreams);
+            }
+            Map<String, MethodScope> methodScopes = new HashMap<>();
+            for (Member method : methods) {
+                Map<String, String> typeParameters = method.signatureIndex == 0 ?
+                        Collections.emptyMap() : MethodDescriptors.getTypeParameters(getString(method.signatureIndex));
+                methodScopes.put(getString(method.nameIndex) + getString(method.descriptorIndex),
+                        new MethodScope((method.accessFlags & ACC_STATIC) != 0, typeParameters));
+            }
+            return new EnclosingScope(MethodDescriptors.getTypeParameters(getClassSignature()), (getFlags() & ACC_STATIC) != 0,
+                    enclosingClass, enclosingMethodClass, enclosingMethod, methodScopes);
+        }
+
+        private String getClassName(int classInfoIndex) throws IOException {
+            return RuntimeIndex.convertClassNameToDotFormat(
+                    classInfo.getClassNameFromClassInfo(classInfoIndex).convertBytesToString(reusableStreams));
+        }
+    }
+
+    /**
+     * Reports the annotations found on the class and its fields, and records the ones found on its methods and
+     * constructors. The descriptors of those depend on attributes which may come after the annotations. The members
+     * declared by the class are recorded too if asked for.
+     */
+    private class TargetVisitor extends NestingVisitor {
+        private final String className;
+        private final Visitor visitor;
+        private final List<AnnotatedMethod> annotatedMethods = new ArrayList<>();
+        private final Set<String> declaredMembers;
+
+        TargetVisitor(ClassInformation classInfo, String className, Visitor visitor, boolean recordDeclaredMembers) {
+            super(classInfo, false);
+            this.className = className;
+            this.visitor = visitor;
+            this.declaredMembers = recordDeclaredMembers ? new HashSet<>() : null;
+        }
+
+        @Override
+        public boolean visitMember(boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException {
+            if (declaredMembers != null) {
+                String name = getString(nameIndex);
+                if (field) {
+                    declaredMembers.add(name);
+                } else if (!name.equals("<init>") && !name.equals("<clinit>")) {
+                    declaredMembers.add(name + getString(descriptorIndex));
+                }
+            }
+            return super.visitMember(field, accessFlags, nameIndex, descriptorIndex);
+        }
+
+        @Override
+        public void visitAnnotation(boolean classAnnotation, String annotation) throws IOException {
+            if (classAnnotation) {
+                int accessFlags = classInfo.getAccessFlags();
+                if ((accessFlags & ACC_ANNOTATION) != 0) {
+                    visitor.visitAnnotatedAnnotation(annotation, className);
+                } else if ((accessFlags & ACC_INTERFACE) != 0) {
+                    visitor.visitAnnotatedInterface(annotation, className);
+                } else {
+                    visitor.visitAnnotatedClass(annotation, className);
+                }
+            } else if (field) {
+                visitor.visitAnnotatedField(annotation, className, getString(member.nameIndex));
+            } else {
+                annotatedMethods.add(new AnnotatedMethod(annotation, member));
+            }
+        }
+    }
+
+    private static final class Member {
+        private final int accessFlags;
+        private final int nameIndex;
+        private final int descriptorIndex;
+        private int signatureIndex;
+        private int firstParameterAccessFlags;
+
+        Member(int accessFlags, int nameIndex, int descriptorIndex) {
+            this.accessFlags = accessFlags;
+            this.nameIndex = nameIndex;
+            this.descriptorIndex = descriptorIndex;
+        }
+    }
+
+    private static final class AnnotatedMethod {
+        private final String annotation;
+        private final Member member;
+
+        AnnotatedMethod(String annotation, Member member) {
+            this.annotation = annotation;
+            this.member = member;
+        }
+    }
+
+    /**
+     * An annotated method or constructor whose descriptor needs type variables looked up in the enclosing classes
+     * or methods
+     */
+    private static final class PendingMethod {
+        private final String annotation;
+        private final String className;
+        // null for constructors
+        private final String methodName;
+        private final String signature;
+
+        PendingMethod(String annotation, String className, String methodName, String signature) {
+            this.annotation = annotation;
+            this.className = className;
+            this.methodName = methodName;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * What is needed of a class to look up type variables in it, and in the classes and methods enclosing it
+     */
+    private static final class EnclosingScope {
+        private final Map<String, String> typeParameters;
+        private final boolean staticClass;
+        private final String enclosingClass;
+        private final String enclosingMethodClass;
+        // The name followed by the descriptor, e.g. run()V
+        private final String enclosingMethod;
+        // Keyed by the name followed by the descriptor
+        private final Map<String, MethodScope> methods;
+
+        EnclosingScope(Map<String, String> typeParameters, boolean staticClass, String enclosingClass,
+                       String enclosingMethodClass, String enclosingMethod, Map<String, MethodScope> methods) {
+            this.typeParameters = typeParameters;
+            this.staticClass = staticClass;
+            this.enclosingClass = enclosingClass;
+            this.enclosingMethodClass = enclosingMethodClass;
+            this.enclosingMethod = enclosingMethod;
+            this.methods = methods;
+        }
+    }
+
+    private static final class MethodScope {
+        private final boolean staticMethod;
+        private final Map<String, String> typeParameters;
+
+        MethodScope(boolean staticMethod, Map<String, String> typeParameters) {
+            this.staticMethod = staticMethod;
+            this.typeParameters = typeParameters;
+        }
+    }
+
+    /**
+     * Receives the annotations and supertypes found by an {@link AnnotationTargetReader}. The class names are in
+     * dot format, e.g. {@code org.acme.MyClass}, and the method descriptors in the JVM format, e.g.
+     * {@code (Ljava/lang/String;)V}. An annotation used more than once on the same target is reported each time.
+     */
+    public interface Visitor {
+        /**
+         * Called for an annotation on a class
+         * @param annotation the annotation
+         * @param className the class
+         */
+        void visitAnnotatedClass(String annotation, String className);
+
+        /**
+         * Called for an annotation on an interface
+         * @param annotation the annotation
+         * @param interfaceName the interface
+         */
+        void visitAnnotatedInterface(String annotation, String interfaceName);
+
+        /**
+         * Called for an annotation on an annotation
+         * @param annotation the annotation
+         * @param annotationName the annotated annotation
+         */
+        void visitAnnotatedAnnotation(String annotation, String annotationName);
+
+        /**
+         * Called for an annotation on a method, or on one of its parameters
+         * @param annotation the annotation
+         * @param className the class declaring the method
+         * @param methodName the method name
+         * @param descriptor the method descriptor
+         */
+        void visitAnnotatedMethod(String annotation, String className, String methodName, String descriptor);
+
+        /**
+         * Called for an annotation on a constructor, or on one of its parameters
+         * @param annotation the annotation
+         * @param className the class declaring the constructor
+         * @param descriptor the constructor descriptor
+         */
+        void visitAnnotatedConstructor(String annotation, String className, String descriptor);
+
+        /**
+         * Called for an annotation on a field
+         * @param annotation the annotation
+         * @param className the class declaring the field
+         * @param fieldName the field name
+         */
+        void visitAnnotatedField(String annotation, String className, String fieldName);
+
+        /**
+         * Called with the direct superclass and superinterfaces of a class, once it has been read. Not called if
+         * there are none apart from JDK classes, or if the class is local or anonymous.
+         * @param className the class
+         * @param supertypes the supertypes
+         * @param declaredMembers the fields and methods declared by the class, apart from constructors and static
+         *                        initializers. A field is given by its name, and a method by its name followed by its
+         *                        descriptor, e.g. {@code test(Ljava/lang/String;)V}
+         */
+        void visitSupertypes(String className, Set<String> supertypes, Set<String> declaredMembers);
+    }
+
+    /**
+     * Gives the bytecode of the classes read by an {@link AnnotationTargetReader}, for looking up the type parameters
+     * of enclosing classes and methods
+     */
+    @FunctionalInterface
+    public interface ClassSource {
+        /**
+         * Opens the bytecode of a class
+         * @param className the class name in dot format, e.g. {@code org.acme.Outer$Inner}
+         * @return a stream to read the bytecode from, which is closed by the caller, or {@code null} if the class was
+         * not among the classes read
+         * @throws IOException if there were problems opening the stream
+         */
+        InputStream open(String className) throws IOException;
+    }
+}
@@ -1,5 +1,7 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
 
@@ -13,6 +15,9 @@ public abstract class AnnotationUsage {
 
     private int hash;
 
+    // Not part of equals() and hashCode(). Only set if the locations are resolved, so null for most usages
+    private Set<UsageLocation> locations;
+
     AnnotationUsage(Set<String> annotations, AnnotationUsageType type) {
         this.annotations = annotations;
         this.type = type;
@@ -36,6 +41,24 @@ public abstract class AnnotationUsage {
         return annotations;
     }
 
+    /**
+     * Gets the locations of this usage in the source class. These are only available if resolved with
+     * {@link ClassInfoScanner#resolveLocations(java.io.InputStream, java.util.Collection)}, and only for usages
+     * which happen in the code of a method, such as method and field references.
+     *
+     * @return the locations. Empty if not resolved or there are none
+     */
+    public Set<UsageLocation> getLocations() {
+        return locations == null ? Collections.emptySet() : Collections.unmodifiableSet(locations);
+    }
+
+    void addLocation(UsageLocation location) {
+        if (locations == null) {
+            locations = new LinkedHashSet<>();
+        }
+        locations.add(location);
+    }
+
     /**
      * Casts this instance to {@link ExtendsAnnotatedClass}
      * @return this instance cast to {@link ExtendsAnnotatedClass}
@@ -108,6 +131,66 @@ public abstract class AnnotationUsage {
         return (AnnotatedAnnotationUsage) this;
     }
 
+    /**
+     * Casts this instance to {@link DeclaredFieldType}
+     * @return this instance cast to {@link DeclaredFieldType}
+     * @throws IllegalStateException if {@link #getType()} is not {@link AnnotationUsageType#DECLARED_FIELD_TYPE}
+     */
+    public DeclaredFieldType asDeclaredFieldType() {
+        if (type != AnnotationUsageType.DECLARED_FIELD_TYPE) {
+            throw new IllegalStateException();
+        }
+        return (DeclaredFieldType) this;
+    }
+
+    /**
+     * Casts this instance to {@link DeclaredMethodType}
+     * @return this instance cast to {@link DeclaredMethodType}
+     * @throws IllegalStateException if {@link #getType()} is not {@link AnnotationUsageType#DECLARED_METHOD_TYPE}
+     */
+    public DeclaredMethodType asDeclaredMethodType() {
+        if (type != AnnotationUsageType.DECLARED_METHOD_TYPE) {
+            throw new IllegalStateException();
+        }
+        return (DeclaredMethodType) this;
+    }
+
+    /**
+     * Casts this instance to {@link OverridesAnnotatedMethod}
+     * @return this instance cast to {@link OverridesAnnotatedMethod}
+     * @throws IllegalStateException if {@link #getType()} is not {@link AnnotationUsageType#OVERRIDES_METHOD}
+     */
+    public OverridesAnnotatedMethod asOverridesAnnotatedMethod() {
+        if (type != AnnotationUsageType.OVERRIDES_METHOD) {
+            throw new IllegalStateException();
+        }
+        return (OverridesAnnotatedMethod) this;
+    }
+
+    /**
+     * Casts this instance to {@link IndirectAnnotatedClassUsage}
+     * @return this instance cast to {@link IndirectAnnotatedClassUsage}
+     * @throws IllegalStateException if {@link #getType()} is not {@link AnnotationUsageType#INDIRECT_CLASS_USAGE}
+     */
+    public IndirectAnnotatedClassUsage asIndirectAnnotatedClassUsage() {
+        if (type != AnnotationUsageType.INDIRECT_CLASS_USAGE) {
+            throw new IllegalStateException();
+        }
+        return (IndirectAnnotatedClassUsage) this;
+    }
+
+    /**
+     * Casts this instance to {@link ReflectiveAnnotatedClassUsage}
+     * @return this instance cast to {@link ReflectiveAnnotatedClassUsage}
+     * @throws IllegalStateException if {@link #getType()} is not {@link AnnotationUsageType#REFLECTIVE_CLASS_USAGE}
+     */
+    public ReflectiveAnnotatedClassUsage asReflectiveAnnotatedClassUsage() {
+        if (type != AnnotationUsageType.REFLECTIVE_CLASS_USAGE) {
+            throw new IllegalStateException();
+        }
+        return (ReflectiveAnnotatedClassUsage) this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
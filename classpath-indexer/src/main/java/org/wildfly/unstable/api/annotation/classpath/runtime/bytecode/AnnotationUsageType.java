@@ -16,5 +16,21 @@ public enum AnnotationUsageType {
     /** A scanned class uses a classannotated with an unstable api annotation */
     CLASS_USAGE,
     /** A scanned class uses an annotation that has been annotated with an unstable api annotation*/
-    ANNOTATED_ANNOTATION_USAGE
+    ANNOTATED_ANNOTATION_USAGE,
+    /** A scanned class declares a field whose type is a class annotated with an unstable api annotation */
+    DECLARED_FIELD_TYPE,
+    /**
+     * A scanned class declares a method or constructor with a parameter or return type which is a class annotated
+     * with an unstable api annotation
+     */
+    DECLARED_METHOD_TYPE,
+    /** A scanned class overrides a method annotated with an unstable api annotation */
+    OVERRIDES_METHOD,
+    /**
+     * A scanned class indirectly uses a class annotated with an unstable api annotation, via the descriptor of a
+     * field or method it uses, or via its generic signature
+     */
+    INDIRECT_CLASS_USAGE,
+    /** A scanned class contains a string constant with the name of a class annotated with an unstable api annotation */
+    REFLECTIVE_CLASS_USAGE
 }
@@ -0,0 +1,504 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the part of a class file following the interfaces table, i.e. the fields, methods and class attributes.
+ * This is done in the same pass as the constant pool is checked, and can do two things:
+ * <ul>
+ *     <li>Report the access flags, name and descriptor of each field and method, and the generic signatures of
+ *     those and of the class, to a {@link MemberVisitor}</li>
+ *     <li>Look for annotations whose type is one of the candidate constant pool entries. This is used to find
+ *     usage of annotations annotated with unstable api annotations, rather than needing a separate Jandex index
+ *     of the class.</li>
+ * </ul>
+ *
+ * <p>To give the same results as Jandex, annotations on classes, fields, methods, method parameters and record
+ * components are considered, including type annotations on those. Annotations in method bodies and annotations
+ * nested in the values of other annotations are not.</p>
+ *
+ * <p>Alternatively, each candidate annotation found can be reported to an {@link AnnotationVisitor} along with
+ * whether it is on the class or on the member last passed to the {@link MemberVisitor}. This is used to index the
+ * annotations without Jandex.</p>
+ */
+final class ClassBodyReader {
+    private static final int ANNOTATIONS = 1;
+    private static final int PARAMETER_ANNOTATIONS = 2;
+    private static final int TYPE_ANNOTATIONS = 3;
+    private static final int RECORD = 4;
+    private static final int SIGNATURE = 5;
+    // Only read when reporting to an AnnotationVisitor
+    private static final int INNER_CLASSES = 6;
+    private static final int ENCLOSING_METHOD = 7;
+    private static final int METHOD_PARAMETERS = 8;
+
+    // What the attributes being read belong to
+    private static final int CLASS = 0;
+    private static final int MEMBER = 1;
+    private static final int RECORD_COMPONENT = 2;
+
+    private static final Map<ByteArrayKey, Integer> ATTRIBUTE_KINDS = new HashMap<>();
+    static {
+        ATTRIBUTE_KINDS.put(createKey("RuntimeVisibleAnnotations"), ANNOTATIONS);
+        ATTRIBUTE_KINDS.put(createKey("RuntimeInvisibleAnnotations"), ANNOTATIONS);
+        ATTRIBUTE_KINDS.put(createKey("RuntimeVisibleParameterAnnotations"), PARAMETER_ANNOTATIONS);
+        ATTRIBUTE_KINDS.put(createKey("RuntimeInvisibleParameterAnnotations"), PARAMETER_ANNOTATIONS);
+        ATTRIBUTE_KINDS.put(createKey("RuntimeVisibleTypeAnnotations"), TYPE_ANNOTATIONS);
+        ATTRIBUTE_KINDS.put(createKey("RuntimeInvisibleTypeAnnotations"), TYPE_ANNOTATIONS);
+        ATTRIBUTE_KINDS.put(createKey("Record"), RECORD);
+        ATTRIBUTE_KINDS.put(createKey("Signature"), SIGNATURE);
+        ATTRIBUTE_KINDS.put(createKey("InnerClasses"), INNER_CLASSES);
+        ATTRIBUTE_KINDS.put(createKey("EnclosingMethod"), ENCLOSING_METHOD);
+        ATTRIBUTE_KINDS.put(createKey("MethodParameters"), METHOD_PARAMETERS);
+    }
+
+    private final DataInputStream in;
+    private final ClassInformation classInfo;
+    private final MemberVisitor visitor;
+    private final AnnotationVisitor annotationVisitor;
+    private final boolean stopAtFirst;
+    private final int wanted;
+    private final Set<String> found = new LinkedHashSet<>();
+    // Set to null once all the wanted annotations have been found
+    private String[] candidates;
+    // What the attributes currently being read belong to
+    private int currentOwner;
+
+    /**
+     * Constructor
+     * @param in the stream, positioned right after the interfaces table
+     * @param classInfo the parsed class information
+     * @param candidates the annotation names indexed by the constant pool position of their type descriptor.
+     *                   May be {@code null} if annotations should not be looked for
+     * @param visitor the visitor for the fields and methods. May be {@code null}
+     * @param annotationVisitor the visitor to report each annotation found to. May be {@code null}
+     * @param stopAtFirst whether to stop at the first annotation found
+     * @param wanted the number of distinct annotations after which we can stop looking for annotations
+     */
+    private ClassBodyReader(InputStream in, ClassInformation classInfo, String[] candidates, MemberVisitor visitor, AnnotationVisitor annotationVisitor, boolean stopAtFirst, int wanted) {
+        this.in = new DataInputStream(in);
+        this.classInfo = classInfo;
+        this.candidates = candidates;
+        this.visitor = visitor;
+        this.annotationVisitor = annotationVisitor;
+        this.stopAtFirst = stopAtFirst;
+        this.wanted = wanted;
+    }
+
+    /**
+     * Reads the rest of the class, returning the candidate annotations which are used.
+     *
+     * @param in the stream, positioned right after the interfaces table
+     * @param classInfo the parsed class information
+     * @param candidates the annotation names indexed by the constant pool position of their type descriptor.
+     *                   May be {@code null} if annotations should not be looked for
+     * @param visitor the visitor for the fields and methods. May be {@code null}
+     * @param stopAtFirst whether to stop at the first annotation found
+     * @return the names of the annotations found. Empty if none were found
+     * @throws IOException if there were problems reading the stream
+     */
+    static Set<String> read(InputStream in, ClassInformation classInfo, String[] candidates, MemberVisitor visitor, boolean stopAtFirst) throws IOException {
+        int wanted = 1;
+        if (!stopAtFirst && candidates != null) {
+            Set<String> distinct = new LinkedHashSet<>();
+            for (String candidate : candidates) {
+                if (candidate != null) {
+                    distinct.add(candidate);
+                }
+            }
+            wanted = distinct.size();
+        }
+        ClassBodyReader reader = new ClassBodyReader(in, classInfo, candidates, visitor, null, stopAtFirst, wanted);
+        reader.readMembersAndAttributes();
+        return reader.found;
+    }
+
+    /**
+     * Reads the rest of the class, reporting every occurrence of the candidate annotations to a visitor. Unlike
+     * {@link #read}, annotations on record components are not reported, since the annotations of a record component
+     * are also found on the field, accessor method or constructor parameters it is propagated to. The
+     * {@code InnerClasses}, {@code EnclosingMethod} and {@code MethodParameters} attributes are reported too, which
+     * are needed to tell the nesting of the class and which constructor parameters are synthetic.
+     *
+     * @param in the stream, positioned right after the interfaces table
+     * @param classInfo the parsed class information
+     * @param candidates the annotation names indexed by the constant pool position of their type descriptor.
+     *                   May be {@code null} if only the members and the nesting of the class are of interest
+     * @param visitor the visitor for the fields and methods
+     * @param annotationVisitor the visitor to report the annotations found to
+     * @throws IOException if there were problems reading the stream
+     */
+    static void readAnnotationTargets(InputStream in, ClassInformation classInfo, String[] candidates, MemberVisitor visitor, AnnotationVisitor annotationVisitor) throws IOException {
+        if (visitor == null || annotationVisitor == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        new ClassBodyReader(in, classInfo, candidates, visitor, annotationVisitor, false, Integer.MAX_VALUE)
+                .readMembersAndAttributes();
+    }
+
+    /**
+     * @return {@code true} if we stopped reading early
+     */
+    private boolean readMembersAndAttributes() throws IOException {
+        // Fields and methods have the same layout
+        for (int members = 0; members < 2; members++) {
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                if (visitor != null) {
+                    int accessFlags = in.readUnsignedShort();
+                    int nameIndex = in.readUnsignedShort();
+                    int descriptorIndex = in.readUnsignedShort();
+                    if (visitor.visitMember(members == 0, accessFlags, nameIndex, descriptorIndex)) {
+                        return true;
+                    }
+                } else {
+                    // access flags, name and descriptor
+                    skipFully(6);
+                }
+                if (readAttributes(MEMBER)) {
+                    return true;
+                }
+            }
+        }
+        if (candidates == null && visitor == null) {
+            // The class attributes are only of interest for the annotations and the class signature
+            return false;
+        }
+        return readAttributes(CLASS);
+    }
+
+    private boolean readAttributes(int owner) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int nameIndex = in.readUnsignedShort();
+            int length = in.readInt();
+            Integer kind = candidates == null && visitor == null ? null : ATTRIBUTE_KINDS.get(classInfo.getKeyFromUtfInfo(nameIndex));
+            if (kind == null ||
+                    (kind == RECORD && (owner != CLASS || annotationVisitor != null)) ||
+                    (kind == SIGNATURE && (visitor == null || owner == RECORD_COMPONENT)) ||
+                    (kind >= INNER_CLASSES && (annotationVisitor == null || (owner == CLASS) == (kind == METHOD_PARAMETERS))) ||
+                    (kind < INNER_CLASSES && kind != SIGNATURE && candidates == null)) {
+                // This includes the Code attribute, since Jandex does not look at annotations in method bodies
+                skipFully(length);
+                continue;
+            }
+            currentOwner = owner;
+            boolean done;
+            switch (kind) {
+                case SIGNATURE:
+                    done = visitor.visitSignature(owner == CLASS, in.readUnsignedShort());
+                    break;
+                case INNER_CLASSES:
+                    done = readInnerClasses();
+                    break;
+                case ENCLOSING_METHOD:
+                    annotationVisitor.visitEnclosingMethod(in.readUnsignedShort(), in.readUnsignedShort());
+                    done = false;
+                    break;
+                case METHOD_PARAMETERS:
+                    done = readMethodParameters();
+                    break;
+                case ANNOTATIONS:
+                    done = readAnnotations();
+                    break;
+                case PARAMETER_ANNOTATIONS:
+                    done = readParameterAnnotations();
+                    break;
+                case TYPE_ANNOTATIONS:
+                    done = readTypeAnnotations();
+                    break;
+                default:
+                    done = readRecordComponents();
+            }
+            if (done) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readInnerClasses() throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int innerClassIndex = in.readUnsignedShort();
+            int outerClassIndex = in.readUnsignedShort();
+            int innerNameIndex = in.readUnsignedShort();
+            int innerAccessFlags = in.readUnsignedShort();
+            if (classInfo.getClassNameFromClassInfo(innerClassIndex).equals(classInfo.getScannedClass())) {
+                annotationVisitor.visitInnerClass(outerClassIndex, innerNameIndex, innerAccessFlags);
+            }
+        }
+        return false;
+    }
+
+    private boolean readMethodParameters() throws IOException {
+        int count = in.readUnsignedByte();
+        for (int i = 0; i < count; i++) {
+            // name
+            skipFully(2);
+            int accessFlags = in.readUnsignedShort();
+            if (i == 0) {
+                annotationVisitor.visitFirstParameter(accessFlags);
+            }
+        }
+        return false;
+    }
+
+    private boolean readRecordComponents() throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // name and descriptor
+            skipFully(4);
+            if (readAttributes(RECORD_COMPONENT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readAnnotations() throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            if (readAnnotation(true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readParameterAnnotations() throws IOException {
+        int parameters = in.readUnsignedByte();
+        for (int i = 0; i < parameters; i++) {
+            if (readAnnotations()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readTypeAnnotations() throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            skipTypeAnnotationTarget();
+            // type_path
+            int pathLength = in.readUnsignedByte();
+            skipFully(pathLength * 2);
+            if (readAnnotation(true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void skipTypeAnnotationTarget() throws IOException {
+        int targetType = in.readUnsignedByte();
+        switch (targetType) {
+            case 0x00: // type parameter of class/interface
+            case 0x01: // type parameter of method
+            case 0x16: // formal parameter
+                skipFully(1);
+                break;
+            case 0x10: // supertype
+            case 0x11: // type parameter bound of class/interface
+            case 0x12: // type parameter bound of method
+            case 0x17: // throws
+            case 0x42: // catch
+            case 0x43: // instanceof
+            case 0x44: // new
+            case 0x45: // constructor reference
+            case 0x46: // method reference
+                skipFully(2);
+                break;
+            case 0x13: // field
+            case 0x14: // method return type
+            case 0x15: // receiver
+                break;
+            case 0x40: // local variable
+            case 0x41: // resource variable
+                int tableLength = in.readUnsignedShort();
+                skipFully(tableLength * 6);
+                break;
+            case 0x47: // cast
+            case 0x48: // constructor invocation type argument
+            case 0x49: // method invocation type argument
+            case 0x4A: // constructor reference type argument
+            case 0x4B: // method reference type argument
+                skipFully(3);
+                break;
+            default:
+                throw new IllegalStateException(
+                        String.format(Locale.ROOT, "Unknown type annotation target type %s", targetType));
+        }
+    }
+
+    private boolean readAnnotation(boolean topLevel) throws IOException {
+        int typeIndex = in.readUnsignedShort();
+        if (topLevel && candidates != null && typeIndex < candidates.length) {
+            String annotation = candidates[typeIndex];
+            if (annotation != null && annotationVisitor != null) {
+                annotationVisitor.visitAnnotation(currentOwner == CLASS, annotation);
+            } else if (annotation != null && found.add(annotation) && found.size() == wanted) {
+                if (stopAtFirst || visitor == null) {
+                    return true;
+                }
+                // Keep going for the visitor, but there is no need to look at any more annotations
+                candidates = null;
+            }
+        }
+        int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            // element name
+            skipFully(2);
+            skipElementValue();
+        }
+        return false;
+    }
+
+    private void skipElementValue() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 's':
+            case 'c':
+                skipFully(2);
+                break;
+            case 'e':
+                skipFully(4);
+                break;
+            case '@':
+                // Jandex does not index nested annotations
+                readAnnotation(false);
+                break;
+            case '[':
+                int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    skipElementValue();
+                }
+                break;
+            default:
+                throw new IllegalStateException(
+                        String.format(Locale.ROOT, "Unknown element value tag %s", (char) tag));
+        }
+    }
+
+    private void skipFully(int n) throws IOException {
+        int remaining = n;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= (int) skipped;
+        }
+    }
+
+    /**
+     * Visits the fields and methods of a class
+     */
+    interface MemberVisitor {
+        /**
+         * Called for each field and method of the class
+         *
+         * @param field {@code true} if the member is a field, {@code false} if it is a method
+         * @param accessFlags the access flags of the member
+         * @param nameIndex the constant pool position of the UtfInfo containing the name of the member
+         * @param descriptorIndex the constant pool position of the UtfInfo containing the descriptor of the member
+         * @return {@code true} to stop reading the class
+         * @throws IOException if there were problems
+         */
+        boolean visitMember(boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException;
+
+        /**
+         * Called for the {@code Signature} attribute containing the generic signature of the member last passed to
+         * {@link #visitMember(boolean, int, int, int)}, or of the class itself once all the members have been visited
+         *
+         * @param classSignature {@code true} if this is the signature of the class
+         * @param signatureIndex the constant pool position of the UtfInfo containing the signature
+         * @return {@code true} to stop reading the class
+         * @throws IOException if there were problems
+         */
+        boolean visitSignature(boolean classSignature, int signatureIndex) throws IOException;
+    }
+
+    /**
+     * Receives the annotations found by {@link #readAnnotationTargets}
+     */
+    interface AnnotationVisitor {
+        /**
+         * Called for each occurrence of a candidate annotation, including as a type annotation or a method parameter
+         * annotation
+         *
+         * @param classAnnotation {@code true} if the annotation is on the class, {@code false} if it is on the member
+         *                        last passed to {@link MemberVisitor#visitMember(boolean, int, int, int)}
+         * @param annotation the name of the annotation
+         * @throws IOException if there were problems
+         */
+        void visitAnnotation(boolean classAnnotation, String annotation) throws IOException;
+
+        /**
+         * Called for the entry of the class itself in its {@code InnerClasses} attribute, if the class is nested
+         *
+         * @param outerClassIndex the constant pool position of the ClassInfo of the class declaring it as a member,
+         *                        or 0 for local and anonymous classes
+         * @param innerNameIndex the constant pool position of the UtfInfo containing the simple name, or 0 for
+         *                       anonymous classes
+         * @param innerAccessFlags the access flags of the class, as declared in the source
+         */
+        void visitInnerClass(int outerClassIndex, int innerNameIndex, int innerAccessFlags);
+
+        /**
+         * Called for the {@code EnclosingMethod} attribute of a local or anonymous class
+         *
+         * @param classIndex the constant pool position of the ClassInfo of the innermost enclosing class
+         * @param methodIndex the constant pool position of the NameAndTypeInfo of the enclosing method, or 0 if
+         *                    the class is not declared in a method or constructor
+         */
+        void visitEnclosingMethod(int classIndex, int methodIndex);
+
+        /**
+         * Called with the first entry of the {@code MethodParameters} attribute of the member last passed to
+         * {@link MemberVisitor#visitMember(boolean, int, int, int)}, if there is one
+         *
+         * @param accessFlags the access flags of the first parameter, e.g. showing that it is mandated
+         */
+        void visitFirstParameter(int accessFlags);
+    }
+
+    /**
+     * Creates a key in the same format as the keys for the UtfInfo entries in the constant pool
+     * @param s the string
+     * @return the key
+     */
+    static ByteArrayKey createKey(String s) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream dout = new DataOutputStream(bout)) {
+            dout.writeUTF(s);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] bytes = bout.toByteArray();
+        return ByteArrayKey.create(bytes, 0, bytes.length);
+    }
+}
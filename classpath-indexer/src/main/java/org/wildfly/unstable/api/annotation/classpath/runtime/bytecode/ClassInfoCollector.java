@@ -10,10 +10,13 @@ import org.jboss.jandex.RecordComponentInfo;
 import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,30 +25,109 @@ import java.util.Set;
  * any usage of indexed classes/members as {@link AnnotationUsage} instances.
  */
 class ClassInfoCollector {
+    // Access flags for fields and methods
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final RuntimeIndex.ByteArrayKey INIT_KEY = ClassBodyReader.createKey("<init>");
+    private static final RuntimeIndex.ByteArrayKey CLINIT_KEY = ClassBodyReader.createKey("<clinit>");
+
     private final RuntimeIndex runtimeIndex;
 
     private final ReusableStreams reusableStreams = new ReusableStreams();
 
-    private final Set<AnnotationUsage> usages = new LinkedHashSet<>();
+    // null if the usages should not be retained
+    private final Set<AnnotationUsage> usages;
+
+    private final UsageListener listener;
+
+    // Used to only report each usage once per class when not retaining the usages
+    private final Set<AnnotationUsage> currentClassUsages = new HashSet<>();
+
+    // The usage types to look for, from the ScanConfiguration
+    private final boolean fieldReferences;
+    private final boolean methodReferences;
+    private final boolean classUsage;
+    private final boolean extendsClass;
+    private final boolean implementsInterface;
+    private final boolean annotatedAnnotationUsage;
+    private final boolean declaredFieldType;
+    private final boolean declaredMethodType;
+    private final boolean overridesMethod;
+
+    private final boolean indirectClassUsage;
+    private final boolean reflectiveClassUsage;
+
+    // Reused for the descriptors and generic signatures
+    private final DescriptorTokenizer tokenizer = new DescriptorTokenizer();
+
+    // The classes referenced by the class being processed, until endClass() is called
+    private ClassReferences classReferences;
 
-    ClassInfoCollector(RuntimeIndex runtimeIndex) {
+    // The field or method last passed to processMember() or checkMemberForVerdict()
+    private boolean currentMemberField;
+    private int currentMemberAccessFlags;
+    private int currentMemberNameIndex;
+    private int currentMemberDescriptorIndex;
+
+    /**
+     * Constructor
+     * @param runtimeIndex the runtime index, which should already be filtered to only contain the annotations
+     *                     from the configuration
+     * @param configuration the scan configuration
+     * @param listener the listener to report usages to. If {@code null} the usages are retained instead
+     */
+    ClassInfoCollector(RuntimeIndex runtimeIndex, ScanConfiguration configuration, UsageListener listener) {
         this.runtimeIndex = runtimeIndex;
+        this.usages = listener == null ? new LinkedHashSet<>() : null;
+        this.listener = listener;
+        this.fieldReferences = configuration.isEnabled(AnnotationUsageType.FIELD_REFERENCE);
+        this.methodReferences = configuration.isEnabled(AnnotationUsageType.METHOD_REFERENCE);
+        this.classUsage = configuration.isEnabled(AnnotationUsageType.CLASS_USAGE);
+        this.extendsClass = configuration.isEnabled(AnnotationUsageType.EXTENDS_CLASS);
+        this.implementsInterface = configuration.isEnabled(AnnotationUsageType.IMPLEMENTS_INTERFACE);
+        this.annotatedAnnotationUsage = configuration.isEnabled(AnnotationUsageType.ANNOTATED_ANNOTATION_USAGE);
+        this.declaredFieldType = configuration.isEnabled(AnnotationUsageType.DECLARED_FIELD_TYPE);
+        this.declaredMethodType = configuration.isEnabled(AnnotationUsageType.DECLARED_METHOD_TYPE);
+        this.overridesMethod = configuration.isEnabled(AnnotationUsageType.OVERRIDES_METHOD);
+        this.indirectClassUsage = configuration.isEnabled(AnnotationUsageType.INDIRECT_CLASS_USAGE);
+        this.reflectiveClassUsage = configuration.isEnabled(AnnotationUsageType.REFLECTIVE_CLASS_USAGE);
+    }
+
+    /**
+     * Whether the fields and methods of the scanned classes need to be passed to {@link #processMember} or
+     * {@link #checkMemberForVerdict}
+     * @return {@code true} if the members should be checked
+     */
+    boolean isCheckingMembers() {
+        return declaredFieldType || declaredMethodType || overridesMethod;
+    }
+
+    /**
+     * Gets the runtime index, filtered to only contain the annotations from the configuration
+     * @return the runtime index
+     */
+    RuntimeIndex getRuntimeIndex() {
+        return runtimeIndex;
     }
 
     /**
      * Gets the usages of annotations
-     * @return the usages
+     * @return the usages. Always empty if the usages are not retained
      */
     Set<AnnotationUsage> getUsages() {
-        return usages;
+        return usages == null ? Collections.emptySet() : usages;
     }
 
     /**
      * Takes a parsed {@link ClassInformation} and checks it against the {@code RuntimeIndex}, recording
-     * any usage of indexed classes/members as {@link AnnotationUsage} instances.
+     * any usage of indexed classes/members as {@link AnnotationUsage} instances. The class usage is recorded
+     * when {@link #endClass(ClassInformation)} is called.
      */
     void processClass(ClassInformation classInfo) throws IOException {
-        ClassReferences classReferences = new ClassReferences();
+        currentClassUsages.clear();
+        classReferences = new ClassReferences();
         int[] tags = classInfo.getTags();
         for (int i = 0; i < tags.length; i++) {
             // Our arrays are zero based, while the indices referred to by the bytecode are one based
@@ -53,6 +135,9 @@ class ClassInfoCollector {
             int tag = tags[i];
             switch (tag) {
                 case BytecodeTags.CONSTANT_FIELDREF:{
+                    if (!fieldReferences) {
+                        break;
+                    }
                     Set<String> annotations = runtimeIndex.getAnnotationsForField(
                             classInfo.getClassNameFromRefInfo(pos),
                             () -> classInfo.getNameFromRefInfo(pos));
@@ -67,7 +152,9 @@ class ClassInfoCollector {
                 break;
                 case BytecodeTags.CONSTANT_METHODREF:
                 case BytecodeTags.CONSTANT_INTERFACEMETHODREF: {
-
+                    if (!methodReferences) {
+                        break;
+                    }
                     Set<String> annotations = runtimeIndex.getAnnotationsForMethod(
                             classInfo.getClassNameFromRefInfo(pos),
                             () -> classInfo.getNameFromRefInfo(pos),
@@ -82,7 +169,39 @@ class ClassInfoCollector {
                     }
                 }
                 break;
+                case BytecodeTags.CONSTANT_STRING: {
+                    if (!reflectiveClassUsage) {
+                        break;
+                    }
+                    // The string is in dot format, so look it up directly rather than converting it
+                    RuntimeIndex.ByteArrayKey key = runtimeIndex.getClassKeyFromDotName(classInfo.getKeyFromStringInfo(pos));
+                    if (key != null) {
+                        String scannedClass = classInfo.getScannedClassName(reusableStreams);
+                        recordUsage(scannedClass, new ReflectiveAnnotatedClassUsage(
+                                runtimeIndex.getAnnotationsForClass(key),
+                                scannedClass,
+                                runtimeIndex.getClassNameFromKey(key)));
+                    }
+                }
+                break;
+                case BytecodeTags.CONSTANT_NAMEANDTYPE:
+                case BytecodeTags.CONSTANT_METHODTYPE: {
+                    if (!indirectClassUsage) {
+                        break;
+                    }
+                    // The descriptors of the fields and methods used, and of the lambdas/method references
+                    DescriptorTokenizer descriptor = tag == BytecodeTags.CONSTANT_NAMEANDTYPE ?
+                            classInfo.tokenizeNameAndTypeDescriptor(pos, tokenizer) :
+                            classInfo.tokenizeMethodTypeDescriptor(pos, tokenizer);
+                    for (RuntimeIndex.ByteArrayKey key = nextAnnotatedType(descriptor); key != null; key = nextAnnotatedType(descriptor)) {
+                        classReferences.addIndirectType(key);
+                    }
+                }
+                break;
                 case BytecodeTags.CONSTANT_CLASS: {
+                    if (!classUsage) {
+                        break;
+                    }
                     RuntimeIndex.ByteArrayKey key = classInfo.getClassNameFromClassInfo(pos);
                     Set<String> annotations = runtimeIndex.getAnnotationsForClass(key);
                     if (annotations != null) {
@@ -100,36 +219,513 @@ class ClassInfoCollector {
         }
 
 
-        // Now check the superclass and interfaces
+        // Now check the superclass and interfaces.
+        // Even if extends/implements are not looked for, these should not be reported as class usage.
         RuntimeIndex.ByteArrayKey superClass = classInfo.getSuperClass();
-        if (superClass != null && !RuntimeIndex.JAVA_LANG_OBJECT_KEY.equals(superClass)) {
+        if ((extendsClass || classUsage || indirectClassUsage) && superClass != null && !RuntimeIndex.JAVA_LANG_OBJECT_KEY.equals(superClass)) {
 
             Set<String> annotations = runtimeIndex.getAnnotationsForClass(superClass);
             if (annotations != null) {
                 // This is only called once, no need to cache in classInfo
                 String superClassName = RuntimeIndex.convertClassNameToDotFormat(superClass.convertBytesToString(reusableStreams));
-                recordSuperClassUsage(classInfo, annotations, superClassName);
+                if (extendsClass) {
+                    recordSuperClassUsage(classInfo, annotations, superClassName);
+                }
                 classReferences.indirectReferences.add(superClassName);
             }
         }
 
+        if (implementsInterface || classUsage || indirectClassUsage) {
+            for (RuntimeIndex.ByteArrayKey iface : classInfo.getInterfaces()) {
+                Set<String> annotations = runtimeIndex.getAnnotationsForClass(iface);
+                if (annotations != null) {
+                    // This is only called once, no need to cache in classInfo
+                    String ifaceName = RuntimeIndex.convertClassNameToDotFormat(iface.convertBytesToString(reusableStreams));
+                    if (implementsInterface) {
+                        recordImplementsInterfaceUsage(classInfo, annotations, ifaceName);
+                    }
+                    classReferences.indirectReferences.add(ifaceName);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Checks a field or method declared in a parsed {@link ClassInformation} against the {@code RuntimeIndex},
+     * recording any use of indexed classes in its descriptor, and whether it overrides an indexed method.
+     *
+     * @param classInfo the parsed class information
+     * @param field {@code true} if the member is a field, {@code false} if it is a method
+     * @param accessFlags the access flags of the member
+     * @param nameIndex the constant pool position of the name of the member
+     * @param descriptorIndex the constant pool position of the descriptor of the member
+     */
+    void processMember(ClassInformation classInfo, boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException {
+        setCurrentMember(field, accessFlags, nameIndex, descriptorIndex);
+        if ((accessFlags & ACC_SYNTHETIC) != 0) {
+            // Generated by the compiler, e.g. bridge methods. Whatever caused them will be reported anyway
+            return;
+        }
+        recordDeclaredTypes(classInfo, descriptorIndex);
+        if (!field && overridesMethod) {
+            RuntimeIndex.ByteArrayKey overridden = findOverriddenClass(classInfo, accessFlags, nameIndex, descriptorIndex);
+            if (overridden != null) {
+                String scannedClass = classInfo.getScannedClassName(reusableStreams);
+                recordUsage(scannedClass, new OverridesAnnotatedMethod(
+                        getOverriddenAnnotations(classInfo, overridden, nameIndex, descriptorIndex),
+                        scannedClass,
+                        runtimeIndex.getClassNameFromKey(overridden),
+                        runtimeIndex.getMethodNameFromKey(classInfo.getKeyFromUtfInfo(nameIndex)),
+                        runtimeIndex.getMethodDescriptorsFromKey(classInfo.getKeyFromUtfInfo(descriptorIndex))));
+            }
+        }
+    }
+
+    /**
+     * Checks the generic signature of the class, or of the field or method last passed to {@link #processMember},
+     * for use of indexed classes. For the class, these are recorded as indirect class usage once
+     * {@link #endClass(ClassInformation)} is called, while for the members they are recorded as declared types.
+     *
+     * @param classInfo the parsed class information
+     * @param classSignature {@code true} if this is the signature of the class
+     * @param signatureIndex the constant pool position of the signature
+     */
+    void processSignature(ClassInformation classInfo, boolean classSignature, int signatureIndex) throws IOException {
+        if (classSignature) {
+            if (indirectClassUsage) {
+                DescriptorTokenizer signature = classInfo.tokenizeUtfInfo(signatureIndex, tokenizer);
+                for (RuntimeIndex.ByteArrayKey key = nextAnnotatedType(signature); key != null; key = nextAnnotatedType(signature)) {
+                    classReferences.addIndirectType(key);
+                }
+            }
+        } else if ((currentMemberAccessFlags & ACC_SYNTHETIC) == 0) {
+            recordDeclaredTypes(classInfo, signatureIndex);
+        }
+    }
+
+    /**
+     * Records the class usage found for a parsed {@link ClassInformation}. This is deferred until the end of the
+     * class, since classes may also be used indirectly via the generic signature of the class.
+     */
+    void endClass(ClassInformation classInfo) throws IOException {
+        String scannedClass = classInfo.getScannedClassName(reusableStreams);
+        if (classUsage) {
+            classReferences.recordClassUsage(scannedClass);
+        }
+        if (indirectClassUsage) {
+            classReferences.recordIndirectClassUsage(scannedClass);
+        }
+        classReferences = null;
+    }
+
+    /**
+     * Checks a field or method declared in a parsed {@link ClassInformation} in verdict mode, as done by
+     * {@link #processMember}. No {@link AnnotationUsage} instances are created, and nothing is recorded.
+     *
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     */
+    UnstableApiVerdict checkMemberForVerdict(ClassInformation classInfo, boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException {
+        setCurrentMember(field, accessFlags, nameIndex, descriptorIndex);
+        if ((accessFlags & ACC_SYNTHETIC) != 0) {
+            return UnstableApiVerdict.CLEAN;
+        }
+        UnstableApiVerdict verdict = checkDeclaredTypesForVerdict(classInfo, descriptorIndex);
+        if (verdict.isClean() && !field && overridesMethod) {
+            RuntimeIndex.ByteArrayKey overridden = findOverriddenClass(classInfo, accessFlags, nameIndex, descriptorIndex);
+            if (overridden != null) {
+                String reference = toDotFormat(overridden) + "." +
+                        runtimeIndex.getMethodNameFromKey(classInfo.getKeyFromUtfInfo(nameIndex)) +
+                        runtimeIndex.getMethodDescriptorsFromKey(classInfo.getKeyFromUtfInfo(descriptorIndex));
+                return createVerdict(classInfo, AnnotationUsageType.OVERRIDES_METHOD, reference,
+                        getOverriddenAnnotations(classInfo, overridden, nameIndex, descriptorIndex));
+            }
+        }
+        return verdict;
+    }
+
+    /**
+     * Checks the generic signature of the class, or of the field or method last passed to
+     * {@link #checkMemberForVerdict}, in verdict mode, as done by {@link #processSignature}.
+     *
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     */
+    UnstableApiVerdict checkSignatureForVerdict(ClassInformation classInfo, boolean classSignature, int signatureIndex) throws IOException {
+        if (classSignature) {
+            if (indirectClassUsage) {
+                DescriptorTokenizer signature = classInfo.tokenizeUtfInfo(signatureIndex, tokenizer);
+                for (RuntimeIndex.ByteArrayKey key = nextAnnotatedType(signature); key != null; key = nextAnnotatedType(signature)) {
+                    if (!isSuperClassOrInterface(classInfo, key)) {
+                        return createVerdict(classInfo, AnnotationUsageType.INDIRECT_CLASS_USAGE, toDotFormat(key),
+                                runtimeIndex.getAnnotationsForClass(key));
+                    }
+                }
+            }
+            return UnstableApiVerdict.CLEAN;
+        }
+        if ((currentMemberAccessFlags & ACC_SYNTHETIC) != 0) {
+            return UnstableApiVerdict.CLEAN;
+        }
+        return checkDeclaredTypesForVerdict(classInfo, signatureIndex);
+    }
+
+    private void setCurrentMember(boolean field, int accessFlags, int nameIndex, int descriptorIndex) {
+        currentMemberField = field;
+        currentMemberAccessFlags = accessFlags;
+        currentMemberNameIndex = nameIndex;
+        currentMemberDescriptorIndex = descriptorIndex;
+    }
+
+    /**
+     * Records the indexed classes found in the descriptor or generic signature of the current member as
+     * declared types
+     */
+    private void recordDeclaredTypes(ClassInformation classInfo, int typesIndex) throws IOException {
+        if (!(currentMemberField ? declaredFieldType : declaredMethodType)) {
+            return;
+        }
+        DescriptorTokenizer types = classInfo.tokenizeUtfInfo(typesIndex, tokenizer);
+        for (RuntimeIndex.ByteArrayKey key = nextAnnotatedType(types); key != null; key = nextAnnotatedType(types)) {
+            Set<String> annotations = runtimeIndex.getAnnotationsForClass(key);
+            String scannedClass = classInfo.getScannedClassName(reusableStreams);
+            String memberName = classInfo.getKeyFromUtfInfo(currentMemberNameIndex).convertBytesToString(reusableStreams);
+            String type = runtimeIndex.getClassNameFromKey(key);
+            if (currentMemberField) {
+                recordUsage(scannedClass, new DeclaredFieldType(annotations, scannedClass, memberName, type));
+            } else {
+                String desc = classInfo.getKeyFromUtfInfo(currentMemberDescriptorIndex).convertBytesToString(reusableStreams);
+                recordUsage(scannedClass, new DeclaredMethodType(annotations, scannedClass, memberName, desc, type));
+            }
+        }
+    }
+
+    private UnstableApiVerdict checkDeclaredTypesForVerdict(ClassInformation classInfo, int typesIndex) throws IOException {
+        if (!(currentMemberField ? declaredFieldType : declaredMethodType)) {
+            return UnstableApiVerdict.CLEAN;
+        }
+        RuntimeIndex.ByteArrayKey key = nextAnnotatedType(classInfo.tokenizeUtfInfo(typesIndex, tokenizer));
+        if (key == null) {
+            return UnstableApiVerdict.CLEAN;
+        }
+        Set<String> annotations = runtimeIndex.getAnnotationsForClass(key);
+        String memberName = classInfo.getKeyFromUtfInfo(currentMemberNameIndex).convertBytesToString(reusableStreams);
+        if (currentMemberField) {
+            return createVerdict(classInfo, AnnotationUsageType.DECLARED_FIELD_TYPE, memberName, annotations);
+        }
+        String desc = classInfo.getKeyFromUtfInfo(currentMemberDescriptorIndex).convertBytesToString(reusableStreams);
+        return createVerdict(classInfo, AnnotationUsageType.DECLARED_METHOD_TYPE, memberName + desc, annotations);
+    }
+
+    /**
+     * Gets the next class in a descriptor or generic signature which is annotated in the {@code RuntimeIndex}
+     *
+     * @return the key of the class in the {@code RuntimeIndex}, or {@code null} if there are no more
+     */
+    private RuntimeIndex.ByteArrayKey nextAnnotatedType(DescriptorTokenizer tokenizer) {
+        for (RuntimeIndex.ByteArrayKey name = tokenizer.nextClassName(); name != null; name = tokenizer.nextClassName()) {
+            RuntimeIndex.ByteArrayKey key = runtimeIndex.getClassKeyFromUnprefixedName(name);
+            if (key != null && runtimeIndex.getAnnotationsForClass(key) != null) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the direct superclass or interface containing an indexed method which a method declared in the scanned
+     * class overrides. Methods inherited further up are found too, since the {@code RuntimeIndex} copies indexed
+     * methods to the subtypes in the index.
+     *
+     * @return the key of the superclass or interface, or {@code null} if no indexed method is overridden
+     */
+    private RuntimeIndex.ByteArrayKey findOverriddenClass(ClassInformation classInfo, int accessFlags, int nameIndex, int descriptorIndex) {
+        if ((accessFlags & (ACC_STATIC | ACC_PRIVATE)) != 0) {
+            return null;
+        }
+        RuntimeIndex.ByteArrayKey name = classInfo.getKeyFromUtfInfo(nameIndex);
+        if (INIT_KEY.equals(name) || CLINIT_KEY.equals(name)) {
+            return null;
+        }
+        RuntimeIndex.ByteArrayKey superClass = classInfo.getSuperClass();
+        if (superClass != null && getOverriddenAnnotations(classInfo, superClass, nameIndex, descriptorIndex) != null) {
+            return superClass;
+        }
         for (RuntimeIndex.ByteArrayKey iface : classInfo.getInterfaces()) {
-            Set<String> annotations = runtimeIndex.getAnnotationsForClass(iface);
-            if (annotations != null) {
-                // This is only called once, no need to cache in classInfo
-                String ifaceName = RuntimeIndex.convertClassNameToDotFormat(iface.convertBytesToString(reusableStreams));
-                recordImplementsInterfaceUsage(classInfo, annotations, ifaceName);
-                classReferences.indirectReferences.add(ifaceName);
+            if (getOverriddenAnnotations(classInfo, iface, nameIndex, descriptorIndex) != null) {
+                return iface;
             }
         }
+        return null;
+    }
 
-        classReferences.recordClassUsage(classInfo.getScannedClassName(reusableStreams));
+    private Set<String> getOverriddenAnnotations(ClassInformation classInfo, RuntimeIndex.ByteArrayKey classKey, int nameIndex, int descriptorIndex) {
+        return runtimeIndex.getAnnotationsForMethod(
+                classKey,
+                () -> classInfo.getKeyFromUtfInfo(nameIndex),
+                () -> classInfo.getKeyFromUtfInfo(descriptorIndex));
     }
 
     boolean checkAnnotationIndex(JandexIndex annotationIndex) {
+        if (!annotatedAnnotationUsage) {
+            return true;
+        }
         return new AnnotationIndexChecker(annotationIndex).checkAnnotationIndex();
     }
 
+    /**
+     * Checks a parsed {@link ClassInformation} against the {@code RuntimeIndex}, stopping at the first usage of
+     * an indexed class/member. No {@link AnnotationUsage} instances are created, and nothing is recorded.
+     *
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     */
+    UnstableApiVerdict checkClassForVerdict(ClassInformation classInfo) throws IOException {
+        // Check the superclass and interfaces first, so that they are reported as such rather than as class usage
+        RuntimeIndex.ByteArrayKey superClass = classInfo.getSuperClass();
+        if (extendsClass && superClass != null && !RuntimeIndex.JAVA_LANG_OBJECT_KEY.equals(superClass)) {
+            Set<String> annotations = runtimeIndex.getAnnotationsForClass(superClass);
+            if (annotations != null) {
+                return createVerdict(classInfo, AnnotationUsageType.EXTENDS_CLASS, toDotFormat(superClass), annotations);
+            }
+        }
+        if (implementsInterface) {
+            for (RuntimeIndex.ByteArrayKey iface : classInfo.getInterfaces()) {
+                Set<String> annotations = runtimeIndex.getAnnotationsForClass(iface);
+                if (annotations != null) {
+                    return createVerdict(classInfo, AnnotationUsageType.IMPLEMENTS_INTERFACE, toDotFormat(iface), annotations);
+                }
+            }
+        }
+
+        int[] tags = classInfo.getTags();
+        for (int i = 0; i < tags.length; i++) {
+            int pos = i + 1;
+            switch (tags[i]) {
+                case BytecodeTags.CONSTANT_FIELDREF: {
+                    if (!fieldReferences) {
+                        break;
+                    }
+                    Set<String> annotations = runtimeIndex.getAnnotationsForField(
+                            classInfo.getClassNameFromRefInfo(pos),
+                            () -> classInfo.getNameFromRefInfo(pos));
+                    if (annotations != null) {
+                        String reference = toDotFormat(classInfo.getClassNameFromRefInfo(pos)) + "." +
+                                runtimeIndex.getFieldNameFromKey(classInfo.getNameFromRefInfo(pos));
+                        return createVerdict(classInfo, AnnotationUsageType.FIELD_REFERENCE, reference, annotations);
+                    }
+                }
+                break;
+                case BytecodeTags.CONSTANT_METHODREF:
+                case BytecodeTags.CONSTANT_INTERFACEMETHODREF: {
+                    if (!methodReferences) {
+                        break;
+                    }
+                    Set<String> annotations = runtimeIndex.getAnnotationsForMethod(
+                            classInfo.getClassNameFromRefInfo(pos),
+                            () -> classInfo.getNameFromRefInfo(pos),
+                            () -> classInfo.getDescriptorFromRefInfo(pos));
+                    if (annotations != null) {
+                        String reference = toDotFormat(classInfo.getClassNameFromRefInfo(pos)) + "." +
+                                runtimeIndex.getMethodNameFromKey(classInfo.getNameFromRefInfo(pos)) +
+                                runtimeIndex.getMethodDescriptorsFromKey(classInfo.getDescriptorFromRefInfo(pos));
+                        return createVerdict(classInfo, AnnotationUsageType.METHOD_REFERENCE, reference, annotations);
+                    }
+                }
+                break;
+                case BytecodeTags.CONSTANT_CLASS: {
+                    if (!classUsage) {
+                        break;
+                    }
+                    RuntimeIndex.ByteArrayKey key = classInfo.getClassNameFromClassInfo(pos);
+                    Set<String> annotations = runtimeIndex.getAnnotationsForClass(key);
+                    if (annotations != null && !isSuperClassOrInterface(classInfo, key)) {
+                        return createVerdict(classInfo, AnnotationUsageType.CLASS_USAGE, toDotFormat(key), annotations);
+                    }
+                }
+                break;
+                case BytecodeTags.CONSTANT_STRING: {
+                    if (!reflectiveClassUsage) {
+                        break;
+                    }
+                    RuntimeIndex.ByteArrayKey key = runtimeIndex.getClassKeyFromDotName(classInfo.getKeyFromStringInfo(pos));
+                    if (key != null) {
+                        return createVerdict(classInfo, AnnotationUsageType.REFLECTIVE_CLASS_USAGE, toDotFormat(key),
+                                runtimeIndex.getAnnotationsForClass(key));
+                    }
+                }
+                break;
+            }
+        }
+
+        if (indirectClassUsage) {
+            // Check these last, so that direct usage of a class is reported as such
+            for (int i = 0; i < tags.length; i++) {
+                int pos = i + 1;
+                DescriptorTokenizer descriptor;
+                if (tags[i] == BytecodeTags.CONSTANT_NAMEANDTYPE) {
+                    descriptor = classInfo.tokenizeNameAndTypeDescriptor(pos, tokenizer);
+                } else if (tags[i] == BytecodeTags.CONSTANT_METHODTYPE) {
+                    descriptor = classInfo.tokenizeMethodTypeDescriptor(pos, tokenizer);
+                } else {
+                    continue;
+                }
+                for (RuntimeIndex.ByteArrayKey key = nextAnnotatedType(descriptor); key != null; key = nextAnnotatedType(descriptor)) {
+                    if (!isSuperClassOrInterface(classInfo, key)) {
+                        return createVerdict(classInfo, AnnotationUsageType.INDIRECT_CLASS_USAGE, toDotFormat(key),
+                                runtimeIndex.getAnnotationsForClass(key));
+                    }
+                }
+            }
+        }
+        return UnstableApiVerdict.CLEAN;
+    }
+
+    /**
+     * Finds the constant pool entries of a parsed {@link ClassInformation} containing the type descriptor of an
+     * annotation which has been annotated with an unstable api annotation. Annotations are referenced this way
+     * from the bytecode of the classes using them, so if there are none the class cannot be using any of them,
+     * and there is no need to read its annotation attributes. If there are some, the attributes need to be read to
+     * confirm the usage, since the descriptor could also be used for something else, such as the type of a field.
+     *
+     * @return the annotation names indexed by constant pool position, or {@code null} if there are none
+     */
+    String[] getAnnotatedAnnotationCandidates(ClassInformation classInfo) {
+        if (!annotatedAnnotationUsage || runtimeIndex.getAnnotatedAnnotations().isEmpty()) {
+            return null;
+        }
+        String[] candidates = null;
+        int[] tags = classInfo.getTags();
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == BytecodeTags.CONSTANT_UTF8) {
+                String annotation = runtimeIndex.getAnnotatedAnnotationForDescriptor(classInfo.getKeyFromUtfInfo(i + 1));
+                if (annotation != null) {
+                    if (candidates == null) {
+                        // Indexed by the one based constant pool position
+                        candidates = new String[tags.length + 1];
+                    }
+                    candidates[i + 1] = annotation;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Records the usage of annotations annotated with unstable api annotations found in the annotation attributes
+     * of a scanned class
+     *
+     * @param classInfo the parsed class information
+     * @param annotations the annotations found
+     */
+    void recordAnnotatedAnnotationUsage(ClassInformation classInfo, Set<String> annotations) throws IOException {
+        String scannedClass = classInfo.getScannedClassName(reusableStreams);
+        recordUsage(scannedClass, new AnnotatedAnnotationUsage(scannedClass, annotations));
+    }
+
+    /**
+     * Creates the verdict for an annotation annotated with an unstable api annotation found in the annotation
+     * attributes of a scanned class
+     */
+    UnstableApiVerdict createAnnotatedAnnotationVerdict(ClassInformation classInfo, String annotation) throws IOException {
+        return createVerdict(classInfo, AnnotationUsageType.ANNOTATED_ANNOTATION_USAGE, annotation,
+                runtimeIndex.getAnnotationsForAnnotation(annotation));
+    }
+
+    /**
+     * Checks the Jandex index for usage of annotations annotated with unstable api annotations, stopping at the
+     * first usage.
+     *
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     */
+    UnstableApiVerdict checkAnnotationIndexForVerdict(JandexIndex annotationIndex) {
+        if (!annotatedAnnotationUsage) {
+            return UnstableApiVerdict.CLEAN;
+        }
+        for (String annotation : getAnnotatedAnnotationsToCheck(annotationIndex)) {
+            for (AnnotationInstance instance : annotationIndex.getAnnotations(annotation)) {
+                String clazz = getDeclaringClassName(instance.target());
+                if (clazz != null) {
+                    return new UnstableApiVerdict(AnnotationUsageType.ANNOTATED_ANNOTATION_USAGE, clazz, annotation,
+                            runtimeIndex.getAnnotationsForAnnotation(annotation));
+                }
+            }
+        }
+        return UnstableApiVerdict.CLEAN;
+    }
+
+    /**
+     * Gets the annotated annotations to look up in the Jandex index. Normally this is all the annotated annotations
+     * in the runtime index. However, if the Jandex index knows which annotations it contains, and there are fewer
+     * of those, we go the other way and only look up the ones from the Jandex index in the runtime index. This
+     * avoids lots of empty lookups in the Jandex index when the runtime index has many annotated annotations,
+     * and the user code uses few annotations. Gathering the annotations of the Jandex index is given up once there
+     * are as many as the annotated annotations, or the Jandex index has more classes than that, so it costs no more
+     * than the lookups it might save.
+     */
+    private Collection<String> getAnnotatedAnnotationsToCheck(JandexIndex annotationIndex) {
+        Set<String> annotatedAnnotations = runtimeIndex.getAnnotatedAnnotations();
+        if (annotatedAnnotations.isEmpty()) {
+            return annotatedAnnotations;
+        }
+        Collection<String> knownAnnotations = annotationIndex.getKnownAnnotationNames(annotatedAnnotations.size() - 1);
+        if (knownAnnotations == null) {
+            return annotatedAnnotations;
+        }
+        List<String> result = new ArrayList<>();
+        for (String annotation : knownAnnotations) {
+            if (annotatedAnnotations.contains(annotation)) {
+                result.add(annotation);
+            }
+        }
+        return result;
+    }
+
+    private UnstableApiVerdict createVerdict(ClassInformation classInfo, AnnotationUsageType type, String reference, Set<String> annotations) throws IOException {
+        return new UnstableApiVerdict(type, classInfo.getScannedClassName(reusableStreams), reference, annotations);
+    }
+
+    private static boolean isSuperClassOrInterface(ClassInformation classInfo, RuntimeIndex.ByteArrayKey classKey) {
+        // Extends/implements are not reported as class usage, also when they are not looked for
+        if (classKey.equals(classInfo.getSuperClass())) {
+            return true;
+        }
+        for (RuntimeIndex.ByteArrayKey iface : classInfo.getInterfaces()) {
+            if (classKey.equals(iface)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String toDotFormat(RuntimeIndex.ByteArrayKey classKey) throws IOException {
+        return RuntimeIndex.convertClassNameToDotFormat(classKey.convertBytesToString(reusableStreams));
+    }
+
+    private static String getDeclaringClassName(AnnotationTarget target) {
+        if (target.kind() == AnnotationTarget.Kind.TYPE) {
+            target = target.asType().enclosingTarget();
+        }
+
+        if (target.kind() == AnnotationTarget.Kind.METHOD_PARAMETER) {
+            return target.asMethodParameter().method().declaringClass().name().toString();
+        } else if (target.kind() == AnnotationTarget.Kind.METHOD) {
+            return target.asMethod().declaringClass().name().toString();
+        } else if (target.kind() == AnnotationTarget.Kind.CLASS) {
+            return target.asClass().name().toString();
+        } else if (target.kind() == AnnotationTarget.Kind.FIELD) {
+            return target.asField().declaringClass().name().toString();
+        } else if (target.kind() == AnnotationTarget.Kind.RECORD_COMPONENT) {
+            return target.asRecordComponent().declaringClass().name().toString();
+        }
+        return null;
+    }
+
+    private void recordUsage(String sourceClass, AnnotationUsage usage) {
+        boolean added = usages == null ? currentClassUsages.add(usage) : usages.add(usage);
+        if (added && listener != null) {
+            listener.usageFound(usage.getType(), sourceClass, usage);
+        }
+    }
+
     private void recordMethodUsage(ClassInformation classInfo, Set<String> annotations, RuntimeIndex.ByteArrayKey classNameFromReference, RuntimeIndex.ByteArrayKey nameFromReference, RuntimeIndex.ByteArrayKey descriptorFromReference) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
@@ -140,7 +736,7 @@ class ClassInfoCollector {
                 runtimeIndex.getClassNameFromKey(classNameFromReference),
                 runtimeIndex.getMethodNameFromKey(nameFromReference),
                 runtimeIndex.getMethodDescriptorsFromKey(descriptorFromReference));
-        usages.add(annotatedMethodReference);
+        recordUsage(scannedClass, annotatedMethodReference);
     }
 
     private void recordFieldUsage(ClassInformation classInfo, Set<String> annotations, RuntimeIndex.ByteArrayKey classNameFromReference, RuntimeIndex.ByteArrayKey nameFromReference) throws IOException {
@@ -152,19 +748,19 @@ class ClassInfoCollector {
                 scannedClass,
                 runtimeIndex.getClassNameFromKey(classNameFromReference),
                 runtimeIndex.getFieldNameFromKey(nameFromReference));
-        usages.add(annotatedFieldReference);
+        recordUsage(scannedClass, annotatedFieldReference);
     }
 
     private void recordImplementsInterfaceUsage(ClassInformation classInfo, Set<String> annotations, String ifaceName) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
-        usages.add(new ImplementsAnnotatedInterface(annotations, scannedClass, ifaceName));
+        recordUsage(scannedClass, new ImplementsAnnotatedInterface(annotations, scannedClass, ifaceName));
     }
 
     private void recordSuperClassUsage(ClassInformation classInfo, Set<String> annotations, String superClassName) throws IOException {
         //The name of the scanned class will not be in the index, so we need to get that separately
         String scannedClass = classInfo.getScannedClassName(reusableStreams);
-        usages.add(new ExtendsAnnotatedClass(annotations, scannedClass, superClassName));
+        recordUsage(scannedClass, new ExtendsAnnotatedClass(annotations, scannedClass, superClassName));
     }
 
 
@@ -175,6 +771,24 @@ class ClassInfoCollector {
         private final Set<String> indirectReferences = new HashSet<>();
         // Annotations for class references
         private final Map<String, Set<String>> classes = new HashMap<>();
+        // Annotations for classes only found in descriptors and signatures
+        private final Map<String, Set<String>> indirectTypes = new HashMap<>();
+
+        void addIndirectType(RuntimeIndex.ByteArrayKey key) {
+            indirectTypes.put(runtimeIndex.getClassNameFromKey(key), runtimeIndex.getAnnotationsForClass(key));
+        }
+
+        void recordIndirectClassUsage(String className) {
+            for (String s : indirectReferences) {
+                indirectTypes.remove(s);
+            }
+            for (String s : classes.keySet()) {
+                indirectTypes.remove(s);
+            }
+            for (Map.Entry<String, Set<String>> entry : indirectTypes.entrySet()) {
+                recordUsage(className, new IndirectAnnotatedClassUsage(entry.getValue(), className, entry.getKey()));
+            }
+        }
 
         boolean recordClassUsage(String className) {
             boolean empty = true;
@@ -182,7 +796,7 @@ class ClassInfoCollector {
                 classes.remove(s);
             }
             for (String referencedClass : classes.keySet()) {
-                usages.add(new AnnotatedClassUsage(classes.get(referencedClass), className, referencedClass));
+                recordUsage(className, new AnnotatedClassUsage(classes.get(referencedClass), className, referencedClass));
                 empty = false;
             }
             return empty;
@@ -200,24 +814,13 @@ class ClassInfoCollector {
         public boolean checkAnnotationIndex() {
             Map<AnnotationTarget, Set<String>> annotationsByTarget = new HashMap<>();
 
-            for (String annotation : runtimeIndex.getAnnotatedAnnotations()) {
+            for (String annotation : getAnnotatedAnnotationsToCheck(annotationIndex)) {
                 Collection<AnnotationInstance> annotationInstances = annotationIndex.getAnnotations(annotation);
                 for (AnnotationInstance instance : annotationInstances) {
                     AnnotationTarget target = instance.target();
-                    if (target.kind() == AnnotationTarget.Kind.TYPE) {
-                        target = target.asType().enclosingTarget();
-                    }
-
-                    if (target.kind() == AnnotationTarget.Kind.METHOD_PARAMETER) {
-                        addClassAnnotation(target.asMethodParameter().method().declaringClass().name().toString(), annotation);
-                    } else if (target.kind() == AnnotationTarget.Kind.METHOD) {
-                        addClassAnnotation(target.asMethod().declaringClass().name().toString(), annotation);
-                    } else if (target.kind() == AnnotationTarget.Kind.CLASS) {
-                        addClassAnnotation(target.asClass().name().toString(), annotation);
-                    } else if (target.kind() == AnnotationTarget.Kind.FIELD) {
-                        addClassAnnotation(target.asField().declaringClass().name().toString(), annotation);
-                    } else if (target.kind() == AnnotationTarget.Kind.RECORD_COMPONENT) {
-                        addClassAnnotation(target.asRecordComponent().declaringClass().name().toString(), annotation);
+                    String clazz = getDeclaringClassName(target);
+                    if (clazz != null) {
+                        addClassAnnotation(clazz, annotation);
                     }
                     //addAnnotationTarget(annotationsByTarget, recordComponents, annotation, target);
                 }
@@ -227,8 +830,14 @@ class ClassInfoCollector {
                 return true;
             }
 
+            // Each class only has one entry, so there is no need to track duplicates when not retaining the usages
             for (Map.Entry<String, Set<String>> entry : classAnnotations.entrySet()) {
-                usages.add(new AnnotatedAnnotationUsage(entry.getKey(), entry.getValue()));
+                AnnotationUsage usage = new AnnotatedAnnotationUsage(entry.getKey(), entry.getValue());
+                if (usages == null || usages.add(usage)) {
+                    if (listener != null) {
+                        listener.usageFound(usage.getType(), entry.getKey(), usage);
+                    }
+                }
             }
 
 
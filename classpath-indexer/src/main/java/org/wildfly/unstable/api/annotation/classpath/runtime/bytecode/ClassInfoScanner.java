@@ -1,14 +1,16 @@
 package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
+import org.wildfly.unstable.api.annotation.classpath.index.ClassNameFilter;
+import org.wildfly.unstable.api.annotation.classpath.index.MultiReleaseJarEntries;
 import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
 
-import java.io.BufferedInputStream;
-import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-import java.util.Locale;
+import java.util.Collection;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Inspects the bytecode for one class (typically from user code) and checks against the
@@ -21,230 +23,295 @@ public class ClassInfoScanner {
 
 
     private final ClassInfoCollector collector;
-    private final TmpObjects tmpObjects = new TmpObjects();
-
+    private final ClassNameFilter scannedClasses;
+    private final int targetJavaVersion;
+    private final ClassFileParser parser = new ClassFileParser();
+
+    /**
+     * Creates a scanner which retains all the usages found, which are available from {@link #getUsages()}
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     */
     public ClassInfoScanner(RuntimeIndex runtimeIndex) {
-        this.collector = new ClassInfoCollector(runtimeIndex);
+        this(runtimeIndex, ScanConfiguration.ALL);
     }
 
-    public Set<AnnotationUsage> getUsages() {
-        return collector.getUsages();
+    /**
+     * Creates a scanner which only looks for the usage types and annotations selected in a configuration, and
+     * retains all the usages found, which are available from {@link #getUsages()}
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     * @param configuration the scan configuration
+     */
+    public ClassInfoScanner(RuntimeIndex runtimeIndex, ScanConfiguration configuration) {
+        this.collector = new ClassInfoCollector(filterRuntimeIndex(runtimeIndex, configuration), configuration, null);
+        this.scannedClasses = configuration.getScannedClasses();
+        this.targetJavaVersion = configuration.getTargetJavaVersion();
     }
 
-    public void scanClass(InputStream input) throws IOException {
-        BufferedInputStream in = input instanceof BufferedInputStream ?
-                (BufferedInputStream) input : new BufferedInputStream(input);
-        verifyMagic(in);
-        boolean checkJava11AndNewer = true; // Toggle this for the standalone benchmark
-        if (!readVersionFields(in, checkJava11AndNewer)) {
-            return;
-        }
-
-        int size = readUnsignedShort(in) - 1;
-
-        byte[] constPool = null;
-        try {
-            constPool = tmpObjects.borrowConstantPool(size);
-            int[] offsets = new int[size];
-            int[] tags = new int[size];
-            int lastOffset = 0;
-            for (int pos = 0, offset = 0; pos < size; pos++) {
-                int tag = readUnsignedByte(in);
-                offsets[pos] = offset;
-                tags[pos] = tag;
-                switch (tag) {
-                    case BytecodeTags.CONSTANT_CLASS:
-                    case BytecodeTags.CONSTANT_STRING:
-                    case BytecodeTags.CONSTANT_METHODTYPE:
-                    case BytecodeTags.CONSTANT_MODULE:
-                    case BytecodeTags.CONSTANT_PACKAGE:
-                        constPool = sizeToFit(constPool, 2, offset, size - pos);
-                        tags[pos] = tag;
-                        readFully(in, constPool, offset, 2);
-                        offset += 2;
-                        break;
-                    case BytecodeTags.CONSTANT_FIELDREF:
-                    case BytecodeTags.CONSTANT_METHODREF:
-                    case BytecodeTags.CONSTANT_INTERFACEMETHODREF:
-                    case BytecodeTags.CONSTANT_INTEGER:
-                    case BytecodeTags.CONSTANT_INVOKEDYNAMIC:
-                    case BytecodeTags.CONSTANT_DYNAMIC:
-                    case BytecodeTags.CONSTANT_FLOAT:
-                    case BytecodeTags.CONSTANT_NAMEANDTYPE:
-                        constPool = sizeToFit(constPool, 4, offset, size - pos);
-                        tags[pos] = tag;
-                        readFully(in, constPool, offset, 4);
-                        offset += 4;
-                        break;
-                    case BytecodeTags.CONSTANT_LONG:
-                    case BytecodeTags.CONSTANT_DOUBLE:
-                        constPool = sizeToFit(constPool, 8, offset, size - pos);
-                        tags[pos] = tag;
-                        readFully(in, constPool, offset, 8);
-                        offset += 8;
-                        pos++; // 8 byte constant pool entries take two "virtual" slots for some reason
-                        break;
-                    case BytecodeTags.CONSTANT_METHODHANDLE:
-                        constPool = sizeToFit(constPool, 3, offset, size - pos);
-                        tags[pos] = (byte) tag;
-                        readFully(in, constPool, offset, 3);
-                        offset += 3;
-                        break;
-                    case BytecodeTags.CONSTANT_UTF8:
-                        int len = readUnsignedShort(in);
-                        constPool = sizeToFit(constPool, len + 2, offset, size - pos);
-                        tags[pos] = tag;
-                        constPool[offset++] = (byte) (len >>> 8);
-                        constPool[offset++] = (byte) len;
-
-                        readFully(in, constPool, offset, len);
-                        offset += len;
-                        break;
-                    default:
-                        throw new IllegalStateException(
-                                String.format(Locale.ROOT, "Unknown tag %s! pos = %s poolSize = %s", tag, pos, size));
-                }
-                lastOffset = offset;
-            }
-
-            // Skip the access flags
-            skipBytes(in, 2);
-
-            int thisClassPosition = readUnsignedShort(in);
-            int superClassPosition = readUnsignedShort(in);
-            int interfacesCount = readUnsignedShort(in);
-            int[] interfacePositions = new int[interfacesCount];
-            for (int i = 0; i < interfacesCount; i++) {
-                interfacePositions[i] = readUnsignedShort(in);
-            }
-
-            ClassInformation classInfo =
-                    new ClassInformation(tags, constPool, offsets, thisClassPosition, superClassPosition, interfacePositions, lastOffset);
-            collector.processClass(classInfo);
-
-        } finally {
-            if (constPool != null) {
-                tmpObjects.returnConstantPool(constPool);
-            }
-        }
+    /**
+     * Creates a scanner which reports each usage to a listener as it is found, and retains nothing. This keeps the
+     * memory used constant, no matter how many classes are scanned or how many usages are found.
+     * {@link #getUsages()} will always return an empty set for scanners created with this constructor.
+     *
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     * @param listener the listener to report the usages to
+     */
+    public ClassInfoScanner(RuntimeIndex runtimeIndex, UsageListener listener) {
+        this(runtimeIndex, ScanConfiguration.ALL, listener);
     }
 
-    public boolean checkAnnotationIndex(JandexIndex annotationIndex) {
-        return collector.checkAnnotationIndex(annotationIndex);
-    }
-
-    private void verifyMagic(InputStream in) throws IOException {
-        final int magic;
-        try {
-            magic = readInteger(in);
-        } catch (EOFException e) {
-            throw new EOFException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE");
-        }
-        if (magic != 0xCA_FE_BA_BE) {
-            throw new IOException("Input is not a valid class file; must begin with a 4-byte integer 0xCAFEBABE, "
-                    + "but seen 0x" + Integer.toHexString(magic).toUpperCase());
+    /**
+     * Creates a scanner which only looks for the usage types and annotations selected in a configuration, and
+     * reports each usage to a listener as it is found, retaining nothing.
+     *
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     * @param configuration the scan configuration
+     * @param listener the listener to report the usages to
+     */
+    public ClassInfoScanner(RuntimeIndex runtimeIndex, ScanConfiguration configuration, UsageListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("Null parameter");
         }
+        this.collector = new ClassInfoCollector(filterRuntimeIndex(runtimeIndex, configuration), configuration, listener);
+        this.scannedClasses = configuration.getScannedClasses();
+        this.targetJavaVersion = configuration.getTargetJavaVersion();
     }
-    private boolean readVersionFields(InputStream in, boolean checkJava11AndNewer) throws IOException {
-        int minor = readUnsignedShort(in);
-        int major = readUnsignedShort(in);
-        if (checkJava11AndNewer) {
-            return major > 45 || (major == 45 && minor >= 3);
+
+    private static RuntimeIndex filterRuntimeIndex(RuntimeIndex runtimeIndex, ScanConfiguration configuration) {
+        if (runtimeIndex == null || configuration == null) {
+            throw new NullPointerException("Null parameter");
         }
-        return true;
+        // Do the filtering once up front, so the lookups for each class don't need to consider it
+        RuntimeIndex filtered = configuration.getAnnotations().isEmpty() ? runtimeIndex : runtimeIndex.filter(configuration.getAnnotations());
+        return configuration.getReferencedClasses().isAcceptingAll() ? filtered : filtered.filter(configuration.getReferencedClasses());
     }
 
-    private int readInteger(InputStream in) throws IOException {
-        int ch1 = in.read();
-        int ch2 = in.read();
-        int ch3 = in.read();
-        int ch4 = in.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0)
-            throw new EOFException();
-        return ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4));
+    /**
+     * Checks whether a jar entry should be scanned, according to the classes to scan in the {@link ScanConfiguration}.
+     * Callers iterating over the entries of a jar should check this before opening the entry. Classes which are not
+     * to be scanned are skipped by the scan methods anyway, but only after their constant pool has been read.
+     *
+     * @param entryName the name of the jar entry, e.g. {@code org/acme/MyClass.class}
+     * @return {@code true} if the entry should be scanned
+     */
+    public boolean isScanned(String entryName) {
+        return scannedClasses.acceptsEntryName(entryName);
     }
 
-    private int readUnsignedByte(InputStream in) throws IOException {
-        int ch = in.read();
-        if (ch < 0)
-            throw new EOFException();
-        return ch;
+    public Set<AnnotationUsage> getUsages() {
+        return collector.getUsages();
     }
 
-    private int readUnsignedShort(InputStream in) throws IOException {
-        // Stolen from DataInputStream
-        int ch1 = in.read();
-        int ch2 = in.read();
-        if ((ch1 | ch2) < 0)
-            throw new IllegalStateException();
-        return (ch1 << 8) + ch2;
+    /**
+     * Scans a class, and records any usages found.
+     *
+     * <p>If the runtime index contains annotations annotated with unstable api annotations, and the constant pool of
+     * the class references any of them, the annotations of the class, its fields, methods, method parameters and
+     * record components are read in the same pass to find usage of them. So there is no need to also call
+     * {@link #checkAnnotationIndex(JandexIndex)} for the class.</p>
+     *
+     * <p>If the {@link ScanConfiguration} enables {@link AnnotationUsageType#DECLARED_FIELD_TYPE},
+     * {@link AnnotationUsageType#DECLARED_METHOD_TYPE} or {@link AnnotationUsageType#OVERRIDES_METHOD}, the fields
+     * and methods of the class are read in the same pass too, along with the generic signatures of those and of
+     * the class.</p>
+     *
+     * @param input the bytecode of the class
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public void scanClass(InputStream input) throws IOException {
+        parseClass(input, (classInfo, in) -> {
+            scanParsedClass(classInfo, () -> in);
+            return null;
+        });
     }
 
-    private byte[] sizeToFit(byte[] buf, int needed, int offset, int remainingEntries) {
-        int oldLength = buf.length;
-        if (offset + needed > oldLength) {
-            int newLength = newLength(oldLength, needed, oldLength >> 1);
-            buf = Arrays.copyOf(buf, newLength);
+    /**
+     * Does the work of {@link #scanClass(InputStream)} for an already parsed class
+     * @param classInfo the parsed class information
+     * @param body the body of the class, only opened if it needs to be read
+     */
+    void scanParsedClass(ClassInformation classInfo, ClassBody body) throws IOException {
+        if (!scannedClasses.accepts(classInfo.getScannedClass())) {
+            return;
+        }
+        collector.processClass(classInfo);
+        String[] candidates = collector.getAnnotatedAnnotationCandidates(classInfo);
+        ClassBodyReader.MemberVisitor visitor = null;
+        if (collector.isCheckingMembers()) {
+            visitor = new ClassBodyReader.MemberVisitor() {
+                @Override
+                public boolean visitMember(boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException {
+                    collector.processMember(classInfo, field, accessFlags, nameIndex, descriptorIndex);
+                    return false;
+                }
+
+                @Override
+                public boolean visitSignature(boolean classSignature, int signatureIndex) throws IOException {
+                    collector.processSignature(classInfo, classSignature, signatureIndex);
+                    return false;
+                }
+            };
         }
-        return buf;
+        if (candidates != null || visitor != null) {
+            Set<String> annotations = ClassBodyReader.read(body.open(), classInfo, candidates, visitor, false);
+            if (!annotations.isEmpty()) {
+                collector.recordAnnotatedAnnotationUsage(classInfo, annotations);
+            }
+        }
+        collector.endClass(classInfo);
     }
 
-    private int newLength(int oldLength, int minGrowth, int prefGrowth) {
-        int prefLength = oldLength + Math.max(minGrowth, prefGrowth);
-        return prefLength > 0 ? prefLength : minLength(oldLength, minGrowth);
+    /**
+     * Scans a class in verdict mode, i.e. only to determine whether it uses any unstable api. The checks stop at
+     * the first usage found, and no {@link AnnotationUsage} instances are created or retained.
+     *
+     * <p>If the runtime index contains annotations annotated with unstable api annotations, usage of those is
+     * checked too, as are the fields and methods if enabled in the {@link ScanConfiguration}, as in
+     * {@link #scanClass(InputStream)}.</p>
+     *
+     * @param input the bytecode of the class
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public UnstableApiVerdict scanForVerdict(InputStream input) throws IOException {
+        UnstableApiVerdict verdict = parseClass(input, (classInfo, in) -> scanParsedClassForVerdict(classInfo, () -> in));
+        return verdict == null ? UnstableApiVerdict.CLEAN : verdict;
     }
 
-    private int minLength(int oldLength, int minGrowth) {
-        int minLength = oldLength + minGrowth;
-        if (minLength < 0) {
-            throw new OutOfMemoryError("Cannot allocate a large enough array: " +
-                    oldLength + " + " + minGrowth + " is too large");
+    /**
+     * Does the work of {@link #scanForVerdict(InputStream)} for an already parsed class
+     * @param classInfo the parsed class information
+     * @param body the body of the class, only opened if it needs to be read
+     * @return the verdict
+     */
+    UnstableApiVerdict scanParsedClassForVerdict(ClassInformation classInfo, ClassBody body) throws IOException {
+        if (!scannedClasses.accepts(classInfo.getScannedClass())) {
+            return UnstableApiVerdict.CLEAN;
         }
-        return minLength;
-    }
-
-    private void readFully(InputStream in, byte[] buf, int offset, int len) throws IOException {
-        if (len < 0)
-            throw new IndexOutOfBoundsException();
-        int n = 0;
-        while (n < len) {
-            int count = in.read(buf, offset + n, len - n);
-            if (count < 0)
-                throw new EOFException();
-            n += count;
+        UnstableApiVerdict classVerdict = collector.checkClassForVerdict(classInfo);
+        if (classVerdict.isClean()) {
+            String[] candidates = collector.getAnnotatedAnnotationCandidates(classInfo);
+            UnstableApiVerdict[] memberVerdict = new UnstableApiVerdict[1];
+            ClassBodyReader.MemberVisitor visitor = null;
+            if (collector.isCheckingMembers()) {
+                visitor = new ClassBodyReader.MemberVisitor() {
+                    @Override
+                    public boolean visitMember(boolean field, int accessFlags, int nameIndex, int descriptorIndex) throws IOException {
+                        return found(collector.checkMemberForVerdict(classInfo, field, accessFlags, nameIndex, descriptorIndex));
+                    }
+
+                    @Override
+                    public boolean visitSignature(boolean classSignature, int signatureIndex) throws IOException {
+                        return found(collector.checkSignatureForVerdict(classInfo, classSignature, signatureIndex));
+                    }
+
+                    private boolean found(UnstableApiVerdict verdict) {
+                        if (verdict.isClean()) {
+                            return false;
+                        }
+                        memberVerdict[0] = verdict;
+                        return true;
+                    }
+                };
+            }
+            if (candidates != null || visitor != null) {
+                Set<String> annotations = ClassBodyReader.read(body.open(), classInfo, candidates, visitor, true);
+                if (memberVerdict[0] != null) {
+                    return memberVerdict[0];
+                }
+                if (!annotations.isEmpty()) {
+                    return collector.createAnnotatedAnnotationVerdict(classInfo, annotations.iterator().next());
+                }
+            }
         }
+        return classVerdict;
     }
 
-    private int skipBytes(InputStream in, int n) throws IOException {
-        int total = 0;
-        int cur = 0;
-
-        while ((total<n) && ((cur = (int) in.skip(n-total)) > 0)) {
-            total += cur;
+    /**
+     * Scans the classes in a jar in verdict mode, as done by {@link #scanForVerdict(InputStream)}. The scan of
+     * the jar is aborted as soon as a usage is found. For multi-release jars, only the entries effective for the
+     * {@link ScanConfiguration#getTargetJavaVersion() target Java version} are scanned.
+     *
+     * @param jar the jar to scan
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     * @throws IOException if there were problems reading the jar
+     */
+    public UnstableApiVerdict scanJarForVerdict(File jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            for (ZipEntry entry : MultiReleaseJarEntries.select(zipFile, targetJavaVersion).getClassEntries()) {
+                if (!isScanned(MultiReleaseJarEntries.getBaseName(entry.getName()))) {
+                    continue;
+                }
+                UnstableApiVerdict verdict;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    verdict = scanForVerdict(in);
+                }
+                if (!verdict.isClean()) {
+                    return verdict;
+                }
+            }
         }
-
-        return total;
+        return UnstableApiVerdict.CLEAN;
     }
 
-    private static final class TmpObjects {
-        //private Utils.ReusableBufferedDataInputStream dataInputStream;
+    /**
+     * Resolves where in the code of a class its usages happen, and adds them to the usages as
+     * {@link AnnotationUsage#getLocations() locations}. This is a second pass over the class, reading the
+     * {@code Code} and {@code LineNumberTable} attributes of its methods, so it should only be done for the classes
+     * which {@link #scanClass(InputStream)} found usages in. Classes without usages should not be read again.
+     *
+     * <p>Only usages found in this class which happen in the code of a method get locations, i.e. references to
+     * methods, fields and classes, as well as indirect and reflective class usage. For the others, e.g. a class
+     * extending an annotated class, the source class is already the location.</p>
+     *
+     * @param input the bytecode of the class
+     * @param usages the usages found in the class by {@link #scanClass(InputStream)}
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public void resolveLocations(InputStream input, Collection<AnnotationUsage> usages) throws IOException {
+        if (input == null || usages == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        if (usages.isEmpty()) {
+            return;
+        }
+        parseClass(input, (classInfo, in) -> {
+            new CodeLocationResolver(in, classInfo, collector.getRuntimeIndex()).resolve(usages);
+            return null;
+        });
+    }
 
-        private byte[] constantPool;
+    /**
+     * Checks a Jandex index in verdict mode for usage of annotations annotated with unstable api annotations,
+     * stopping at the first usage found.
+     *
+     * @param annotationIndex the Jandex index
+     * @return the verdict for the first usage found, or {@link UnstableApiVerdict#CLEAN}
+     */
+    public UnstableApiVerdict checkAnnotationIndexForVerdict(JandexIndex annotationIndex) {
+        return collector.checkAnnotationIndexForVerdict(annotationIndex);
+    }
 
-        byte[] borrowConstantPool(int poolSize) {
-            byte[] buf = this.constantPool;
-            if (buf == null || buf.length < (20 * poolSize)) {
-                buf = new byte[20 * poolSize]; // Guess
-            } else {
-                Arrays.fill(buf, 0, poolSize, (byte) 0);
-            }
-            this.constantPool = null;
-            return buf;
-        }
+    <T> T parseClass(InputStream input, ClassFileParser.ClassInformationHandler<T> handler) throws IOException {
+        return parser.parse(input, handler);
+    }
 
-        void returnConstantPool(byte[] buf) {
-            this.constantPool = buf;
-        }
+    /**
+     * Checks a Jandex index for usage of annotations annotated with unstable api annotations. This is not needed
+     * for classes scanned with {@link #scanClass(InputStream)}, which finds these usages itself, but can be used
+     * if a Jandex index of the classes is available anyway.
+     *
+     * @param annotationIndex the Jandex index
+     * @return {@code true} if no usages were found
+     */
+    public boolean checkAnnotationIndex(JandexIndex annotationIndex) {
+        return collector.checkAnnotationIndex(annotationIndex);
     }
 
+    interface ClassBody {
+        /**
+         * Opens the body of a parsed class, i.e. what follows the interfaces table
+         * @return the stream
+         */
+        InputStream open() throws IOException;
+    }
 }
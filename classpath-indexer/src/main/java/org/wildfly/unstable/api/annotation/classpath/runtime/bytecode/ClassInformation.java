@@ -18,6 +18,7 @@ class ClassInformation {
     private final int[] tags;
     private final byte[] constPoolBytes;
     private final int[] offsets;
+    private final int accessFlags;
     private final int thisClassPosition;
     private final int superClassPosition;
     private final int[] interfacePositions;
@@ -29,10 +30,11 @@ class ClassInformation {
     private String scannedClassName;
 
 
-    ClassInformation(int[] tags, byte[] constPoolBytes, int[] offsets, int thisClassPosition, int superClassPosition, int[] interfacePositions, int constantPoolSize) {
+    ClassInformation(int[] tags, byte[] constPoolBytes, int[] offsets, int accessFlags, int thisClassPosition, int superClassPosition, int[] interfacePositions, int constantPoolSize) {
         this.tags = tags;
         this.constPoolBytes = constPoolBytes;
         this.offsets = offsets;
+        this.accessFlags = accessFlags;
         this.thisClassPosition = thisClassPosition;
         this.superClassPosition = superClassPosition;
         this.interfacePositions = interfacePositions;
@@ -47,21 +49,33 @@ class ClassInformation {
     }
 
     ByteArrayKey getNameFromRefInfo(int constantPoolPosition) {
-        int nameAndTypeInfoPosition = getNameAndTypeInfoPositionFromRefInfo(constantPoolPosition);
-        int offset = offsets[nameAndTypeInfoPosition -1];
+        return getNameFromNameAndTypeInfo(getNameAndTypeInfoPositionFromRefInfo(constantPoolPosition));
+    }
+
+    ByteArrayKey getDescriptorFromRefInfo(int constantPoolPosition) {
+        return getDescriptorFromNameAndTypeInfo(getNameAndTypeInfoPositionFromRefInfo(constantPoolPosition));
+    }
+
+    ByteArrayKey getNameFromNameAndTypeInfo(int constantPoolPosition) {
+        int offset = offsets[constantPoolPosition - 1];
         // The name will be the first two bytes of the constantPool entry
         int refNamePosition = readUnsignedShortByConstantPoolOffset(offset);
         return getKeyFromUtfInfo(refNamePosition);
     }
 
-    ByteArrayKey getDescriptorFromRefInfo(int constantPoolPosition) {
-        int nameAndTypeInfoPosition = getNameAndTypeInfoPositionFromRefInfo(constantPoolPosition);
-        int offset = offsets[nameAndTypeInfoPosition -1];
-        // The name will be the second two bytes of the constantPool entry (first two contain the name)
+    ByteArrayKey getDescriptorFromNameAndTypeInfo(int constantPoolPosition) {
+        int offset = offsets[constantPoolPosition - 1];
+        // The descriptor will be the second two bytes of the constantPool entry (first two contain the name)
         int refNamePosition = readUnsignedShortByConstantPoolOffset(offset + 2);
         return getKeyFromUtfInfo(refNamePosition);
     }
 
+    ByteArrayKey getKeyFromStringInfo(int constantPoolPosition) {
+        // StringInfo just contains the location of the UtfInfo containing the string
+        int utfInfoPosition = readUnsignedShortByConstantPoolOffset(offsets[constantPoolPosition - 1]);
+        return getKeyFromUtfInfo(utfInfoPosition);
+    }
+
     ByteArrayKey getClassNameFromClassInfo(int constantPoolPosition) {
         int index = constantPoolPosition - 1;
         ByteArrayKey key = byteArrayKeys[index];
@@ -74,6 +88,14 @@ class ClassInformation {
         return key;
     }
 
+    /**
+     * Gets the access flags of the class, e.g. to tell interfaces and annotations from classes
+     * @return the access flags
+     */
+    int getAccessFlags() {
+        return accessFlags;
+    }
+
     ByteArrayKey getScannedClass() {
         if (scannedClassKey == null) {
             scannedClassKey = getClassNameFromClassInfo(thisClassPosition);
@@ -107,18 +129,19 @@ class ClassInformation {
         return keys;
     }
 
-    private int getNameAndTypeInfoPositionFromRefInfo(int constantPoolPosition) {
+    int getNameAndTypeInfoPositionFromRefInfo(int constantPoolPosition) {
         int index = constantPoolPosition - 1;
         // For a Field-/Method-/InterfaceMethodRefInfo, the location of the
         // NameAndTypeInfo will be the bytes after the first two (those contain the
-        // position of the classInfo)
+        // position of the classInfo). InvokeDynamicInfo has the same layout, with the
+        // first two bytes containing the bootstrap method index instead
         int refInfoOffset = offsets[index];
         int position = readUnsignedShortByConstantPoolOffset(refInfoOffset + 2);
         return position;
     }
 
 
-    private RuntimeIndex.ByteArrayKey getKeyFromUtfInfo(int constantPoolPosition) {
+    RuntimeIndex.ByteArrayKey getKeyFromUtfInfo(int constantPoolPosition) {
         int index = constantPoolPosition - 1;
         RuntimeIndex.ByteArrayKey key = byteArrayKeys[index];
         if (key == null) {
@@ -140,6 +163,42 @@ class ClassInformation {
         return key;
     }
 
+    /**
+     * Points a tokenizer at the descriptor or generic signature in a UtfInfo entry
+     * @param constantPoolPosition the constant pool position of the UtfInfo
+     * @param tokenizer the tokenizer
+     * @return the tokenizer
+     */
+    DescriptorTokenizer tokenizeUtfInfo(int constantPoolPosition, DescriptorTokenizer tokenizer) {
+        int offset = offsets[constantPoolPosition - 1];
+        // The first two bytes contain the length
+        int length = readUnsignedShortByConstantPoolOffset(offset);
+        return tokenizer.reset(constPoolBytes, offset + 2, offset + 2 + length);
+    }
+
+    /**
+     * Points a tokenizer at the descriptor of a NameAndTypeInfo entry
+     * @param constantPoolPosition the constant pool position of the NameAndTypeInfo
+     * @param tokenizer the tokenizer
+     * @return the tokenizer
+     */
+    DescriptorTokenizer tokenizeNameAndTypeDescriptor(int constantPoolPosition, DescriptorTokenizer tokenizer) {
+        // The descriptor will be the second two bytes of the constantPool entry (first two contain the name)
+        int descriptorPosition = readUnsignedShortByConstantPoolOffset(offsets[constantPoolPosition - 1] + 2);
+        return tokenizeUtfInfo(descriptorPosition, tokenizer);
+    }
+
+    /**
+     * Points a tokenizer at the descriptor of a MethodTypeInfo entry
+     * @param constantPoolPosition the constant pool position of the MethodTypeInfo
+     * @param tokenizer the tokenizer
+     * @return the tokenizer
+     */
+    DescriptorTokenizer tokenizeMethodTypeDescriptor(int constantPoolPosition, DescriptorTokenizer tokenizer) {
+        int descriptorPosition = readUnsignedShortByConstantPoolOffset(offsets[constantPoolPosition - 1]);
+        return tokenizeUtfInfo(descriptorPosition, tokenizer);
+    }
+
     private int readUnsignedShortByConstantPoolOffset(int offset) {
         // Stolen from DataInputStream
         int ch1 = readByteAsUnsignedIntByConstantPoolOffset(offset);
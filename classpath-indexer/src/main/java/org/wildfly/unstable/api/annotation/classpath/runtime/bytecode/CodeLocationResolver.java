@@ -0,0 +1,408 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the locations of the usages reported for a class, by reading the {@code Code} and {@code LineNumberTable}
+ * attributes of its methods. This is a second pass over the class, which is only meant to be done for classes which
+ * were found to have usages, so the code of clean classes never needs to be parsed.
+ *
+ * <p>Each constant pool entry which would cause one of the usages is mapped to those usages up front. Then the
+ * instructions of each method are walked, and for the instructions referencing one of the mapped entries, the
+ * method and line number are added to the usages as a {@link UsageLocation}.</p>
+ */
+final class CodeLocationResolver {
+    private static final ByteArrayKey CODE = ClassBodyReader.createKey("Code");
+    private static final ByteArrayKey LINE_NUMBER_TABLE = ClassBodyReader.createKey("LineNumberTable");
+
+    // Instruction lengths including the opcode, indexed by opcode. 0 for the variable length ones
+    private static final byte[] INSTRUCTION_LENGTHS = new byte[256];
+    static {
+        for (int i = 0; i <= 0xc9; i++) {
+            INSTRUCTION_LENGTHS[i] = 1;
+        }
+        INSTRUCTION_LENGTHS[0x10] = 2; // bipush
+        INSTRUCTION_LENGTHS[0x11] = 3; // sipush
+        INSTRUCTION_LENGTHS[0x12] = 2; // ldc
+        INSTRUCTION_LENGTHS[0x13] = 3; // ldc_w
+        INSTRUCTION_LENGTHS[0x14] = 3; // ldc2_w
+        for (int i = 0x15; i <= 0x19; i++) {
+            INSTRUCTION_LENGTHS[i] = 2; // iload...aload
+        }
+        for (int i = 0x36; i <= 0x3a; i++) {
+            INSTRUCTION_LENGTHS[i] = 2; // istore...astore
+        }
+        INSTRUCTION_LENGTHS[0x84] = 3; // iinc
+        for (int i = 0x99; i <= 0xa8; i++) {
+            INSTRUCTION_LENGTHS[i] = 3; // if<cond>, if_icmp<cond>, if_acmp<cond>, goto, jsr
+        }
+        INSTRUCTION_LENGTHS[0xa9] = 2; // ret
+        INSTRUCTION_LENGTHS[0xaa] = 0; // tableswitch
+        INSTRUCTION_LENGTHS[0xab] = 0; // lookupswitch
+        for (int i = 0xb2; i <= 0xb8; i++) {
+            INSTRUCTION_LENGTHS[i] = 3; // getstatic...invokestatic
+        }
+        INSTRUCTION_LENGTHS[0xb9] = 5; // invokeinterface
+        INSTRUCTION_LENGTHS[0xba] = 5; // invokedynamic
+        INSTRUCTION_LENGTHS[0xbb] = 3; // new
+        INSTRUCTION_LENGTHS[0xbc] = 2; // newarray
+        INSTRUCTION_LENGTHS[0xbd] = 3; // anewarray
+        INSTRUCTION_LENGTHS[0xc0] = 3; // checkcast
+        INSTRUCTION_LENGTHS[0xc1] = 3; // instanceof
+        INSTRUCTION_LENGTHS[0xc4] = 0; // wide
+        INSTRUCTION_LENGTHS[0xc5] = 4; // multianewarray
+        INSTRUCTION_LENGTHS[0xc6] = 3; // ifnull
+        INSTRUCTION_LENGTHS[0xc7] = 3; // ifnonnull
+        INSTRUCTION_LENGTHS[0xc8] = 5; // goto_w
+        INSTRUCTION_LENGTHS[0xc9] = 5; // jsr_w
+    }
+
+    private final DataInputStream in;
+    private final ClassInformation classInfo;
+    private final RuntimeIndex runtimeIndex;
+    private final ReusableStreams reusableStreams = new ReusableStreams();
+    private final DescriptorTokenizer tokenizer = new DescriptorTokenizer();
+
+    // The usages caused by each constant pool entry, indexed by the one based constant pool position
+    private final List<AnnotationUsage>[] usagesByPosition;
+
+    /**
+     * Constructor
+     * @param in the stream, positioned right after the interfaces table
+     * @param classInfo the parsed class information
+     * @param runtimeIndex the runtime index the usages were found with
+     */
+    @SuppressWarnings("unchecked")
+    CodeLocationResolver(InputStream in, ClassInformation classInfo, RuntimeIndex runtimeIndex) {
+        this.in = new DataInputStream(in);
+        this.classInfo = classInfo;
+        this.runtimeIndex = runtimeIndex;
+        this.usagesByPosition = (List<AnnotationUsage>[]) new List<?>[classInfo.getTags().length + 1];
+    }
+
+    /**
+     * Resolves the locations of the usages of the class
+     *
+     * @param usages the usages. Usages from other source classes, and usages which do not happen in the code of a
+     *               method, are ignored
+     * @throws IOException if there were problems reading the class
+     */
+    void resolve(Collection<AnnotationUsage> usages) throws IOException {
+        if (mapConstantPool(usages)) {
+            readMembers();
+        }
+    }
+
+    /**
+     * Maps the constant pool entries to the usages they cause
+     * @return {@code true} if any entries were mapped
+     */
+    private boolean mapConstantPool(Collection<AnnotationUsage> usages) throws IOException {
+        Map<String, AnnotationUsage> usagesByReference = new HashMap<>();
+        String scannedClass = classInfo.getScannedClassName(reusableStreams);
+        for (AnnotationUsage usage : usages) {
+            if (usage instanceof AnnotationWithSourceClassUsage &&
+                    scannedClass.equals(((AnnotationWithSourceClassUsage) usage).getSourceClass())) {
+                String reference = getReference(usage);
+                if (reference != null) {
+                    usagesByReference.put(reference, usage);
+                }
+            }
+        }
+        if (usagesByReference.isEmpty()) {
+            return false;
+        }
+
+        boolean mapped = false;
+        int[] tags = classInfo.getTags();
+        for (int i = 0; i < tags.length; i++) {
+            int pos = i + 1;
+            switch (tags[i]) {
+                case BytecodeTags.CONSTANT_FIELDREF: {
+                    String fieldClass = runtimeIndex.getClassNameFromKey(classInfo.getClassNameFromRefInfo(pos));
+                    String fieldName = runtimeIndex.getFieldNameFromKey(classInfo.getNameFromRefInfo(pos));
+                    if (fieldClass != null) {
+                        // The instructions reference the class via the ref, rather than the class entry directly
+                        mapped |= map(usagesByReference, pos, "C" + fieldClass);
+                        if (fieldName != null) {
+                            mapped |= map(usagesByReference, pos, "F" + fieldClass + "." + fieldName);
+                        }
+                    }
+                    mapped |= mapIndirectTypes(usagesByReference, pos);
+                }
+                break;
+                case BytecodeTags.CONSTANT_METHODREF:
+                case BytecodeTags.CONSTANT_INTERFACEMETHODREF: {
+                    String methodClass = runtimeIndex.getClassNameFromKey(classInfo.getClassNameFromRefInfo(pos));
+                    String methodName = runtimeIndex.getMethodNameFromKey(classInfo.getNameFromRefInfo(pos));
+                    String descriptor = runtimeIndex.getMethodDescriptorsFromKey(classInfo.getDescriptorFromRefInfo(pos));
+                    if (methodClass != null) {
+                        mapped |= map(usagesByReference, pos, "C" + methodClass);
+                        if (methodName != null && descriptor != null) {
+                            mapped |= map(usagesByReference, pos, "M" + methodClass + "." + methodName + descriptor);
+                        }
+                    }
+                    mapped |= mapIndirectTypes(usagesByReference, pos);
+                }
+                break;
+                case BytecodeTags.CONSTANT_INVOKEDYNAMIC:
+                    mapped |= mapIndirectTypes(usagesByReference, pos);
+                    break;
+                case BytecodeTags.CONSTANT_CLASS: {
+                    String className = runtimeIndex.getClassNameFromKey(classInfo.getClassNameFromClassInfo(pos));
+                    if (className != null) {
+                        mapped |= map(usagesByReference, pos, "C" + className);
+                    }
+                }
+                break;
+                case BytecodeTags.CONSTANT_STRING: {
+                    ByteArrayKey key = runtimeIndex.getClassKeyFromDotName(classInfo.getKeyFromStringInfo(pos));
+                    if (key != null) {
+                        mapped |= map(usagesByReference, pos, "S" + runtimeIndex.getClassNameFromKey(key));
+                    }
+                }
+                break;
+            }
+        }
+        return mapped;
+    }
+
+    private static String getReference(AnnotationUsage usage) {
+        switch (usage.getType()) {
+            case METHOD_REFERENCE: {
+                AnnotatedMethodReference reference = usage.asAnnotatedMethodReference();
+                return "M" + reference.getMethodClass() + "." + reference.getMethodName() + reference.getDescriptor();
+            }
+            case FIELD_REFERENCE: {
+                AnnotatedFieldReference reference = usage.asAnnotatedFieldReference();
+                return "F" + reference.getFieldClass() + "." + reference.getFieldName();
+            }
+            case CLASS_USAGE:
+                return "C" + usage.asAnnotatedClassUsage().getReferencedClass();
+            case INDIRECT_CLASS_USAGE:
+                return "I" + usage.asIndirectAnnotatedClassUsage().getReferencedClass();
+            case REFLECTIVE_CLASS_USAGE:
+                return "S" + usage.asReflectiveAnnotatedClassUsage().getReferencedClass();
+            default:
+                // The other usages are declarations rather than something happening in the code
+                return null;
+        }
+    }
+
+    private boolean mapIndirectTypes(Map<String, AnnotationUsage> usagesByReference, int pos) {
+        boolean mapped = false;
+        int nameAndTypePosition = classInfo.getNameAndTypeInfoPositionFromRefInfo(pos);
+        DescriptorTokenizer descriptor = classInfo.tokenizeNameAndTypeDescriptor(nameAndTypePosition, tokenizer);
+        for (ByteArrayKey name = descriptor.nextClassName(); name != null; name = descriptor.nextClassName()) {
+            ByteArrayKey key = runtimeIndex.getClassKeyFromUnprefixedName(name);
+            if (key != null) {
+                mapped |= map(usagesByReference, pos, "I" + runtimeIndex.getClassNameFromKey(key));
+            }
+        }
+        return mapped;
+    }
+
+    private boolean map(Map<String, AnnotationUsage> usagesByReference, int pos, String reference) {
+        AnnotationUsage usage = usagesByReference.get(reference);
+        if (usage == null) {
+            return false;
+        }
+        if (usagesByPosition[pos] == null) {
+            usagesByPosition[pos] = new ArrayList<>(1);
+        }
+        usagesByPosition[pos].add(usage);
+        return true;
+    }
+
+    private void readMembers() throws IOException {
+        // Fields
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // access flags, name and descriptor
+            skipFully(6);
+            skipAttributes();
+        }
+        // Methods
+        count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // access flags
+            skipFully(2);
+            int nameIndex = in.readUnsignedShort();
+            int descriptorIndex = in.readUnsignedShort();
+            int attributes = in.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                int attributeNameIndex = in.readUnsignedShort();
+                int length = in.readInt();
+                if (CODE.equals(classInfo.getKeyFromUtfInfo(attributeNameIndex))) {
+                    readCode(nameIndex, descriptorIndex);
+                } else {
+                    skipFully(length);
+                }
+            }
+        }
+        // The class attributes are not of interest
+    }
+
+    private void readCode(int nameIndex, int descriptorIndex) throws IOException {
+        // max_stack and max_locals
+        skipFully(4);
+        int codeLength = in.readInt();
+        byte[] code = new byte[codeLength];
+        in.readFully(code);
+        int exceptionTableLength = in.readUnsignedShort();
+        skipFully(exceptionTableLength * 8);
+
+        // Find the positions of the instructions causing usages first, so we know if we need the line numbers
+        List<int[]> hits = findHits(code);
+
+        int[] lineNumberTable = null;
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            int attributeNameIndex = in.readUnsignedShort();
+            int length = in.readInt();
+            if (!hits.isEmpty() && lineNumberTable == null && LINE_NUMBER_TABLE.equals(classInfo.getKeyFromUtfInfo(attributeNameIndex))) {
+                int entries = in.readUnsignedShort();
+                // Pairs of start_pc and line_number
+                lineNumberTable = new int[entries * 2];
+                for (int j = 0; j < lineNumberTable.length; j++) {
+                    lineNumberTable[j] = in.readUnsignedShort();
+                }
+            } else {
+                skipFully(length);
+            }
+        }
+
+        if (hits.isEmpty()) {
+            return;
+        }
+        String methodName = classInfo.getKeyFromUtfInfo(nameIndex).convertBytesToString(reusableStreams);
+        String methodDescriptor = classInfo.getKeyFromUtfInfo(descriptorIndex).convertBytesToString(reusableStreams);
+        for (int[] hit : hits) {
+            UsageLocation location = new UsageLocation(methodName, methodDescriptor, getLineNumber(lineNumberTable, hit[0]));
+            for (AnnotationUsage usage : usagesByPosition[hit[1]]) {
+                usage.addLocation(location);
+            }
+        }
+    }
+
+    /**
+     * Walks the instructions, finding the ones referencing constant pool entries which cause usages
+     *
+     * @return pairs of the instruction offset and the constant pool position
+     */
+    private List<int[]> findHits(byte[] code) {
+        List<int[]> hits = new ArrayList<>();
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc] & 0xff;
+            int pos = -1;
+            switch (opcode) {
+                case 0x12: // ldc
+                    pos = code[pc + 1] & 0xff;
+                    break;
+                case 0x13: // ldc_w
+                case 0xb2: // getstatic
+                case 0xb3: // putstatic
+                case 0xb4: // getfield
+                case 0xb5: // putfield
+                case 0xb6: // invokevirtual
+                case 0xb7: // invokespecial
+                case 0xb8: // invokestatic
+                case 0xb9: // invokeinterface
+                case 0xba: // invokedynamic
+                case 0xbb: // new
+                case 0xbd: // anewarray
+                case 0xc0: // checkcast
+                case 0xc1: // instanceof
+                case 0xc5: // multianewarray
+                    pos = ((code[pc + 1] & 0xff) << 8) | (code[pc + 2] & 0xff);
+                    break;
+            }
+            if (pos > 0 && pos < usagesByPosition.length && usagesByPosition[pos] != null) {
+                hits.add(new int[]{pc, pos});
+            }
+            pc += getInstructionLength(code, pc, opcode);
+        }
+        return hits;
+    }
+
+    private static int getInstructionLength(byte[] code, int pc, int opcode) {
+        int length = INSTRUCTION_LENGTHS[opcode];
+        if (length > 0) {
+            return length;
+        }
+        switch (opcode) {
+            case 0xaa: { // tableswitch
+                // The operands are aligned to a multiple of four bytes from the start of the code
+                int operands = (pc + 4) & ~3;
+                int low = readInt(code, operands + 4);
+                int high = readInt(code, operands + 8);
+                return operands - pc + 12 + (high - low + 1) * 4;
+            }
+            case 0xab: { // lookupswitch
+                int operands = (pc + 4) & ~3;
+                int pairs = readInt(code, operands + 4);
+                return operands - pc + 8 + pairs * 8;
+            }
+            case 0xc4: // wide
+                // iinc takes two more bytes than the loads/stores/ret
+                return (code[pc + 1] & 0xff) == 0x84 ? 6 : 4;
+            default:
+                throw new IllegalStateException("Unknown opcode " + opcode + " at " + pc);
+        }
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return ((code[offset] & 0xff) << 24) | ((code[offset + 1] & 0xff) << 16) |
+                ((code[offset + 2] & 0xff) << 8) | (code[offset + 3] & 0xff);
+    }
+
+    private static int getLineNumber(int[] lineNumberTable, int pc) {
+        if (lineNumberTable == null) {
+            return -1;
+        }
+        // The entries are not necessarily in order, so find the one with the greatest start_pc at or before pc
+        int line = -1;
+        int bestStart = -1;
+        for (int i = 0; i < lineNumberTable.length; i += 2) {
+            int start = lineNumberTable[i];
+            if (start <= pc && start > bestStart) {
+                bestStart = start;
+                line = lineNumberTable[i + 1];
+            }
+        }
+        return line;
+    }
+
+    private void skipAttributes() throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // name
+            skipFully(2);
+            skipFully(in.readInt());
+        }
+    }
+
+    private void skipFully(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                // skipBytes() may skip fewer bytes than asked for without being at the end
+                in.readByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
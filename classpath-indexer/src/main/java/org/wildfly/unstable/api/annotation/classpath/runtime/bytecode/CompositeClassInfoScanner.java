@@ -0,0 +1,233 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scans classes against several {@link RuntimeIndex} instances at once, e.g. one per policy when the usage of
+ * different unstable api annotations is handled differently. The bytecode of each class is only read and its constant
+ * pool parsed once, and the lookups are then done against each of the runtime indexes. So adding a runtime index only
+ * adds the cost of the lookups.
+ *
+ * <p>The results are kept per runtime index, under the name the runtime index was added with.</p>
+ *
+ * <p>If more than one runtime index needs the annotations, fields or methods of a class, the rest of the class is
+ * read into memory once and each of them reads it from there.</p>
+ */
+public class CompositeClassInfoScanner {
+    private final Map<String, ClassInfoScanner> scanners;
+    // Used for the parsing, which is shared by all the scanners
+    private final ClassInfoScanner parser;
+
+    private CompositeClassInfoScanner(Map<String, ClassInfoScanner> scanners) {
+        this.scanners = scanners;
+        this.parser = scanners.values().iterator().next();
+    }
+
+    /**
+     * Gets the names of the runtime indexes, in the order they were added
+     * @return the names
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(scanners.keySet());
+    }
+
+    /**
+     * Gets the usages found for a runtime index
+     * @param name the name the runtime index was added with
+     * @return the usages
+     * @throws IllegalArgumentException if there is no runtime index with the name
+     */
+    public Set<AnnotationUsage> getUsages(String name) {
+        return getScanner(name).getUsages();
+    }
+
+    /**
+     * Gets the usages found for all the runtime indexes
+     * @return the usages, keyed by the names of the runtime indexes
+     */
+    public Map<String, Set<AnnotationUsage>> getUsages() {
+        Map<String, Set<AnnotationUsage>> usages = new LinkedHashMap<>();
+        for (Map.Entry<String, ClassInfoScanner> entry : scanners.entrySet()) {
+            usages.put(entry.getKey(), entry.getValue().getUsages());
+        }
+        return usages;
+    }
+
+    /**
+     * Checks whether a jar entry should be scanned, i.e. whether any of the runtime indexes were added with a
+     * {@link ScanConfiguration} scanning it. See {@link ClassInfoScanner#isScanned(String)}.
+     *
+     * @param entryName the name of the jar entry, e.g. {@code org/acme/MyClass.class}
+     * @return {@code true} if the entry should be scanned
+     */
+    public boolean isScanned(String entryName) {
+        for (ClassInfoScanner scanner : scanners.values()) {
+            if (scanner.isScanned(entryName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scans a class against all the runtime indexes, as done by {@link ClassInfoScanner#scanClass(InputStream)}
+     *
+     * @param input the bytecode of the class
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public void scanClass(InputStream input) throws IOException {
+        parser.parseClass(input, (classInfo, in) -> {
+            SharedClassBody body = new SharedClassBody(in);
+            for (ClassInfoScanner scanner : scanners.values()) {
+                scanner.scanParsedClass(classInfo, body);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Scans a class in verdict mode against all the runtime indexes, as done by
+     * {@link ClassInfoScanner#scanForVerdict(InputStream)}
+     *
+     * @param input the bytecode of the class
+     * @return the verdicts, keyed by the names of the runtime indexes. {@link UnstableApiVerdict#CLEAN} for the ones
+     * where no usage was found
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public Map<String, UnstableApiVerdict> scanForVerdict(InputStream input) throws IOException {
+        Map<String, UnstableApiVerdict> verdicts = new LinkedHashMap<>();
+        parser.parseClass(input, (classInfo, in) -> {
+            SharedClassBody body = new SharedClassBody(in);
+            for (Map.Entry<String, ClassInfoScanner> entry : scanners.entrySet()) {
+                verdicts.put(entry.getKey(), entry.getValue().scanParsedClassForVerdict(classInfo, body));
+            }
+            return null;
+        });
+        if (verdicts.isEmpty()) {
+            // The class was too old to be parsed
+            for (String name : scanners.keySet()) {
+                verdicts.put(name, UnstableApiVerdict.CLEAN);
+            }
+        }
+        return verdicts;
+    }
+
+    private ClassInfoScanner getScanner(String name) {
+        ClassInfoScanner scanner = scanners.get(name);
+        if (scanner == null) {
+            throw new IllegalArgumentException("No runtime index called " + name);
+        }
+        return scanner;
+    }
+
+    /**
+     * Creates a builder for a composite scanner
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The body of a class shared by the scanners. The first scanner opening it gets the original stream, unless
+     * there are more scanners which could need it, in which case it is read into memory.
+     */
+    private final class SharedClassBody implements ClassInfoScanner.ClassBody {
+        private final InputStream in;
+        private byte[] bytes;
+
+        SharedClassBody(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (scanners.size() == 1) {
+                return in;
+            }
+            if (bytes == null) {
+                bytes = in.readAllBytes();
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    public static class Builder {
+        private final Map<String, ClassInfoScanner> scanners = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a runtime index to scan against, looking for all the usage types
+         *
+         * @param name the name to identify the results for the runtime index
+         * @param runtimeIndex the runtime index
+         * @return this builder
+         * @throws IllegalArgumentException if a runtime index with the same name was already added
+         */
+        public Builder addRuntimeIndex(String name, RuntimeIndex runtimeIndex) {
+            return addRuntimeIndex(name, runtimeIndex, ScanConfiguration.ALL);
+        }
+
+        /**
+         * Adds a runtime index to scan against, only looking for the usage types and annotations selected in a
+         * configuration
+         *
+         * @param name the name to identify the results for the runtime index
+         * @param runtimeIndex the runtime index
+         * @param configuration the scan configuration
+         * @return this builder
+         * @throws IllegalArgumentException if a runtime index with the same name was already added
+         */
+        public Builder addRuntimeIndex(String name, RuntimeIndex runtimeIndex, ScanConfiguration configuration) {
+            return add(name, new ClassInfoScanner(runtimeIndex, configuration));
+        }
+
+        /**
+         * Adds a runtime index to scan against, only looking for the usage types and annotations selected in a
+         * configuration, and reporting the usages found to a listener rather than retaining them
+         *
+         * @param name the name to identify the results for the runtime index
+         * @param runtimeIndex the runtime index
+         * @param configuration the scan configuration
+         * @param listener the listener to report the usages to
+         * @return this builder
+         * @throws IllegalArgumentException if a runtime index with the same name was already added
+         */
+        public Builder addRuntimeIndex(String name, RuntimeIndex runtimeIndex, ScanConfiguration configuration, UsageListener listener) {
+            return add(name, new ClassInfoScanner(runtimeIndex, configuration, listener));
+        }
+
+        private Builder add(String name, ClassInfoScanner scanner) {
+            if (name == null) {
+                throw new NullPointerException("Null parameter");
+            }
+            if (scanners.containsKey(name)) {
+                throw new IllegalArgumentException("A runtime index called " + name + " was already added");
+            }
+            scanners.put(name, scanner);
+            return this;
+        }
+
+        /**
+         * Creates the composite scanner
+         * @return the composite scanner
+         * @throws IllegalStateException if no runtime indexes were added
+         */
+        public CompositeClassInfoScanner build() {
+            if (scanners.isEmpty()) {
+                throw new IllegalStateException("No runtime indexes were added");
+            }
+            return new CompositeClassInfoScanner(new LinkedHashMap<>(scanners));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.DECLARED_FIELD_TYPE;
+
+/**
+ * Records a field declared in user bytecode whose type is a class that has been annotated with one of the
+ * annotations we recorded as unstable api in the {@link OverallIndex}
+ */
+public class DeclaredFieldType extends AnnotationWithSourceClassUsage {
+    private final String fieldName;
+    private final String fieldType;
+
+    DeclaredFieldType(Set<String> annotations, String className, String fieldName, String fieldType) {
+        super(annotations, DECLARED_FIELD_TYPE, className);
+        this.fieldName = fieldName;
+        this.fieldType = fieldType;
+    }
+
+    /**
+     * Gets the name of the field declared in the source class
+     * @return the field name
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Gets the annotated class used in the type of the field. If the field is an array, this is the component type.
+     * @return the name of the class
+     */
+    public String getFieldType() {
+        return fieldType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        DeclaredFieldType that = (DeclaredFieldType) o;
+        return Objects.equals(fieldName, that.fieldName) && Objects.equals(fieldType, that.fieldType);
+    }
+
+    @Override
+    // Don't override hashcode here, the root class will do some caching
+    protected int calculateHash() {
+        return Objects.hash(super.calculateHash(), fieldName, fieldType);
+    }
+
+    @Override
+    protected AnnotationUsage convertToDotFormat() {
+        return new DeclaredFieldType(
+                annotations,
+                convertClassNameToDotFormat(sourceClass),
+                fieldName,
+                convertClassNameToDotFormat(fieldType));
+    }
+}
@@ -0,0 +1,75 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.DECLARED_METHOD_TYPE;
+
+/**
+ * Records a method or constructor declared in user bytecode which has a parameter or return type that is a class
+ * which has been annotated with one of the annotations we recorded as unstable api in the {@link OverallIndex}
+ */
+public class DeclaredMethodType extends AnnotationWithSourceClassUsage {
+    private final String methodName;
+    private final String descriptor;
+    private final String declaredType;
+
+    DeclaredMethodType(Set<String> annotations, String className, String methodName, String descriptor, String type) {
+        super(annotations, DECLARED_METHOD_TYPE, className);
+        this.methodName = methodName;
+        this.descriptor = descriptor;
+        this.declaredType = type;
+    }
+
+    /**
+     * Gets the name of the method declared in the source class
+     * @return the method name
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Gets the descriptor of the method declared in the source class
+     * @return the method descriptor
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * Gets the annotated class used as a parameter or return type. If that is an array, this is the component type.
+     * @return the name of the class
+     */
+    public String getDeclaredType() {
+        return declaredType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        DeclaredMethodType that = (DeclaredMethodType) o;
+        return Objects.equals(methodName, that.methodName) && Objects.equals(descriptor, that.descriptor) && Objects.equals(declaredType, that.declaredType);
+    }
+
+    @Override
+    // Don't override hashcode here, the root class will do some caching
+    protected int calculateHash() {
+        return Objects.hash(super.calculateHash(), methodName, descriptor, declaredType);
+    }
+
+    @Override
+    protected AnnotationUsage convertToDotFormat() {
+        return new DeclaredMethodType(
+                annotations,
+                convertClassNameToDotFormat(sourceClass),
+                methodName,
+                descriptor,
+                convertClassNameToDotFormat(declaredType));
+    }
+}
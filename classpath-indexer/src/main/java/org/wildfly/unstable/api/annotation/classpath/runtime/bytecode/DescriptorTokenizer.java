@@ -0,0 +1,114 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.ByteArrayKey;
+
+/**
+ * Finds the class names in a field or method descriptor, e.g. {@code (Lorg/acme/MyClass;I)[Lorg/acme/Other;},
+ * or in a generic signature from a {@code Signature} attribute, e.g.
+ * {@code <T:Ljava/lang/Object;>(Ljava/util/List<+Lorg/acme/MyClass;>;TT;)V}, directly from the bytes in the
+ * constant pool. The class names are returned as keys for the slices of the constant pool containing them, so no
+ * strings are created. An instance can be reused for several descriptors.
+ *
+ * <p>For inner classes of parameterized types, e.g. {@code Lorg/acme/Outer<TT;>.Inner;}, only the outer class is
+ * returned, since the binary name of the inner class is not contained in the signature as one slice.</p>
+ */
+final class DescriptorTokenizer {
+    private byte[] bytes;
+    private int position;
+    private int end;
+    // The depth of the angle brackets we are in
+    private int depth;
+    // Whether we are in the formal type parameters at the start of a generic signature, e.g. <T:Ljava/lang/Object;>
+    private boolean formalTypeParameters;
+
+    /**
+     * Sets the descriptor or signature to tokenize
+     * @param bytes the bytes containing the descriptor
+     * @param start the index of the first byte of the descriptor
+     * @param end the index after the last byte of the descriptor
+     * @return this tokenizer
+     */
+    DescriptorTokenizer reset(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.position = start;
+        this.end = end;
+        this.depth = 0;
+        this.formalTypeParameters = start < end && bytes[start] == '<';
+        return this;
+    }
+
+    /**
+     * Gets the next class name in the descriptor. For arrays, this is the name of the component type.
+     *
+     * @return key for the class name in JVM format without a length prefix, or {@code null} if there are no more
+     */
+    ByteArrayKey nextClassName() {
+        while (position < end) {
+            if (formalTypeParameters && depth == 1) {
+                skipFormalTypeParameterName();
+            }
+            // Other than class names, type variables and the names of formal type parameters and inner classes,
+            // everything is a single byte: the brackets, array dimensions, wildcards, primitive types etc.
+            // So a class name can only start where we are
+            switch (bytes[position++]) {
+                case 'L': {
+                    int start = position;
+                    skipIdentifier();
+                    ByteArrayKey key = ByteArrayKey.create(bytes, start, position - start);
+                    skipSemicolon();
+                    return key;
+                }
+                case 'T':
+                case '.':
+                    // A type variable, e.g. TT; or the name of an inner class of a parameterized type
+                    skipIdentifier();
+                    skipSemicolon();
+                    break;
+                case '<':
+                    depth++;
+                    break;
+                case '>':
+                    if (--depth == 0) {
+                        formalTypeParameters = false;
+                    }
+                    break;
+            }
+        }
+        return null;
+    }
+
+    private void skipIdentifier() {
+        while (position < end) {
+            byte b = bytes[position];
+            if (b == ';' || b == '<' || b == '.') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void skipSemicolon() {
+        if (position < end && bytes[position] == ';') {
+            position++;
+        }
+    }
+
+    private void skipFormalTypeParameterName() {
+        // The name of a formal type parameter is followed by ':', while nothing else can be followed by ':'
+        // before reaching one of the other characters which are not allowed in a name
+        int i = position;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == ':') {
+                if (i > position) {
+                    position = i;
+                }
+                return;
+            }
+            if (b == ';' || b == '<' || b == '>' || b == '/' || b == '.' || b == '[') {
+                return;
+            }
+            i++;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * <p>Keeps the results of scanning the classes of an application which is being changed, e.g. in a development
+ * mode where classes are recompiled one by one. Rather than scanning the whole application again on each change,
+ * only the changed classes are scanned, and the aggregated usages from {@link #getUsages()} are updated in place.</p>
+ *
+ * <p>Changes can either be pushed by the caller with {@link #classChanged(String, InputStream)} and
+ * {@link #classDeleted(String)}, or picked up from directories registered with {@link #watch(Path)}, in which case
+ * {@link #processEvents()} or {@link #awaitEvents(long, TimeUnit)} must be called to handle them.</p>
+ *
+ * <p>Each changed class is checked for references to the indexed API, and for usage of annotations annotated with
+ * an unstable api annotation, as done by {@link ClassInfoScanner#scanClass(InputStream)}.</p>
+ *
+ * <p>Instances of this class are not thread safe.</p>
+ */
+public class IncrementalScanSession implements Closeable {
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private final ClassInfoScanner scanner;
+    private final List<AnnotationUsage> found = new ArrayList<>();
+    private final Map<String, List<AnnotationUsage>> usagesByClass = new HashMap<>();
+    private final Set<AnnotationUsage> usages = new LinkedHashSet<>();
+    // The number of times each usage was found. Class files with the same class name, e.g. under two watched roots,
+    // give equal usages, so a usage is only removed once none of the classes have it
+    private final Map<AnnotationUsage, Integer> usageCounts = new HashMap<>();
+    private final Set<AnnotationUsage> readOnlyUsages = Collections.unmodifiableSet(usages);
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final List<Path> watchedRoots = new ArrayList<>();
+
+    /**
+     * Constructor
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     */
+    public IncrementalScanSession(RuntimeIndex runtimeIndex) {
+        this.scanner = new ClassInfoScanner(runtimeIndex, (type, sourceClass, usage) -> found.add(usage));
+    }
+
+    /**
+     * Gets the usages found in all the classes currently known by this session. The returned set is a read-only
+     * view which is updated as changes are processed.
+     *
+     * @return the usages
+     */
+    public Set<AnnotationUsage> getUsages() {
+        return readOnlyUsages;
+    }
+
+    /**
+     * Gets the usages found in a single class
+     * @param id the id the class was registered with
+     * @return the usages. Empty if the class is unknown or has no usages
+     */
+    public List<AnnotationUsage> getUsages(String id) {
+        List<AnnotationUsage> classUsages = usagesByClass.get(id);
+        return classUsages == null ? Collections.emptyList() : Collections.unmodifiableList(classUsages);
+    }
+
+    /**
+     * Called when a class has been added or changed. The class is scanned, and any usages previously recorded
+     * for it are replaced.
+     *
+     * @param id an id for the class, which is used for subsequent changes of the same class. For example the class
+     *           name, or the path of the class file
+     * @param input the bytecode of the class
+     * @throws IOException if there were problems reading the bytecode
+     */
+    public void classChanged(String id, InputStream input) throws IOException {
+        found.clear();
+        scanner.scanClass(input);
+
+        List<AnnotationUsage> classUsages = found.isEmpty() ? Collections.emptyList() : new ArrayList<>(found);
+
+        removeUsages(usagesByClass.put(id, classUsages));
+        addUsages(classUsages);
+    }
+
+    /**
+     * Called when a class file has been added or changed. The class is scanned, and any usages previously recorded
+     * for it are replaced. The id of the class is the absolute path of the file.
+     *
+     * @param classFile the class file
+     * @throws IOException if there were problems reading the class file
+     */
+    public void classChanged(Path classFile) throws IOException {
+        try (InputStream in = Files.newInputStream(classFile)) {
+            classChanged(getId(classFile), in);
+        }
+    }
+
+    /**
+     * Called when a class has been deleted. Any usages recorded for it are removed
+     *
+     * @param id the id the class was registered with
+     */
+    public void classDeleted(String id) {
+        removeUsages(usagesByClass.remove(id));
+    }
+
+    /**
+     * Called when a class file has been deleted. Any usages recorded for it are removed
+     *
+     * @param classFile the class file
+     */
+    public void classDeleted(Path classFile) {
+        classDeleted(getId(classFile));
+    }
+
+    /**
+     * Scans all the class files under a directory, and watches the directory for subsequent changes.
+     * The changes are handled when calling {@link #processEvents()} or {@link #awaitEvents(long, TimeUnit)}.
+     *
+     * @param root the root directory containing the class files
+     * @throws IOException if there were problems reading the directory
+     */
+    public void watch(Path root) throws IOException {
+        if (watchService == null) {
+            watchService = root.getFileSystem().newWatchService();
+        }
+        watchedRoots.add(root);
+        registerAndScan(root);
+    }
+
+    /**
+     * Handles any pending changes in the watched directories, without waiting.
+     *
+     * @return the number of changed or deleted class files which were handled
+     * @throws IOException if there were problems reading the changed classes
+     */
+    public int processEvents() throws IOException {
+        if (watchService == null) {
+            return 0;
+        }
+        int handled = 0;
+        WatchKey key = watchService.poll();
+        while (key != null) {
+            handled += processKey(key);
+            key = watchService.poll();
+        }
+        return handled;
+    }
+
+    /**
+     * Waits for changes in the watched directories, and then handles them along with any other pending changes.
+     *
+     * @param timeout the maximum time to wait for a change
+     * @param unit the unit of the timeout
+     * @return the number of changed or deleted class files which were handled
+     * @throws IOException if there were problems reading the changed classes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int awaitEvents(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (watchService == null) {
+            return 0;
+        }
+        WatchKey key = watchService.poll(timeout, unit);
+        if (key == null) {
+            return 0;
+        }
+        return processKey(key) + processEvents();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+            watchedDirectories.clear();
+        }
+    }
+
+    private int processKey(WatchKey key) throws IOException {
+        Path dir = watchedDirectories.get(key);
+        int handled = 0;
+        if (dir != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, so we don't know what changed
+                    handled += rescanAll();
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    handled += deleted(path);
+                } else if (Files.isDirectory(path)) {
+                    if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                        handled += registerAndScan(path);
+                    }
+                } else if (isClassFile(path) && Files.exists(path)) {
+                    try {
+                        classChanged(path);
+                        handled++;
+                    } catch (EOFException e) {
+                        // The compiler is still writing the file. There will be another event once it is done
+                    } catch (NoSuchFileException e) {
+                        // The file was deleted after the check. There will be a delete event for it
+                    }
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+        return handled;
+    }
+
+    private int registerAndScan(Path root) throws IOException {
+        List<Path> classFiles = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            Iterator<Path> it = paths.iterator();
+            while (it.hasNext()) {
+                Path path = it.next();
+                if (Files.isDirectory(path)) {
+                    register(path);
+                } else if (isClassFile(path)) {
+                    classFiles.add(path);
+                }
+            }
+        }
+        for (Path classFile : classFiles) {
+            classChanged(classFile);
+        }
+        return classFiles.size();
+    }
+
+    private void register(Path dir) throws IOException {
+        try {
+            WatchKey key = dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, dir);
+        } catch (ClosedWatchServiceException e) {
+            throw new IllegalStateException("The session has been closed");
+        }
+    }
+
+    private int deleted(Path path) {
+        String id = getId(path);
+        if (usagesByClass.containsKey(id)) {
+            classDeleted(id);
+            return 1;
+        }
+        // It might have been a directory, in which case we remove everything under it
+        String prefix = id + path.getFileSystem().getSeparator();
+        List<String> removed = new ArrayList<>();
+        for (String classId : usagesByClass.keySet()) {
+            if (classId.startsWith(prefix)) {
+                removed.add(classId);
+            }
+        }
+        for (String classId : removed) {
+            classDeleted(classId);
+        }
+        return removed.size();
+    }
+
+    private int rescanAll() throws IOException {
+        int handled = 0;
+        for (Path root : watchedRoots) {
+            handled += deleted(root);
+            if (Files.exists(root)) {
+                handled += registerAndScan(root);
+            }
+        }
+        return handled;
+    }
+
+    private void addUsages(List<AnnotationUsage> classUsages) {
+        for (AnnotationUsage usage : classUsages) {
+            if (usageCounts.merge(usage, 1, Integer::sum) == 1) {
+                usages.add(usage);
+            }
+        }
+    }
+
+    private void removeUsages(List<AnnotationUsage> classUsages) {
+        if (classUsages == null) {
+            return;
+        }
+        for (AnnotationUsage usage : classUsages) {
+            if (usageCounts.computeIfPresent(usage, (u, count) -> count == 1 ? null : count - 1) == null) {
+                usages.remove(usage);
+            }
+        }
+    }
+
+    private static boolean isClassFile(Path path) {
+        return path.getFileName().toString().endsWith(CLASS_FILE_SUFFIX);
+    }
+
+    private static String getId(Path classFile) {
+        return classFile.toAbsolutePath().normalize().toString();
+    }
+}
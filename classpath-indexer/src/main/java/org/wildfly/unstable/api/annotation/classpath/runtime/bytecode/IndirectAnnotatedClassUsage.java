@@ -0,0 +1,55 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.INDIRECT_CLASS_USAGE;
+
+/**
+ * Records indirect usage in user bytecode of a class that has been annotated with one of the annotations
+ * we recorded as unstable api in the {@link OverallIndex}. This is when the class is only mentioned in the descriptor
+ * of a field or method used by the user bytecode, or in the generic signature of the user class, e.g. when calling
+ * a stable method which takes a parameter of the annotated type.
+ */
+public class IndirectAnnotatedClassUsage extends AnnotationWithSourceClassUsage {
+    private final String referencedClass;
+
+    IndirectAnnotatedClassUsage(Set<String> annotations, String className, String referencedClass) {
+        super(annotations, INDIRECT_CLASS_USAGE, className);
+        this.referencedClass = referencedClass;
+    }
+
+    /**
+     * Gets the name of the referenced class
+     * @return the referenced class
+     */
+    public String getReferencedClass() {
+        return referencedClass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        IndirectAnnotatedClassUsage usage = (IndirectAnnotatedClassUsage) o;
+        return Objects.equals(referencedClass, usage.referencedClass);
+    }
+
+    @Override
+    // Don't override hashcode here, the root class will do some caching
+    protected int calculateHash() {
+        return Objects.hash(super.calculateHash(), referencedClass);
+    }
+
+    @Override
+    protected AnnotationUsage convertToDotFormat() {
+        return new IndirectAnnotatedClassUsage(
+                annotations,
+                convertClassNameToDotFormat(sourceClass),
+                convertClassNameToDotFormat(referencedClass));
+    }
+}
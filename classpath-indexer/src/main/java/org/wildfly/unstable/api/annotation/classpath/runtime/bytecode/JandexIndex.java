@@ -2,8 +2,14 @@ package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
 
 
 import org.jboss.jandex.AnnotationInstance;
+import org.jboss.jandex.ClassInfo;
+import org.jboss.jandex.DotName;
+import org.jboss.jandex.IndexView;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A wrapper around a Jandex annotation index. It is used to find places in the user code
@@ -11,4 +17,89 @@ import java.util.Collection;
  */
 public interface JandexIndex {
     Collection<AnnotationInstance> getAnnotations(final String annotationName);
+
+    /**
+     * Gets the names of all the annotations used in the index, if known. If the index contains fewer annotations
+     * than have been annotated with unstable api annotations in the {@code RuntimeIndex}, this is used to only look
+     * up the annotations actually used, rather than all the annotated annotations.
+     *
+     * @return the annotation names, or {@code null} if not known
+     */
+    default Collection<String> getKnownAnnotationNames() {
+        return null;
+    }
+
+    /**
+     * Gets the names of all the annotations used in the index, if known and there are no more than a given number of
+     * them. Implementations which have to gather the names can give up once there are more, or once gathering them
+     * costs more than that number of lookups in the index.
+     *
+     * @param max the largest number of names which is of use
+     * @return the annotation names, or {@code null} if not known, too costly to gather or there are more than
+     * {@code max} of them
+     */
+    default Collection<String> getKnownAnnotationNames(int max) {
+        Collection<String> names = getKnownAnnotationNames();
+        return names == null || names.size() > max ? null : names;
+    }
+
+    /**
+     * Creates a JandexIndex from a Jandex {@link IndexView}, which also knows the names of the annotations used
+     * in the index
+     *
+     * @param index the Jandex index
+     * @return the created JandexIndex
+     */
+    static JandexIndex of(IndexView index) {
+        if (index == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        return new JandexIndex() {
+            private Set<String> knownAnnotationNames;
+            // The largest max for which the gathering of the names was given up
+            private int exceededMax = -1;
+
+            @Override
+            public Collection<AnnotationInstance> getAnnotations(String annotationName) {
+                return index.getAnnotations(DotName.createSimple(annotationName));
+            }
+
+            @Override
+            public Collection<String> getKnownAnnotationNames() {
+                return getKnownAnnotationNames(Integer.MAX_VALUE);
+            }
+
+            @Override
+            public Collection<String> getKnownAnnotationNames(int max) {
+                if (knownAnnotationNames == null) {
+                    if (max <= exceededMax) {
+                        return null;
+                    }
+                    // Jandex has no direct way to list the annotations it knows about, so gather them from the
+                    // classes. Visiting a class costs at least as much as a lookup, so don't bother if there are
+                    // more classes than max. The names are only converted to strings once the walk is complete.
+                    Collection<ClassInfo> classes = index.getKnownClasses();
+                    if (classes.size() > max) {
+                        exceededMax = max;
+                        return null;
+                    }
+                    Set<DotName> names = new HashSet<>();
+                    for (ClassInfo classInfo : classes) {
+                        for (DotName name : classInfo.annotationsMap().keySet()) {
+                            if (names.add(name) && names.size() > max) {
+                                exceededMax = max;
+                                return null;
+                            }
+                        }
+                    }
+                    Set<String> strings = new HashSet<>();
+                    for (DotName name : names) {
+                        strings.add(name.toString());
+                    }
+                    knownAnnotationNames = Collections.unmodifiableSet(strings);
+                }
+                return knownAnnotationNames.size() > max ? null : knownAnnotationNames;
+            }
+        };
+    }
 }
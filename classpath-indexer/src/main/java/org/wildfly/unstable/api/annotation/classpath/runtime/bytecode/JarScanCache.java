@@ -0,0 +1,401 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.Fingerprint;
+import org.wildfly.unstable.api.annotation.classpath.index.MultiReleaseJarEntries;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>Scans the classes in a jar with a {@link ClassInfoScanner}, and stores the results for each class in a cache
+ * directory on disk. The next time the same jar is scanned (e.g. following a server restart) the stored results are
+ * used instead of reading and parsing the bytecode again.</p>
+ *
+ * <p>The stored results are keyed by the CRCs and sizes of the jar's class entries, as found in the central directory
+ * of the jar, and by the {@link RuntimeIndex#getFingerprint() fingerprint} of the runtime index. If the jar changes,
+ * only the classes whose CRC or size changed are scanned again. If the runtime index changes, all the stored results
+ * for the jar are discarded.</p>
+ *
+ * <p>Instances of this class are not thread safe.</p>
+ */
+public class JarScanCache {
+    private static final int MAGIC = 0x55_41_53_43;
+    // The name, crc, size and usage count of an entry, and the type and annotation count of a usage
+    private static final int MIN_ENTRY_SIZE = 2 + 8 + 8 + 4;
+    private static final int MIN_USAGE_SIZE = 1 + 2;
+    // Bump this if the format of the stored file, or the AnnotationUsage types, change
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_FILE_SUFFIX = ".scan";
+
+    private final Path cacheDirectory;
+    private final RuntimeIndex runtimeIndex;
+    private final int targetJavaVersion;
+
+    private int cacheHits;
+    private int cacheMisses;
+    private int scannedClasses;
+    private int skippedEntries;
+
+    /**
+     * Constructor
+     * @param cacheDirectory the directory to store the scan results in. It will be created if it does not exist.
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     */
+    public JarScanCache(Path cacheDirectory, RuntimeIndex runtimeIndex) {
+        this(cacheDirectory, runtimeIndex, MultiReleaseJarEntries.DEFAULT_TARGET_VERSION);
+    }
+
+    /**
+     * Constructor
+     * @param cacheDirectory the directory to store the scan results in. It will be created if it does not exist.
+     * @param runtimeIndex the runtime index to check the scanned classes against
+     * @param targetJavaVersion the Java version to select the entries of multi-release jars for, e.g. {@code 17}
+     */
+    public JarScanCache(Path cacheDirectory, RuntimeIndex runtimeIndex, int targetJavaVersion) {
+        if (cacheDirectory == null || runtimeIndex == null) {
+            throw new NullPointerException("Null parameter");
+        }
+        this.cacheDirectory = cacheDirectory;
+        this.runtimeIndex = runtimeIndex;
+        this.targetJavaVersion = targetJavaVersion;
+    }
+
+    /**
+     * Scans all the classes in a jar, using the stored results for the jar if they are still valid.
+     *
+     * @param jar the jar to scan
+     * @return the usages found in the jar's classes
+     * @throws IOException if there were problems reading the jar or writing the cache
+     */
+    public Set<AnnotationUsage> scanJar(File jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            MultiReleaseJarEntries selected = MultiReleaseJarEntries.select(zipFile, targetJavaVersion);
+            skippedEntries += selected.getSkippedEntryCount();
+            List<ZipEntry> classEntries = selected.getClassEntries();
+            long jarFingerprint = calculateJarFingerprint(classEntries);
+
+            Path cacheFile = cacheDirectory.resolve(
+                    Fingerprint.toHexString(Fingerprint.of(jar.getAbsolutePath())) + CACHE_FILE_SUFFIX);
+            CachedJar cached = readCacheFile(cacheFile);
+            if (cached != null && cached.jarFingerprint == jarFingerprint) {
+                cacheHits++;
+                return cached.getAllUsages();
+            }
+            cacheMisses++;
+
+            Map<String, CachedEntry> entries = new LinkedHashMap<>();
+            List<AnnotationUsage> found = new ArrayList<>();
+            ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, (type, sourceClass, usage) -> found.add(usage));
+            for (ZipEntry entry : classEntries) {
+                CachedEntry cachedEntry = cached == null ? null : cached.entries.get(entry.getName());
+                if (cachedEntry == null || cachedEntry.crc != entry.getCrc() || cachedEntry.size != entry.getSize()) {
+                    cachedEntry = scanEntry(scanner, found, zipFile, entry);
+                }
+                entries.put(entry.getName(), cachedEntry);
+            }
+
+            CachedJar result = new CachedJar(jarFingerprint, entries);
+            writeCacheFile(cacheFile, result);
+            return result.getAllUsages();
+        }
+    }
+
+    /**
+     * Gets the number of jars whose results were fully taken from the cache
+     * @return the number of cache hits
+     */
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Gets the number of jars which had no valid stored results, or where some classes had changed
+     * @return the number of cache misses
+     */
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Gets the number of classes whose bytecode was scanned since this instance was created
+     * @return the number of scanned classes
+     */
+    public int getScannedClassCount() {
+        return scannedClasses;
+    }
+
+    /**
+     * Gets the number of versioned entries of multi-release jars which were not scanned since this instance was
+     * created, because they are shadowed or not for the target Java version
+     * @return the number of skipped entries
+     */
+    public int getSkippedEntryCount() {
+        return skippedEntries;
+    }
+
+    private CachedEntry scanEntry(ClassInfoScanner scanner, List<AnnotationUsage> found, ZipFile zipFile, ZipEntry entry) throws IOException {
+        found.clear();
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            scanner.scanClass(in);
+        }
+        scannedClasses++;
+        List<AnnotationUsage> usages = found.isEmpty() ? Collections.emptyList() : new ArrayList<>(found);
+        return new CachedEntry(entry.getCrc(), entry.getSize(), usages);
+    }
+
+    private static long calculateJarFingerprint(List<ZipEntry> classEntries) {
+        // Only the central directory is used, so no entries need to be inflated
+        Fingerprint fingerprint = new Fingerprint();
+        for (ZipEntry entry : classEntries) {
+            fingerprint.update(entry.getName())
+                    .update(entry.getCrc())
+                    .update(entry.getSize());
+        }
+        return fingerprint.getValue();
+    }
+
+    private CachedJar readCacheFile(Path cacheFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            long fileSize = Files.size(cacheFile);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (in.readLong() != runtimeIndex.getFingerprint()) {
+                return null;
+            }
+            long jarFingerprint = in.readLong();
+            int entryCount = readCount(in, fileSize / MIN_ENTRY_SIZE);
+            Map<String, CachedEntry> entries = new HashMap<>(entryCount * 2);
+            for (int i = 0; i < entryCount; i++) {
+                String name = in.readUTF();
+                long crc = in.readLong();
+                long size = in.readLong();
+                int usageCount = readCount(in, fileSize / MIN_USAGE_SIZE);
+                List<AnnotationUsage> usages = usageCount == 0 ? Collections.emptyList() : new ArrayList<>(usageCount);
+                for (int j = 0; j < usageCount; j++) {
+                    usages.add(readUsage(in));
+                }
+                entries.put(name, new CachedEntry(crc, size, usages));
+            }
+            return new CachedJar(jarFingerprint, entries);
+        } catch (IOException | RuntimeException e) {
+            // Missing, truncated or otherwise corrupt, e.g. a UTFDataFormatException for a name. The jar gets scanned
+            // again and the file overwritten
+            return null;
+        }
+    }
+
+    /**
+     * Reads the number of entries or usages which follow in the cache file, which must be able to fit in the file
+     */
+    private static int readCount(DataInputStream in, long max) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private void writeCacheFile(Path cacheFile, CachedJar cachedJar) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        // Write to a temp file first, so a concurrent or interrupted write never leaves a partial cache file behind
+        Path tempFile = Files.createTempFile(cacheDirectory, "scan", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(runtimeIndex.getFingerprint());
+                out.writeLong(cachedJar.jarFingerprint);
+                out.writeInt(cachedJar.entries.size());
+                for (Map.Entry<String, CachedEntry> entry : cachedJar.entries.entrySet()) {
+                    CachedEntry cachedEntry = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(cachedEntry.crc);
+                    out.writeLong(cachedEntry.size);
+                    // An empty list is the 'clean' marker for the class
+                    out.writeInt(cachedEntry.usages.size());
+                    for (AnnotationUsage usage : cachedEntry.usages) {
+                        writeUsage(out, usage);
+                    }
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void writeUsage(DataOutputStream out, AnnotationUsage usage) throws IOException {
+        out.writeByte(usage.getType().ordinal());
+        out.writeShort(usage.getAnnotations().size());
+        for (String annotation : usage.getAnnotations()) {
+            out.writeUTF(annotation);
+        }
+        switch (usage.getType()) {
+            case EXTENDS_CLASS: {
+                ExtendsAnnotatedClass extendsClass = usage.asExtendsAnnotatedClass();
+                out.writeUTF(extendsClass.getSourceClass());
+                out.writeUTF(extendsClass.getSuperClass());
+            }
+            break;
+            case IMPLEMENTS_INTERFACE: {
+                ImplementsAnnotatedInterface implementsInterface = usage.asImplementsAnnotatedInterface();
+                out.writeUTF(implementsInterface.getSourceClass());
+                out.writeUTF(implementsInterface.getInterface());
+            }
+            break;
+            case METHOD_REFERENCE: {
+                AnnotatedMethodReference methodReference = usage.asAnnotatedMethodReference();
+                out.writeUTF(methodReference.getSourceClass());
+                out.writeUTF(methodReference.getMethodClass());
+                out.writeUTF(methodReference.getMethodName());
+                out.writeUTF(methodReference.getDescriptor());
+            }
+            break;
+            case FIELD_REFERENCE: {
+                AnnotatedFieldReference fieldReference = usage.asAnnotatedFieldReference();
+                out.writeUTF(fieldReference.getSourceClass());
+                out.writeUTF(fieldReference.getFieldClass());
+                out.writeUTF(fieldReference.getFieldName());
+            }
+            break;
+            case CLASS_USAGE: {
+                AnnotatedClassUsage classUsage = usage.asAnnotatedClassUsage();
+                out.writeUTF(classUsage.getSourceClass());
+                out.writeUTF(classUsage.getReferencedClass());
+            }
+            break;
+            case ANNOTATED_ANNOTATION_USAGE: {
+                AnnotatedAnnotationUsage annotationUsage = usage.asAnnotatedAnnotationUsage();
+                out.writeUTF(annotationUsage.getClazz());
+            }
+            break;
+            case DECLARED_FIELD_TYPE: {
+                DeclaredFieldType fieldType = usage.asDeclaredFieldType();
+                out.writeUTF(fieldType.getSourceClass());
+                out.writeUTF(fieldType.getFieldName());
+                out.writeUTF(fieldType.getFieldType());
+            }
+            break;
+            case DECLARED_METHOD_TYPE: {
+                DeclaredMethodType methodType = usage.asDeclaredMethodType();
+                out.writeUTF(methodType.getSourceClass());
+                out.writeUTF(methodType.getMethodName());
+                out.writeUTF(methodType.getDescriptor());
+                out.writeUTF(methodType.getDeclaredType());
+            }
+            break;
+            case OVERRIDES_METHOD: {
+                OverridesAnnotatedMethod overridesMethod = usage.asOverridesAnnotatedMethod();
+                out.writeUTF(overridesMethod.getSourceClass());
+                out.writeUTF(overridesMethod.getMethodClass());
+                out.writeUTF(overridesMethod.getMethodName());
+                out.writeUTF(overridesMethod.getDescriptor());
+            }
+            break;
+            case INDIRECT_CLASS_USAGE: {
+                IndirectAnnotatedClassUsage classUsage = usage.asIndirectAnnotatedClassUsage();
+                out.writeUTF(classUsage.getSourceClass());
+                out.writeUTF(classUsage.getReferencedClass());
+            }
+            break;
+            case REFLECTIVE_CLASS_USAGE: {
+                ReflectiveAnnotatedClassUsage classUsage = usage.asReflectiveAnnotatedClassUsage();
+                out.writeUTF(classUsage.getSourceClass());
+                out.writeUTF(classUsage.getReferencedClass());
+            }
+            break;
+            default:
+                throw new IllegalStateException("Unknown type " + usage.getType());
+        }
+    }
+
+    private static AnnotationUsage readUsage(DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        AnnotationUsageType[] types = AnnotationUsageType.values();
+        if (ordinal < 0 || ordinal >= types.length) {
+            throw new IllegalArgumentException("Unknown type " + ordinal);
+        }
+        int annotationCount = in.readShort();
+        Set<String> annotations = new HashSet<>(annotationCount * 2);
+        for (int i = 0; i < annotationCount; i++) {
+            annotations.add(in.readUTF());
+        }
+        switch (types[ordinal]) {
+            case EXTENDS_CLASS:
+                return new ExtendsAnnotatedClass(annotations, in.readUTF(), in.readUTF());
+            case IMPLEMENTS_INTERFACE:
+                return new ImplementsAnnotatedInterface(annotations, in.readUTF(), in.readUTF());
+            case METHOD_REFERENCE:
+                return new AnnotatedMethodReference(annotations, in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+            case FIELD_REFERENCE:
+                return new AnnotatedFieldReference(annotations, in.readUTF(), in.readUTF(), in.readUTF());
+            case CLASS_USAGE:
+                return new AnnotatedClassUsage(annotations, in.readUTF(), in.readUTF());
+            case ANNOTATED_ANNOTATION_USAGE:
+                return new AnnotatedAnnotationUsage(in.readUTF(), annotations);
+            case DECLARED_FIELD_TYPE:
+                return new DeclaredFieldType(annotations, in.readUTF(), in.readUTF(), in.readUTF());
+            case DECLARED_METHOD_TYPE:
+                return new DeclaredMethodType(annotations, in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+            case OVERRIDES_METHOD:
+                return new OverridesAnnotatedMethod(annotations, in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+            case INDIRECT_CLASS_USAGE:
+                return new IndirectAnnotatedClassUsage(annotations, in.readUTF(), in.readUTF());
+            case REFLECTIVE_CLASS_USAGE:
+                return new ReflectiveAnnotatedClassUsage(annotations, in.readUTF(), in.readUTF());
+            default:
+                throw new IllegalArgumentException("Unknown type " + types[ordinal]);
+        }
+    }
+
+    private static class CachedJar {
+        private final long jarFingerprint;
+        private final Map<String, CachedEntry> entries;
+
+        CachedJar(long jarFingerprint, Map<String, CachedEntry> entries) {
+            this.jarFingerprint = jarFingerprint;
+            this.entries = entries;
+        }
+
+        Set<AnnotationUsage> getAllUsages() {
+            Set<AnnotationUsage> usages = new LinkedHashSet<>();
+            for (CachedEntry entry : entries.values()) {
+                usages.addAll(entry.usages);
+            }
+            return usages;
+        }
+    }
+
+    private static class CachedEntry {
+        private final long crc;
+        private final long size;
+        private final List<AnnotationUsage> usages;
+
+        CachedEntry(long crc, long size, List<AnnotationUsage> usages) {
+            this.crc = crc;
+            this.size = size;
+            this.usages = usages;
+        }
+    }
+}
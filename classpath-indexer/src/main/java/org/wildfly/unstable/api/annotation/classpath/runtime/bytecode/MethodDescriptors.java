@@ -0,0 +1,206 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out method descriptors the way Jandex reports them, for the {@link AnnotationTargetReader}. For a method with a
+ * generic signature Jandex builds the descriptor from the erasure of the signature. A type variable is erased to the
+ * erasure of its first bound, looking for its declaration in the method, the class, and then the enclosing classes
+ * and methods Jandex knows about. If it is not found, it is erased to {@code java.lang.Object}.
+ */
+final class MethodDescriptors {
+    private static final String OBJECT = "Ljava/lang/Object;";
+    // Guards against type variables with bounds referring to each other in invalid signatures
+    private static final int MAX_BOUND_DEPTH = 32;
+
+    private MethodDescriptors() {
+    }
+
+    /**
+     * Gets the parameter types of a method descriptor, e.g. {@code [I, Ljava/lang/String;]} for
+     * {@code (ILjava/lang/String;)V}
+     * @param descriptor the method descriptor
+     * @return the parameter types
+     */
+    static List<String> getParameterTypes(String descriptor) {
+        List<String> types = new ArrayList<>();
+        int position = descriptor.indexOf('(') + 1;
+        while (descriptor.charAt(position) != ')') {
+            int end = skipType(descriptor, position);
+            types.add(descriptor.substring(position, end));
+            position = end;
+        }
+        return types;
+    }
+
+    /**
+     * Gets the type parameters declared at the start of a class or method signature, e.g. {@code K} and {@code V} for
+     * {@code <K:Ljava/lang/Object;V::Ljava/lang/Runnable;>Ljava/lang/Object;}
+     * @param signature the signature, or {@code null}
+     * @return the first bounds of the type parameters, keyed by their names. The first bound is the first interface
+     * bound if the class bound is left out, e.g. {@code Ljava/lang/Runnable;} for {@code V} above
+     */
+    static Map<String, String> getTypeParameters(String signature) {
+        if (signature == null || signature.isEmpty() || signature.charAt(0) != '<') {
+            return Collections.emptyMap();
+        }
+        Map<String, String> bounds = new HashMap<>();
+        int position = 1;
+        while (signature.charAt(position) != '>') {
+            int colon = signature.indexOf(':', position);
+            String name = signature.substring(position, colon);
+            position = colon;
+            String firstBound = null;
+            while (signature.charAt(position) == ':') {
+                position++;
+                if (signature.charAt(position) == ':') {
+                    continue;
+                }
+                int end = skipType(signature, position);
+                if (firstBound == null) {
+                    firstBound = signature.substring(position, end);
+                }
+                position = end;
+            }
+            bounds.put(name, firstBound == null ? OBJECT : firstBound);
+        }
+        return bounds;
+    }
+
+    /**
+     * Gets the erased descriptor of a method with a generic signature, e.g. {@code (Ljava/util/List;)Ljava/lang/Object;}
+     * for {@code <T:Ljava/lang/Object;>(Ljava/util/List<TT;>;)TT;}
+     * @param methodSignature the signature of the method
+     * @param scope the scope the method is declared in, for looking up the type variables not declared by the
+     *              method itself
+     * @return the erased descriptor, or {@code null} if the scope did not know about one of the type variables
+     */
+    static String eraseMethodSignature(String methodSignature, TypeScope scope) {
+        TypeScope methodScope = new TypeScope(getTypeParameters(methodSignature), scope);
+        StringBuilder sb = new StringBuilder("(");
+        int position = methodSignature.indexOf('(') + 1;
+        while (methodSignature.charAt(position) != ')') {
+            int end = skipType(methodSignature, position);
+            if (!erase(methodSignature.substring(position, end), methodScope, 0, sb)) {
+                return null;
+            }
+            position = end;
+        }
+        sb.append(')');
+        position++;
+        // The throws clause is not part of the descriptor
+        int end = methodSignature.charAt(position) == 'V' ? position + 1 : skipType(methodSignature, position);
+        if (!erase(methodSignature.substring(position, end), methodScope, 0, sb)) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the erasure of a type signature
+     * @return {@code false} if a type variable could not be resolved
+     */
+    private static boolean erase(String type, TypeScope scope, int depth, StringBuilder sb) {
+        switch (type.charAt(0)) {
+            case '[':
+                sb.append('[');
+                return erase(type.substring(1), scope, depth, sb);
+            case 'T': {
+                String name = type.substring(1, type.length() - 1);
+                TypeScope declaringScope = scope.find(name);
+                if (declaringScope == null) {
+                    return false;
+                }
+                if (depth >= MAX_BOUND_DEPTH) {
+                    sb.append(OBJECT);
+                    return true;
+                }
+                // The bound may refer to other type variables visible where the type variable is declared
+                return erase(declaringScope.getBound(name), declaringScope, depth + 1, sb);
+            }
+            case 'L': {
+                // Drop the type arguments, and use the binary names of inner classes, e.g. Lorg/acme/Outer$Inner;
+                int typeArgumentDepth = 0;
+                for (int i = 0; i < type.length(); i++) {
+                    char c = type.charAt(i);
+                    if (c == '<') {
+                        typeArgumentDepth++;
+                    } else if (c == '>') {
+                        typeArgumentDepth--;
+                    } else if (typeArgumentDepth == 0) {
+                        sb.append(c == '.' ? '$' : c);
+                    }
+                }
+                return true;
+            }
+            default:
+                sb.append(type);
+                return true;
+        }
+    }
+
+    /**
+     * Gets the position after a type in a descriptor or signature
+     */
+    private static int skipType(String descriptor, int position) {
+        while (descriptor.charAt(position) == '[') {
+            position++;
+        }
+        char c = descriptor.charAt(position);
+        if (c != 'L' && c != 'T') {
+            return position + 1;
+        }
+        // Skip to the semicolon ending the type, ignoring the ones in type arguments
+        int depth = 0;
+        while (true) {
+            c = descriptor.charAt(position++);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            } else if (c == ';' && depth == 0) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * The type parameters declared by a class or method, along with the scope enclosing it
+     */
+    static final class TypeScope {
+        /**
+         * The outermost scope, erasing the type variables not declared anywhere else to {@code java.lang.Object}
+         */
+        static final TypeScope ERASED = new TypeScope(Collections.emptyMap(), null);
+
+        private final Map<String, String> bounds;
+        private final TypeScope parent;
+
+        /**
+         * Constructor
+         * @param bounds the first bounds of the type parameters, keyed by their names
+         * @param parent the enclosing scope, or {@code null} if it is not known yet
+         */
+        TypeScope(Map<String, String> bounds, TypeScope parent) {
+            this.bounds = bounds;
+            this.parent = parent;
+        }
+
+        private TypeScope find(String name) {
+            for (TypeScope scope = this; scope != null; scope = scope.parent) {
+                if (scope == ERASED || scope.bounds.containsKey(name)) {
+                    return scope;
+                }
+            }
+            return null;
+        }
+
+        private String getBound(String name) {
+            return this == ERASED ? OBJECT : bounds.get(name);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.OVERRIDES_METHOD;
+
+/**
+ * Records a method declared in user bytecode which overrides a method that has been annotated with one of the
+ * annotations we recorded as unstable api in the {@link OverallIndex}
+ */
+public class OverridesAnnotatedMethod extends AnnotationWithSourceClassUsage {
+    private final String methodClass;
+    private final String methodName;
+    private final String descriptor;
+
+    OverridesAnnotatedMethod(Set<String> annotations, String className, String methodClass, String methodName, String descriptor) {
+        super(annotations, OVERRIDES_METHOD, className);
+        this.methodClass = methodClass;
+        this.methodName = methodName;
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Gets the name of the superclass or interface containing the overridden method. If the method was
+     * inherited by that from a supertype, it is the name of the direct supertype of the source class.
+     * @return the name of the class
+     */
+    public String getMethodClass() {
+        return methodClass;
+    }
+
+    /**
+     * Gets the name of the overridden method
+     * @return the method name
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Gets the descriptor of the overridden method
+     * @return the method descriptor
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        OverridesAnnotatedMethod that = (OverridesAnnotatedMethod) o;
+        return Objects.equals(methodClass, that.methodClass) && Objects.equals(methodName, that.methodName) && Objects.equals(descriptor, that.descriptor);
+    }
+
+    @Override
+    // Don't override hashcode here, the root class will do some caching
+    protected int calculateHash() {
+        return Objects.hash(super.calculateHash(), methodClass, methodName, descriptor);
+    }
+
+    @Override
+    protected AnnotationUsage convertToDotFormat() {
+        return new OverridesAnnotatedMethod(
+                annotations,
+                convertClassNameToDotFormat(sourceClass),
+                convertClassNameToDotFormat(methodClass),
+                methodName,
+                descriptor);
+    }
+}
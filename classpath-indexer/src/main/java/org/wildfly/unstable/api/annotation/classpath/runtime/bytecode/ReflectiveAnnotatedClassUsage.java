@@ -0,0 +1,54 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.OverallIndex;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex.convertClassNameToDotFormat;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.REFLECTIVE_CLASS_USAGE;
+
+/**
+ * Records a string constant in user bytecode containing the name of a class that has been annotated with one of the
+ * annotations we recorded as unstable api in the {@link OverallIndex}. This typically means that the class is loaded
+ * reflectively, e.g. via {@code Class.forName("org.acme.MyClass")}.
+ */
+public class ReflectiveAnnotatedClassUsage extends AnnotationWithSourceClassUsage {
+    private final String referencedClass;
+
+    ReflectiveAnnotatedClassUsage(Set<String> annotations, String className, String referencedClass) {
+        super(annotations, REFLECTIVE_CLASS_USAGE, className);
+        this.referencedClass = referencedClass;
+    }
+
+    /**
+     * Gets the name of the class contained in the string constant
+     * @return the referenced class
+     */
+    public String getReferencedClass() {
+        return referencedClass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        ReflectiveAnnotatedClassUsage usage = (ReflectiveAnnotatedClassUsage) o;
+        return Objects.equals(referencedClass, usage.referencedClass);
+    }
+
+    @Override
+    // Don't override hashcode here, the root class will do some caching
+    protected int calculateHash() {
+        return Objects.hash(super.calculateHash(), referencedClass);
+    }
+
+    @Override
+    protected AnnotationUsage convertToDotFormat() {
+        return new ReflectiveAnnotatedClassUsage(
+                annotations,
+                convertClassNameToDotFormat(sourceClass),
+                convertClassNameToDotFormat(referencedClass));
+    }
+}
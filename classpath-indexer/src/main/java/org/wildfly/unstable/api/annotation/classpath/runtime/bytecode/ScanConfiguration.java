@@ -0,0 +1,233 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import org.wildfly.unstable.api.annotation.classpath.index.ClassNameFilter;
+import org.wildfly.unstable.api.annotation.classpath.index.MultiReleaseJarEntries;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selects what a {@link ClassInfoScanner} should look for. Rather than filtering the usages after scanning,
+ * this is applied up front, so that the scanner does not look up or create usages for anything which
+ * is not wanted.
+ */
+public final class ScanConfiguration {
+    /**
+     * The usage types which are only looked for if added explicitly with {@link Builder#addUsageType(AnnotationUsageType)}.
+     * The member types are only found by parsing the fields and methods of each class, and the others were added
+     * later, so existing callers do not get usage types they do not know about.
+     */
+    private static final Set<AnnotationUsageType> OPT_IN_USAGE_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            AnnotationUsageType.DECLARED_FIELD_TYPE,
+            AnnotationUsageType.DECLARED_METHOD_TYPE,
+            AnnotationUsageType.OVERRIDES_METHOD,
+            AnnotationUsageType.INDIRECT_CLASS_USAGE,
+            AnnotationUsageType.REFLECTIVE_CLASS_USAGE));
+
+    /**
+     * The usage types which are looked for if none are added
+     */
+    private static final Set<AnnotationUsageType> DEFAULT_USAGE_TYPES =
+            Collections.unmodifiableSet(EnumSet.complementOf(EnumSet.copyOf(OPT_IN_USAGE_TYPES)));
+
+    /**
+     * The default configuration, which looks for all the default usage types of all the indexed annotations
+     */
+    public static final ScanConfiguration ALL = builder().build();
+
+    private final Set<AnnotationUsageType> usageTypes;
+    private final Set<String> annotations;
+    private final ClassNameFilter scannedClasses;
+    private final ClassNameFilter referencedClasses;
+    private final int targetJavaVersion;
+
+    private ScanConfiguration(Builder builder) {
+        this.usageTypes = builder.usageTypes.isEmpty() ?
+                DEFAULT_USAGE_TYPES :
+                Collections.unmodifiableSet(EnumSet.copyOf(builder.usageTypes));
+        this.annotations = Collections.unmodifiableSet(new HashSet<>(builder.annotations));
+        this.scannedClasses = builder.scannedClasses.build();
+        this.referencedClasses = builder.referencedClasses.build();
+        this.targetJavaVersion = builder.targetJavaVersion;
+    }
+
+    /**
+     * Creates a builder for a scan configuration
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the usage types which should be looked for
+     * @return the usage types
+     */
+    public Set<AnnotationUsageType> getUsageTypes() {
+        return usageTypes;
+    }
+
+    /**
+     * Whether a usage type should be looked for
+     * @param type the usage type
+     * @return {@code true} if the usage type should be looked for
+     */
+    public boolean isEnabled(AnnotationUsageType type) {
+        return usageTypes.contains(type);
+    }
+
+    /**
+     * Gets the indexed annotations whose usage should be looked for
+     * @return the annotations. If empty, all the indexed annotations should be looked for
+     */
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+    /**
+     * Gets the filter for the classes to scan
+     * @return the filter
+     */
+    public ClassNameFilter getScannedClasses() {
+        return scannedClasses;
+    }
+
+    /**
+     * Gets the filter for the referenced classes whose usage should be looked for
+     * @return the filter
+     */
+    public ClassNameFilter getReferencedClasses() {
+        return referencedClasses;
+    }
+
+    /**
+     * Gets the Java version to select the entries of multi-release jars for
+     * @return the Java feature version
+     */
+    public int getTargetJavaVersion() {
+        return targetJavaVersion;
+    }
+
+    /**
+     * Builder for {@link ScanConfiguration}
+     */
+    public static class Builder {
+        private final Set<AnnotationUsageType> usageTypes = EnumSet.noneOf(AnnotationUsageType.class);
+        private final Set<String> annotations = new HashSet<>();
+        private final ClassNameFilter.Builder scannedClasses = ClassNameFilter.builder();
+        private final ClassNameFilter.Builder referencedClasses = ClassNameFilter.builder();
+        private int targetJavaVersion = MultiReleaseJarEntries.DEFAULT_TARGET_VERSION;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a usage type to look for. If none are added, all usage types apart from
+         * {@link AnnotationUsageType#DECLARED_FIELD_TYPE}, {@link AnnotationUsageType#DECLARED_METHOD_TYPE},
+         * {@link AnnotationUsageType#OVERRIDES_METHOD}, {@link AnnotationUsageType#INDIRECT_CLASS_USAGE} and
+         * {@link AnnotationUsageType#REFLECTIVE_CLASS_USAGE} are looked for. The first three need the fields and
+         * methods of each class to be parsed, so they must be added explicitly, as must the later usage types.
+         * Once a usage type is added, only the added ones are looked for, so to look for one of these as well as the
+         * default ones, call {@link #addDefaultUsageTypes()} too.
+         * @param type the usage type
+         * @return this builder
+         */
+        public Builder addUsageType(AnnotationUsageType type) {
+            if (type == null) {
+                throw new NullPointerException("Null parameter");
+            }
+            usageTypes.add(type);
+            return this;
+        }
+
+        /**
+         * Adds the usage types which are looked for if none are added, i.e. all of them apart from the ones which
+         * must be added explicitly, see {@link #addUsageType(AnnotationUsageType)}. E.g. to look for
+         * {@link AnnotationUsageType#INDIRECT_CLASS_USAGE} on top of the default usage types, call this and add that.
+         * @return this builder
+         */
+        public Builder addDefaultUsageTypes() {
+            usageTypes.addAll(DEFAULT_USAGE_TYPES);
+            return this;
+        }
+
+        /**
+         * Adds an indexed annotation to look for. If none are added, all the indexed annotations are looked for.
+         * @param annotation the name of the annotation, e.g. {@code org.acme.Experimental}
+         * @return this builder
+         */
+        public Builder addAnnotation(String annotation) {
+            if (annotation == null) {
+                throw new NullPointerException("Null parameter");
+            }
+            annotations.add(annotation);
+            return this;
+        }
+
+        /**
+         * Adds a glob for the classes to scan, e.g. {@code org.acme.app.**}. If any are added, classes not matching
+         * one of them are skipped. See {@link ClassNameFilter} for the syntax.
+         * @param glob the glob
+         * @return this builder
+         */
+        public Builder includeScannedClasses(String glob) {
+            scannedClasses.include(glob);
+            return this;
+        }
+
+        /**
+         * Adds a glob for classes not to scan, e.g. vendored libraries known not to use any unstable api such as
+         * {@code org.acme.vendored.**}. See {@link ClassNameFilter} for the syntax.
+         * @param glob the glob
+         * @return this builder
+         */
+        public Builder excludeScannedClasses(String glob) {
+            scannedClasses.exclude(glob);
+            return this;
+        }
+
+        /**
+         * Adds a glob for the referenced classes to look for usage of. If any are added, references to classes not
+         * matching one of them are ignored. See {@link ClassNameFilter} for the syntax.
+         * @param glob the glob
+         * @return this builder
+         */
+        public Builder includeReferencedClasses(String glob) {
+            referencedClasses.include(glob);
+            return this;
+        }
+
+        /**
+         * Adds a glob for referenced classes to ignore, e.g. {@code org.acme.spi.**}. See {@link ClassNameFilter}
+         * for the syntax.
+         * @param glob the glob
+         * @return this builder
+         */
+        public Builder excludeReferencedClasses(String glob) {
+            referencedClasses.exclude(glob);
+            return this;
+        }
+
+        /**
+         * Sets the Java version to select the entries of multi-release jars for when scanning jars. A class under
+         * {@code META-INF/versions/N/} is only scanned if it is the one which would be loaded on that version, and the
+         * entries shadowed by it are not read. If not set, the version of the running JVM is used.
+         * @param targetJavaVersion the Java feature version, e.g. {@code 17}
+         * @return this builder
+         */
+        public Builder setTargetJavaVersion(int targetJavaVersion) {
+            this.targetJavaVersion = targetJavaVersion;
+            return this;
+        }
+
+        /**
+         * Creates the scan configuration
+         * @return the scan configuration
+         */
+        public ScanConfiguration build() {
+            return new ScanConfiguration(this);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The result of a scan in verdict mode, i.e. where we only want to know whether any unstable api is used at all.
+ * The scan stops at the first usage found, which is reported by this verdict. If no usage was found
+ * the verdict is {@link #CLEAN}.
+ */
+public final class UnstableApiVerdict {
+    /**
+     * The verdict when no usage of unstable api was found
+     */
+    public static final UnstableApiVerdict CLEAN = new UnstableApiVerdict(null, null, null, Collections.emptySet());
+
+    private final AnnotationUsageType type;
+    private final String sourceClass;
+    private final String reference;
+    private final Set<String> annotations;
+
+    UnstableApiVerdict(AnnotationUsageType type, String sourceClass, String reference, Set<String> annotations) {
+        this.type = type;
+        this.sourceClass = sourceClass;
+        this.reference = reference;
+        this.annotations = annotations;
+    }
+
+    /**
+     * Whether no usage of unstable api was found
+     * @return {@code true} if the scanned code is clean
+     */
+    public boolean isClean() {
+        return type == null;
+    }
+
+    /**
+     * Gets the type of the first usage found
+     * @return the type, or {@code null} if clean
+     */
+    public AnnotationUsageType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the name of the scanned class containing the first usage found
+     * @return the class name, or {@code null} if clean
+     */
+    public String getSourceClass() {
+        return sourceClass;
+    }
+
+    /**
+     * Gets a description of what was referenced by the first usage found. Depending on the {@link #getType()} this
+     * is a class name (e.g. {@code org.acme.MyClass}), a field (e.g. {@code org.acme.MyClass.myField}),
+     * a method with its descriptor (e.g. {@code org.acme.MyClass.myMethod(I)V}), or the name of an annotation
+     * which has been annotated with an unstable api annotation.
+     *
+     * @return the reference, or {@code null} if clean
+     */
+    public String getReference() {
+        return reference;
+    }
+
+    /**
+     * Gets the unstable api annotations of what was referenced by the first usage found
+     * @return the annotations. Empty if clean
+     */
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+    @Override
+    public String toString() {
+        if (isClean()) {
+            return "UnstableApiVerdict{CLEAN}";
+        }
+        return "UnstableApiVerdict{" +
+                "type=" + type +
+                ", sourceClass='" + sourceClass + '\'' +
+                ", reference='" + reference + '\'' +
+                ", annotations=" + annotations +
+                '}';
+    }
+}
@@ -0,0 +1,18 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+/**
+ * Receives each {@link AnnotationUsage} as soon as it is found by a {@link ClassInfoScanner}. This allows the usages
+ * to be logged, aggregated or dropped as the scanning progresses, rather than retaining them all in memory until the
+ * scan is complete.
+ */
+@FunctionalInterface
+public interface UsageListener {
+    /**
+     * Called when a usage has been found. A usage is only reported once per scanned class.
+     *
+     * @param type the type of the usage
+     * @param sourceClass the name of the scanned class containing the usage, in dot format
+     * @param usage the usage
+     */
+    void usageFound(AnnotationUsageType type, String sourceClass, AnnotationUsage usage);
+}
@@ -0,0 +1,61 @@
+package org.wildfly.unstable.api.annotation.classpath.runtime.bytecode;
+
+import java.util.Objects;
+
+/**
+ * The location in the source class of an {@link AnnotationUsage}, i.e. the method containing the usage and the line
+ * number. These are found by {@link ClassInfoScanner#resolveLocations(java.io.InputStream, java.util.Collection)}.
+ */
+public final class UsageLocation {
+    private final String methodName;
+    private final String methodDescriptor;
+    private final int lineNumber;
+
+    UsageLocation(String methodName, String methodDescriptor, int lineNumber) {
+        this.methodName = methodName;
+        this.methodDescriptor = methodDescriptor;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Gets the name of the method containing the usage
+     * @return the method name. {@code <init>} for constructors, and {@code <clinit>} for static initializers
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Gets the descriptor of the method containing the usage
+     * @return the method descriptor
+     */
+    public String getMethodDescriptor() {
+        return methodDescriptor;
+    }
+
+    /**
+     * Gets the line number of the usage
+     * @return the line number, or {@code -1} if the class was compiled without line number information
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UsageLocation that = (UsageLocation) o;
+        return lineNumber == that.lineNumber && Objects.equals(methodName, that.methodName) && Objects.equals(methodDescriptor, that.methodDescriptor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(methodName, methodDescriptor, lineNumber);
+    }
+
+    @Override
+    public String toString() {
+        return methodName + methodDescriptor + (lineNumber == -1 ? "" : ":" + lineNumber);
+    }
+}
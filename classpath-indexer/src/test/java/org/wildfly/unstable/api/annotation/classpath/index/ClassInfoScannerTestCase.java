@@ -11,6 +11,7 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExpe
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Incubating;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageAsField;
@@ -29,6 +30,7 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.Constru
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ReflectiveClassUsage;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticFieldReference;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.StaticMethodReference;
 import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotatedClassUsage;
@@ -39,6 +41,8 @@ import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.Annotation
 import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
 import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ExtendsAnnotatedClass;
 import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ImplementsAnnotatedInterface;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ReflectiveAnnotatedClassUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
 
 import java.io.File;
 import java.io.IOException;
@@ -46,8 +50,10 @@ import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.CLASS_USAGE;
@@ -55,6 +61,7 @@ import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.Ann
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.FIELD_REFERENCE;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.IMPLEMENTS_INTERFACE;
 import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.METHOD_REFERENCE;
+import static org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType.REFLECTIVE_CLASS_USAGE;
 
 public class ClassInfoScannerTestCase {
     private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
@@ -264,6 +271,26 @@ public class ClassInfoScannerTestCase {
         Assert.assertEquals(InterfaceWithExperimental.class.getName(), usage.getReferencedClass());
     }
 
+    @Test
+    public void testReflectiveClassUsage() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .addUsageType(REFLECTIVE_CLASS_USAGE)
+                .build();
+        ReflectiveAnnotatedClassUsage usage =
+                scanAndGetSingleAnnotationUsage(ReflectiveClassUsage.class, REFLECTIVE_CLASS_USAGE, configuration)
+                        .asReflectiveAnnotatedClassUsage();
+        Assert.assertEquals(ReflectiveClassUsage.class.getName(), usage.getSourceClass());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getReferencedClass());
+        Assert.assertEquals(Collections.singleton(Experimental.class.getName()), usage.getAnnotations());
+    }
+
+    @Test
+    public void testReflectiveClassUsageNotReportedByDefault() throws Exception {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(scanner, ReflectiveClassUsage.class);
+        Assert.assertEquals(Collections.emptySet(), scanner.getUsages());
+    }
+
     @Test
     public void testClassUsageAndMethodReference() throws Exception {
         ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
@@ -293,10 +320,76 @@ public class ClassInfoScannerTestCase {
         Assert.assertEquals(Collections.singleton(Experimental.class.getName()), methodReference.getAnnotations());
     }
 
+    @Test
+    public void testUsageListener() throws Exception {
+        List<AnnotationUsage> found = new ArrayList<>();
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, (type, sourceClass, usage) -> {
+            Assert.assertEquals(usage.getType(), type);
+            Assert.assertEquals(ClassUsageAndMethodReference.class.getName(), sourceClass);
+            found.add(usage);
+        });
+        scanClass(scanner, ClassUsageAndMethodReference.class);
+        Assert.assertEquals(2, found.size());
+        // Nothing is retained by the scanner
+        Assert.assertEquals(0, scanner.getUsages().size());
+
+        // Each scanned class reports its usages again
+        scanClass(scanner, ClassUsageAndMethodReference.class);
+        Assert.assertEquals(4, found.size());
+        Assert.assertEquals(0, scanner.getUsages().size());
+    }
+
+    @Test
+    public void testConfigurationUsageTypes() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .addUsageType(METHOD_REFERENCE)
+                .build();
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, ClassUsageAndMethodReference.class);
+        Assert.assertEquals(1, scanner.getUsages().size());
+        Assert.assertEquals(METHOD_REFERENCE, scanner.getUsages().iterator().next().getType());
+
+        // The superclass should not be reported as class usage, even if extends is not looked for
+        configuration = ScanConfiguration.builder()
+                .addUsageType(CLASS_USAGE)
+                .build();
+        scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, ClassExtendsUsage.class);
+        Assert.assertEquals(0, scanner.getUsages().size());
+    }
+
+    @Test
+    public void testConfigurationAnnotations() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .addAnnotation(Incubating.class.getName())
+                .build();
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, ClassUsageAndMethodReference.class);
+        Assert.assertEquals(0, scanner.getUsages().size());
+
+        configuration = ScanConfiguration.builder()
+                .addAnnotation(Incubating.class.getName())
+                .addAnnotation(EXPERIMENTAL_ANNOTATION)
+                .build();
+        scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, ClassUsageAndMethodReference.class);
+        Assert.assertEquals(2, scanner.getUsages().size());
+        for (AnnotationUsage usage : scanner.getUsages()) {
+            Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), usage.getAnnotations());
+        }
+    }
+
     AnnotationUsage scanAndGetSingleAnnotationUsage(
             Class<?> clazz,
             AnnotationUsageType type) throws IOException {
-        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        return scanAndGetSingleAnnotationUsage(clazz, type, ScanConfiguration.ALL);
+    }
+
+    AnnotationUsage scanAndGetSingleAnnotationUsage(
+            Class<?> clazz,
+            AnnotationUsageType type,
+            ScanConfiguration configuration) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
         scanClass(scanner, clazz);
 
         Assert.assertEquals(1, scanner.getUsages().size());
@@ -0,0 +1,134 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAndMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * Checks the glob rules of {@link ClassNameFilter}, and their use for selecting the scanned and referenced classes
+ */
+public class ClassNameFilterTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+    private static final String USAGE_PACKAGE = MethodReference.class.getPackage().getName();
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(ClassWithExperimental.class, ClassWithExperimentalMethods.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testGlobs() {
+        ClassNameFilter filter = ClassNameFilter.builder()
+                .include("org.acme.*")
+                .include("com.acme.**")
+                .include("net.acme.Class?")
+                .build();
+        Assert.assertTrue(filter.accepts("org.acme.MyClass"));
+        Assert.assertTrue(filter.accepts("org/acme/MyClass$Inner"));
+        Assert.assertFalse(filter.accepts("org.acme.impl.MyClass"));
+        Assert.assertFalse(filter.accepts("org.acmes.MyClass"));
+        Assert.assertTrue(filter.accepts("com.acme.MyClass"));
+        Assert.assertTrue(filter.accepts("com/acme/impl/MyClass"));
+        Assert.assertTrue(filter.accepts("net.acme.ClassA"));
+        Assert.assertFalse(filter.accepts("net.acme.ClassAB"));
+        Assert.assertFalse(filter.accepts("net.acme.Class"));
+        Assert.assertFalse(filter.accepts("java.lang.String"));
+        Assert.assertFalse(filter.isAcceptingAll());
+    }
+
+    @Test
+    public void testExcludesWinOverIncludes() {
+        ClassNameFilter filter = ClassNameFilter.builder()
+                .include("org.acme.**")
+                .exclude("org.acme.vendored.**")
+                .exclude("**Test")
+                .build();
+        Assert.assertTrue(filter.accepts("org.acme.MyClass"));
+        Assert.assertFalse(filter.accepts("org.acme.vendored.MyClass"));
+        Assert.assertFalse(filter.accepts("org.acme.impl.MyTest"));
+        Assert.assertTrue(filter.acceptsEntryName("org/acme/impl/MyClass.class"));
+        Assert.assertFalse(filter.acceptsEntryName("org/acme/vendored/lib/MyClass.class"));
+
+        filter = ClassNameFilter.builder().exclude("org.acme.vendored.**").build();
+        Assert.assertTrue(filter.accepts("java.lang.String"));
+        Assert.assertFalse(filter.accepts("org.acme.vendored.MyClass"));
+
+        Assert.assertTrue(ClassNameFilter.ALL.isAcceptingAll());
+        Assert.assertTrue(ClassNameFilter.ALL.accepts("org.acme.MyClass"));
+    }
+
+    @Test
+    public void testExcludeScannedClasses() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .excludeScannedClasses(USAGE_PACKAGE + ".**")
+                .build();
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        Assert.assertFalse(scanner.isScanned(MethodReference.class.getName().replace('.', '/') + ".class"));
+        scanClass(scanner, MethodReference.class);
+        Assert.assertEquals(Collections.emptySet(), scanner.getUsages());
+        try (InputStream in = openClass(MethodReference.class)) {
+            Assert.assertTrue(scanner.scanForVerdict(in).isClean());
+        }
+
+        configuration = ScanConfiguration.builder()
+                .includeScannedClasses(USAGE_PACKAGE + ".Method*")
+                .build();
+        scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, MethodReference.class);
+        Assert.assertEquals(1, scanner.getUsages().size());
+    }
+
+    @Test
+    public void testExcludeReferencedClasses() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .excludeReferencedClasses(ClassWithExperimentalMethods.class.getName())
+                .build();
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, ClassUsageAndMethodReference.class);
+        Assert.assertEquals(1, scanner.getUsages().size());
+        AnnotationUsage usage = scanner.getUsages().iterator().next();
+        Assert.assertEquals(AnnotationUsageType.CLASS_USAGE, usage.getType());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.asAnnotatedClassUsage().getReferencedClass());
+
+        Assert.assertNotEquals(runtimeIndex.getFingerprint(),
+                runtimeIndex.filter(configuration.getReferencedClasses()).getFingerprint());
+    }
+
+    private void scanClass(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            scanner.scanClass(in);
+        }
+    }
+
+    private InputStream openClass(Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = ClassNameFilterTestCase.class.getClassLoader().getResource(classLocation);
+        return url.openStream();
+    }
+}
@@ -0,0 +1,159 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Incubating;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithIncubating;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MultiplePolicyUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.CompositeClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.UnstableApiVerdict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks scanning against several runtime indexes at once
+ */
+public class CompositeClassInfoScannerTestCase {
+    private static final ScanConfiguration MEMBERS = ScanConfiguration.builder()
+            .addUsageType(AnnotationUsageType.DECLARED_FIELD_TYPE)
+            .addUsageType(AnnotationUsageType.DECLARED_METHOD_TYPE)
+            .build();
+
+    RuntimeIndex experimentalIndex;
+    RuntimeIndex incubatingIndex;
+
+    @Before
+    public void createRuntimeIndexes() throws IOException {
+        experimentalIndex = createRuntimeIndex("experimental", Experimental.class, ClassWithExperimental.class);
+        incubatingIndex = createRuntimeIndex("incubating", Incubating.class, InterfaceWithIncubating.class);
+    }
+
+    @Test
+    public void testUsagesPerRuntimeIndex() throws Exception {
+        CompositeClassInfoScanner scanner = CompositeClassInfoScanner.builder()
+                .addRuntimeIndex("experimental", experimentalIndex)
+                .addRuntimeIndex("incubating", incubatingIndex)
+                .build();
+        scanClass(scanner, MultiplePolicyUsage.class);
+        scanClass(scanner, NoUsage.class);
+
+        Assert.assertEquals(Set.of("experimental", "incubating"), scanner.getUsages().keySet());
+        Assert.assertEquals(getUsageTypes(singleScan(experimentalIndex, ScanConfiguration.ALL)), getUsageTypes(scanner.getUsages("experimental")));
+        Assert.assertEquals(Collections.singleton(AnnotationUsageType.CLASS_USAGE), getUsageTypes(scanner.getUsages("experimental")));
+        Assert.assertEquals(Collections.singleton(AnnotationUsageType.IMPLEMENTS_INTERFACE), getUsageTypes(scanner.getUsages("incubating")));
+        for (AnnotationUsage usage : scanner.getUsages("incubating")) {
+            Assert.assertEquals(Collections.singleton(Incubating.class.getName()), usage.getAnnotations());
+        }
+    }
+
+    @Test
+    public void testSharedClassBody() throws Exception {
+        // Both runtime indexes read the fields and methods, so the rest of the class is shared
+        CompositeClassInfoScanner scanner = CompositeClassInfoScanner.builder()
+                .addRuntimeIndex("incubating", incubatingIndex, MEMBERS)
+                .addRuntimeIndex("experimental", experimentalIndex, MEMBERS)
+                .build();
+        scanClass(scanner, MultiplePolicyUsage.class);
+
+        Assert.assertEquals(Collections.emptySet(), scanner.getUsages("incubating"));
+        Assert.assertEquals(singleScan(experimentalIndex, MEMBERS), scanner.getUsages("experimental"));
+        Assert.assertEquals(Collections.singleton(AnnotationUsageType.DECLARED_FIELD_TYPE), getUsageTypes(scanner.getUsages("experimental")));
+    }
+
+    @Test
+    public void testVerdicts() throws Exception {
+        CompositeClassInfoScanner scanner = CompositeClassInfoScanner.builder()
+                .addRuntimeIndex("experimental", experimentalIndex, MEMBERS)
+                .addRuntimeIndex("incubating", incubatingIndex)
+                .build();
+        Map<String, UnstableApiVerdict> verdicts;
+        try (InputStream in = openClass(MultiplePolicyUsage.class)) {
+            verdicts = scanner.scanForVerdict(in);
+        }
+        Assert.assertEquals(AnnotationUsageType.DECLARED_FIELD_TYPE, verdicts.get("experimental").getType());
+        Assert.assertEquals(AnnotationUsageType.IMPLEMENTS_INTERFACE, verdicts.get("incubating").getType());
+
+        try (InputStream in = openClass(NoUsage.class)) {
+            verdicts = scanner.scanForVerdict(in);
+        }
+        Assert.assertTrue(verdicts.get("experimental").isClean());
+        Assert.assertTrue(verdicts.get("incubating").isClean());
+    }
+
+    @Test
+    public void testBuilderValidation() {
+        CompositeClassInfoScanner.Builder builder = CompositeClassInfoScanner.builder();
+        try {
+            builder.build();
+            Assert.fail("Should not be able to build without runtime indexes");
+        } catch (IllegalStateException expected) {
+        }
+        builder.addRuntimeIndex("experimental", experimentalIndex);
+        try {
+            builder.addRuntimeIndex("experimental", incubatingIndex);
+            Assert.fail("Should not be able to add the same name twice");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            builder.build().getUsages("incubating");
+            Assert.fail("Should not find usages for an unknown name");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private Set<AnnotationUsage> singleScan(RuntimeIndex runtimeIndex, ScanConfiguration configuration) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        try (InputStream in = openClass(MultiplePolicyUsage.class)) {
+            scanner.scanClass(in);
+        }
+        return scanner.getUsages();
+    }
+
+    private static Set<AnnotationUsageType> getUsageTypes(Set<AnnotationUsage> usages) {
+        Set<AnnotationUsageType> types = new HashSet<>();
+        for (AnnotationUsage usage : usages) {
+            types.add(usage.getType());
+        }
+        return types;
+    }
+
+    private RuntimeIndex createRuntimeIndex(String name, Class<?> annotation, Class<?>... classes) throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(classes);
+        overallIndex.scanJar(file, annotation.getName(), Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test-" + name + ".txt");
+        overallIndex.save(p);
+
+        return RuntimeIndex.load(p);
+    }
+
+    private void scanClass(CompositeClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            scanner.scanClass(in);
+        }
+    }
+
+    private InputStream openClass(Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = CompositeClassInfoScannerTestCase.class.getClassLoader().getResource(classLocation);
+        return url.openStream();
+    }
+}
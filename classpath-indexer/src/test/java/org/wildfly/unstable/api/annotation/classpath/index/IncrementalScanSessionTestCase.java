@@ -0,0 +1,181 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.ClassAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.IncrementalScanSession;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class IncrementalScanSessionTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                AnnotationWithExperimental.class,
+                ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                ClassWithExperimentalFields.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION);
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testChangedAndDeletedClasses() throws Exception {
+        try (IncrementalScanSession session = new IncrementalScanSession(runtimeIndex)) {
+            classChanged(session, "A", MethodReference.class);
+            classChanged(session, "B", FieldReference.class);
+            Assert.assertEquals(2, session.getUsages().size());
+            Assert.assertEquals(AnnotationUsageType.METHOD_REFERENCE, session.getUsages("A").get(0).getType());
+
+            // Change A so it no longer uses anything
+            classChanged(session, "A", NoUsage.class);
+            Assert.assertEquals(0, session.getUsages("A").size());
+            Assert.assertEquals(1, session.getUsages().size());
+            Assert.assertEquals(AnnotationUsageType.FIELD_REFERENCE, session.getUsages().iterator().next().getType());
+
+            // Annotated annotation usage is checked for the changed class only
+            classChanged(session, "C", ClassAnnotatedWithExperimental.class);
+            Assert.assertEquals(1, session.getUsages("C").size());
+            AnnotationUsage usage = session.getUsages("C").get(0);
+            Assert.assertEquals(AnnotationUsageType.ANNOTATED_ANNOTATION_USAGE, usage.getType());
+            Assert.assertEquals(ClassAnnotatedWithExperimental.class.getName(), usage.asAnnotatedAnnotationUsage().getClazz());
+
+            session.classDeleted("B");
+            session.classDeleted("C");
+            Assert.assertEquals(0, session.getUsages().size());
+        }
+    }
+
+    @Test
+    public void testClassesWithTheSameName() throws Exception {
+        try (IncrementalScanSession session = new IncrementalScanSession(runtimeIndex)) {
+            // E.g. the same class under two watched roots, which gives equal usages
+            classChanged(session, "root1/MethodReference.class", MethodReference.class);
+            classChanged(session, "root2/MethodReference.class", MethodReference.class);
+            Assert.assertEquals(1, session.getUsages().size());
+
+            session.classDeleted("root1/MethodReference.class");
+            Assert.assertEquals(1, session.getUsages().size());
+            Assert.assertEquals(session.getUsages("root2/MethodReference.class"), List.copyOf(session.getUsages()));
+
+            // A change which no longer has the usage keeps the one of the other class too
+            classChanged(session, "root1/MethodReference.class", MethodReference.class);
+            classChanged(session, "root1/MethodReference.class", NoUsage.class);
+            Assert.assertEquals(1, session.getUsages().size());
+
+            session.classDeleted("root2/MethodReference.class");
+            Assert.assertEquals(0, session.getUsages().size());
+        }
+    }
+
+    @Test
+    public void testTruncatedClass() throws Exception {
+        byte[] bytes;
+        try (InputStream in = getClassUrl(MethodReference.class).openStream()) {
+            bytes = in.readAllBytes();
+        }
+        try (IncrementalScanSession session = new IncrementalScanSession(runtimeIndex)) {
+            classChanged(session, "A", MethodReference.class);
+            // However far the compiler got writing the class, reading it either fails with an EOFException, or
+            // the scan is done before reaching the missing bytes
+            int truncated = 0;
+            for (int length = 0; length < bytes.length; length++) {
+                try {
+                    session.classChanged("A", new ByteArrayInputStream(bytes, 0, length));
+                } catch (EOFException expected) {
+                    truncated++;
+                }
+                // The usages found before are kept
+                Assert.assertEquals(1, session.getUsages("A").size());
+            }
+            Assert.assertTrue(truncated > 0);
+        }
+    }
+
+    @Test
+    public void testWatchedDirectory() throws Exception {
+        Path root = Files.createTempDirectory(Paths.get("target"), "incremental");
+        Path pkg = Files.createDirectories(root.resolve("test"));
+        Path classFile = pkg.resolve("Changing.class");
+        copyClass(MethodReference.class, classFile);
+
+        try (IncrementalScanSession session = new IncrementalScanSession(runtimeIndex)) {
+            session.watch(root);
+            Assert.assertEquals(1, session.getUsages().size());
+
+            // The compiler has not finished writing the class yet
+            try (InputStream in = getClassUrl(NoUsage.class).openStream()) {
+                Files.write(classFile, Arrays.copyOf(in.readAllBytes(), 12));
+            }
+            session.awaitEvents(1, TimeUnit.SECONDS);
+            Assert.assertEquals(1, session.getUsages().size());
+
+            copyClass(NoUsage.class, classFile);
+            awaitUsages(session, 0);
+
+            Path other = Files.createDirectories(root.resolve("other"));
+            copyClass(FieldReference.class, other.resolve("Added.class"));
+            awaitUsages(session, 1);
+
+            Files.delete(other.resolve("Added.class"));
+            awaitUsages(session, 0);
+        }
+    }
+
+    private void awaitUsages(IncrementalScanSession session, int expected) throws Exception {
+        // Some WatchService implementations poll, so this may take a few seconds
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (session.getUsages().size() != expected && System.currentTimeMillis() < end) {
+            session.awaitEvents(1, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(expected, session.getUsages().size());
+    }
+
+    private void classChanged(IncrementalScanSession session, String id, Class<?> clazz) throws IOException {
+        try (InputStream in = getClassUrl(clazz).openStream()) {
+            session.classChanged(id, in);
+        }
+    }
+
+    private void copyClass(Class<?> clazz, Path target) throws IOException {
+        try (InputStream in = getClassUrl(clazz).openStream()) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private URL getClassUrl(Class<?> clazz) {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        return IncrementalScanSessionTestCase.class.getClassLoader().getResource(classLocation);
+    }
+}
@@ -0,0 +1,127 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class IndexMergerTestCase {
+
+    @Test
+    public void testMergeSortedIndexes() throws Exception {
+        // Overlapping indexes, so some annotations, entries and classes of the hierarchy are in several of them
+        OverallIndex first = IndexTextParserTestCase.createIndex(3, 40);
+        OverallIndex second = IndexTextParserTestCase.createIndex(5, 20);
+        OverallIndex third = createIndex("org.acme.annotations.Annotation1", "org.acme.package1.Class1_1", "org.acme.Other");
+        Path firstPath = Paths.get("target/index/merge/first.txt");
+        Path secondPath = Paths.get("target/index/merge/second.txt.gz");
+        Path thirdPath = Paths.get("target/index/merge/third.zip");
+        first.save(firstPath);
+        second.save(secondPath);
+        third.save(thirdPath);
+        List<URL> urls = Arrays.asList(toUrl(firstPath), toUrl(secondPath), toUrl(thirdPath));
+
+        Path merged = Paths.get("target/index/merge/merged.txt");
+        IndexMerger.merge(urls, merged);
+        Path expected = Paths.get("target/index/merge/expected.txt");
+        OverallIndex.load(urls).save(expected);
+
+        Assert.assertEquals(Files.readString(expected), Files.readString(merged));
+        Assert.assertEquals(OverallIndex.load(urls), OverallIndex.load(merged));
+        Assert.assertEquals(OverallIndex.readFingerprint(expected), OverallIndex.readFingerprint(merged));
+
+        // The merged index can be saved in the other formats too
+        Path zipped = Paths.get("target/index/merge/merged.zip");
+        IndexMerger.merge(urls, zipped);
+        Assert.assertEquals(OverallIndex.readFingerprint(merged), OverallIndex.readFingerprint(zipped));
+    }
+
+    @Test
+    public void testMergeVersion2Indexes() throws Exception {
+        OverallIndex first = IndexTextParserTestCase.createIndex(3, 40);
+        OverallIndex second = IndexTextParserTestCase.createIndex(5, 20);
+        Path firstPath = Paths.get("target/index/merge/first-v2.txt");
+        Path secondPath = Paths.get("target/index/merge/second-v1.txt");
+        first.save(firstPath, 2);
+        second.save(secondPath);
+        List<URL> urls = Arrays.asList(toUrl(firstPath), toUrl(secondPath));
+        OverallIndex expected = OverallIndex.load(urls);
+
+        for (int version = 1; version <= 2; version++) {
+            Path merged = Paths.get("target/index/merge/merged-v" + version + ".txt");
+            IndexMerger.merge(urls, merged, version);
+            Path expectedPath = Paths.get("target/index/merge/expected-v" + version + ".txt");
+            expected.save(expectedPath, version);
+            Assert.assertEquals(Files.readString(expectedPath), Files.readString(merged));
+        }
+    }
+
+    @Test
+    public void testMergeIndexWithoutFingerprint() throws Exception {
+        Path sortedPath = Paths.get("target/index/merge/sorted.txt");
+        IndexTextParserTestCase.createIndex(2, 10).save(sortedPath);
+        // Saved by an older version, so not sorted and without the fingerprint
+        Path oldPath = Paths.get("target/index/merge/old.txt");
+        Path oldSource = Paths.get("target/index/merge/old-source.txt");
+        createIndex("org.acme.annotations.Annotation0", "org.acme.Z", "org.acme.A").save(oldSource);
+        List<String> lines = Files.readAllLines(oldSource);
+        Files.write(oldPath, lines.subList(1, lines.size()));
+        List<URL> urls = Arrays.asList(toUrl(sortedPath), toUrl(oldPath));
+
+        Path merged = Paths.get("target/index/merge/merged-old.txt");
+        IndexMerger.merge(urls, merged);
+        Assert.assertEquals(OverallIndex.load(urls), OverallIndex.load(merged));
+        Assert.assertNotNull(OverallIndex.readFingerprint(merged));
+    }
+
+    @Test
+    public void testMergeUnsortedIndex() throws Exception {
+        Path unsortedPath = Paths.get("target/index/merge/unsorted.txt");
+        Files.createDirectories(unsortedPath.getParent());
+        Files.writeString(unsortedPath, "#fingerprint=0123456789abcdef\n" +
+                "==\n" +
+                "org.acme.Experimental\n" +
+                "=CLASSES\n" +
+                "org.acme.B\n" +
+                "org.acme.A\n" +
+                "\n" +
+                "=/\n");
+        Path sortedPath = Paths.get("target/index/merge/sorted-other.txt");
+        IndexTextParserTestCase.createIndex(1, 5).save(sortedPath);
+        try {
+            IndexMerger.merge(Arrays.asList(toUrl(sortedPath), toUrl(unsortedPath)), Paths.get("target/index/merge/merged-unsorted.txt"));
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage(), expected.getMessage().endsWith("is not sorted"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeIntoInput() throws Exception {
+        Path path = Paths.get("target/index/merge/input.txt");
+        IndexTextParserTestCase.createIndex(1, 5).save(path);
+        IndexMerger.merge(List.of(toUrl(path)), path);
+    }
+
+    private static OverallIndex createIndex(String annotation, String className, String supertype) {
+        Map<String, AnnotationIndex> indexes = new HashMap<>();
+        indexes.put(annotation, new AnnotationIndex(annotation, new HashSet<>(), Set.of(className, supertype), new HashSet<>(),
+                Set.of(new AnnotatedMethod(className, "merged", "()V")), new HashSet<>(), Set.of(new AnnotatedField(className, "merged"))));
+        Map<String, Set<String>> supertypes = new HashMap<>();
+        supertypes.put(className, Set.of(supertype));
+        return new OverallIndex(indexes, supertypes, new HashMap<>());
+    }
+
+    private static URL toUrl(Path path) throws Exception {
+        return path.toAbsolutePath().normalize().toUri().toURL();
+    }
+}
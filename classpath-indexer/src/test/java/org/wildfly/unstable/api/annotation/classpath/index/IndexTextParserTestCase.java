@@ -0,0 +1,231 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class IndexTextParserTestCase {
+
+    @Test
+    public void testParseLargeIndexInParallel() throws Exception {
+        OverallIndex index = createIndex(8, 2000);
+        Path path = Paths.get("target/index/large-index.txt");
+        index.save(path);
+        Assert.assertTrue(Files.size(path) > IndexTextParser.PARALLEL_THRESHOLD);
+
+        OverallIndex loaded = OverallIndex.load(path);
+        Assert.assertEquals(index, loaded);
+        // Only the subclasses of the classes declaring annotated members are saved
+        Assert.assertEquals(2000 * 8 / 2, loaded.getSupertypes().size());
+        Assert.assertEquals(index.getPrunedSupertypes(), loaded.getSupertypes());
+    }
+
+    @Test
+    public void testParseWindowsLineEndings() throws Exception {
+        OverallIndex index = createIndex(2, 10);
+        Path path = Paths.get("target/index/line-endings.txt");
+        index.save(path);
+        String text = Files.readString(path, OverallIndex.CHARSET).replace("\n", "\r\n");
+
+        Assert.assertEquals(index, new IndexTextParser(CharBuffer.wrap(text)).parse());
+    }
+
+    @Test
+    public void testSkipUnknownLines() {
+        String text = "#fingerprint=0123456789abcdef\n" +
+                "unknown\n" +
+                "==\n" +
+                "org.acme.Experimental\n" +
+                "=CLASSES\n" +
+                "org.acme.A\n" +
+                "\n" +
+                "ignored\n" +
+                "=METHODS\n" +
+                "org.acme.A±run±()V\n" +
+                "org.acme.A±stop±()V\n" +
+                "\n" +
+                "=/\n" +
+                "=HIERARCHY\n" +
+                "org.acme.B±org.acme.A±org.acme.C\n";
+        OverallIndex index = new IndexTextParser(CharBuffer.wrap(text)).parse();
+        AnnotationIndex annotationIndex = index.getAnnotationIndex("org.acme.Experimental");
+        Assert.assertEquals(Set.of("org.acme.A"), annotationIndex.getAnnotatedClasses());
+        Assert.assertEquals(Set.of(new AnnotatedMethod("org.acme.A", "run", "()V"), new AnnotatedMethod("org.acme.A", "stop", "()V")),
+                annotationIndex.getAnnotatedMethods());
+        Assert.assertTrue(annotationIndex.getAnnotatedFields().isEmpty());
+        Assert.assertEquals(Set.of("org.acme.A", "org.acme.C"), index.getSupertypes().get("org.acme.B"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedEntry() {
+        String text = "==\norg.acme.Experimental\n=METHODS\norg.acme.A±run\n\n=/\n";
+        new IndexTextParser(CharBuffer.wrap(text)).parse();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testPrematureEnd() throws Exception {
+        String text = "==\norg.acme.Experimental\n=CLASSES\norg.acme.A\n";
+        IndexTextParser.parse(new ByteArrayInputStream(text.getBytes(OverallIndex.CHARSET)));
+    }
+
+    @Test
+    public void testParseVersion2() throws Exception {
+        OverallIndex index = createIndex(8, 2000);
+        Path version1 = Paths.get("target/index/version1.txt");
+        Path version2 = Paths.get("target/index/version2.txt");
+        index.save(version1);
+        index.save(version2, 2);
+        Assert.assertEquals("#version=2", Files.readAllLines(version2).get(1));
+        Assert.assertTrue(Files.size(version2) < Files.size(version1));
+
+        OverallIndex loaded = OverallIndex.load(version2);
+        Assert.assertEquals(index, loaded);
+        Assert.assertEquals(index.getPrunedSupertypes(), loaded.getSupertypes());
+
+        // Saving what was loaded gives the same file
+        Path resaved = Paths.get("target/index/version2-resaved.txt");
+        loaded.save(resaved, 2);
+        Assert.assertEquals(Files.readString(version2), Files.readString(resaved));
+    }
+
+    @Test
+    public void testParseVersion2Entries() {
+        String text = "#fingerprint=0123456789abcdef\n" +
+                "#version=2\n" +
+                "=STRINGS\n" +
+                "89982178±()V\n" +
+                "c7cf4aea71a374cc±org.acme.A\n" +
+                "\n" +
+                "==\n" +
+                "org.acme.Experimental\n" +
+                "=METHODS\n" +
+                "c7cf4aea71a374cc±run±89982178\n" +
+                "\n" +
+                "=CONSTRUCTORS\n" +
+                "c7cf4aea71a374cc±89982178\n" +
+                "\n" +
+                "=FIELDS\n" +
+                "c7cf4aea71a374cc±count\n" +
+                "\n" +
+                "=/\n";
+        AnnotationIndex annotationIndex = new IndexTextParser(CharBuffer.wrap(text)).parse().getAnnotationIndex("org.acme.Experimental");
+        Assert.assertEquals(Set.of(new AnnotatedMethod("org.acme.A", "run", "()V")), annotationIndex.getAnnotatedMethods());
+        Assert.assertEquals(Set.of(new AnnotatedConstructor("org.acme.A", "()V")), annotationIndex.getAnnotatedConstructors());
+        Assert.assertEquals(Set.of(new AnnotatedField("org.acme.A", "count")), annotationIndex.getAnnotatedFields());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStringId() {
+        String text = "#version=2\n=STRINGS\n89982178±()V\nc7cf4aea±org.acme.A\n\n==\norg.acme.Experimental\n=METHODS\nc7cf4aeb±run±89982178\n\n=/\n";
+        new IndexTextParser(CharBuffer.wrap(text)).parse();
+    }
+
+    @Test
+    public void testUnknownVersion() throws Exception {
+        Path path = Paths.get("target/index/version3.txt");
+        createIndex(1, 5).save(path, 2);
+        String text = Files.readString(path).replace("#version=2", "#version=3");
+        try {
+            new IndexTextParser(CharBuffer.wrap(text)).parse();
+            Assert.fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertEquals("Unknown index format version: #version=3", expected.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVersion2WithoutStringTable() {
+        String text = "#version=2\n==\norg.acme.Experimental\n=CLASSES\norg.acme.A\n\n=/\n";
+        new IndexTextParser(CharBuffer.wrap(text)).parse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStringTableWithoutVersion() {
+        String text = "=STRINGS\nc7cf4aea±org.acme.A\n\n==\norg.acme.Experimental\n=FIELDS\nc7cf4aea±count\n\n=/\n";
+        new IndexTextParser(CharBuffer.wrap(text)).parse();
+    }
+
+    @Test
+    public void testVersion2StringIdsAreStable() throws Exception {
+        OverallIndex index = createIndex(2, 50);
+        Path before = Paths.get("target/index/version2-before.txt");
+        index.save(before, 2);
+
+        // The new strings sort before most of the others, which would shift if the ids were positions in the table
+        index.getAnnotationIndex("org.acme.annotations.Annotation0").getAnnotatedMethods()
+                .add(new AnnotatedMethod("org.acme.A", "added", "()V"));
+        Path after = Paths.get("target/index/version2-after.txt");
+        index.save(after, 2);
+
+        // Apart from the fingerprint, the lines of the new strings and entry are the only difference
+        List<String> beforeLines = Files.readAllLines(before);
+        List<String> afterLines = new ArrayList<>(Files.readAllLines(after));
+        afterLines.removeAll(beforeLines.subList(1, beforeLines.size()));
+        Assert.assertEquals(List.of(afterLines.get(0), "89982178±()V", "c7cf4aea±org.acme.A", "c7cf4aea±added±89982178"),
+                afterLines);
+    }
+
+    @Test
+    public void testVersion2StringIdsWithSamePrefix() throws Exception {
+        // The fingerprints of these class names start with the same 8 digits
+        OverallIndex index = createIndex(1, 5);
+        Set<AnnotatedField> fields = index.getAnnotationIndex("org.acme.annotations.Annotation0").getAnnotatedFields();
+        fields.add(new AnnotatedField("org.acme.Class488959", "first"));
+        fields.add(new AnnotatedField("org.acme.Class761124", "second"));
+        Path path = Paths.get("target/index/version2-same-prefix.txt");
+        index.save(path, 2);
+
+        List<String> lines = Files.readAllLines(path);
+        Assert.assertTrue(lines.contains("7c0b199ab13d89d2±org.acme.Class488959"));
+        Assert.assertTrue(lines.contains("7c0b199afea6030c±org.acme.Class761124"));
+        Assert.assertEquals(index, OverallIndex.load(path));
+    }
+
+    static OverallIndex createIndex(int annotations, int classesPerAnnotation) {
+        Map<String, AnnotationIndex> indexes = new HashMap<>();
+        Map<String, Set<String>> supertypes = new HashMap<>();
+        Map<String, Set<String>> declaredMembers = new HashMap<>();
+        for (int a = 0; a < annotations; a++) {
+            String annotation = "org.acme.annotations.Annotation" + a;
+            Set<String> interfaces = new HashSet<>();
+            Set<String> classes = new HashSet<>();
+            Set<AnnotatedMethod> methods = new HashSet<>();
+            Set<AnnotatedConstructor> constructors = new HashSet<>();
+            Set<AnnotatedField> fields = new HashSet<>();
+            for (int c = 0; c < classesPerAnnotation; c++) {
+                String className = "org.acme.package" + (c % 50) + ".Class" + a + "_" + c;
+                if (c % 7 == 0) {
+                    interfaces.add(className);
+                } else if (c % 5 == 0) {
+                    classes.add(className);
+                }
+                methods.add(new AnnotatedMethod(className, "method" + c, "(Ljava/lang/String;I)V"));
+                methods.add(new AnnotatedMethod(className, "other" + c, "()Ljava/util/List;"));
+                constructors.add(new AnnotatedConstructor(className, "(Ljava/lang/String;)V"));
+                fields.add(new AnnotatedField(className, "field" + c));
+                supertypes.put(className, Set.of("org.acme.Base" + (c % 10), "org.acme.Interface" + (c % 3)));
+                if (a == 0 && c < 5) {
+                    // Half of the classes inherit this
+                    methods.add(new AnnotatedMethod("org.acme.Base" + c, "run", "(Ljava/lang/String;I)V"));
+                }
+                if (c % 4 == 0) {
+                    // Only the overriding method is saved, for the classes inheriting the annotated one
+                    declaredMembers.put(className, Set.of("run(Ljava/lang/String;I)V", "notInherited()V"));
+                }
+            }
+            indexes.put(annotation, new AnnotationIndex(annotation, interfaces, classes, new HashSet<>(), methods, constructors, fields));
+        }
+        return new OverallIndex(indexes, supertypes, declaredMembers);
+    }
+}
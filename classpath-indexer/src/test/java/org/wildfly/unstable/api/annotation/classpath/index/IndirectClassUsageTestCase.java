@@ -0,0 +1,170 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.GenericFieldDeclaration;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.GenericMethodDeclaration;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.GenericSuperclassUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.IndirectUsageViaMethodDescriptor;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.DeclaredFieldType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.DeclaredMethodType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.IndirectAnnotatedClassUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.UnstableApiVerdict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Checks the usages found from the classes mentioned in descriptors and generic signatures
+ */
+public class IndirectClassUsageTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final ScanConfiguration INDIRECT = ScanConfiguration.builder()
+            .addUsageType(AnnotationUsageType.CLASS_USAGE)
+            .addUsageType(AnnotationUsageType.INDIRECT_CLASS_USAGE)
+            .build();
+
+    private static final ScanConfiguration MEMBERS = ScanConfiguration.builder()
+            .addUsageType(AnnotationUsageType.DECLARED_FIELD_TYPE)
+            .addUsageType(AnnotationUsageType.DECLARED_METHOD_TYPE)
+            .addUsageType(AnnotationUsageType.INDIRECT_CLASS_USAGE)
+            .build();
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(ClassWithExperimental.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testUsageViaMethodDescriptor() throws Exception {
+        IndirectAnnotatedClassUsage usage = scanAndGetSingleUsage(INDIRECT, IndirectUsageViaMethodDescriptor.class, AnnotationUsageType.INDIRECT_CLASS_USAGE)
+                .asIndirectAnnotatedClassUsage();
+        Assert.assertEquals(IndirectUsageViaMethodDescriptor.class.getName(), usage.getSourceClass());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getReferencedClass());
+        Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), usage.getAnnotations());
+    }
+
+    @Test
+    public void testDirectUsageIsNotAlsoReportedAsIndirect() throws Exception {
+        scanAndGetSingleUsage(INDIRECT, ClassUsageInMethodBody.class, AnnotationUsageType.CLASS_USAGE);
+    }
+
+    @Test
+    public void testGenericFieldSignature() throws Exception {
+        DeclaredFieldType usage = scanAndGetSingleUsage(MEMBERS, GenericFieldDeclaration.class, AnnotationUsageType.DECLARED_FIELD_TYPE)
+                .asDeclaredFieldType();
+        Assert.assertEquals("field", usage.getFieldName());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getFieldType());
+    }
+
+    @Test
+    public void testGenericMethodSignature() throws Exception {
+        DeclaredMethodType usage = scanAndGetSingleUsage(MEMBERS, GenericMethodDeclaration.class, AnnotationUsageType.DECLARED_METHOD_TYPE)
+                .asDeclaredMethodType();
+        Assert.assertEquals("test", usage.getMethodName());
+        // The descriptor is the erased one
+        Assert.assertEquals("(Ljava/lang/Comparable;Ljava/util/Map;)V", usage.getDescriptor());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getDeclaredType());
+    }
+
+    @Test
+    public void testGenericClassSignature() throws Exception {
+        IndirectAnnotatedClassUsage usage = scanAndGetSingleUsage(MEMBERS, GenericSuperclassUsage.class, AnnotationUsageType.INDIRECT_CLASS_USAGE)
+                .asIndirectAnnotatedClassUsage();
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getReferencedClass());
+    }
+
+    @Test
+    public void testSignaturesNotReadByDefault() throws Exception {
+        // Nor are the descriptors checked, since INDIRECT_CLASS_USAGE is opt-in
+        Class<?>[] classes = {GenericFieldDeclaration.class, GenericMethodDeclaration.class, GenericSuperclassUsage.class,
+                IndirectUsageViaMethodDescriptor.class};
+        for (Class<?> clazz : classes) {
+            ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+            scanClass(scanner, clazz);
+            Assert.assertEquals(clazz.getName(), Collections.emptySet(), scanner.getUsages());
+        }
+    }
+
+    @Test
+    public void testDefaultUsageTypesAndIndirectUsage() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .addDefaultUsageTypes()
+                .addUsageType(AnnotationUsageType.INDIRECT_CLASS_USAGE)
+                .build();
+        Set<AnnotationUsageType> expected = EnumSet.copyOf(ScanConfiguration.ALL.getUsageTypes());
+        expected.add(AnnotationUsageType.INDIRECT_CLASS_USAGE);
+        Assert.assertEquals(expected, configuration.getUsageTypes());
+
+        // Both the default usage types and the added one are found
+        scanAndGetSingleUsage(configuration, ClassUsageInMethodBody.class, AnnotationUsageType.CLASS_USAGE);
+        scanAndGetSingleUsage(configuration, IndirectUsageViaMethodDescriptor.class, AnnotationUsageType.INDIRECT_CLASS_USAGE);
+    }
+
+    @Test
+    public void testVerdict() throws Exception {
+        UnstableApiVerdict verdict = scanForVerdict(new ClassInfoScanner(runtimeIndex, INDIRECT), IndirectUsageViaMethodDescriptor.class);
+        Assert.assertEquals(AnnotationUsageType.INDIRECT_CLASS_USAGE, verdict.getType());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), verdict.getReference());
+
+        verdict = scanForVerdict(new ClassInfoScanner(runtimeIndex, MEMBERS), GenericSuperclassUsage.class);
+        Assert.assertEquals(AnnotationUsageType.INDIRECT_CLASS_USAGE, verdict.getType());
+
+        verdict = scanForVerdict(new ClassInfoScanner(runtimeIndex, MEMBERS), GenericFieldDeclaration.class);
+        Assert.assertEquals(AnnotationUsageType.DECLARED_FIELD_TYPE, verdict.getType());
+        Assert.assertEquals("field", verdict.getReference());
+    }
+
+    private AnnotationUsage scanAndGetSingleUsage(ScanConfiguration configuration, Class<?> clazz, AnnotationUsageType type) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, clazz);
+        Set<AnnotationUsage> usages = scanner.getUsages();
+        Assert.assertEquals(usages.toString(), 1, usages.size());
+        AnnotationUsage usage = usages.iterator().next();
+        Assert.assertEquals(type, usage.getType());
+        return usage;
+    }
+
+    private void scanClass(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            scanner.scanClass(in);
+        }
+    }
+
+    private UnstableApiVerdict scanForVerdict(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            return scanner.scanForVerdict(in);
+        }
+    }
+
+    private InputStream openClass(Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = IndirectClassUsageTestCase.class.getClassLoader().getResource(classLocation);
+        return url.openStream();
+    }
+}
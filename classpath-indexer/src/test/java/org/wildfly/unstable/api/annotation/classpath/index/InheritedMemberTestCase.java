@@ -0,0 +1,181 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalConstructors;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassHidingExperimentalField;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfSubclassOfClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfSubclassOverridingExperimentalMethod;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOverridingExperimentalMethod;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubinterfaceOfInterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.HiddenFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.InheritedFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.InheritedInterfaceMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.InheritedMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.OverriddenMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotatedFieldReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotatedMethodReference;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks that annotated members are found when they are referenced via a subtype of the class declaring them
+ */
+public class InheritedMemberTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    OverallIndex overallIndex;
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        overallIndex = new OverallIndex();
+        // The subtypes are in a different jar from the classes declaring the annotated members
+        File declaringJar = TestUtils.createJar(
+                ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                ClassWithExperimentalFields.class,
+                ClassWithExperimentalConstructors.class,
+                InterfaceWithExperimentalMethods.class);
+        File subtypesJar = TestUtils.createJar(
+                SubclassOfClassWithExperimental.class,
+                SubclassOfClassWithExperimentalMethods.class,
+                SubclassOfSubclassOfClassWithExperimentalMethods.class,
+                SubclassOfClassWithExperimentalFields.class,
+                SubinterfaceOfInterfaceWithExperimentalMethods.class,
+                SubclassOverridingExperimentalMethod.class,
+                SubclassOfSubclassOverridingExperimentalMethod.class,
+                SubclassHidingExperimentalField.class);
+        overallIndex.scanJar(declaringJar, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        overallIndex.scanJar(subtypesJar, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testHierarchySerialization() throws Exception {
+        Assert.assertEquals(
+                Collections.singleton(SubclassOfClassWithExperimentalMethods.class.getName()),
+                overallIndex.getSupertypes().get(SubclassOfSubclassOfClassWithExperimentalMethods.class.getName()));
+        // Classes with only JDK supertypes are not recorded
+        Assert.assertFalse(overallIndex.getSupertypes().containsKey(ClassWithExperimentalMethods.class.getName()));
+
+        OverallIndex loaded = OverallIndex.load(Paths.get("target/index/runtime-test.txt"));
+        Assert.assertEquals(overallIndex, loaded);
+    }
+
+    @Test
+    public void testHierarchyIsPruned() throws Exception {
+        Assert.assertTrue(overallIndex.getSupertypes().containsKey(SubclassOfClassWithExperimental.class.getName()));
+
+        // Its superclass has no annotated methods or fields, so it is not saved
+        OverallIndex loaded = OverallIndex.load(Paths.get("target/index/runtime-test.txt"));
+        Assert.assertFalse(loaded.getSupertypes().containsKey(SubclassOfClassWithExperimental.class.getName()));
+        Assert.assertEquals(
+                Collections.singleton(SubclassOfClassWithExperimentalMethods.class.getName()),
+                loaded.getSupertypes().get(SubclassOfSubclassOfClassWithExperimentalMethods.class.getName()));
+    }
+
+    @Test
+    public void testInheritedMethodReference() throws Exception {
+        AnnotatedMethodReference usage = scanAndGetSingleUsage(InheritedMethodReference.class, AnnotationUsageType.METHOD_REFERENCE)
+                .asAnnotatedMethodReference();
+        // The reference is to the class used at the call site
+        Assert.assertEquals(SubclassOfSubclassOfClassWithExperimentalMethods.class.getName(), usage.getMethodClass());
+        Assert.assertEquals("test", usage.getMethodName());
+        Assert.assertEquals("()V", usage.getDescriptor());
+        Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), usage.getAnnotations());
+    }
+
+    @Test
+    public void testInheritedInterfaceMethodReference() throws Exception {
+        AnnotatedMethodReference usage = scanAndGetSingleUsage(InheritedInterfaceMethodReference.class, AnnotationUsageType.METHOD_REFERENCE)
+                .asAnnotatedMethodReference();
+        Assert.assertEquals(SubinterfaceOfInterfaceWithExperimentalMethods.class.getName(), usage.getMethodClass());
+        Assert.assertEquals("test", usage.getMethodName());
+        Assert.assertEquals("(Ljava/lang/String;)V", usage.getDescriptor());
+    }
+
+    @Test
+    public void testInheritedFieldReference() throws Exception {
+        AnnotatedFieldReference usage = scanAndGetSingleUsage(InheritedFieldReference.class, AnnotationUsageType.FIELD_REFERENCE)
+                .asAnnotatedFieldReference();
+        Assert.assertEquals(SubclassOfClassWithExperimentalFields.class.getName(), usage.getFieldClass());
+        Assert.assertEquals("fieldA", usage.getFieldName());
+    }
+
+    @Test
+    public void testOverriddenMethodReference() throws Exception {
+        // Only the declared members overriding annotated ones are saved
+        OverallIndex loaded = OverallIndex.load(Paths.get("target/index/runtime-test.txt"));
+        Map<String, Set<String>> overridingMembers = loaded.getOverridingMembers(loaded.getSupertypes());
+        Assert.assertEquals(Collections.singleton("test()V"),
+                overridingMembers.get(SubclassOverridingExperimentalMethod.class.getName()));
+        Assert.assertFalse(overridingMembers.containsKey(SubclassOfSubclassOverridingExperimentalMethod.class.getName()));
+
+        // The call to the overriding method is not reported, while the one to the inherited static method is
+        AnnotatedMethodReference usage = scanAndGetSingleUsage(OverriddenMethodReference.class, AnnotationUsageType.METHOD_REFERENCE)
+                .asAnnotatedMethodReference();
+        Assert.assertEquals(SubclassOfSubclassOverridingExperimentalMethod.class.getName(), usage.getMethodClass());
+        Assert.assertEquals("test", usage.getMethodName());
+        Assert.assertEquals("(Ljava/lang/String;)V", usage.getDescriptor());
+    }
+
+    @Test
+    public void testHiddenFieldReference() throws Exception {
+        AnnotatedFieldReference usage = scanAndGetSingleUsage(HiddenFieldReference.class, AnnotationUsageType.FIELD_REFERENCE)
+                .asAnnotatedFieldReference();
+        Assert.assertEquals(SubclassHidingExperimentalField.class.getName(), usage.getFieldClass());
+        Assert.assertEquals("fieldB", usage.getFieldName());
+    }
+
+    @Test
+    public void testConstructorsAreNotInherited() throws Exception {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(scanner, InheritedMethodReference.class);
+        for (AnnotationUsage usage : scanner.getUsages()) {
+            Assert.assertNotEquals(RuntimeIndex.BYTECODE_CONSTRUCTOR_NAME, usage.asAnnotatedMethodReference().getMethodName());
+        }
+    }
+
+    private AnnotationUsage scanAndGetSingleUsage(Class<?> clazz, AnnotationUsageType type) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(scanner, clazz);
+        Set<AnnotationUsage> usages = scanner.getUsages();
+        Assert.assertEquals(1, usages.size());
+        AnnotationUsage usage = usages.iterator().next();
+        Assert.assertEquals(type, usage.getType());
+        return usage;
+    }
+
+    private void scanClass(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = InheritedMemberTestCase.class.getClassLoader().getResource(classLocation);
+        try (InputStream in = url.openStream()) {
+            scanner.scanClass(in);
+        }
+    }
+}
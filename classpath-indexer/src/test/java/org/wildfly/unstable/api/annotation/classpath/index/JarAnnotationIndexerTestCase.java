@@ -1,5 +1,7 @@
 package org.wildfly.unstable.api.annotation.classpath.index;
 
+import org.jboss.jandex.IndexWriter;
+import org.jboss.jandex.Indexer;
 import org.junit.Assert;
 import org.junit.Test;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
@@ -13,6 +15,7 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExpe
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFieldsTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethodsTypeUse;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalNestedClasses;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ExperimentalTypeUse;
@@ -20,10 +23,25 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWith
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethodsTypeUse;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalTypeUse;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassHidingExperimentalField;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOverridingExperimentalMethod;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 public class JarAnnotationIndexerTestCase {
 
@@ -147,6 +165,176 @@ public class JarAnnotationIndexerTestCase {
         Assert.assertTrue(set.contains(new AnnotatedField(ClassWithExperimentalFieldsTypeUse.class.getName(), "fieldWithTypeAnnotation")));
     }
 
+    @Test
+    public void testScanWithoutJandex() throws Exception {
+        File file = TestUtils.createJar(AnnotationWithExperimental.class, ClassWithExperimental.class, InterfaceWithExperimental.class,
+                ClassWithExperimentalMethods.class, ClassWithExperimentalMethodsTypeUse.class, InterfaceWithExperimentalMethods.class,
+                InterfaceWithExperimentalMethodsTypeUse.class, AnnotationWithExperimentalMethods.class, AnnotationWithExperimentalMethodsTypeUse.class,
+                ClassWithExperimentalConstructors.class, ClassWithExperimentalConstructorsTypeUse.class,
+                ClassWithExperimentalFields.class, ClassWithExperimentalFieldsTypeUse.class, ClassWithExperimentalNestedClasses.class,
+                SubclassOverridingExperimentalMethod.class, SubclassHidingExperimentalField.class);
+        Set<String> annotations = Set.of(EXPERIMENTAL_ANNOTATION, EXPERIMENTAL_ANNOTATION_WITH_TYPE_USE);
+        Map<String, JarAnnotationIndex> jandexResults = new JarAnnotationIndexer(file, annotations, Collections.emptySet(), MultiReleaseJarEntries.DEFAULT_TARGET_VERSION)
+                .scanForAnnotations();
+        Map<String, JarAnnotationIndex> results = new JarAnnotationIndexer(file, annotations, Collections.emptySet(), MultiReleaseJarEntries.DEFAULT_TARGET_VERSION)
+                .setUseJandex(false)
+                .scanForAnnotations();
+
+        Assert.assertEquals(jandexResults, results);
+        for (String annotation : annotations) {
+            Assert.assertEquals(jandexResults.get(annotation).getSupertypes(), results.get(annotation).getSupertypes());
+            Assert.assertEquals(jandexResults.get(annotation).getDeclaredMembers(), results.get(annotation).getDeclaredMembers());
+        }
+        Assert.assertEquals(Set.of("test()V"),
+                results.get(EXPERIMENTAL_ANNOTATION).getDeclaredMembers().get(SubclassOverridingExperimentalMethod.class.getName()));
+        Assert.assertEquals(Set.of("fieldA"),
+                results.get(EXPERIMENTAL_ANNOTATION).getDeclaredMembers().get(SubclassHidingExperimentalField.class.getName()));
+
+        // The parameters added by the compiler for the outer instance, and the enum name and ordinal, are left out like Jandex does
+        Set<AnnotatedConstructor> constructors = results.get(EXPERIMENTAL_ANNOTATION).getAnnotatedConstructors();
+        Assert.assertTrue(constructors.contains(new AnnotatedConstructor(ClassWithExperimentalNestedClasses.Inner.class.getName(), "(Ljava/lang/String;)V")));
+        Assert.assertTrue(constructors.contains(new AnnotatedConstructor(ClassWithExperimentalNestedClasses.Inner.class.getName(), "(Ljava/util/List;)V")));
+        Assert.assertTrue(constructors.contains(new AnnotatedConstructor(ClassWithExperimentalNestedClasses.StaticNested.class.getName(), "(Ljava/lang/String;)V")));
+        Assert.assertTrue(constructors.contains(new AnnotatedConstructor(ClassWithExperimentalNestedClasses.NestedEnum.class.getName(), "(Ljava/lang/String;)V")));
+        // The type variable declared by the enclosing method is erased to its bound
+        Assert.assertTrue(results.get(EXPERIMENTAL_ANNOTATION).getAnnotatedMethods().contains(
+                new AnnotatedMethod(ClassWithExperimentalNestedClasses.class.getName() + "$1", "get", "()Ljava/lang/Number;")));
+    }
+    @Test
+    public void testScanPrebuiltIndex() throws Exception {
+        List<Class<?>> classes = List.of(ClassWithExperimental.class, ClassWithExperimentalMethods.class, ClassWithExperimentalFields.class);
+        File file = createJarWithPrebuiltIndex(classes, 1000, classes, 1000);
+
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        Assert.assertTrue(indexer.isPrebuiltIndexUsed());
+        checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        Assert.assertEquals(2, result.getAnnotatedFields().size());
+
+        JarAnnotationIndexer bytecodeIndexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet())
+                .setUsePrebuiltIndex(false);
+        Assert.assertEquals(bytecodeIndexer.scanForAnnotation(), result);
+        Assert.assertFalse(bytecodeIndexer.isPrebuiltIndexUsed());
+    }
+
+    @Test
+    public void testScanStalePrebuiltIndex() throws Exception {
+        List<Class<?>> classes = List.of(ClassWithExperimental.class, ClassWithExperimentalFields.class);
+
+        // The index is missing one of the classes
+        File file = createJarWithPrebuiltIndex(List.of(ClassWithExperimental.class), 1000, classes, 1000);
+        JarAnnotationIndexer indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        JarAnnotationIndex result = indexer.scanForAnnotation();
+        Assert.assertFalse(indexer.isPrebuiltIndexUsed());
+        checkSet(result.getAnnotatedClasses(), ClassWithExperimental.class.getName());
+        Assert.assertEquals(2, result.getAnnotatedFields().size());
+
+        // The classes are newer than the index
+        file = createJarWithPrebuiltIndex(classes, 1000, classes, 10000);
+        indexer = new JarAnnotationIndexer(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        result = indexer.scanForAnnotation();
+        Assert.assertFalse(indexer.isPrebuiltIndexUsed());
+        Assert.assertEquals(2, result.getAnnotatedFields().size());
+    }
+
+    @Test
+    public void testScanArchiveSources() throws Exception {
+        File file = TestUtils.createJar(AnnotationWithExperimental.class, ClassWithExperimental.class, InterfaceWithExperimental.class,
+                ClassWithExperimentalMethods.class, ClassWithExperimentalConstructors.class, ClassWithExperimentalFields.class,
+                ClassWithExperimentalNestedClasses.class);
+        Path directory = Files.createTempDirectory(Paths.get("target/test-archives"), "exploded");
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(file))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                Path path = directory.resolve(entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(path);
+                } else {
+                    Files.createDirectories(path.getParent());
+                    Files.copy(in, path);
+                }
+            }
+        }
+        File fatJar = createFatJar(Collections.singletonList(file));
+
+        List<ArchiveSource> sources = new ArrayList<>();
+        sources.add(ArchiveSource.ofBytes("in-memory.jar", Files.readAllBytes(file.toPath())));
+        sources.add(ArchiveSource.ofDirectory(directory));
+        sources.addAll(ArchiveSource.nestedJarsOf(fatJar));
+        Assert.assertEquals(3, sources.size());
+
+        Set<String> annotations = Collections.singleton(EXPERIMENTAL_ANNOTATION);
+        for (boolean useJandex : new boolean[] {true, false}) {
+            Map<String, JarAnnotationIndex> expected = new JarAnnotationIndexer(file, annotations, Collections.emptySet(), MultiReleaseJarEntries.DEFAULT_TARGET_VERSION)
+                    .setUseJandex(useJandex)
+                    .scanForAnnotations();
+            for (ArchiveSource source : sources) {
+                Map<String, JarAnnotationIndex> results = new JarAnnotationIndexer(source, annotations, Collections.emptySet(), MultiReleaseJarEntries.DEFAULT_TARGET_VERSION)
+                        .setUseJandex(useJandex)
+                        .scanForAnnotations();
+                Assert.assertEquals(source.getName(), expected, results);
+                Assert.assertEquals(source.getName(), expected.get(EXPERIMENTAL_ANNOTATION).getSupertypes(),
+                        results.get(EXPERIMENTAL_ANNOTATION).getSupertypes());
+                Assert.assertEquals(source.getName(), expected.get(EXPERIMENTAL_ANNOTATION).getDeclaredMembers(),
+                        results.get(EXPERIMENTAL_ANNOTATION).getDeclaredMembers());
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testScanMissingNestedJar() throws Exception {
+        File fatJar = createFatJar(Collections.singletonList(TestUtils.createJar(ClassWithExperimental.class)));
+        new JarAnnotationIndexer(ArchiveSource.ofNestedJar(fatJar, "BOOT-INF/lib/missing.jar"), Collections.singleton(EXPERIMENTAL_ANNOTATION),
+                Collections.emptySet(), MultiReleaseJarEntries.DEFAULT_TARGET_VERSION).scanForAnnotations();
+    }
+
+    static File createFatJar(List<File> jars) throws IOException {
+        Path path = Paths.get("target/test-archives");
+        Files.createDirectories(path);
+        File file = Files.createTempFile(path, "fat", ".jar").toFile();
+        file.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < jars.size(); i++) {
+                out.putNextEntry(new ZipEntry("BOOT-INF/lib/lib-" + i + ".jar"));
+                Files.copy(jars.get(i).toPath(), out);
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private File createJarWithPrebuiltIndex(List<Class<?>> indexedClasses, long indexTime, List<Class<?>> classes, long classTime) throws IOException {
+        Indexer indexer = new Indexer();
+        for (Class<?> clazz : indexedClasses) {
+            try (InputStream in = openClass(clazz)) {
+                indexer.index(in);
+            }
+        }
+        Path path = Paths.get("target/test-archives");
+        Files.createDirectories(path);
+        File file = Files.createTempFile(path, "prebuilt-index", ".jar").toFile();
+        file.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            ZipEntry indexEntry = new ZipEntry(JarAnnotationIndexer.PREBUILT_INDEX);
+            indexEntry.setTime(indexTime);
+            out.putNextEntry(indexEntry);
+            new IndexWriter(out).write(indexer.complete());
+            out.closeEntry();
+            for (Class<?> clazz : classes) {
+                ZipEntry entry = new ZipEntry(clazz.getName().replace('.', '/') + ".class");
+                entry.setTime(classTime);
+                out.putNextEntry(entry);
+                try (InputStream in = openClass(clazz)) {
+                    in.transferTo(out);
+                }
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private InputStream openClass(Class<?> clazz) {
+        return clazz.getResourceAsStream(clazz.getSimpleName() + ".class");
+    }
 
     private void checkSet(Set<String> set, String... expected) {
         Assert.assertEquals(expected.length, set.size());
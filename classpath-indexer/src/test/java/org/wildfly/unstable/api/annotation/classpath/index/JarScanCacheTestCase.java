@@ -0,0 +1,145 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Incubating;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithIncubating;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.JarScanCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class JarScanCacheTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final Class<?>[] USER_CLASSES = {
+            NoUsage.class, MethodReference.class, FieldReference.class, ClassExtendsUsage.class};
+
+    RuntimeIndex runtimeIndex;
+    Path cacheDir;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                ClassWithExperimentalFields.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION);
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+        runtimeIndex = RuntimeIndex.load(p);
+
+        cacheDir = Files.createTempDirectory(Paths.get("target"), "scan-cache");
+    }
+
+    @Test
+    public void testCachedResultsAreReused() throws Exception {
+        File jar = TestUtils.createJar(USER_CLASSES);
+        Set<AnnotationUsage> expected = scanWithoutCache(runtimeIndex);
+        Assert.assertEquals(3, expected.size());
+
+        JarScanCache cache = new JarScanCache(cacheDir, runtimeIndex);
+        Assert.assertEquals(expected, cache.scanJar(jar));
+        Assert.assertEquals(0, cache.getCacheHits());
+        Assert.assertEquals(1, cache.getCacheMisses());
+        Assert.assertEquals(USER_CLASSES.length, cache.getScannedClassCount());
+
+        // Simulate a restart
+        cache = new JarScanCache(cacheDir, runtimeIndex);
+        Assert.assertEquals(expected, cache.scanJar(jar));
+        Assert.assertEquals(1, cache.getCacheHits());
+        Assert.assertEquals(0, cache.getCacheMisses());
+        Assert.assertEquals(0, cache.getScannedClassCount());
+    }
+
+    @Test
+    public void testChangedIndexInvalidatesCache() throws Exception {
+        File jar = TestUtils.createJar(USER_CLASSES);
+        new JarScanCache(cacheDir, runtimeIndex).scanJar(jar);
+
+        OverallIndex overallIndex = new OverallIndex();
+        overallIndex.scanJar(TestUtils.createJar(InterfaceWithIncubating.class), Incubating.class.getName());
+        Path p = Paths.get("target/index/runtime-test-other.txt");
+        overallIndex.save(p);
+        RuntimeIndex otherIndex = RuntimeIndex.load(p);
+        Assert.assertNotEquals(runtimeIndex.getFingerprint(), otherIndex.getFingerprint());
+
+        JarScanCache cache = new JarScanCache(cacheDir, otherIndex);
+        Assert.assertEquals(0, cache.scanJar(jar).size());
+        Assert.assertEquals(1, cache.getCacheMisses());
+        Assert.assertEquals(USER_CLASSES.length, cache.getScannedClassCount());
+    }
+
+    @Test
+    public void testCorruptCacheFileIsIgnored() throws Exception {
+        File jar = TestUtils.createJar(USER_CLASSES);
+        Set<AnnotationUsage> expected = scanWithoutCache(runtimeIndex);
+        new JarScanCache(cacheDir, runtimeIndex).scanJar(jar);
+        Path cacheFile;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            cacheFile = files.findFirst().get();
+        }
+        byte[] bytes = Files.readAllBytes(cacheFile);
+        // The magic number, format version and fingerprints come before the entry count and the first entry
+        int entryCount = 24;
+        int name = entryCount + 4;
+        int usageCount = name + 2 + ByteBuffer.wrap(bytes, name, 2).getShort() + 8 + 8;
+
+        // Not valid modified UTF-8
+        assertCorruptCacheFileIsIgnored(jar, cacheFile, expected, bytes, name + 2, new byte[]{(byte) 0xff});
+        // Counts which do not fit in the file
+        assertCorruptCacheFileIsIgnored(jar, cacheFile, expected, bytes, entryCount, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array());
+        assertCorruptCacheFileIsIgnored(jar, cacheFile, expected, bytes, usageCount, ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE).array());
+        assertCorruptCacheFileIsIgnored(jar, cacheFile, expected, bytes, usageCount, ByteBuffer.allocate(4).putInt(-1).array());
+    }
+
+    private void assertCorruptCacheFileIsIgnored(File jar, Path cacheFile, Set<AnnotationUsage> expected, byte[] bytes, int offset, byte[] replacement) throws IOException {
+        byte[] corrupt = bytes.clone();
+        System.arraycopy(replacement, 0, corrupt, offset, replacement.length);
+        Files.write(cacheFile, corrupt);
+
+        JarScanCache cache = new JarScanCache(cacheDir, runtimeIndex);
+        Assert.assertEquals(expected, cache.scanJar(jar));
+        Assert.assertEquals(1, cache.getCacheMisses());
+        Assert.assertEquals(USER_CLASSES.length, cache.getScannedClassCount());
+    }
+
+    @Test
+    public void testFingerprintIsStableAcrossLoads() throws Exception {
+        RuntimeIndex reloaded = RuntimeIndex.load(Paths.get("target/index/runtime-test.txt"));
+        Assert.assertEquals(runtimeIndex.getFingerprint(), reloaded.getFingerprint());
+    }
+
+    private Set<AnnotationUsage> scanWithoutCache(RuntimeIndex runtimeIndex) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        for (Class<?> clazz : USER_CLASSES) {
+            String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+            URL url = JarScanCacheTestCase.class.getClassLoader().getResource(classLocation);
+            try (InputStream in = url.openStream()) {
+                scanner.scanClass(in);
+            }
+        }
+        return scanner.getUsages();
+    }
+}
@@ -0,0 +1,196 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfSubclassOfClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassArrayUsageInDeclarations;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAsField;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAsMethodParameter;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageAsMethodReturnType;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.InheritedMethodOverride;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.InterfaceMethodOverride;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodOverride;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.DeclaredFieldType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.DeclaredMethodType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.OverridesAnnotatedMethod;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.UnstableApiVerdict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks the usages found by parsing the fields and methods declared in the scanned classes
+ */
+public class MemberTableTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final ScanConfiguration MEMBERS = ScanConfiguration.builder()
+            .addUsageType(AnnotationUsageType.DECLARED_FIELD_TYPE)
+            .addUsageType(AnnotationUsageType.DECLARED_METHOD_TYPE)
+            .addUsageType(AnnotationUsageType.OVERRIDES_METHOD)
+            .build();
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                ClassWithExperimental.class,
+                InterfaceWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                InterfaceWithExperimentalMethods.class,
+                SubclassOfClassWithExperimentalMethods.class,
+                SubclassOfSubclassOfClassWithExperimentalMethods.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testDeclaredFieldType() throws Exception {
+        DeclaredFieldType usage = scanAndGetSingleUsage(ClassUsageAsField.class, AnnotationUsageType.DECLARED_FIELD_TYPE)
+                .asDeclaredFieldType();
+        Assert.assertEquals("field", usage.getFieldName());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getFieldType());
+        Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), usage.getAnnotations());
+    }
+
+    @Test
+    public void testDeclaredMethodParameterType() throws Exception {
+        DeclaredMethodType usage = scanAndGetSingleUsage(ClassUsageAsMethodParameter.class, AnnotationUsageType.DECLARED_METHOD_TYPE)
+                .asDeclaredMethodType();
+        Assert.assertEquals("test", usage.getMethodName());
+        Assert.assertEquals("(Lorg/wildfly/unstable/api/annotation/classpath/index/classes/ClassWithExperimental;)V", usage.getDescriptor());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getDeclaredType());
+    }
+
+    @Test
+    public void testDeclaredMethodReturnType() throws Exception {
+        DeclaredMethodType usage = scanAndGetSingleUsage(ClassUsageAsMethodReturnType.class, AnnotationUsageType.DECLARED_METHOD_TYPE)
+                .asDeclaredMethodType();
+        Assert.assertEquals("test", usage.getMethodName());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), usage.getDeclaredType());
+    }
+
+    @Test
+    public void testDeclaredArrayTypes() throws Exception {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, MEMBERS);
+        scanClass(scanner, ClassArrayUsageInDeclarations.class);
+        Set<AnnotationUsageType> types = new HashSet<>();
+        for (AnnotationUsage usage : scanner.getUsages()) {
+            types.add(usage.getType());
+            if (usage.getType() == AnnotationUsageType.DECLARED_FIELD_TYPE) {
+                Assert.assertEquals(ClassWithExperimental.class.getName(), usage.asDeclaredFieldType().getFieldType());
+            } else {
+                Assert.assertEquals(ClassWithExperimental.class.getName(), usage.asDeclaredMethodType().getDeclaredType());
+            }
+        }
+        Assert.assertEquals(2, scanner.getUsages().size());
+        Assert.assertTrue(types.contains(AnnotationUsageType.DECLARED_FIELD_TYPE));
+        Assert.assertTrue(types.contains(AnnotationUsageType.DECLARED_METHOD_TYPE));
+    }
+
+    @Test
+    public void testOverridesMethod() throws Exception {
+        OverridesAnnotatedMethod usage = scanAndGetSingleUsage(MethodOverride.class, AnnotationUsageType.OVERRIDES_METHOD)
+                .asOverridesAnnotatedMethod();
+        Assert.assertEquals(ClassWithExperimentalMethods.class.getName(), usage.getMethodClass());
+        Assert.assertEquals("test", usage.getMethodName());
+        Assert.assertEquals("()V", usage.getDescriptor());
+    }
+
+    @Test
+    public void testOverridesInheritedMethod() throws Exception {
+        OverridesAnnotatedMethod usage = scanAndGetSingleUsage(InheritedMethodOverride.class, AnnotationUsageType.OVERRIDES_METHOD)
+                .asOverridesAnnotatedMethod();
+        // The overridden method is reported against the direct superclass
+        Assert.assertEquals(SubclassOfSubclassOfClassWithExperimentalMethods.class.getName(), usage.getMethodClass());
+        Assert.assertEquals("test", usage.getMethodName());
+    }
+
+    @Test
+    public void testOverridesInterfaceMethod() throws Exception {
+        OverridesAnnotatedMethod usage = scanAndGetSingleUsage(InterfaceMethodOverride.class, AnnotationUsageType.OVERRIDES_METHOD)
+                .asOverridesAnnotatedMethod();
+        Assert.assertEquals(InterfaceWithExperimentalMethods.class.getName(), usage.getMethodClass());
+        Assert.assertEquals("(Ljava/lang/String;)V", usage.getDescriptor());
+    }
+
+    @Test
+    public void testNotLookedForByDefault() throws Exception {
+        Class<?>[] classes = {ClassUsageAsField.class, ClassUsageAsMethodParameter.class, MethodOverride.class};
+        for (Class<?> clazz : classes) {
+            ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+            scanClass(scanner, clazz);
+            for (AnnotationUsage usage : scanner.getUsages()) {
+                Assert.assertFalse(usage.toString(), usage.getType() == AnnotationUsageType.DECLARED_FIELD_TYPE ||
+                        usage.getType() == AnnotationUsageType.DECLARED_METHOD_TYPE ||
+                        usage.getType() == AnnotationUsageType.OVERRIDES_METHOD);
+            }
+        }
+    }
+
+    @Test
+    public void testVerdict() throws Exception {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, MEMBERS);
+        UnstableApiVerdict verdict = scanForVerdict(scanner, ClassUsageAsMethodParameter.class);
+        Assert.assertEquals(AnnotationUsageType.DECLARED_METHOD_TYPE, verdict.getType());
+        Assert.assertEquals(ClassUsageAsMethodParameter.class.getName(), verdict.getSourceClass());
+
+        verdict = scanForVerdict(scanner, MethodOverride.class);
+        Assert.assertEquals(AnnotationUsageType.OVERRIDES_METHOD, verdict.getType());
+        Assert.assertEquals(ClassWithExperimentalMethods.class.getName() + ".test()V", verdict.getReference());
+
+        Assert.assertTrue(scanForVerdict(new ClassInfoScanner(runtimeIndex), ClassUsageAsMethodParameter.class).isClean());
+    }
+
+    private AnnotationUsage scanAndGetSingleUsage(Class<?> clazz, AnnotationUsageType type) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, MEMBERS);
+        scanClass(scanner, clazz);
+        Set<AnnotationUsage> usages = scanner.getUsages();
+        Assert.assertEquals(usages.toString(), 1, usages.size());
+        AnnotationUsage usage = usages.iterator().next();
+        Assert.assertEquals(type, usage.getType());
+        return usage;
+    }
+
+    private void scanClass(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            scanner.scanClass(in);
+        }
+    }
+
+    private UnstableApiVerdict scanForVerdict(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            return scanner.scanForVerdict(in);
+        }
+    }
+
+    private InputStream openClass(Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = MemberTableTestCase.class.getClassLoader().getResource(classLocation);
+        return url.openStream();
+    }
+}
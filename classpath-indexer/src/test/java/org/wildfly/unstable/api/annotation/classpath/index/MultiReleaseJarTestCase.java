@@ -0,0 +1,176 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.JarScanCache;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.UnstableApiVerdict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Checks that only the entries of multi-release jars which are effective for the target Java version are indexed
+ * and scanned
+ */
+public class MultiReleaseJarTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+    private static final String ENTRY = "org/acme/Versioned.class";
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(ClassWithExperimental.class, ClassWithExperimentalMethods.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testSelectEntries() throws Exception {
+        File jar = createVersionedScanJar(true);
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            MultiReleaseJarEntries entries = MultiReleaseJarEntries.select(zipFile, 17);
+            Assert.assertEquals(1, entries.getClassEntries().size());
+            Assert.assertEquals("META-INF/versions/11/" + ENTRY, entries.getClassEntries().get(0).getName());
+            Assert.assertEquals(2, entries.getSkippedEntryCount());
+
+            entries = MultiReleaseJarEntries.select(zipFile, 21);
+            Assert.assertEquals("META-INF/versions/21/" + ENTRY, entries.getClassEntries().get(0).getName());
+            Assert.assertEquals(2, entries.getSkippedEntryCount());
+
+            entries = MultiReleaseJarEntries.select(zipFile, 8);
+            Assert.assertEquals(ENTRY, entries.getClassEntries().get(0).getName());
+            Assert.assertEquals(2, entries.getSkippedEntryCount());
+        }
+
+        // The versioned entries of jars which are not multi-release are never used
+        try (ZipFile zipFile = new ZipFile(createVersionedScanJar(false))) {
+            MultiReleaseJarEntries entries = MultiReleaseJarEntries.select(zipFile, 21);
+            Assert.assertEquals(ENTRY, entries.getClassEntries().get(0).getName());
+            Assert.assertEquals(2, entries.getSkippedEntryCount());
+        }
+
+        Assert.assertEquals(ENTRY, MultiReleaseJarEntries.getBaseName("META-INF/versions/11/" + ENTRY));
+        Assert.assertEquals(ENTRY, MultiReleaseJarEntries.getBaseName(ENTRY));
+    }
+
+    @Test
+    public void testScanForVerdict() throws Exception {
+        File jar = createVersionedScanJar(true);
+        UnstableApiVerdict verdict = new ClassInfoScanner(runtimeIndex, configuration(17)).scanJarForVerdict(jar);
+        Assert.assertEquals(AnnotationUsageType.METHOD_REFERENCE, verdict.getType());
+
+        verdict = new ClassInfoScanner(runtimeIndex, configuration(21)).scanJarForVerdict(jar);
+        Assert.assertEquals(AnnotationUsageType.EXTENDS_CLASS, verdict.getType());
+
+        Assert.assertTrue(new ClassInfoScanner(runtimeIndex, configuration(8)).scanJarForVerdict(jar).isClean());
+    }
+
+    @Test
+    public void testJarScanCache() throws Exception {
+        File jar = createVersionedScanJar(true);
+        Path cacheDirectory = Paths.get("target/scan-cache-multi-release");
+        JarScanCache cache = new JarScanCache(cacheDirectory, runtimeIndex, 17);
+        Set<AnnotationUsage> usages = cache.scanJar(jar);
+        Assert.assertEquals(1, usages.size());
+        Assert.assertEquals(AnnotationUsageType.METHOD_REFERENCE, usages.iterator().next().getType());
+        Assert.assertEquals(1, cache.getScannedClassCount());
+        Assert.assertEquals(2, cache.getSkippedEntryCount());
+    }
+
+    @Test
+    public void testIndexing() throws Exception {
+        // The base entry has annotated methods, while the versioned one is an annotated class
+        Map<String, Class<?>> entries = new LinkedHashMap<>();
+        entries.put(ENTRY, ClassWithExperimentalMethods.class);
+        entries.put("META-INF/versions/11/" + ENTRY, ClassWithExperimental.class);
+        File jar = createJar(true, entries);
+
+        OverallIndex overallIndex = new OverallIndex();
+        overallIndex.setTargetJavaVersion(8);
+        overallIndex.scanJar(jar, EXPERIMENTAL_ANNOTATION);
+        Assert.assertEquals(1, overallIndex.getSkippedEntryCount());
+        RuntimeIndex index = save(overallIndex);
+        Assert.assertNull(index.getAnnotationsForClass(ClassWithExperimental.class.getName()));
+
+        overallIndex = new OverallIndex();
+        overallIndex.setTargetJavaVersion(17);
+        overallIndex.scanJar(jar, EXPERIMENTAL_ANNOTATION);
+        Assert.assertEquals(1, overallIndex.getSkippedEntryCount());
+        index = save(overallIndex);
+        Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), index.getAnnotationsForClass(ClassWithExperimental.class.getName()));
+    }
+
+    private static ScanConfiguration configuration(int targetJavaVersion) {
+        return ScanConfiguration.builder().setTargetJavaVersion(targetJavaVersion).build();
+    }
+
+    private static RuntimeIndex save(OverallIndex overallIndex) throws IOException {
+        Path p = Paths.get("target/index/runtime-test-multi-release.txt");
+        overallIndex.save(p);
+        return RuntimeIndex.load(p);
+    }
+
+    private static File createVersionedScanJar(boolean multiRelease) throws IOException {
+        Map<String, Class<?>> entries = new LinkedHashMap<>();
+        entries.put(ENTRY, NoUsage.class);
+        entries.put("META-INF/versions/11/" + ENTRY, MethodReference.class);
+        entries.put("META-INF/versions/21/" + ENTRY, ClassExtendsUsage.class);
+        return createJar(multiRelease, entries);
+    }
+
+    private static File createJar(boolean multiRelease, Map<String, Class<?>> entries) throws IOException {
+        Path dir = Paths.get("target/test-archives");
+        Files.createDirectories(dir);
+        Path path = Files.createTempFile(dir, "multi-release", ".jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(path))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            String manifest = "Manifest-Version: 1.0\n" + (multiRelease ? "Multi-Release: true\n" : "");
+            out.write(manifest.getBytes());
+            out.closeEntry();
+            for (Map.Entry<String, Class<?>> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                copyClass(entry.getValue(), out);
+                out.closeEntry();
+            }
+        }
+        File file = path.toFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void copyClass(Class<?> clazz, OutputStream out) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        try (InputStream in = MultiReleaseJarTestCase.class.getClassLoader().getResourceAsStream(classLocation)) {
+            in.transferTo(out);
+        }
+    }
+}
@@ -9,17 +9,30 @@ import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExpe
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.GenericClassWithExperimentalNestedClass;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.Incubating;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimental;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
 import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithIncubating;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfClassWithExperimentalMethods;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class OverallIndexTestCase {
 
@@ -91,6 +104,223 @@ public class OverallIndexTestCase {
         Assert.assertEquals(overallIndex, loaded);
     }
 
+    @Test
+    public void testOverallIndexWithTwoAnnotationsInOneScan() throws Exception {
+        File file = TestUtils.createJar(
+                ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                SubclassOfClassWithExperimentalMethods.class,
+                InterfaceWithIncubating.class);
+
+        OverallIndex separateScans = new OverallIndex();
+        separateScans.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+        separateScans.scanJar(file, INCUBATING_ANNOTATION, Collections.emptySet());
+
+        Set<String> annotations = new LinkedHashSet<>();
+        annotations.add(EXPERIMENTAL_ANNOTATION);
+        annotations.add(INCUBATING_ANNOTATION);
+        OverallIndex singleScan = new OverallIndex();
+        singleScan.scanJar(file, annotations, Collections.emptySet());
+
+        Assert.assertEquals(separateScans, singleScan);
+        checkSet(singleScan.getAnnotationIndex(INCUBATING_ANNOTATION).getAnnotatedInterfaces(), InterfaceWithIncubating.class.getName());
+        checkSet(singleScan.getAnnotationIndex(EXPERIMENTAL_ANNOTATION).getAnnotatedClasses(), ClassWithExperimental.class.getName());
+
+        Path path = Paths.get("target/index/index3.txt");
+        singleScan.save(path);
+        Assert.assertEquals(singleScan, OverallIndex.load(path));
+    }
+
+    @Test
+    public void testSortedOutputWithFingerprint() throws Exception {
+        List<File> jars = new ArrayList<>();
+        jars.add(TestUtils.createJar(AnnotationWithExperimental.class, ClassWithExperimental.class, InterfaceWithIncubating.class));
+        jars.add(TestUtils.createJar(ClassWithExperimentalMethods.class, SubclassOfClassWithExperimentalMethods.class));
+        jars.add(TestUtils.createJar(ClassWithExperimentalConstructors.class, ClassWithExperimentalFields.class));
+
+        // Scan the same jars in the opposite order, and with the annotations in the opposite order
+        OverallIndex first = new OverallIndex();
+        for (File jar : jars) {
+            first.scanJar(jar, new LinkedHashSet<>(List.of(EXPERIMENTAL_ANNOTATION, INCUBATING_ANNOTATION)), Collections.emptySet());
+        }
+        OverallIndex second = new OverallIndex();
+        for (int i = jars.size() - 1; i >= 0; i--) {
+            second.scanJar(jars.get(i), new LinkedHashSet<>(List.of(INCUBATING_ANNOTATION, EXPERIMENTAL_ANNOTATION)), Collections.emptySet());
+        }
+
+        Path firstPath = Paths.get("target/index/sorted1.txt");
+        Path secondPath = Paths.get("target/index/sorted2.txt");
+        first.save(firstPath);
+        second.save(secondPath);
+        byte[] bytes = Files.readAllBytes(firstPath);
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(secondPath));
+        Assert.assertEquals(first, OverallIndex.load(firstPath));
+        // Saved in UTF-8 whatever the default charset, so the separators survive, and with '\n' line ends whatever
+        // the platform
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        Assert.assertTrue(text.contains(AnnotationIndex.MULTI_VALUE_FIELD_SEPARATOR));
+        Assert.assertFalse(text.contains("\r"));
+
+        // The fingerprint is the hash of everything after the header line
+        List<String> lines = Files.readAllLines(firstPath);
+        Assert.assertEquals("#fingerprint=" + OverallIndex.readFingerprint(firstPath), lines.get(0));
+        int headerLength = lines.get(0).length() + 1;
+        IndexFingerprint fingerprint = new IndexFingerprint();
+        fingerprint.write(bytes, headerLength, bytes.length - headerLength);
+        Assert.assertEquals(fingerprint.getFingerprint(), OverallIndex.readFingerprint(firstPath));
+
+        // The entries of each section are sorted
+        List<String> section = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.startsWith("=") || line.isEmpty()) {
+                List<String> sorted = new ArrayList<>(section);
+                Collections.sort(sorted);
+                Assert.assertEquals(sorted, section);
+                section.clear();
+            } else {
+                section.add(line);
+            }
+        }
+
+        Path firstZip = Paths.get("target/index/sorted1.zip");
+        Path secondZip = Paths.get("target/index/sorted2.zip");
+        first.save(firstZip);
+        second.save(secondZip);
+        Assert.assertArrayEquals(Files.readAllBytes(firstZip), Files.readAllBytes(secondZip));
+        Assert.assertEquals(OverallIndex.readFingerprint(firstPath), OverallIndex.readFingerprint(firstZip));
+    }
+
+    @Test
+    public void testCompressedIndexes() throws Exception {
+        OverallIndex index = createOverallIndexWithEverythingExperimental();
+        Path txt = Paths.get("target/index/compressed.txt");
+        Path gzip = Paths.get("target/index/compressed.txt.gz");
+        Path zip = Paths.get("target/index/compressed.zip");
+        index.save(txt);
+        index.save(gzip);
+        index.save(zip);
+        Assert.assertEquals(index, OverallIndex.load(gzip));
+        Assert.assertEquals(index, OverallIndex.load(zip));
+        Assert.assertEquals(OverallIndex.readFingerprint(txt), OverallIndex.readFingerprint(gzip));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip))) {
+            Assert.assertArrayEquals(Files.readAllBytes(txt), in.readAllBytes());
+        }
+
+        // Load the zipped index from inside a jar, as a server would load it from a resource
+        Path jar = Paths.get("target/index/compressed-index.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("META-INF/index.zip"));
+            Files.copy(zip, out);
+            out.closeEntry();
+        }
+        URL url = new URL("jar:" + jar.toUri() + "!/META-INF/index.zip");
+        Assert.assertEquals(index, OverallIndex.load(List.of(url)));
+    }
+
+    @Test
+    public void testParallelScanOfSeveralJars() throws Exception {
+        List<File> jars = new ArrayList<>();
+        jars.add(TestUtils.createJar(AnnotationWithExperimental.class, ClassWithExperimental.class, InterfaceWithExperimental.class));
+        jars.add(TestUtils.createJar(ClassWithExperimentalMethods.class, SubclassOfClassWithExperimentalMethods.class));
+        jars.add(TestUtils.createJar(InterfaceWithExperimentalMethods.class, AnnotationWithExperimentalMethods.class));
+        jars.add(TestUtils.createJar(ClassWithExperimentalConstructors.class, ClassWithExperimentalFields.class, InterfaceWithIncubating.class));
+
+        Set<String> annotations = new LinkedHashSet<>();
+        annotations.add(EXPERIMENTAL_ANNOTATION);
+        annotations.add(INCUBATING_ANNOTATION);
+
+        OverallIndex serial = new OverallIndex();
+        for (File jar : jars) {
+            serial.scanJar(jar, annotations, Collections.emptySet());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            OverallIndex parallel = new OverallIndex();
+            parallel.scanJars(jars, annotations, Collections.emptySet(), pool);
+            Assert.assertEquals(serial, parallel);
+
+            // Split the jars into a task per class entry
+            OverallIndex split = new OverallIndex();
+            split.scanJars(jars, annotations, Collections.emptySet(), pool, 1);
+            Assert.assertEquals(serial, split);
+
+            // Add to the existing contents
+            split.scanJars(Collections.singletonList(jars.get(0)), annotations, Collections.emptySet(), pool, 1);
+            Assert.assertEquals(serial, split);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelScanOfGenericNestedClasses() throws Exception {
+        // The descriptors of the members of the nested classes need the bound of the type variable of the outer class
+        File jar = TestUtils.createJar(GenericClassWithExperimentalNestedClass.class, ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class, ClassWithExperimentalFields.class);
+        Set<String> annotations = Collections.singleton(EXPERIMENTAL_ANNOTATION);
+
+        for (boolean useJandex : new boolean[]{true, false}) {
+            OverallIndex serial = new OverallIndex();
+            serial.setUseJandex(useJandex);
+            serial.scanJar(jar, annotations, Collections.emptySet());
+            Assert.assertTrue(serial.getAnnotationIndex(EXPERIMENTAL_ANNOTATION).getAnnotatedMethods().contains(
+                    new AnnotatedMethod(GenericClassWithExperimentalNestedClass.Inner.class.getName(), "accept", "(Ljava/lang/Number;)V")));
+
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                OverallIndex split = new OverallIndex();
+                split.setUseJandex(useJandex);
+                split.scanJars(Collections.singletonList(jar), annotations, Collections.emptySet(), pool, 1);
+                Assert.assertEquals(serial, split);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testTopLevelNameOfEntries() {
+        Assert.assertEquals("org/acme/Outer", ParallelJarIndexer.getTopLevelName("org/acme/Outer.class"));
+        Assert.assertEquals("org/acme/Outer", ParallelJarIndexer.getTopLevelName("org/acme/Outer$Inner$1.class"));
+        Assert.assertEquals("org/acme/Outer", ParallelJarIndexer.getTopLevelName("META-INF/versions/11/org/acme/Outer$Inner.class"));
+        Assert.assertEquals("org/ac$me/Outer", ParallelJarIndexer.getTopLevelName("org/ac$me/Outer.class"));
+    }
+
+    @Test
+    public void testParallelScanOfNestedJars() throws Exception {
+        List<File> jars = new ArrayList<>();
+        jars.add(TestUtils.createJar(AnnotationWithExperimental.class, ClassWithExperimental.class, InterfaceWithExperimental.class));
+        jars.add(TestUtils.createJar(ClassWithExperimentalMethods.class, SubclassOfClassWithExperimentalMethods.class));
+        jars.add(TestUtils.createJar(ClassWithExperimentalConstructors.class, ClassWithExperimentalFields.class, InterfaceWithIncubating.class));
+        File fatJar = JarAnnotationIndexerTestCase.createFatJar(jars);
+
+        Set<String> annotations = new LinkedHashSet<>();
+        annotations.add(EXPERIMENTAL_ANNOTATION);
+        annotations.add(INCUBATING_ANNOTATION);
+
+        OverallIndex expected = new OverallIndex();
+        expected.scanJars(jars, annotations, Collections.emptySet());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            OverallIndex nested = new OverallIndex();
+            // Nested jars are not split between tasks, however small the ranges of entries
+            nested.scanArchives(ArchiveSource.nestedJarsOf(fatJar), annotations, Collections.emptySet(), pool, 1);
+            Assert.assertEquals(expected, nested);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testParallelScanOfMissingJar() throws Exception {
+        List<File> jars = new ArrayList<>();
+        jars.add(TestUtils.createJar(ClassWithExperimental.class));
+        jars.add(new File("target/does-not-exist.jar"));
+        new OverallIndex().scanJars(jars, Collections.singleton(EXPERIMENTAL_ANNOTATION), Collections.emptySet());
+    }
+
     private OverallIndex createOverallIndexWithEverythingExperimental() throws IOException {
         OverallIndex overallIndex = new OverallIndex();
         addJarIndex(overallIndex, AnnotationWithExperimental.class);
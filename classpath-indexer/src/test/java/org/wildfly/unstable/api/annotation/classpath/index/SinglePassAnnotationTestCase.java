@@ -0,0 +1,170 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.jboss.jandex.Index;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.TypeUseAnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.AnnotationAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.ClassAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.ConstructorAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.ConstructorParameterAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.FieldAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.InterfaceAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.MethodAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.MethodParameterAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.AnnotationAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.ClassAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.ConstructorAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.ConstructorParameterAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.FieldAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.InterfaceAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.MethodAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.MethodParameterAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeConstructorBodyAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeConstructorParameterAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeFieldAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeFieldAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeMethodBodyAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeMethodBodyAnnotatedWithTypeUseExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeMethodParameterAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.typeuse.TypeMethodReturnAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.JandexIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Checks that the usage of annotations annotated with @Experimental found by {@link ClassInfoScanner#scanClass(InputStream)}
+ * on its own is the same as what is found using Jandex.
+ */
+public class SinglePassAnnotationTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    private static final Class<?>[] CLASSES = {
+            NoUsage.class,
+            AnnotationAnnotatedWithExperimental.class,
+            ClassAnnotatedWithExperimental.class,
+            ConstructorAnnotatedWithExperimental.class,
+            ConstructorParameterAnnotatedWithExperimental.class,
+            FieldAnnotatedWithExperimental.class,
+            InterfaceAnnotatedWithExperimental.class,
+            MethodAnnotatedWithExperimental.class,
+            MethodParameterAnnotatedWithExperimental.class,
+            AnnotationAnnotatedWithTypeUseExperimental.class,
+            ClassAnnotatedWithTypeUseExperimental.class,
+            ConstructorAnnotatedWithTypeUseExperimental.class,
+            ConstructorParameterAnnotatedWithTypeUseExperimental.class,
+            FieldAnnotatedWithTypeUseExperimental.class,
+            InterfaceAnnotatedWithTypeUseExperimental.class,
+            MethodAnnotatedWithTypeUseExperimental.class,
+            MethodParameterAnnotatedWithTypeUseExperimental.class,
+            TypeConstructorBodyAnnotatedWithExperimental.class,
+            TypeConstructorParameterAnnotatedWithExperimental.class,
+            TypeFieldAnnotatedWithExperimental.class,
+            TypeFieldAnnotatedWithTypeUseExperimental.class,
+            TypeMethodBodyAnnotatedWithExperimental.class,
+            TypeMethodBodyAnnotatedWithTypeUseExperimental.class,
+            TypeMethodParameterAnnotatedWithExperimental.class,
+            TypeMethodReturnAnnotatedWithExperimental.class
+    };
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                AnnotationWithExperimental.class,
+                TypeUseAnnotationWithExperimental.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testSameResultsAsJandex() throws Exception {
+        int found = 0;
+        for (Class<?> clazz : CLASSES) {
+            ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+            scanClass(scanner, clazz);
+            Set<AnnotationUsage> singlePass = scanner.getUsages();
+
+            ClassInfoScanner jandexScanner = new ClassInfoScanner(runtimeIndex);
+            Index index = Index.of(clazz);
+            jandexScanner.checkAnnotationIndex(index::getAnnotations);
+            Set<AnnotationUsage> jandex = jandexScanner.getUsages();
+
+            Assert.assertEquals(clazz.getName(), jandex, singlePass);
+            for (AnnotationUsage usage : singlePass) {
+                Assert.assertEquals(AnnotationUsageType.ANNOTATED_ANNOTATION_USAGE, usage.getType());
+                Assert.assertEquals(clazz.getName(), usage.asAnnotatedAnnotationUsage().getClazz());
+            }
+            found += singlePass.size();
+        }
+        // Everything apart from NoUsage and the method/constructor bodies, which Jandex does not look at
+        Assert.assertEquals(CLASSES.length - 4, found);
+    }
+
+    @Test
+    public void testJandexIndexWithKnownAnnotationNames() throws Exception {
+        for (Class<?> clazz : CLASSES) {
+            Index index = Index.of(clazz);
+            JandexIndex jandexIndex = JandexIndex.of(index);
+            // There are two annotated annotations in the runtime index, and the classes use at most one of them,
+            // so the lookups will go from the Jandex index to the runtime index
+            Assert.assertTrue(jandexIndex.getKnownAnnotationNames().size() < runtimeIndex.getAnnotatedAnnotations().size());
+
+            ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+            scanner.checkAnnotationIndex(jandexIndex);
+
+            ClassInfoScanner unknownNamesScanner = new ClassInfoScanner(runtimeIndex);
+            unknownNamesScanner.checkAnnotationIndex(index::getAnnotations);
+
+            Assert.assertEquals(clazz.getName(), unknownNamesScanner.getUsages(), scanner.getUsages());
+        }
+    }
+
+    @Test
+    public void testJandexIndexKnownAnnotationNamesCap() throws Exception {
+        Index index = Index.of(CLASSES);
+        Collection<String> names = JandexIndex.of(index).getKnownAnnotationNames();
+        int classes = index.getKnownClasses().size();
+        Assert.assertTrue(names.size() > 1);
+        Assert.assertTrue(classes > names.size());
+
+        JandexIndex jandexIndex = JandexIndex.of(index);
+        // Walking more classes than the max is not worth it
+        Assert.assertNull(jandexIndex.getKnownAnnotationNames(classes - 1));
+        Assert.assertNull(jandexIndex.getKnownAnnotationNames(names.size()));
+        Assert.assertEquals(names, jandexIndex.getKnownAnnotationNames(classes));
+        // Once gathered, the names are still not returned if there are more than asked for
+        Assert.assertNull(jandexIndex.getKnownAnnotationNames(names.size() - 1));
+        Assert.assertEquals(names, jandexIndex.getKnownAnnotationNames(names.size()));
+        Assert.assertEquals(names, jandexIndex.getKnownAnnotationNames());
+    }
+
+    private void scanClass(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = SinglePassAnnotationTestCase.class.getClassLoader().getResource(classLocation);
+        try (InputStream in = url.openStream()) {
+            scanner.scanClass(in);
+        }
+    }
+}
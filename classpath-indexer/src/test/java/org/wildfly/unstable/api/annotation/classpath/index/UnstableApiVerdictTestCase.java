@@ -0,0 +1,127 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.AnnotationWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ReflectiveClassUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.annotation.standard.ClassAnnotatedWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.UnstableApiVerdict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+public class UnstableApiVerdictTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                AnnotationWithExperimental.class,
+                ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                ClassWithExperimentalFields.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION);
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testCleanClass() throws Exception {
+        UnstableApiVerdict verdict = scanForVerdict(NoUsage.class);
+        Assert.assertTrue(verdict.isClean());
+        Assert.assertSame(UnstableApiVerdict.CLEAN, verdict);
+    }
+
+    @Test
+    public void testMethodReference() throws Exception {
+        UnstableApiVerdict verdict = scanForVerdict(MethodReference.class);
+        Assert.assertFalse(verdict.isClean());
+        Assert.assertEquals(AnnotationUsageType.METHOD_REFERENCE, verdict.getType());
+        Assert.assertEquals(MethodReference.class.getName(), verdict.getSourceClass());
+        Assert.assertEquals(ClassWithExperimentalMethods.class.getName() + ".test()V", verdict.getReference());
+        Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), verdict.getAnnotations());
+    }
+
+    @Test
+    public void testFieldReference() throws Exception {
+        UnstableApiVerdict verdict = scanForVerdict(FieldReference.class);
+        Assert.assertEquals(AnnotationUsageType.FIELD_REFERENCE, verdict.getType());
+        Assert.assertEquals(ClassWithExperimentalFields.class.getName() + ".fieldA", verdict.getReference());
+    }
+
+    @Test
+    public void testExtendsIsReportedBeforeClassUsage() throws Exception {
+        UnstableApiVerdict verdict = scanForVerdict(ClassExtendsUsage.class);
+        Assert.assertEquals(AnnotationUsageType.EXTENDS_CLASS, verdict.getType());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), verdict.getReference());
+    }
+
+    @Test
+    public void testReflectiveClassUsage() throws Exception {
+        Assert.assertTrue(scanForVerdict(ReflectiveClassUsage.class).isClean());
+
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .addUsageType(AnnotationUsageType.REFLECTIVE_CLASS_USAGE)
+                .build();
+        UnstableApiVerdict verdict = scanForVerdict(ReflectiveClassUsage.class, configuration);
+        Assert.assertEquals(AnnotationUsageType.REFLECTIVE_CLASS_USAGE, verdict.getType());
+        Assert.assertEquals(ClassWithExperimental.class.getName(), verdict.getReference());
+    }
+
+    @Test
+    public void testAnnotatedAnnotationUsage() throws Exception {
+        UnstableApiVerdict verdict = scanForVerdict(ClassAnnotatedWithExperimental.class);
+        Assert.assertEquals(AnnotationUsageType.ANNOTATED_ANNOTATION_USAGE, verdict.getType());
+        Assert.assertEquals(ClassAnnotatedWithExperimental.class.getName(), verdict.getSourceClass());
+        Assert.assertEquals(AnnotationWithExperimental.class.getName(), verdict.getReference());
+        Assert.assertEquals(Collections.singleton(EXPERIMENTAL_ANNOTATION), verdict.getAnnotations());
+    }
+
+    @Test
+    public void testJarVerdict() throws Exception {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        Assert.assertTrue(scanner.scanJarForVerdict(TestUtils.createJar(NoUsage.class)).isClean());
+
+        UnstableApiVerdict verdict = scanner.scanJarForVerdict(TestUtils.createJar(NoUsage.class, FieldReference.class));
+        Assert.assertEquals(AnnotationUsageType.FIELD_REFERENCE, verdict.getType());
+        Assert.assertEquals(FieldReference.class.getName(), verdict.getSourceClass());
+
+        // Nothing is recorded in verdict mode
+        Assert.assertEquals(0, scanner.getUsages().size());
+    }
+
+    private UnstableApiVerdict scanForVerdict(Class<?> clazz) throws IOException {
+        return scanForVerdict(clazz, ScanConfiguration.ALL);
+    }
+
+    private UnstableApiVerdict scanForVerdict(Class<?> clazz, ScanConfiguration configuration) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = UnstableApiVerdictTestCase.class.getClassLoader().getResource(classLocation);
+        try (InputStream in = url.openStream()) {
+            return scanner.scanForVerdict(in);
+        }
+    }
+}
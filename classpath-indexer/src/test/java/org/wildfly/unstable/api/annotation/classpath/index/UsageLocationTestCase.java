@@ -0,0 +1,137 @@
+package org.wildfly.unstable.api.annotation.classpath.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalFields;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.Experimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassExtendsUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ClassUsageInMethodBody;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.FieldReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.MethodReference;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.NoUsage;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.usage.ReflectiveClassUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsage;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.AnnotationUsageType;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ScanConfiguration;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.UsageLocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Checks the locations resolved for the usages found in the scanned classes
+ */
+public class UsageLocationTestCase {
+    private static final String EXPERIMENTAL_ANNOTATION = Experimental.class.getName();
+
+    RuntimeIndex runtimeIndex;
+
+    @Before
+    public void createRuntimeIndex() throws IOException {
+        OverallIndex overallIndex = new OverallIndex();
+        File file = TestUtils.createJar(
+                ClassWithExperimental.class,
+                ClassWithExperimentalMethods.class,
+                ClassWithExperimentalFields.class);
+        overallIndex.scanJar(file, EXPERIMENTAL_ANNOTATION, Collections.emptySet());
+
+        Path p = Paths.get("target/index/runtime-test.txt");
+        overallIndex.save(p);
+
+        runtimeIndex = RuntimeIndex.load(p);
+    }
+
+    @Test
+    public void testMethodReferenceLocation() throws Exception {
+        AnnotationUsage usage = scanAndGetSingleUsage(MethodReference.class, AnnotationUsageType.METHOD_REFERENCE);
+        checkSingleLocation(usage, "test", "()V", 8);
+    }
+
+    @Test
+    public void testFieldReferenceLocation() throws Exception {
+        AnnotationUsage usage = scanAndGetSingleUsage(FieldReference.class, AnnotationUsageType.FIELD_REFERENCE);
+        checkSingleLocation(usage, "test", "()V", 9);
+    }
+
+    @Test
+    public void testClassUsageLocation() throws Exception {
+        AnnotationUsage usage = scanAndGetSingleUsage(ClassUsageInMethodBody.class, AnnotationUsageType.CLASS_USAGE);
+        checkSingleLocation(usage, "test", "(Lorg/wildfly/unstable/api/annotation/classpath/index/classes/ClassWithExperimental;)V", 7);
+    }
+
+    @Test
+    public void testReflectiveClassUsageLocation() throws Exception {
+        ScanConfiguration configuration = ScanConfiguration.builder()
+                .addUsageType(AnnotationUsageType.REFLECTIVE_CLASS_USAGE)
+                .build();
+        AnnotationUsage usage = scanAndGetSingleUsage(ReflectiveClassUsage.class, AnnotationUsageType.REFLECTIVE_CLASS_USAGE, configuration);
+        checkSingleLocation(usage, "test", "()V", 5);
+    }
+
+    @Test
+    public void testNoLocationForDeclarations() throws Exception {
+        AnnotationUsage usage = scanAndGetSingleUsage(ClassExtendsUsage.class, AnnotationUsageType.EXTENDS_CLASS);
+        Assert.assertEquals(Collections.emptySet(), usage.getLocations());
+    }
+
+    @Test
+    public void testLocationsNotResolvedByScan() throws Exception {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(scanner, MethodReference.class);
+        Assert.assertEquals(Collections.emptySet(), scanner.getUsages().iterator().next().getLocations());
+
+        // Nothing to resolve for a class without usages
+        scanClass(scanner, NoUsage.class);
+        try (InputStream in = openClass(NoUsage.class)) {
+            scanner.resolveLocations(in, Collections.emptySet());
+        }
+    }
+
+    private void checkSingleLocation(AnnotationUsage usage, String methodName, String descriptor, int lineNumber) {
+        Set<UsageLocation> locations = usage.getLocations();
+        Assert.assertEquals(locations.toString(), 1, locations.size());
+        UsageLocation location = locations.iterator().next();
+        Assert.assertEquals(methodName, location.getMethodName());
+        Assert.assertEquals(descriptor, location.getMethodDescriptor());
+        Assert.assertEquals(lineNumber, location.getLineNumber());
+    }
+
+    private AnnotationUsage scanAndGetSingleUsage(Class<?> clazz, AnnotationUsageType type) throws IOException {
+        return scanAndGetSingleUsage(clazz, type, ScanConfiguration.ALL);
+    }
+
+    private AnnotationUsage scanAndGetSingleUsage(Class<?> clazz, AnnotationUsageType type, ScanConfiguration configuration) throws IOException {
+        ClassInfoScanner scanner = new ClassInfoScanner(runtimeIndex, configuration);
+        scanClass(scanner, clazz);
+        Set<AnnotationUsage> usages = scanner.getUsages();
+        Assert.assertEquals(usages.toString(), 1, usages.size());
+        AnnotationUsage usage = usages.iterator().next();
+        Assert.assertEquals(type, usage.getType());
+        try (InputStream in = openClass(clazz)) {
+            scanner.resolveLocations(in, usages);
+        }
+        return usage;
+    }
+
+    private void scanClass(ClassInfoScanner scanner, Class<?> clazz) throws IOException {
+        try (InputStream in = openClass(clazz)) {
+            scanner.scanClass(in);
+        }
+    }
+
+    private InputStream openClass(Class<?> clazz) throws IOException {
+        String classLocation = clazz.getName().replaceAll("\\.", "/") + ".class";
+        URL url = UsageLocationTestCase.class.getClassLoader().getResource(classLocation);
+        return url.openStream();
+    }
+}
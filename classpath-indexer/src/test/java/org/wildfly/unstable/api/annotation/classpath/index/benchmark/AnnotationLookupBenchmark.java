@@ -0,0 +1,156 @@
+package org.wildfly.unstable.api.annotation.classpath.index.benchmark;
+
+import org.jboss.jandex.AnnotationInstance;
+import org.jboss.jandex.Index;
+import org.jboss.jandex.Indexer;
+import org.junit.Test;
+import org.wildfly.unstable.api.annotation.classpath.index.RuntimeIndex;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.ClassInfoScanner;
+import org.wildfly.unstable.api.annotation.classpath.runtime.bytecode.JandexIndex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares looking up all the annotated annotations from the runtime index in the Jandex index, with letting
+ * {@link JandexIndex#of(org.jboss.jandex.IndexView)} gather the annotations known by the Jandex index and looking
+ * those up in the runtime index, for different numbers of annotated annotations. A new {@code JandexIndex} is
+ * created for each check, so the time taken to gather the names from the classes in the Jandex index is included.
+ *
+ * Parameters: the jars or class directories to index. If none are given, the jars of Jandex, JUnit and Hamcrest
+ * along with this module's classes are indexed.
+ */
+public class AnnotationLookupBenchmark {
+    private static final int ITERATIONS = 200;
+    private static final int[] SIZES = {10, 100, 1000, 10000};
+
+    public static void main(String[] args) throws Exception {
+        List<Path> paths = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) {
+                paths.add(Paths.get(arg));
+            }
+        } else {
+            for (Class<?> clazz : List.of(Index.class, Test.class, org.hamcrest.Matcher.class, ClassInfoScanner.class)) {
+                paths.add(Paths.get(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()));
+            }
+        }
+        Index index = createJandexIndex(paths);
+        System.out.printf("Indexed %d classes using %d annotations%n", index.getKnownClasses().size(),
+                JandexIndex.of(index).getKnownAnnotationNames().size());
+
+        System.out.printf("%10s %15s %15s %15s%n", "annotated", "runtime->jandex", "jandex->runtime", "uncapped");
+        for (int annotatedAnnotations : SIZES) {
+            RuntimeIndex runtimeIndex = createRuntimeIndex(annotatedAnnotations);
+            long runtimeFirst = time(runtimeIndex, index, Mode.LOOKUP_ALL);
+            long jandexFirst = time(runtimeIndex, index, Mode.CAPPED);
+            long uncapped = time(runtimeIndex, index, Mode.UNCAPPED);
+            System.out.printf("%10d %13dms %13dms %13dms%n", annotatedAnnotations, runtimeFirst, jandexFirst, uncapped);
+        }
+    }
+
+    private static long time(RuntimeIndex runtimeIndex, Index index, Mode mode) {
+        // Warm up
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            new ClassInfoScanner(runtimeIndex).checkAnnotationIndex(createJandexIndex(index, mode));
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new ClassInfoScanner(runtimeIndex).checkAnnotationIndex(createJandexIndex(index, mode));
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static JandexIndex createJandexIndex(Index index, Mode mode) {
+        switch (mode) {
+            case LOOKUP_ALL:
+                return index::getAnnotations;
+            case CAPPED:
+                return JandexIndex.of(index);
+            case UNCAPPED: {
+                JandexIndex jandexIndex = JandexIndex.of(index);
+                return new JandexIndex() {
+                    @Override
+                    public Collection<AnnotationInstance> getAnnotations(String annotationName) {
+                        return jandexIndex.getAnnotations(annotationName);
+                    }
+
+                    @Override
+                    public Collection<String> getKnownAnnotationNames(int max) {
+                        // Always walk all the classes, as was done before the walk was capped
+                        Collection<String> names = jandexIndex.getKnownAnnotationNames();
+                        return names.size() > max ? null : names;
+                    }
+                };
+            }
+            default:
+                throw new IllegalStateException(mode.name());
+        }
+    }
+
+    private static Index createJandexIndex(List<Path> paths) throws IOException {
+        Indexer indexer = new Indexer();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        if (file.toString().endsWith(".class")) {
+                            try (InputStream in = Files.newInputStream(file)) {
+                                indexer.index(in);
+                            }
+                        }
+                    }
+                }
+            } else {
+                try (ZipFile zipFile = new ZipFile(path.toFile())) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+                            try (InputStream in = zipFile.getInputStream(entry)) {
+                                indexer.index(in);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return indexer.complete();
+    }
+
+    private static RuntimeIndex createRuntimeIndex(int annotatedAnnotations) throws IOException {
+        Path path = Paths.get("target/index/annotation-lookup-benchmark.txt");
+        Files.createDirectories(path.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("==\n");
+            writer.write("org.acme.Experimental\n");
+            writer.write("=ANNOTATIONS\n");
+            for (int i = 0; i < annotatedAnnotations; i++) {
+                // None of the annotated annotations are used in the indexed classes, so nothing is reported and
+                // each check does all its lookups
+                writer.write("org.acme.api.Annotation" + i);
+                writer.write('\n');
+            }
+            writer.write('\n');
+            writer.write("=/\n");
+        }
+        return RuntimeIndex.load(path);
+    }
+
+    private enum Mode {
+        LOOKUP_ALL,
+        CAPPED,
+        UNCAPPED
+    }
+}
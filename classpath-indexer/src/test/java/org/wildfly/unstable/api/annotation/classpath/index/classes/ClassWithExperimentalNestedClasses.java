@@ -0,0 +1,40 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public class ClassWithExperimentalNestedClasses {
+
+    public <T extends Number> Supplier<T> createSupplier(T value) {
+        return new Supplier<T>() {
+            @Experimental
+            @Override
+            public T get() {
+                return value;
+            }
+        };
+    }
+
+    public class Inner extends ClassWithExperimentalMethods {
+        @Experimental
+        public Inner(String s) {
+        }
+
+        public Inner(@Experimental List<String> list) {
+        }
+    }
+
+    public static class StaticNested {
+        @Experimental
+        public StaticNested(String s) {
+        }
+    }
+
+    public enum NestedEnum {
+        A("a");
+
+        @Experimental
+        NestedEnum(String s) {
+        }
+    }
+}
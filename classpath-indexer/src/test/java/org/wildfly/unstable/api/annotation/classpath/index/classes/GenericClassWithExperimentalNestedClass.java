@@ -0,0 +1,17 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes;
+
+public class GenericClassWithExperimentalNestedClass<T extends Number> {
+
+    public class Inner {
+        @Experimental
+        public void accept(T value) {
+        }
+
+        public class InnerInner {
+            @Experimental
+            public T get() {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes;
+
+public class SubclassHidingExperimentalField extends ClassWithExperimentalFields {
+    public String fieldA;
+}
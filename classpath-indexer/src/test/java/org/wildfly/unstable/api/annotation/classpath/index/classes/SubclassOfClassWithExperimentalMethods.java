@@ -0,0 +1,4 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes;
+
+public class SubclassOfClassWithExperimentalMethods extends ClassWithExperimentalMethods {
+}
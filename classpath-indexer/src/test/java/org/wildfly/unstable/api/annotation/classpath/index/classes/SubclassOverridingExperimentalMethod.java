@@ -0,0 +1,8 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes;
+
+public class SubclassOverridingExperimentalMethod extends ClassWithExperimentalMethods {
+    @Override
+    public void test() {
+
+    }
+}
@@ -0,0 +1,11 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+
+public class ClassArrayUsageInDeclarations {
+    ClassWithExperimental[] field;
+
+    public void test(int i, ClassWithExperimental[][] param, String s) {
+
+    }
+}
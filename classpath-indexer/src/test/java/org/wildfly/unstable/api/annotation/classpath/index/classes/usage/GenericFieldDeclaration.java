@@ -0,0 +1,9 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+
+import java.util.List;
+
+public class GenericFieldDeclaration {
+    List<ClassWithExperimental> field;
+}
@@ -0,0 +1,11 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+
+import java.util.Map;
+
+public class GenericMethodDeclaration {
+    // The name of the type parameter looks like the start of a class type in the signature
+    public <L extends Comparable<L>, T extends Map<String, ? super ClassWithExperimental[]>> void test(L l, T t) {
+    }
+}
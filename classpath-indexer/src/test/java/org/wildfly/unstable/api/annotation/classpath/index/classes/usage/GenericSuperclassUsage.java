@@ -0,0 +1,8 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+
+import java.util.ArrayList;
+
+public class GenericSuperclassUsage extends ArrayList<ClassWithExperimental> {
+}
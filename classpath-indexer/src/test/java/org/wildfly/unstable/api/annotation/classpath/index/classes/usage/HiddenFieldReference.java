@@ -0,0 +1,12 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassHidingExperimentalField;
+
+public class HiddenFieldReference {
+    SubclassHidingExperimentalField cl;
+
+    public void test() {
+        String s = cl.fieldA;
+        s = SubclassHidingExperimentalField.fieldB;
+    }
+}
@@ -0,0 +1,8 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+public class IndirectUsageViaMethodDescriptor {
+    public void test(ClassUsageAsMethodParameter parameterUsage) {
+        // The descriptor of the called method mentions ClassWithExperimental, although this class never does
+        parameterUsage.test(null);
+    }
+}
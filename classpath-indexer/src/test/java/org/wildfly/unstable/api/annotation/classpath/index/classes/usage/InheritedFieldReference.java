@@ -0,0 +1,11 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfClassWithExperimentalFields;
+
+public class InheritedFieldReference {
+    SubclassOfClassWithExperimentalFields cl;
+
+    public void test() {
+        String s = cl.fieldA;
+    }
+}
@@ -0,0 +1,12 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubinterfaceOfInterfaceWithExperimentalMethods;
+
+public class InheritedInterfaceMethodReference {
+    SubinterfaceOfInterfaceWithExperimentalMethods iface;
+
+    public void test() {
+        iface.test("Hello");
+        iface.notAnnotated();
+    }
+}
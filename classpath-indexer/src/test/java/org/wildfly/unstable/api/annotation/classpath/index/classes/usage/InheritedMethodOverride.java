@@ -0,0 +1,10 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfSubclassOfClassWithExperimentalMethods;
+
+public class InheritedMethodOverride extends SubclassOfSubclassOfClassWithExperimentalMethods {
+    @Override
+    public void test() {
+
+    }
+}
@@ -0,0 +1,11 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfSubclassOfClassWithExperimentalMethods;
+
+public class InheritedMethodReference {
+    public void test() {
+        SubclassOfSubclassOfClassWithExperimentalMethods clazz = new SubclassOfSubclassOfClassWithExperimentalMethods();
+        clazz.test();
+        clazz.notAnnotated();
+    }
+}
@@ -0,0 +1,10 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithExperimentalMethods;
+
+public abstract class InterfaceMethodOverride implements InterfaceWithExperimentalMethods {
+    @Override
+    public void test(String s) {
+
+    }
+}
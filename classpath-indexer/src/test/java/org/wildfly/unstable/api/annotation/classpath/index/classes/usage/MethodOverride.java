@@ -0,0 +1,15 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimentalMethods;
+
+public class MethodOverride extends ClassWithExperimentalMethods {
+    @Override
+    public void test() {
+
+    }
+
+    @Override
+    public void notAnnotated() {
+
+    }
+}
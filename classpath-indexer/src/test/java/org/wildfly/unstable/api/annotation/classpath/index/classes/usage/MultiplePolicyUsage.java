@@ -0,0 +1,12 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental;
+import org.wildfly.unstable.api.annotation.classpath.index.classes.InterfaceWithIncubating;
+
+public class MultiplePolicyUsage implements InterfaceWithIncubating {
+    ClassWithExperimental field;
+
+    public void test() {
+        field.test();
+    }
+}
@@ -0,0 +1,11 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+import org.wildfly.unstable.api.annotation.classpath.index.classes.SubclassOfSubclassOverridingExperimentalMethod;
+
+public class OverriddenMethodReference {
+    public void test() {
+        SubclassOfSubclassOverridingExperimentalMethod clazz = new SubclassOfSubclassOverridingExperimentalMethod();
+        clazz.test();
+        SubclassOfSubclassOverridingExperimentalMethod.test("s");
+    }
+}
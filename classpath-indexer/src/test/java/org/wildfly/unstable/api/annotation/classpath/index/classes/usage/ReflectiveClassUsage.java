@@ -0,0 +1,9 @@
+package org.wildfly.unstable.api.annotation.classpath.index.classes.usage;
+
+public class ReflectiveClassUsage {
+    public void test() throws Exception {
+        Class.forName("org.wildfly.unstable.api.annotation.classpath.index.classes.ClassWithExperimental");
+        // Not a class name
+        System.out.println("org.wildfly.unstable.api.annotation.classpath.index.classes");
+    }
+}
@@ -168,6 +168,11 @@ public class RecordRuntimeJandexTestCase {
         Assert.assertEquals(1, scanner.getUsages().size());
         AnnotationUsage usage = scanner.getUsages().iterator().next();
         Assert.assertEquals(type, usage.getType());
+
+        // The scanner should find the same usage without Jandex
+        ClassInfoScanner singlePassScanner = new ClassInfoScanner(runtimeIndex);
+        scanClass(singlePassScanner, clazz);
+        Assert.assertEquals(scanner.getUsages(), singlePassScanner.getUsages());
         return usage;
     }
 